@@ -3,22 +3,23 @@ package command;
 import controller.Context;
 import external.MockEntertainmentProviderSystem;
 import model.*;
-import state.EventState;
+import state.IEventState;
 import state.UserState;
 
 import java.time.LocalDateTime;
-import java.util.Collection;
 import java.util.List;
 
 public class AddEventPerformanceCommand implements ICommand
 {
+    private static final long serialVersionUID = 1L;
+
     private long eventNumber;
     private String venueAddress;
     private LocalDateTime startDateTime, endDateTime;
     private List<String> performerNames;
     private boolean hasSocialDistancing, hasAirFiltration, isOutdoors;
     private int capacityLimit, venueSize;
-    private EventPerformance latestEventPerformance;
+    private transient EventPerformance latestEventPerformance;
 
     public AddEventPerformanceCommand(long eventNumber,
                                       String venueAddress,
@@ -51,7 +52,7 @@ public class AddEventPerformanceCommand implements ICommand
         {
             UserState userState = (UserState) context.getUserState();
             User currentUser = userState.getCurrentUser();
-            EventState eventState = (EventState) context.getEventState();
+            IEventState eventState = context.getEventState();
             Event givenEvent = eventState.findEventByNumber(eventNumber);
             if (givenEvent == null)
             {
@@ -147,28 +148,10 @@ public class AddEventPerformanceCommand implements ICommand
      * @return true if there is no performance with the same start and end times
      * for any event with the same title as the searched event
      */
-    private boolean noSameTimePerformanceForSameEventTitle(EventState eventState, String givenEventTitle)
+    private boolean noSameTimePerformanceForSameEventTitle(IEventState eventState, String givenEventTitle)
     {
-        List<Event> allEvents = eventState.getAllEvents();
-        // Check all events, and for each event, check all performances
-        // to see if a match is found
-        for (Event event : allEvents)
-        {
-            String eventTitle = event.getTitle();
-            if (eventTitle.equals(givenEventTitle))
-            {
-                Collection<EventPerformance> eventPerformances = event.getPerformances();
-                for (EventPerformance performance : eventPerformances)
-                {
-                    LocalDateTime performanceStartTime = performance.getStartDateTime();
-                    LocalDateTime performanceEndTime = performance.getEndDateTime();
-                    if (performanceStartTime.isEqual(startDateTime) && performanceEndTime.isEqual(endDateTime)) {
-                        return false;
-                    }
-                }
-            }
-        }
-        return true;
+        // The event state indexes the timeslots taken by each event title
+        return !eventState.isTitleTimeslotTaken(givenEventTitle, startDateTime, endDateTime);
     }
 
     @Override
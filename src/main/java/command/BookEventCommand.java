@@ -4,16 +4,19 @@ import controller.Context;
 import external.MockEntertainmentProviderSystem;
 import external.MockPaymentSystem;
 import model.*;
-import state.BookingState;
-import state.EventState;
+import state.IEventState;
+import state.IBookingState;
 import state.UserState;
 
 import java.time.LocalDateTime;
 import java.util.Collection;
+import java.util.List;
 
 public class BookEventCommand implements ICommand
 {
-    private Long bookingNumber = null;
+    private static final long serialVersionUID = 1L;
+
+    private transient Long bookingNumber = null;
     private final long eventNumber, performanceNumber;
     private final int numTicketsRequested;
 
@@ -24,6 +27,12 @@ public class BookEventCommand implements ICommand
         this.numTicketsRequested = numTicketsRequested;
     }
 
+    @Override
+    public Collection<String> getLockKeys(Context context)
+    {
+        return List.of(LockKeys.event(eventNumber));
+    }
+
     @Override
     public void execute(Context context)
     {
@@ -31,15 +40,15 @@ public class BookEventCommand implements ICommand
         User currentUser = userState.getCurrentUser();
         if (validUser(currentUser))
         {
-            EventState eventState = (EventState) context.getEventState();
+            IEventState eventState = context.getEventState();
             Event currentEvent = eventState.findEventByNumber(eventNumber);
             if (validEventAndRequestedTickets(currentEvent))
             {
-                EventPerformance currentPerformance = validPerformance(currentEvent);
+                EventPerformance currentPerformance = validPerformance(eventState, currentEvent);
                 if (currentPerformance != null)
                 {
                     LocalDateTime performanceEndTime = currentPerformance.getEndDateTime();
-                    LocalDateTime currentTime = LocalDateTime.now();
+                    LocalDateTime currentTime = context.now();
                     if (hasNotEnded(currentTime, performanceEndTime))
                     {
                         EntertainmentProvider eventOrganiser = currentEvent.getOrganiser();
@@ -116,27 +125,20 @@ public class BookEventCommand implements ICommand
     }
 
     /**
-     * Check if the performance which the uswr is trying to book
-     * exists on our system
+     * Check if the performance which the user is trying to book
+     * exists on our system and belongs to the event being booked
+     * @param eventState the current state for all events
      * @param currentEvent the event for which the booking is made
-     * @return true if the performance is valid (the performance exists
-     * on our system)
+     * @return the performance if it is valid (the performance exists
+     * on our system), null otherwise
      */
-    private EventPerformance validPerformance(Event currentEvent)
+    private EventPerformance validPerformance(IEventState eventState, Event currentEvent)
     {
-        Collection<EventPerformance> performances = currentEvent.getPerformances();
-        EventPerformance currentPerformance = null;
-        for (EventPerformance performance : performances)
-        {
-            if (performance.getPerformanceNumber() == performanceNumber)
-            {
-                currentPerformance = performance;
-                break;
-            }
-        }
-        if (currentPerformance == null)
+        EventPerformance currentPerformance = eventState.findPerformanceByNumber(performanceNumber);
+        if (currentPerformance == null || currentPerformance.getEvent() != currentEvent)
         {
             StdOut.println("The performance number was not valid!");
+            return null;
         }
         return currentPerformance;
     }
@@ -176,9 +178,10 @@ public class BookEventCommand implements ICommand
                                    double amountToPay,
                                    MockEntertainmentProviderSystem providerSystem)
     {
-        BookingState bookingState = (BookingState) context.getBookingState();
-        Booking newBooking = bookingState.createBooking((Consumer) currentUser,
-                currentPerformance, numTicketsRequested, amountToPay);
+        IBookingState bookingState = context.getBookingState();
+        // Booking numbers are handed out in turn, so replaying the commands in turn hands out the same ones
+        Booking newBooking = context.changeInOrder(() -> bookingState.createBooking((Consumer) currentUser,
+                currentPerformance, numTicketsRequested, amountToPay, context.now()));
         long bookingNumber = newBooking.getBookingNumber();
         String consumerName = ((Consumer) currentUser).getName();
         String consumerEmail = currentUser.getEmail();
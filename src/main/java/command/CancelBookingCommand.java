@@ -4,22 +4,39 @@ import controller.Context;
 import external.MockEntertainmentProviderSystem;
 import external.MockPaymentSystem;
 import model.*;
-import state.BookingState;
+import state.IBookingState;
 import state.UserState;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 
 
 public class CancelBookingCommand implements ICommand
 {
+    private static final long serialVersionUID = 1L;
+
     long bookingNumber;
-    boolean result = false;
+    transient boolean result = false;
 
     public CancelBookingCommand(long bookingNumber)
     {
         this.bookingNumber = bookingNumber;
     }
 
+    @Override
+    public Collection<String> getLockKeys(Context context)
+    {
+        Booking booking = context.getBookingState().findBookingByNumber(bookingNumber);
+        if (booking == null)
+        {
+            return List.of(LockKeys.booking(bookingNumber));
+        }
+        // Cancelling a booking gives its tickets back to the event
+        long eventNumber = booking.getEventPerformance().getEvent().getEventNumber();
+        return List.of(LockKeys.booking(bookingNumber), LockKeys.event(eventNumber));
+    }
+
     @Override
     public void execute(Context context)
     {
@@ -28,13 +45,13 @@ public class CancelBookingCommand implements ICommand
         User currentUser = userState.getCurrentUser();
         if (validUser(currentUser))
         {
-            BookingState bookingState = (BookingState) context.getBookingState();
+            IBookingState bookingState = context.getBookingState();
             Booking currentBooking = bookingState.findBookingByNumber(bookingNumber);
             if (validBooking(currentBooking, currentUser))
             {
                 EventPerformance bookedPerformance = currentBooking.getEventPerformance();
                 LocalDateTime performanceStartTime = bookedPerformance.getStartDateTime();
-                LocalDateTime exactly24HoursAwayFromNow = LocalDateTime.now().plusDays(1);
+                LocalDateTime exactly24HoursAwayFromNow = context.now().plusDays(1);
                 if (validPerformanceStartTime(performanceStartTime, exactly24HoursAwayFromNow))
                 {
                     Event bookedEvent = bookedPerformance.getEvent();
@@ -4,8 +4,8 @@ import controller.Context;
 import external.MockEntertainmentProviderSystem;
 import external.MockPaymentSystem;
 import model.*;
-import state.BookingState;
-import state.EventState;
+import state.IEventState;
+import state.IBookingState;
 import state.UserState;
 
 import java.time.LocalDateTime;
@@ -15,9 +15,11 @@ import java.util.List;
 public class CancelEventCommand implements ICommand 
 {
 
+    private static final long serialVersionUID = 1L;
+
     protected long eventNumber;
     protected String organiserMessage;
-    protected Boolean cancelSuccess = false;
+    protected transient boolean cancelSuccess = false;
 
     public CancelEventCommand(long eventNumber, String organiserMessage) 
     {
@@ -34,11 +36,11 @@ public class CancelEventCommand implements ICommand
             User currentUser = userState.getCurrentUser();
             if (validUser(currentUser))
             {
-                EventState eventState = (EventState) context.getEventState();
+                IEventState eventState = context.getEventState();
                 Event givenEvent = eventState.findEventByNumber(eventNumber);
                 if (validEventDetails(givenEvent, currentUser))
                 {
-                    if (!performanceAlreadyStarted(givenEvent))
+                    if (!performanceAlreadyStarted(givenEvent, context.now()))
                     {
                         // Refund the event if it is ticketed
                         if (givenEvent instanceof TicketedEvent && ((TicketedEvent) givenEvent).isSponsored())
@@ -56,7 +58,7 @@ public class CancelEventCommand implements ICommand
                         {
                             StdOut.println("Non-ticketed event cancelled successfully!");
                         }
-                        givenEvent.cancel();
+                        eventState.cancelEvent(givenEvent);
                         EntertainmentProvider eventOrganiser = givenEvent.getOrganiser();
                         MockEntertainmentProviderSystem providerSystem =
                                 (MockEntertainmentProviderSystem) eventOrganiser.getProviderSystem();
@@ -79,8 +81,8 @@ public class CancelEventCommand implements ICommand
      */
     private void refundConsumers(Context context, Boolean sponsored) 
     {
-        BookingState bookingState = (BookingState) context.getBookingState();
-        EventState eventState = (EventState) context.getEventState();
+        IBookingState bookingState = context.getBookingState();
+        IEventState eventState = context.getEventState();
         TicketedEvent givenEvent = (TicketedEvent) eventState.findEventByNumber(eventNumber);
         String sellerEmail = givenEvent.getOrganiser().getPaymentAccountEmail();
         MockPaymentSystem paymentSystem = (MockPaymentSystem) context.getPaymentSystem();
@@ -156,15 +158,15 @@ public class CancelEventCommand implements ICommand
      * Checks if any performance of the currently searched
      * event has already started
      * @param givenEvent the currently searched event
+     * @param currentTime the time the command runs at
      * @return true if no performance has already started
      */
-    private boolean performanceAlreadyStarted(Event givenEvent)
+    private boolean performanceAlreadyStarted(Event givenEvent, LocalDateTime currentTime)
     {
         Collection<EventPerformance> allEventPerformances = givenEvent.getPerformances();
         for (EventPerformance performance : allEventPerformances)
         {
             LocalDateTime performanceStartTime = performance.getStartDateTime();
-            LocalDateTime currentTime = LocalDateTime.now();
             if (currentTime.isAfter(performanceStartTime))
             {
                 return true;
@@ -10,7 +10,9 @@ import state.UserState;
 abstract public class CreateEventCommand implements ICommand
 {
 
-    protected Long eventNumberResult = null;
+    private static final long serialVersionUID = 1L;
+
+    protected transient Long eventNumberResult = null;
     protected String title;
     protected EventType type;
 
@@ -6,12 +6,14 @@ import model.EntertainmentProvider;
 import model.EventType;
 import model.NonTicketedEvent;
 import model.StdOut;
-import state.EventState;
+import state.IEventState;
 import state.UserState;
 
 public class CreateNonTicketedEventCommand extends CreateEventCommand
 {
 
+    private static final long serialVersionUID = 1L;
+
     public CreateNonTicketedEventCommand(String title, EventType type)
     {
         super(title, type);
@@ -24,7 +26,7 @@ public class CreateNonTicketedEventCommand extends CreateEventCommand
         {
             // Get the information to create a non ticketed event and add it to the system
             UserState userState = (UserState) context.getUserState();
-            EventState eventState = (EventState) context.getEventState();
+            IEventState eventState = context.getEventState();
             EntertainmentProvider organiser = (EntertainmentProvider) userState.getCurrentUser();
             NonTicketedEvent newEvent = eventState.createNonTicketedEvent(organiser, title, type);
             eventNumberResult = newEvent.getEventNumber();
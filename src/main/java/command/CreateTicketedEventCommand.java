@@ -3,12 +3,14 @@ package command;
 import controller.Context;
 import external.MockEntertainmentProviderSystem;
 import model.*;
-import state.EventState;
+import state.IEventState;
 import state.SponsorshipState;
 import state.UserState;
 
 public class CreateTicketedEventCommand extends CreateEventCommand
 {
+    private static final long serialVersionUID = 1L;
+
     private int numTickets;
     private double ticketPrice;
     private boolean requestSponsorship;
@@ -30,7 +32,7 @@ public class CreateTicketedEventCommand extends CreateEventCommand
         {
             // Get the information to create a ticketed event and add it to the system
             UserState userState = (UserState) context.getUserState();
-            EventState eventState = (EventState) context.getEventState();
+            IEventState eventState = context.getEventState();
             EntertainmentProvider organiser = (EntertainmentProvider) userState.getCurrentUser();
             TicketedEvent newEvent = eventState.createTicketedEvent(organiser, title, type, ticketPrice, numTickets);
             if (requestSponsorship)
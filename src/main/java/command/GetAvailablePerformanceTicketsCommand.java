@@ -7,6 +7,8 @@ import model.TicketedEvent;
 
 public class GetAvailablePerformanceTicketsCommand implements ICommand
 {
+    private static final long serialVersionUID = 1L;
+
     private long eventNumber, performanceNumber;
     private Integer numTicketsResult;
 
@@ -18,16 +20,22 @@ public class GetAvailablePerformanceTicketsCommand implements ICommand
         numTicketsResult = null;
     }
 
+    @Override
+    public boolean isReadOnly()
+    {
+        return true;
+    }
+
     @Override
     public void execute(Context context)
     {
-        // Find the event and the number of tickets for the performance nunber associated with it
+        // Find the event and the number of tickets for the performance number associated with it
         Event event = context.getEventState().findEventByNumber(eventNumber);
         if (event instanceof TicketedEvent)
         {
             EventPerformance eventPerformance =
-                    event.getPerformanceByNumber(performanceNumber);
-            if (eventPerformance != null)
+                    context.getEventState().findPerformanceByNumber(performanceNumber);
+            if (eventPerformance != null && eventPerformance.getEvent() == event)
             {
                 TicketedEvent ticketedEvent = (TicketedEvent) event;
                 numTicketsResult = ticketedEvent.getNumTickets();
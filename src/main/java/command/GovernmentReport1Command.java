@@ -2,18 +2,21 @@ package command;
 
 import controller.Context;
 import model.*;
-import state.BookingState;
-import state.EventState;
+import state.IEventState;
+import state.IBookingState;
+import state.LongHashSet;
 import state.UserState;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 
 public class GovernmentReport1Command implements ICommand
 {
 
+    private static final long serialVersionUID = 1L;
+
     private final LocalDateTime intervalStartInclusive, intervalEndInclusive;
     private final List<Booking> bookings = new ArrayList<>();
 
@@ -23,35 +26,35 @@ public class GovernmentReport1Command implements ICommand
         this.intervalEndInclusive = intervalEndInclusive;
     }
 
+    @Override
+    public boolean isReadOnly()
+    {
+        return true;
+    }
+
     @Override
     public void execute(Context context)
     {
+        // Start from an empty report, in case the command is run again
+        bookings.clear();
         if (validUser(context))
         {
-            EventState eventState = (EventState) context.getEventState();
-            Collection<Event> allEvents = eventState.getAllEvents();
-
-            List<Event> allValidEvents = getAllValidEvents(allEvents);
-
-            ArrayList<Booking> allBookingsForValidEvents =
-                    getBookingsForAllValidEvents(context, allValidEvents);
-
             if (intervalEndInclusive.isBefore(intervalStartInclusive))
             {
                 StdOut.println("The time interval provided was invalid!");
                 return;
             }
-            // Of those bookings, create a list of all bookings that fall in the given time interval
-            for (Booking booking: allBookingsForValidEvents)
+            // The event state keeps the sponsored, active ticketed events up to date
+            IEventState eventState = context.getEventState();
+            LongHashSet sponsoredEventNumbers = new LongHashSet();
+            for (TicketedEvent event: eventState.getSponsoredActiveEvents())
             {
-                EventPerformance eventPerformance = booking.getEventPerformance();
-                LocalDateTime performanceStart = eventPerformance.getStartDateTime();
-                LocalDateTime performanceEnd = eventPerformance.getEndDateTime();
-                if (!performanceStart.isBefore(intervalStartInclusive) && !performanceEnd.isAfter(intervalEndInclusive)
-                && performanceStart.isAfter(LocalDateTime.now()))
-                {
-                    bookings.add(booking);
-                }
+                sponsoredEventNumbers.add(event.getEventNumber());
+            }
+            if (sponsoredEventNumbers.size() > 0)
+            {
+                bookings.addAll(getBookingsWithinInterval(context.getBookingState(), sponsoredEventNumbers,
+                        LocalDateTime.now()));
             }
         }
     }
@@ -81,49 +84,36 @@ public class GovernmentReport1Command implements ICommand
     }
 
     /**
-     * Filter out all events that have been cancelled from
-     * all the events on our system
-     * @param allEvents list of all events on our system
-     * @return list of all events still active on our system
+     * Retrieve the bookings of sponsored events for the performances that take
+     * place within the given time interval and are yet to start, by a range
+     * query over the start times of the performances that were booked
+     * @param bookingState the current state of all bookings
+     * @param sponsoredEventNumbers the numbers of the sponsored, active events
+     * @param now the current time
+     * @return the bookings, grouped by event in event number order,
+     * and in the order they were made within each event
      */
-    private List<Event> getAllValidEvents(Collection<Event> allEvents)
+    private List<Booking> getBookingsWithinInterval(IBookingState bookingState,
+                                                    LongHashSet sponsoredEventNumbers,
+                                                    LocalDateTime now)
     {
-        List<Event> allValidEvents = new ArrayList<>();
-        // Create list of all active events
-        for (Event event: allEvents)
+        // Performances yet to start cannot start before now, so the range starts no earlier
+        LocalDateTime rangeStart = now.isAfter(intervalStartInclusive) ? now : intervalStartInclusive;
+        List<Booking> intervalBookings = new ArrayList<>();
+        for (Booking booking: bookingState.findBookingsByPerformanceStart(rangeStart, intervalEndInclusive))
         {
-            if (event instanceof TicketedEvent)
+            EventPerformance performance = booking.getEventPerformance();
+            if (performance.getStartDateTime().isAfter(now)
+                    && !performance.getEndDateTime().isAfter(intervalEndInclusive)
+                    && sponsoredEventNumbers.contains(performance.getEvent().getEventNumber()))
             {
-                if (((TicketedEvent) event).isSponsored() && event.getStatus().equals(EventStatus.ACTIVE))
-                {
-                    allValidEvents.add(event);
-                }
+                intervalBookings.add(booking);
             }
         }
-        return allValidEvents;
-    }
-
-    /**
-     * For each of all the active events found, retrieve all bookings
-     * for that event
-     * @param context the current context with all states up to date
-     * @param allValidEvents list of all events still active on our system
-     * @return a list of all the bookings for all the active events on
-     * our system
-     */
-    private ArrayList<Booking> getBookingsForAllValidEvents(Context context,
-                                                            List<Event> allValidEvents)
-    {
-        ArrayList<Booking> allBookingsForValidEvents = new ArrayList<>();
-        BookingState bookingState = (BookingState) context.getBookingState();
-        // Create list of all bookings for those active events
-        for (Event event: allValidEvents)
-        {
-            long eventNumber = event.getEventNumber();
-            List<Booking> eventBookings = bookingState.findBookingsByEventNumber(eventNumber);
-            allBookingsForValidEvents.addAll(eventBookings);
-        }
-        return allBookingsForValidEvents;
+        intervalBookings.sort(Comparator.comparingLong((Booking booking) ->
+                booking.getEventPerformance().getEvent().getEventNumber())
+                .thenComparingLong(Booking::getBookingNumber));
+        return intervalBookings;
     }
 
     @Override
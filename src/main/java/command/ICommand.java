@@ -2,10 +2,46 @@ package command;
 
 import controller.Context;
 
-public interface ICommand
+import java.io.Serializable;
+import java.util.Collection;
+
+/**
+ * Commands that change the context are serialised into the command log once
+ * they have run, and replayed from it as fresh instances, so their fields
+ * holding model objects, such as results, are transient
+ */
+public interface ICommand extends Serializable
 {
 
     void execute (Context context);
 
     Object getResult();
+
+    /**
+     * Declare the events, bookings and users the command touches, built with
+     * {@link LockKeys}, so that a controller running commands concurrently only
+     * serialises it with commands touching the same keys. The current user is
+     * added by the controller, and read-only commands are not asked. Shared
+     * state outside those keys may only be read, or changed through methods
+     * that synchronise themselves
+     * @param context the context the command is about to run on
+     * @return the keys the command touches, or null if the command has to
+     * run on its own (the default)
+     */
+    default Collection<String> getLockKeys(Context context)
+    {
+        return null;
+    }
+
+    /**
+     * Declare whether the command only reads the context. A controller may run
+     * such a command without holding off other commands, and run it again if
+     * the context changed while it ran, so a read-only command must not change
+     * any state other than its own result
+     * @return true if the command only reads the context (the default is false)
+     */
+    default boolean isReadOnly()
+    {
+        return false;
+    }
 }
@@ -10,6 +10,8 @@ import java.util.List;
 
 public class ListConsumerBookingsCommand implements ICommand
 {
+    private static final long serialVersionUID = 1L;
+
     private List<Booking> bookingListResult;
 
     public ListConsumerBookingsCommand()
@@ -17,6 +19,12 @@ public class ListConsumerBookingsCommand implements ICommand
         bookingListResult = null;
     }
 
+    @Override
+    public boolean isReadOnly()
+    {
+        return true;
+    }
+
     @Override
     public void execute(Context context)
     {
@@ -29,7 +37,7 @@ public class ListConsumerBookingsCommand implements ICommand
         if (currentUser instanceof Consumer)
         {
             Consumer consumer = (Consumer) currentUser;
-            bookingListResult = consumer.getBookings();
+            bookingListResult = context.getBookingState().findBookingsByBooker(consumer);
         }
         else
         {
@@ -3,10 +3,13 @@ package command;
 import controller.Context;
 import model.*;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class ListEventBookingsCommand implements ICommand
 {
+    private static final long serialVersionUID = 1L;
+
     private long eventNumber;
     private List<Booking> bookingListResult;
 
@@ -16,6 +19,12 @@ public class ListEventBookingsCommand implements ICommand
         bookingListResult = null;
     }
 
+    @Override
+    public boolean isReadOnly()
+    {
+        return true;
+    }
+
     @Override
     public void execute(Context context)
     {
@@ -26,8 +35,9 @@ public class ListEventBookingsCommand implements ICommand
             if (currentUser instanceof GovernmentRepresentative
                     || event.getOrganiser().equals(currentUser))
             {
+                // A copy, so the result does not change as commands running after this one book the event
                 bookingListResult =
-                        context.getBookingState().findBookingsByEventNumber(eventNumber);
+                        new ArrayList<>(context.getBookingState().findBookingsByEventNumber(eventNumber));
             }
         }
 
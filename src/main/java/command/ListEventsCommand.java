@@ -2,17 +2,22 @@ package command;
 
 import controller.Context;
 import model.*;
-import state.EventState;
+import state.IEventState;
 import state.UserState;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class ListEventsCommand implements ICommand
 {
 
+    private static final long serialVersionUID = 1L;
+
     private boolean userEventsOnly, activeEventsOnly;
     private List<Event> result = null;
 
@@ -22,10 +27,16 @@ public class ListEventsCommand implements ICommand
         this.activeEventsOnly = activeEventsOnly;
     }
 
+    @Override
+    public boolean isReadOnly()
+    {
+        return true;
+    }
+
     @Override
     public void execute(Context context)
     {
-        EventState eventState = (EventState) context.getEventState();
+        IEventState eventState = context.getEventState();
         result = eventState.getAllEvents();
 
         if (userEventsOnly)
@@ -55,37 +66,23 @@ public class ListEventsCommand implements ICommand
      * @param eventState the current state for all events
      * @param currentUser the currently logged-in user
      */
-    private void handleUserOnlyEvents(EventState eventState, User currentUser)
+    private void handleUserOnlyEvents(IEventState eventState, User currentUser)
     {
         if (currentUser instanceof Consumer)
         {
-            // Create the filters for the events to be listed
             ConsumerPreferences currentUserPreferences = ((Consumer) currentUser).getPreferences();
-            boolean userPreferredSocialDistancing = currentUserPreferences.preferSocialDistancing;
-            boolean userPreferredAirFiltration = currentUserPreferences.preferAirFiltration;
-            boolean userPreferredOutdoorsOnly = currentUserPreferences.preferOutdoorsOnly;
-            int userPreferredMaxCapacity = currentUserPreferences.preferredMaxCapacity;
-            int userPreferredMaxVenueSize = currentUserPreferences.preferredMaxVenueSize;
-            result = new ArrayList<>();
-            // Go through events and check whether all the filters apply to all the performances
-            for (Event event: eventState.getAllEvents())
+            // Let the event state find the performances matching the consumer's preferences,
+            // and keep those that are yet to start
+            LocalDateTime now = LocalDateTime.now();
+            List<EventPerformance> preferredPerformances = new ArrayList<>();
+            for (EventPerformance performance: eventState.findPerformancesMatching(currentUserPreferences))
             {
-                Collection<EventPerformance> eventPerformances = event.getPerformances();
-                for (EventPerformance performance: eventPerformances)
+                if (performance.getStartDateTime().isAfter(now))
                 {
-                    LocalDateTime start = performance.getStartDateTime();
-                    if (performance.hasSocialDistancing() == userPreferredSocialDistancing
-                            && performance.hasAirFiltration() == userPreferredAirFiltration
-                            && performance.isOutdoors() == userPreferredOutdoorsOnly
-                            && performance.getCapacityLimit() <= userPreferredMaxCapacity
-                            && performance.getVenueSize() <= userPreferredMaxVenueSize
-                            && start.isAfter(LocalDateTime.now()))
-                    {
-                        result.add(event);
-                        break;
-                    }
+                    preferredPerformances.add(performance);
                 }
             }
+            result = eventsOf(eventState, preferredPerformances);
         }
         else if (currentUser instanceof EntertainmentProvider)
         {
@@ -98,6 +95,81 @@ public class ListEventsCommand implements ICommand
         }
     }
 
+    /**
+     * Check whether an event would be listed for the given user when only
+     * the user's events are requested
+     * @param event the event to check
+     * @param currentUser the currently logged-in user
+     * @param now the current time
+     * @return true if the event matches the preferences of a consumer, is organised
+     * by an entertainment provider, or the user is of any other type
+     */
+    protected boolean isListedForUser(Event event, User currentUser, LocalDateTime now)
+    {
+        if (currentUser instanceof Consumer)
+        {
+            return hasPreferredPerformance(event, ((Consumer) currentUser).getPreferences(), now);
+        }
+        else if (currentUser instanceof EntertainmentProvider)
+        {
+            return event.getOrganiser().equals(currentUser);
+        }
+        return true;
+    }
+
+    /**
+     * Check whether an event has a performance that is yet to start
+     * and matches all of a consumer's preferences
+     * @param event the event to check
+     * @param preferences the consumer's preferences
+     * @param now the current time
+     * @return true if at least one performance of the event matches
+     */
+    private boolean hasPreferredPerformance(Event event, ConsumerPreferences preferences,
+                                            LocalDateTime now)
+    {
+        Collection<EventPerformance> eventPerformances = event.getPerformances();
+        for (EventPerformance performance: eventPerformances)
+        {
+            LocalDateTime start = performance.getStartDateTime();
+            if (performance.hasSocialDistancing() == preferences.preferSocialDistancing
+                    && performance.hasAirFiltration() == preferences.preferAirFiltration
+                    && performance.isOutdoors() == preferences.preferOutdoorsOnly
+                    && performance.getCapacityLimit() <= preferences.preferredMaxCapacity
+                    && performance.getVenueSize() <= preferences.preferredMaxVenueSize
+                    && start.isAfter(now))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collect the events that the given performances belong to
+     * @param eventState the current state for all events
+     * @param performances the performances whose events are collected
+     * @return the events on our system that have at least one of the
+     * performances, each listed once, in event number order (which is
+     * the order of the event list)
+     */
+    protected List<Event> eventsOf(IEventState eventState, Collection<EventPerformance> performances)
+    {
+        Set<Event> events = new HashSet<>();
+        for (EventPerformance performance: performances)
+        {
+            Event event = performance.getEvent();
+            // Skip performances of events that are not (or no longer) on our system
+            if (eventState.findEventByNumber(event.getEventNumber()) == event)
+            {
+                events.add(event);
+            }
+        }
+        List<Event> sortedEvents = new ArrayList<>(events);
+        sortedEvents.sort(Comparator.comparingLong(Event::getEventNumber));
+        return sortedEvents;
+    }
+
     /**
      * based on whether userEventsOnly was true or false
      * get all active events from result, and update result afterwards
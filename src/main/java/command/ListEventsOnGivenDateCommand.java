@@ -3,17 +3,20 @@ package command;
 import controller.Context;
 import model.Event;
 import model.EventPerformance;
+import model.EventStatus;
 import model.StdOut;
 import model.User;
+import state.IEventState;
 import state.UserState;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 
 public class ListEventsOnGivenDateCommand extends ListEventsCommand
 {
+    private static final long serialVersionUID = 1L;
+
     boolean userEventsOnly, activeEventsOnly;
     LocalDateTime searchDateTime;
     List<Event> eventsOnGivenDate = new ArrayList<>();
@@ -26,33 +29,39 @@ public class ListEventsOnGivenDateCommand extends ListEventsCommand
         this.searchDateTime = searchDateTime;
     }
 
+    @Override
+    public boolean isReadOnly()
+    {
+        return true;
+    }
+
     @Override
     public void execute(Context context)
     {
+        // Start from an empty list, in case the command is run again
+        eventsOnGivenDate = new ArrayList<>();
         // ensure null is returned if no user is logged in
         if (userIsLoggedIn(context))
         {
-            ListEventsCommand cmd = new ListEventsCommand(userEventsOnly, activeEventsOnly);
-            cmd.execute(context);
-            List<Event> requestedEvents = cmd.getResult();
-            // Loop through the events to check whether they fit the given date
-            for (Event event: requestedEvents)
+            IEventState eventState = context.getEventState();
+            User currentUser = context.getUserState().getCurrentUser();
+            // Only events with a performance inside the acceptable range are considered
+            LocalDateTime maxStartTime = searchDateTime.minusDays(1);
+            LocalDateTime maxEndTime = searchDateTime.plusDays(1);
+            List<EventPerformance> performancesOnGivenDate =
+                    eventState.findPerformancesWithin(maxStartTime, maxEndTime);
+            LocalDateTime now = LocalDateTime.now();
+            for (Event event: eventsOf(eventState, performancesOnGivenDate))
             {
-                Collection<EventPerformance> performances = event.getPerformances();
-                for (EventPerformance performance: performances)
+                if (activeEventsOnly && !event.getStatus().equals(EventStatus.ACTIVE))
+                {
+                    continue;
+                }
+                if (userEventsOnly && !isListedForUser(event, currentUser, now))
                 {
-                    // Create date times and check whether event is within the acceptable range
-                    LocalDateTime startTime = performance.getStartDateTime();
-                    LocalDateTime endTime = performance.getEndDateTime();
-                    LocalDateTime maxStartTime = searchDateTime.minusDays(1);
-                    LocalDateTime maxEndTime = searchDateTime.plusDays(1);
-                    if (startTime.isAfter(maxStartTime) && endTime.isBefore(maxEndTime)
-                            && !startTime.isEqual(maxStartTime) && !endTime.isEqual(maxEndTime))
-                    {
-                        eventsOnGivenDate.add(event);
-                        break;
-                    }
+                    continue;
                 }
+                eventsOnGivenDate.add(event);
             }
         }
     }
@@ -11,6 +11,8 @@ import java.util.List;
 
 public class ListSponsorshipRequestsCommand implements ICommand
 {
+    private static final long serialVersionUID = 1L;
+
     private boolean pendingOnly;
     private List<SponsorshipRequest> requestListResult = new ArrayList<>();
 
@@ -19,6 +21,12 @@ public class ListSponsorshipRequestsCommand implements ICommand
         this.pendingOnly = pendingOnly;
     }
 
+    @Override
+    public boolean isReadOnly()
+    {
+        return true;
+    }
+
     @Override
     public void execute(Context context)
     {
@@ -0,0 +1,26 @@
+package command;
+
+/**
+ * LockKeys builds the keys that commands declare through
+ * {@link ICommand#getLockKeys}, so that commands touching the same event,
+ * booking or user always name it the same way.
+ */
+public final class LockKeys
+{
+    private LockKeys() {}
+
+    public static String event(long eventNumber)
+    {
+        return "event:" + eventNumber;
+    }
+
+    public static String booking(long bookingNumber)
+    {
+        return "booking:" + bookingNumber;
+    }
+
+    public static String user(String email)
+    {
+        return "user:" + email;
+    }
+}
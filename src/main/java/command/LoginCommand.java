@@ -3,6 +3,7 @@ package command;
 import controller.Context;
 import model.StdOut;
 import model.User;
+import state.Session;
 import state.UserState;
 
 import java.util.Map;
@@ -10,8 +11,14 @@ import java.util.Map;
 public class LoginCommand implements ICommand
 {
 
-    private String email, password;
-    private User user = null;
+    private static final long serialVersionUID = 1L;
+
+    private String email;
+    // not logged; a logged login is replayed from the hash the password matched instead
+    private transient String password;
+    private String passwordHash;
+    private transient User user = null;
+    private transient Session session = null;
 
     public LoginCommand(String email, String password)
     {
@@ -28,11 +35,17 @@ public class LoginCommand implements ICommand
         if (userRegistered)
         {
             User registeredUser = allUsers.get(email);
-            if (registeredUser.checkPasswordMatch(password))
+            boolean passwordMatches = password != null
+                    ? registeredUser.checkPasswordMatch(password)
+                    : passwordHash != null && passwordHash.equals(registeredUser.getPasswordHash());
+            if (passwordMatches)
             {
                 user = registeredUser;
+                passwordHash = registeredUser.getPasswordHash();
+                // Logs in the bound session if there is one, and the context's current user otherwise
                 userState.setCurrentUser(user);
                 context.setUserState(userState);
+                session = userState.getBoundSession();
                 StdOut.println("User logged in successfully!");
             }
             else
@@ -51,4 +64,13 @@ public class LoginCommand implements ICommand
     {
         return user;
     }
+
+    /**
+     * @return the session the user is logged in to, or null if the login failed
+     * or the command was not run in a session
+     */
+    public Session getSession()
+    {
+        return session;
+    }
 }
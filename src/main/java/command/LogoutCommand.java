@@ -8,6 +8,8 @@ import state.UserState;
 public class LogoutCommand implements ICommand
 {
 
+    private static final long serialVersionUID = 1L;
+
     public LogoutCommand() {}
 
     @Override
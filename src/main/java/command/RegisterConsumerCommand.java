@@ -10,8 +10,14 @@ import java.util.Map;
 
 public class RegisterConsumerCommand implements ICommand
 {
-    private String name, email, phoneNumber, password, paymentAccountEmail;
-    private Consumer newConsumer = null;
+    private static final long serialVersionUID = 1L;
+
+    private String name, email, phoneNumber, paymentAccountEmail;
+    // not logged; only the hash of the password is, once it is known
+    private transient String password;
+    // set instead of the password when the password was hashed ahead of running the command or replayed
+    private String passwordHash;
+    private transient Consumer newConsumer = null;
 
     public RegisterConsumerCommand(String name,
                                    String email,
@@ -26,6 +32,23 @@ public class RegisterConsumerCommand implements ICommand
         this.paymentAccountEmail = paymentAccountEmail;
     }
 
+    /**
+     * Register a consumer whose password was already hashed with {@link User#hashPassword},
+     * such as by a bulk import hashing many passwords in parallel. Only the hash is logged
+     * @return the command registering the consumer
+     */
+    public static RegisterConsumerCommand withPasswordHash(String name,
+                                                           String email,
+                                                           String phoneNumber,
+                                                           String passwordHash,
+                                                           String paymentAccountEmail)
+    {
+        RegisterConsumerCommand command = new RegisterConsumerCommand(name, email, phoneNumber, null,
+                paymentAccountEmail);
+        command.passwordHash = passwordHash;
+        return command;
+    }
+
     @Override
     public void execute(Context context)
     {
@@ -41,7 +64,10 @@ public class RegisterConsumerCommand implements ICommand
             else
             {
                 // Register the new consumer
-                this.newConsumer = new Consumer(name, email, phoneNumber, password, paymentAccountEmail);
+                this.newConsumer = passwordHash != null
+                        ? Consumer.withPasswordHash(name, email, phoneNumber, passwordHash, paymentAccountEmail)
+                        : new Consumer(name, email, phoneNumber, password, paymentAccountEmail);
+                passwordHash = newConsumer.getPasswordHash();
                 userState.setCurrentUser(newConsumer);
                 context.setUserState(userState);
                 userState.addUser(newConsumer);
@@ -73,7 +99,7 @@ public class RegisterConsumerCommand implements ICommand
             StdOut.println("The phone number provided was invalid!");
             return false;
         }
-        else if (password == null || password.equals(""))
+        else if ((password == null || password.equals("")) && passwordHash == null)
         {
             StdOut.println("The password provided was invalid!");
             return false;
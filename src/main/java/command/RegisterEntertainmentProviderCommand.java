@@ -1,6 +1,7 @@
 package command;
 
 import controller.Context;
+import external.MockEntertainmentProviderSystem;
 import model.EntertainmentProvider;
 import model.StdOut;
 import model.User;
@@ -11,9 +12,14 @@ import java.util.Map;
 
 public class RegisterEntertainmentProviderCommand implements ICommand
 {
-    private String orgName, orgAddress, paymentAccountEmail, mainRepName, mainRepEmail, password;
+    private static final long serialVersionUID = 1L;
+
+    private String orgName, orgAddress, paymentAccountEmail, mainRepName, mainRepEmail;
+    // not logged; only the hash of the password is, once the provider is registered
+    private transient String password;
+    private String passwordHash;
     private List<String> otherRepNames, otherRepEmails;
-    private EntertainmentProvider entertainmentProvider = null;
+    private transient EntertainmentProvider entertainmentProvider = null;
 
     public RegisterEntertainmentProviderCommand(String orgName,
                                                 String orgAddress,
@@ -67,7 +73,7 @@ public class RegisterEntertainmentProviderCommand implements ICommand
             StdOut.println("Invalid main representative email address!");
             return false;
         }
-        else if (password == null || password.equals(""))
+        else if ((password == null || password.equals("")) && passwordHash == null)
         {
             StdOut.println("Invalid password!");
             return false;
@@ -85,30 +91,6 @@ public class RegisterEntertainmentProviderCommand implements ICommand
         return true;
     }
 
-    /**
-     * Checks if an organisation with the same name and address
-     * was already registered on our system
-     * @param allUsers the list of all users registered on our system
-     * @return true if a match for the organisation name and address
-     * is found on our system (the organisation is already registered)
-     */
-    private boolean organisationAlreadyRegistered(Map<String, User> allUsers)
-    {
-        for (User user: allUsers.values())
-        {
-            if (user instanceof EntertainmentProvider)
-            {
-                String userOrgAddress = ((EntertainmentProvider) user).getOrgAddress();
-                String userOrgName = ((EntertainmentProvider) user).getOrgName();
-                if (userOrgAddress.equals(orgAddress) && userOrgName.equals(orgName))
-                {
-                    return true;
-                }
-            }
-        }
-        return false;
-    }
-
     @Override
     public void execute(Context context)
     {
@@ -123,16 +105,20 @@ public class RegisterEntertainmentProviderCommand implements ICommand
             }
             else
             {
-                if (organisationAlreadyRegistered(allUsers))
+                if (userState.isOrganisationRegistered(orgName, orgAddress))
                 {
                     StdOut.println("Organisations has already been registered by someone else!");
                 }
                 else
                 {
                     // Register new entertainment provider after passing all checks
-                    entertainmentProvider = new EntertainmentProvider(orgName, orgAddress,
-                            paymentAccountEmail, mainRepName, mainRepEmail, password,
-                            otherRepNames, otherRepEmails);
+                    entertainmentProvider = passwordHash != null
+                            ? EntertainmentProvider.withPasswordHash(orgName, orgAddress, mainRepEmail,
+                                    paymentAccountEmail, mainRepName, mainRepEmail, passwordHash, otherRepNames,
+                                    otherRepEmails, new MockEntertainmentProviderSystem(orgName, orgAddress))
+                            : new EntertainmentProvider(orgName, orgAddress, paymentAccountEmail, mainRepName,
+                                    mainRepEmail, password, otherRepNames, otherRepEmails);
+                    passwordHash = entertainmentProvider.getPasswordHash();
                     userState.setCurrentUser(entertainmentProvider);
                     context.setUserState(userState);
                     userState.addUser(entertainmentProvider);
@@ -7,9 +7,11 @@ import model.*;
 
 public class RespondSponsorshipCommand implements ICommand
 {
+    private static final long serialVersionUID = 1L;
+
     private long requestNumber;
     private int percentToSponsor;
-    private boolean commandSuccessful = false;
+    private transient boolean commandSuccessful = false;
 
     public RespondSponsorshipCommand(long requestNumber, int percentToSponsor)
     {
@@ -47,6 +49,7 @@ public class RespondSponsorshipCommand implements ICommand
                 {
                     commandSuccessful = true;
                     request.accept(percentToSponsor, sponsorAccountEmail);
+                    context.getEventState().sponsorshipAccepted(event);
                     providerSystem.recordSponsorshipAcceptance(eventNumber, percentToSponsor);
                     StdOut.println("Request has been accepted successfully!");
                 }
@@ -10,6 +10,8 @@ import java.util.Map;
 
 public class UpdateConsumerProfileCommand extends UpdateProfileCommand
 {
+    private static final long serialVersionUID = 1L;
+
     private String oldPassword, newName, newEmail, newPhoneNumber, newPassword, newPaymentAccountEmail;
     private ConsumerPreferences newPreferences;
 
@@ -4,12 +4,14 @@ import controller.Context;
 import model.EntertainmentProvider;
 import model.StdOut;
 import model.User;
+import state.IUserState;
 
 import java.util.List;
-import java.util.Map;
 
 public class UpdateEntertainmentProviderProfileCommand extends UpdateProfileCommand
 {
+    private static final long serialVersionUID = 1L;
+
     private String oldPassword, newOrgName, newOrgAddress, newPaymentAccountEmail, newMainRepName, newMainRepEmail;
     private String newPassword;
     private List<String> newOtherRepNames, newOtherRepEmails;
@@ -50,17 +52,17 @@ public class UpdateEntertainmentProviderProfileCommand extends UpdateProfileComm
                     StdOut.println("The provided old password does not match the current user's password!");
                     return;
                 }
-                Map<String, User> allUsers = context.getUserState().getAllUsers();
-                boolean userAlreadyExists = allUsers.containsKey(newMainRepEmail);
+                IUserState userState = context.getUserState();
+                boolean userAlreadyExists = userState.getAllUsers().containsKey(newMainRepEmail);
                 if (userAlreadyExists)
                 {
                     StdOut.println("A user with the new email provided already exists!");
                 }
                 else
                 {
-                    if (!organisationAlreadyExists(allUsers))
+                    if (!organisationAlreadyExists(userState))
                     {
-                        successfullyUpdatePreferences(currentUser);
+                        successfullyUpdatePreferences(userState, currentUser);
                     }
                 }
             }
@@ -126,13 +128,13 @@ public class UpdateEntertainmentProviderProfileCommand extends UpdateProfileComm
     /**
      * If all the checks are passed, update the entertainment
      * provider's profile with the new details
+     * @param userState the current state of all users
      * @param currentUser the currently-logged in user
      */
-    private void successfullyUpdatePreferences(User currentUser)
+    private void successfullyUpdatePreferences(IUserState userState, User currentUser)
     {
-        // Update preferences
-        ((EntertainmentProvider) currentUser).setOrgName(newOrgName);
-        ((EntertainmentProvider) currentUser).setOrgAddress(newOrgAddress);
+        // Update preferences (the user state keeps its organisation index up to date)
+        userState.updateOrganisation((EntertainmentProvider) currentUser, newOrgName, newOrgAddress);
         currentUser.setPaymentAccountEmail(newPaymentAccountEmail);
         ((EntertainmentProvider) currentUser).setMainRepName(newMainRepName);
         ((EntertainmentProvider) currentUser).setMainRepEmail(newMainRepEmail);
@@ -167,26 +169,16 @@ public class UpdateEntertainmentProviderProfileCommand extends UpdateProfileComm
     /**
      * Check if the organisation has already
      * been registered by someone else
-     * @param allUsers the list of all users
-     *                 registered on our system
+     * @param userState the current state of all users
      * @return true if the organisation is already
      * registered on our system
      */
-    private boolean organisationAlreadyExists(Map<String, User> allUsers)
+    private boolean organisationAlreadyExists(IUserState userState)
     {
-        // Check the user list for a match
-        for (User user : allUsers.values())
+        if (userState.isOrganisationRegistered(newOrgName, newOrgAddress))
         {
-            if (user instanceof EntertainmentProvider)
-            {
-                String userOrgAddress = ((EntertainmentProvider) user).getOrgAddress();
-                String userOrgName = ((EntertainmentProvider) user).getOrgName();
-                if (userOrgAddress.equals(newOrgAddress) && userOrgName.equals(newOrgName))
-                {
-                    StdOut.println("Organisations has already been registered by someone else!");
-                    return true;
-                }
-            }
+            StdOut.println("Organisations has already been registered by someone else!");
+            return true;
         }
         return false;
     }
@@ -5,7 +5,9 @@ import model.User;
 
 public abstract class UpdateProfileCommand implements ICommand
 {
-    protected Boolean successResult = false;
+    private static final long serialVersionUID = 1L;
+
+    protected transient boolean successResult = false;
 
     public UpdateProfileCommand() {}
 
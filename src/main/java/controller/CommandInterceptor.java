@@ -0,0 +1,19 @@
+package controller;
+
+import command.ICommand;
+
+/**
+ * CommandInterceptor wraps the execution of commands run by a controller,
+ * for example to measure them. Interceptors added to a controller form a
+ * chain, the first one added being the outermost, and each one must call
+ * proceed exactly once for the command to run.
+ */
+public interface CommandInterceptor
+{
+    /**
+     * @param command the command about to run
+     * @param context the context the command runs on
+     * @param proceed runs the rest of the chain, and finally the command itself
+     */
+    void intercept(ICommand command, Context context, Runnable proceed);
+}
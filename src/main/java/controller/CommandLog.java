@@ -0,0 +1,455 @@
+package controller;
+
+import command.ICommand;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * CommandLog is a log of the commands run by a controller, appended to once
+ * each has run, so that the context can be rebuilt by replaying them after a
+ * restart.
+ * <p>
+ * Each record holds the id of the session the command ran in, the command as
+ * serialised once it had run, its result if that is a number, a boolean or a
+ * string, and the time it ran at. Records are framed by their length and a
+ * CRC32 checksum, so that a record only partly written when the process died
+ * is found and cut off when the log is opened again.
+ * <p>
+ * A record is appended once its command has run, and the command is only
+ * acknowledged once its record is on disk. In {@link Durability#SYNC} mode
+ * every record is forced to disk on its own. In {@link Durability#GROUP_COMMIT}
+ * mode the first waiting command forces every record appended so far, after
+ * waiting up to {@link #GROUP_COMMIT_MILLIS} for {@link #GROUP_COMMIT_RECORDS}
+ * records to gather, so that commands running concurrently share one force.
+ * <p>
+ * The log can be cut back to any record, for when commands are rolled back.
+ * Commands only log the hashes of passwords, but the log is still only
+ * readable by its owner.
+ */
+public class CommandLog
+{
+    public enum Durability
+    {
+        SYNC,
+        GROUP_COMMIT
+    }
+
+    public static final long GROUP_COMMIT_MILLIS = 2;
+    public static final int GROUP_COMMIT_RECORDS = 64;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    private final FileChannel channel;
+    private final Durability durability;
+    private final List<Record> recovered;
+    // file offset of the end of each record, so that the log can be cut back to any record
+    private long[] recordEnds;
+    // number of records in the log, and number of those known to be on disk
+    private int appended, synced;
+    private boolean syncing;
+    // number of times the log has been truncated, as a force started before that covers dropped records
+    private int truncations;
+
+    private CommandLog(FileChannel channel, Durability durability, List<Record> recovered, long[] recordEnds)
+    {
+        this.channel = channel;
+        this.durability = durability;
+        this.recovered = recovered;
+        this.recordEnds = recordEnds;
+        appended = recovered.size();
+        synced = appended;
+    }
+
+    /**
+     * Open a log, creating it if it does not exist yet. A partly written record
+     * at the end of the log is cut off
+     * @param file the file holding the log
+     * @param durability when records are forced to disk
+     * @return the opened log
+     * @throws IOException if the log cannot be read or written
+     */
+    public static CommandLog open(Path file, Durability durability) throws IOException
+    {
+        if (Files.notExists(file) && FileSystems.getDefault().supportedFileAttributeViews().contains("posix"))
+        {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        List<Record> records = new ArrayList<>();
+        List<Long> recordEnds = new ArrayList<>();
+        readRecords(channel, records, recordEnds);
+        long validLength = recordEnds.isEmpty() ? 0 : recordEnds.get(recordEnds.size() - 1);
+        if (validLength < channel.size())
+        {
+            // Cut off the record that was being written when the process died
+            channel.truncate(validLength);
+            channel.force(true);
+        }
+        channel.position(validLength);
+        long[] ends = new long[Math.max(16, recordEnds.size() * 2)];
+        for (int i = 0; i < recordEnds.size(); i++)
+        {
+            ends[i] = recordEnds.get(i);
+        }
+        return new CommandLog(channel, durability, records, ends);
+    }
+
+    /**
+     * @return the records found in the log when it was opened, in the order they were appended
+     */
+    public List<Record> getRecoveredRecords()
+    {
+        return recovered;
+    }
+
+    public Durability getDurability()
+    {
+        return durability;
+    }
+
+    /**
+     * Serialise a command once it has run. Results are transient, so only what
+     * the command needs to run again is serialised, such as the hash of a password
+     * rather than the password itself
+     * @param command the command that has run
+     * @return the serialised command
+     */
+    static byte[] serialise(ICommand command)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(command);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Command " + command.getClass().getSimpleName()
+                    + " cannot be logged", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param command a command serialised by {@link #serialise}
+     * @return a fresh instance of the command, without its results
+     */
+    static ICommand deserialise(byte[] command)
+    {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(command)))
+        {
+            return (ICommand) in.readObject();
+        }
+        catch (IOException | ClassNotFoundException e)
+        {
+            throw new IllegalStateException("A logged command cannot be read back", e);
+        }
+    }
+
+    /**
+     * @return the result of a command as it is logged, or null if it is not a number, a boolean or a string
+     */
+    static String loggedResult(Object result)
+    {
+        return result instanceof Number || result instanceof Boolean || result instanceof String
+                ? result.toString() : null;
+    }
+
+    /**
+     * Append the record of a command that has run, without waiting for it to
+     * reach the disk. Records are logged in the order they are appended
+     * @param sessionId the id of the session the command ran in, or 0 if none
+     * @param command the command, serialised once it had run
+     * @param result the result of the command
+     * @param ranAt the time the command ran at
+     * @return the position of the record, to pass to awaitDurable, which is
+     * the number of records in the log once it has been appended
+     */
+    public synchronized int append(long sessionId, byte[] command, Object result, Instant ranAt)
+    {
+        String loggedResult = loggedResult(result);
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(command.length + 32);
+        try (DataOutputStream out = new DataOutputStream(payload))
+        {
+            out.writeLong(sessionId);
+            out.writeInt(command.length);
+            out.write(command);
+            out.writeBoolean(loggedResult != null);
+            if (loggedResult != null)
+            {
+                out.writeUTF(loggedResult);
+            }
+            out.writeLong(ranAt.getEpochSecond());
+            out.writeInt(ranAt.getNano());
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        byte[] payloadBytes = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payloadBytes);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payloadBytes.length);
+        record.putInt(payloadBytes.length).putInt((int) crc.getValue()).put(payloadBytes).flip();
+        long end;
+        try
+        {
+            while (record.hasRemaining())
+            {
+                channel.write(record);
+            }
+            end = channel.position();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("The command log cannot be written", e);
+        }
+        if (appended == recordEnds.length)
+        {
+            recordEnds = Arrays.copyOf(recordEnds, appended * 2);
+        }
+        recordEnds[appended++] = end;
+        notifyAll();
+        return appended;
+    }
+
+    /**
+     * Cut the log back to its first records, dropping the records of commands
+     * that have been rolled back
+     * @param records the number of records to keep
+     */
+    public synchronized void truncate(int records)
+    {
+        if (records >= appended)
+        {
+            return;
+        }
+        long end = records == 0 ? 0 : recordEnds[records - 1];
+        try
+        {
+            channel.truncate(end);
+            channel.position(end);
+            channel.force(true);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("The command log cannot be truncated", e);
+        }
+        appended = records;
+        synced = records;
+        truncations++;
+        notifyAll();
+    }
+
+    /**
+     * @return the number of records in the log
+     */
+    public synchronized int size()
+    {
+        return appended;
+    }
+
+    /**
+     * Wait until a record is on disk
+     * @param position the position returned by append
+     */
+    public void awaitDurable(int position)
+    {
+        int target, truncationsBefore;
+        synchronized (this)
+        {
+            while (true)
+            {
+                if (synced >= position)
+                {
+                    return;
+                }
+                if (!syncing)
+                {
+                    break;
+                }
+                waitForChange(0);
+            }
+            // Force the log for every waiting command, letting more records gather first
+            syncing = true;
+            if (durability == Durability.GROUP_COMMIT)
+            {
+                long deadline = System.nanoTime() + GROUP_COMMIT_MILLIS * 1_000_000;
+                long remaining;
+                while (appended - synced < GROUP_COMMIT_RECORDS
+                        && (remaining = deadline - System.nanoTime()) > 0)
+                {
+                    waitForChange(Math.max(1, remaining / 1_000_000));
+                }
+            }
+            target = appended;
+            truncationsBefore = truncations;
+        }
+        boolean forced = false;
+        try
+        {
+            channel.force(false);
+            forced = true;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("The command log cannot be forced to disk", e);
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                if (forced && truncations == truncationsBefore)
+                {
+                    synced = Math.max(synced, target);
+                }
+                syncing = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Force the log to disk and close it
+     * @throws IOException if the log cannot be forced or closed
+     */
+    public synchronized void close() throws IOException
+    {
+        channel.force(false);
+        synced = appended;
+        channel.close();
+    }
+
+    private void waitForChange(long millis)
+    {
+        try
+        {
+            wait(millis);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the command log", e);
+        }
+    }
+
+    /**
+     * Read the records of a log from its start, up to the first record that is
+     * incomplete or fails its checksum
+     * @param channel the channel of the log
+     * @param records the list to add the records read to
+     * @param recordEnds the list to add the file offset of the end of each record to
+     * @throws IOException if the log cannot be read
+     */
+    private static void readRecords(FileChannel channel, List<Record> records, List<Long> recordEnds)
+            throws IOException
+    {
+        long position = 0;
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (position + HEADER_BYTES <= size)
+        {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length < 0 || position + HEADER_BYTES + length > size)
+            {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            while (payload.hasRemaining())
+            {
+                channel.read(payload, position + HEADER_BYTES + payload.position());
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != checksum)
+            {
+                break;
+            }
+            records.add(Record.read(payload.array()));
+            position += HEADER_BYTES + length;
+            recordEnds.add(position);
+        }
+    }
+
+    /**
+     * A command read back from the log
+     */
+    public static class Record
+    {
+        private final long sessionId;
+        private final byte[] command;
+        private final String result;
+        private final Instant ranAt;
+
+        private Record(long sessionId, byte[] command, String result, Instant ranAt)
+        {
+            this.sessionId = sessionId;
+            this.command = command;
+            this.result = result;
+            this.ranAt = ranAt;
+        }
+
+        private static Record read(byte[] payload) throws IOException
+        {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            long sessionId = in.readLong();
+            byte[] command = new byte[in.readInt()];
+            in.readFully(command);
+            String result = in.readBoolean() ? in.readUTF() : null;
+            Instant ranAt = Instant.ofEpochSecond(in.readLong(), in.readInt());
+            return new Record(sessionId, command, result, ranAt);
+        }
+
+        public long getSessionId()
+        {
+            return sessionId;
+        }
+
+        /**
+         * @return a fresh instance of the command, without the results of its first run
+         */
+        public ICommand getCommand()
+        {
+            return deserialise(command);
+        }
+
+        /**
+         * @return the result of the command when it first ran, or null if it
+         * was not a number, a boolean or a string
+         */
+        public String getResult()
+        {
+            return result;
+        }
+
+        /**
+         * @return the time the command first ran at
+         */
+        public Instant getRanAt()
+        {
+            return ranAt;
+        }
+    }
+}
@@ -1,8 +1,17 @@
 package controller;
 
 import external.*;
+import model.Booking;
+import model.Consumer;
+import model.EntertainmentProvider;
+import model.Event;
+import model.User;
 import state.*;
 
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.function.Supplier;
+
 public class Context
 {
 
@@ -11,6 +20,12 @@ public class Context
     private IEventState eventState;
     private IBookingState bookingState;
     private ISponsorshipState sponsorshipState;
+    // the clock commands on the calling thread read the time from, fixed to the time a command first ran at
+    private final ThreadLocal<Clock> boundClock = new ThreadLocal<>();
+    // gives the command running on the calling thread its place among the commands run, once it makes an ordered change
+    private final ThreadLocal<Runnable> boundPlaceTaker = new ThreadLocal<>();
+    // held while an ordered change is made, so that commands take their places in the order they made the changes
+    private final Object orderedChanges = new Object();
 
     public Context()
     {
@@ -21,13 +36,166 @@ public class Context
         sponsorshipState = new SponsorshipState();
     }
 
-    public Context(Context other)
+    /**
+     * Overloaded constructor for a context that keeps its bookings in a
+     * journal rather than on the heap
+     * @param bookingJournal an empty journal, as the bookings of a context are made by the commands run on it
+     */
+    public Context(BookingJournal bookingJournal)
     {
+        if (bookingJournal.size() > 0)
+        {
+            throw new IllegalArgumentException("The booking journal already holds bookings");
+        }
         paymentSystem = new MockPaymentSystem();
-        userState = new UserState(other.getUserState());
-        eventState = new EventState(other.getEventState());
-        bookingState = new BookingState(other.getBookingState());
-        sponsorshipState = new SponsorshipState(getSponsorshipState());
+        userState = new UserState();
+        eventState = new EventState();
+        bookingState = new JournaledBookingState(bookingJournal, userState, eventState);
+        sponsorshipState = new SponsorshipState();
+    }
+
+    /**
+     * Overloaded constructor for a context made of existing states, such as
+     * those restored from a checkpoint
+     */
+    public Context(PaymentSystem paymentSystem, IUserState userState, IEventState eventState,
+                   IBookingState bookingState, ISponsorshipState sponsorshipState)
+    {
+        this.paymentSystem = paymentSystem;
+        this.userState = userState;
+        this.eventState = eventState;
+        this.bookingState = bookingState;
+        this.sponsorshipState = sponsorshipState;
+    }
+
+    /**
+     * Overloaded constructor for deep copying, users included, so that commands
+     * run on either context leave the other as it was. The copied users hold
+     * the copies of their events and bookings, in the same order. Copying takes
+     * time and memory in proportion to the whole context: the states cannot
+     * share unchanged parts between copies, as commands change users, events
+     * and bookings in place
+     * @param other the context to copy
+     */
+    public Context(Context other)
+    {
+        if (other.getPaymentSystem() instanceof MockPaymentSystem)
+        {
+            paymentSystem = new MockPaymentSystem((MockPaymentSystem) other.getPaymentSystem());
+        }
+        else
+        {
+            paymentSystem = new MockPaymentSystem();
+        }
+        userState = new UserState(other.getUserState(), true);
+        eventState = new EventState(other.getEventState(), userState);
+        // Bookings and sponsorship requests are linked with the copied users, events and performances
+        if (other.getBookingState() instanceof JournaledBookingState)
+        {
+            bookingState = new JournaledBookingState((JournaledBookingState) other.getBookingState(), eventState,
+                    userState);
+        }
+        else
+        {
+            bookingState = new BookingState(other.getBookingState(), eventState, userState);
+        }
+        sponsorshipState = new SponsorshipState(other.getSponsorshipState(), eventState);
+        linkUserCopies(other.getUserState());
+    }
+
+    /**
+     * Give each copied user the copies of the events or bookings the original user holds
+     * @param otherUserState the user state that was copied
+     */
+    private void linkUserCopies(IUserState otherUserState)
+    {
+        for (User user: otherUserState.getAllUsers().values())
+        {
+            User userCopy = userState.resolveUser(user);
+            if (userCopy == user)
+            {
+                continue;
+            }
+            if (user instanceof EntertainmentProvider)
+            {
+                for (Event event: ((EntertainmentProvider) user).getEvents())
+                {
+                    Event eventCopy = eventState.findEventByNumber(event.getEventNumber());
+                    ((EntertainmentProvider) userCopy).addEvent(eventCopy != null ? eventCopy : event);
+                }
+            }
+            else if (user instanceof Consumer)
+            {
+                for (Booking booking: ((Consumer) user).getBookings())
+                {
+                    Booking bookingCopy = bookingState.findBookingByNumber(booking.getBookingNumber());
+                    ((Consumer) userCopy).addBooking(bookingCopy != null ? bookingCopy : booking);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the time the command running on the calling thread runs at,
+     * which is the time it first ran at if it is being replayed
+     */
+    public LocalDateTime now()
+    {
+        Clock clock = boundClock.get();
+        return clock == null ? LocalDateTime.now() : LocalDateTime.now(clock);
+    }
+
+    /**
+     * Make now return the time of the given clock on the calling thread,
+     * until unbindClock is called on the same thread
+     * @param clock the clock to bind
+     */
+    public void bindClock(Clock clock)
+    {
+        boundClock.set(clock);
+    }
+
+    public void unbindClock()
+    {
+        boundClock.remove();
+    }
+
+    /**
+     * Make a change whose outcome depends on the changes made before it,
+     * such as handing out the next booking number, and give the running
+     * command its place among the commands run at the same time, so that
+     * replaying the commands in that order makes the same changes
+     * @param change the change to make
+     * @return what the change returns
+     */
+    public <T> T changeInOrder(Supplier<T> change)
+    {
+        Runnable takePlace = boundPlaceTaker.get();
+        if (takePlace == null)
+        {
+            return change.get();
+        }
+        synchronized (orderedChanges)
+        {
+            T result = change.get();
+            takePlace.run();
+            return result;
+        }
+    }
+
+    /**
+     * Make changeInOrder run the given action on the calling thread once it
+     * has made its change, until unbindPlaceTaker is called on the same thread
+     * @param takePlace gives the running command its place among the commands run
+     */
+    public void bindPlaceTaker(Runnable takePlace)
+    {
+        boundPlaceTaker.set(takePlace);
+    }
+
+    public void unbindPlaceTaker()
+    {
+        boundPlaceTaker.remove();
     }
 
     public PaymentSystem getPaymentSystem()
@@ -0,0 +1,774 @@
+package controller;
+
+import external.EntertainmentProviderSystem;
+import external.MockEntertainmentProviderSystem;
+import external.MockPaymentSystem;
+import external.PaymentSystem;
+import model.*;
+import state.BookingState;
+import state.EventState;
+import state.IBookingState;
+import state.Session;
+import state.SponsorshipState;
+import state.UserState;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ContextCheckpoint writes a whole context to a file in a compact binary
+ * form and reads it back, so that a controller can start from a checkpoint
+ * rather than replaying every command ever run. Users keep their password
+ * hashes, so reading a checkpoint hashes no password.
+ * <p>
+ * Objects shared within the context, such as the organiser of an event or
+ * the performance of a booking, are written once and referred to by their
+ * index. Events and bookings are written by {@link ModelCodec}. The file is
+ * written and read through memory-mapped regions, and a checkpoint is written
+ * to a temporary file that only replaces the previous checkpoint once it is
+ * complete.
+ * <p>
+ * Along with the context, a checkpoint records the number of records of the
+ * command log it covers and the users logged in to the sessions those
+ * commands ran in, so that replaying the rest of the log carries on from it.
+ */
+public class ContextCheckpoint
+{
+    private static final int MAGIC = 0x45564350;
+    private static final int VERSION = 2;
+    private static final long REGION_SIZE = 64L << 20;
+    private static final byte CONSUMER = 0, ENTERTAINMENT_PROVIDER = 1, GOVERNMENT_REPRESENTATIVE = 2;
+
+    private final Context context;
+    private final List<Session> sessions;
+    private final int logPosition;
+
+    private ContextCheckpoint(Context context, List<Session> sessions, int logPosition)
+    {
+        this.context = context;
+        this.sessions = sessions;
+        this.logPosition = logPosition;
+    }
+
+    public Context getContext()
+    {
+        return context;
+    }
+
+    /**
+     * @return the sessions commands had run in, with the users logged in to them
+     */
+    public List<Session> getSessions()
+    {
+        return sessions;
+    }
+
+    /**
+     * @return the number of records of the command log the checkpoint covers
+     */
+    public int getLogPosition()
+    {
+        return logPosition;
+    }
+
+    /**
+     * Write a checkpoint of a context. No command may run on the context meanwhile
+     * @param context the context to write
+     * @param sessions the sessions commands have run in
+     * @param logPosition the number of records of the command log the context covers
+     * @param file the file to write the checkpoint to, replacing any previous checkpoint
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public static void write(Context context, Collection<Session> sessions, int logPosition, Path file)
+            throws IOException
+    {
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            MappedOutputStream mappedOut = new MappedOutputStream(channel);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(mappedOut, 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(logPosition);
+            new Writer(out).writeContext(context, sessions);
+            out.flush();
+            mappedOut.finish();
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read back a checkpoint written by write
+     * @param file the file holding the checkpoint
+     * @return the checkpoint, with a context of its own
+     * @throws IOException if the checkpoint cannot be read, or is not a checkpoint
+     */
+    public static ContextCheckpoint read(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new MappedInputStream(channel), 1 << 16));
+            if (in.readInt() != MAGIC)
+            {
+                throw new IOException(file + " is not a checkpoint");
+            }
+            int version = in.readInt();
+            if (version != VERSION)
+            {
+                throw new IOException("Checkpoint version " + version + " is not supported");
+            }
+            int logPosition = in.readInt();
+            return new Reader(in).readCheckpoint(logPosition);
+        }
+    }
+
+    /**
+     * Encodes one record of the model codec into a buffer
+     */
+    private interface RecordEncoding
+    {
+        void encode(ByteBuffer buffer);
+    }
+
+    /**
+     * Writes the objects of a context, numbering shared objects as they are first seen
+     */
+    private static class Writer
+    {
+        private final DataOutputStream out;
+        private final Map<User, Integer> userIndexes = new IdentityHashMap<>();
+        private final List<User> users = new ArrayList<>();
+        private final Map<Event, Integer> eventIndexes = new IdentityHashMap<>();
+        private final Map<Booking, Integer> bookingIndexes = new IdentityHashMap<>();
+        // events and bookings are written by the model codec, a record at a time
+        private final ModelCodec.Encoder encoder = new ModelCodec.Encoder(user -> indexOf(userIndexes, user));
+        private ByteBuffer record = ByteBuffer.allocate(1 << 16);
+
+        Writer(DataOutputStream out)
+        {
+            this.out = out;
+        }
+
+        void writeContext(Context context, Collection<Session> sessions) throws IOException
+        {
+            UserState userState = (UserState) context.getUserState();
+            EventState eventState = (EventState) context.getEventState();
+            IBookingState bookingState = context.getBookingState();
+            SponsorshipState sponsorshipState = (SponsorshipState) context.getSponsorshipState();
+            // Events tiered out to a cold store are written along with the rest
+            List<Event> events = eventState.getAllEventsIncludingCold();
+            List<Booking> bookings = bookingState.getAllBookings();
+
+            // Number every user first, including any that are no longer registered
+            for (User user: userState.getAllUsers().values())
+            {
+                indexUser(user);
+            }
+            indexUser(userState.getDefaultUser());
+            for (Session session: sessions)
+            {
+                indexUser(session.getCurrentUser());
+            }
+            for (Event event: events)
+            {
+                indexUser(event.getOrganiser());
+            }
+            for (Booking booking: bookings)
+            {
+                indexUser(booking.getBooker());
+            }
+
+            out.writeInt(users.size());
+            for (User user: users)
+            {
+                writeUser(user);
+            }
+            out.writeInt(userState.getAllUsers().size());
+            for (Map.Entry<String, User> entry: userState.getAllUsers().entrySet())
+            {
+                writeString(entry.getKey());
+                out.writeInt(indexOf(userIndexes, entry.getValue()));
+            }
+            out.writeInt(indexOf(userIndexes, userState.getDefaultUser()));
+            out.writeInt(sessions.size());
+            for (Session session: sessions)
+            {
+                out.writeLong(session.getSessionId());
+                out.writeInt(indexOf(userIndexes, session.getCurrentUser()));
+            }
+
+            writeRecord(encoder::writeHeader);
+            out.writeLong(eventState.getNextEventNumber());
+            out.writeLong(eventState.getNextPerformanceNumber());
+            out.writeInt(events.size());
+            for (Event event: events)
+            {
+                writeEvent(event);
+            }
+
+            out.writeLong(sponsorshipState.getNextRequestNumber());
+            out.writeInt(sponsorshipState.getAllSponsorshipRequests().size());
+            for (SponsorshipRequest request: sponsorshipState.getAllSponsorshipRequests())
+            {
+                writeRequest(request);
+            }
+
+            out.writeLong(bookingState.getNextBookingNumber());
+            out.writeInt(bookings.size());
+            for (Booking booking: bookings)
+            {
+                bookingIndexes.put(booking, bookingIndexes.size());
+                writeBooking(booking);
+            }
+
+            // The events of each provider and the bookings of each consumer, in their own order
+            for (User user: users)
+            {
+                if (user instanceof EntertainmentProvider)
+                {
+                    writeIndexes(((EntertainmentProvider) user).getEvents(), eventIndexes);
+                }
+                else if (user instanceof Consumer)
+                {
+                    writeIndexes(bookingState.findBookingsByBooker((Consumer) user), bookingIndexes);
+                }
+            }
+
+            PaymentSystem paymentSystem = context.getPaymentSystem();
+            out.writeBoolean(paymentSystem instanceof MockPaymentSystem);
+            if (paymentSystem instanceof MockPaymentSystem)
+            {
+                ((MockPaymentSystem) paymentSystem).writeTo(out);
+            }
+        }
+
+        private void indexUser(User user)
+        {
+            if (user != null && !userIndexes.containsKey(user))
+            {
+                userIndexes.put(user, users.size());
+                users.add(user);
+            }
+        }
+
+        private void writeUser(User user) throws IOException
+        {
+            if (user instanceof Consumer)
+            {
+                out.writeByte(CONSUMER);
+            }
+            else if (user instanceof EntertainmentProvider)
+            {
+                out.writeByte(ENTERTAINMENT_PROVIDER);
+            }
+            else
+            {
+                out.writeByte(GOVERNMENT_REPRESENTATIVE);
+            }
+            writeString(user.getEmail());
+            writeString(user.getPasswordHash());
+            writeString(user.getPaymentAccountEmail());
+            if (user instanceof Consumer)
+            {
+                Consumer consumer = (Consumer) user;
+                writeString(consumer.getName());
+                writeString(consumer.getPhoneNumber());
+                ConsumerPreferences preferences = consumer.getPreferences();
+                out.writeBoolean(preferences != null);
+                if (preferences != null)
+                {
+                    out.writeBoolean(preferences.preferSocialDistancing);
+                    out.writeBoolean(preferences.preferAirFiltration);
+                    out.writeBoolean(preferences.preferOutdoorsOnly);
+                    out.writeInt(preferences.preferredMaxCapacity);
+                    out.writeInt(preferences.preferredMaxVenueSize);
+                }
+            }
+            else if (user instanceof EntertainmentProvider)
+            {
+                EntertainmentProvider provider = (EntertainmentProvider) user;
+                writeString(provider.getOrgName());
+                writeString(provider.getOrgAddress());
+                writeString(provider.getMainRepName());
+                writeString(provider.getMainRepEmail());
+                writeStrings(provider.getOtherRepNames());
+                writeStrings(provider.getOtherRepEmails());
+                EntertainmentProviderSystem system = provider.getProviderSystem();
+                out.writeBoolean(system instanceof MockEntertainmentProviderSystem);
+                if (system instanceof MockEntertainmentProviderSystem)
+                {
+                    ((MockEntertainmentProviderSystem) system).writeTo(out);
+                }
+            }
+        }
+
+        private void writeEvent(Event event) throws IOException
+        {
+            eventIndexes.put(event, eventIndexes.size());
+            writeRecord(buffer -> encoder.writeEvent(buffer, event));
+        }
+
+        private void writeRequest(SponsorshipRequest request) throws IOException
+        {
+            TicketedEvent event = request.getEvent();
+            out.writeLong(request.getRequestNumber());
+            out.writeInt(indexOf(eventIndexes, event));
+            out.writeBoolean(event != null && event.getSponsorshipRequest() == request);
+            writeEnum(request.getStatus());
+            out.writeInt(request.getSponsoredPricePercent());
+            writeString(request.getSponsorAccountEmail());
+        }
+
+        private void writeBooking(Booking booking) throws IOException
+        {
+            writeRecord(buffer -> encoder.writeBooking(buffer, booking));
+        }
+
+        /**
+         * Encode a record, growing the buffer until it fits, and write it after its length
+         */
+        private void writeRecord(RecordEncoding encoding) throws IOException
+        {
+            while (true)
+            {
+                record.clear();
+                try
+                {
+                    encoding.encode(record);
+                    break;
+                }
+                catch (BufferOverflowException e)
+                {
+                    record = ByteBuffer.allocate(record.capacity() * 2);
+                }
+            }
+            out.writeInt(record.position());
+            out.write(record.array(), 0, record.position());
+        }
+
+        /**
+         * Write the indexes of the given objects, leaving out those that were not written
+         */
+        private <T> void writeIndexes(List<T> objects, Map<T, Integer> indexes) throws IOException
+        {
+            List<Integer> written = new ArrayList<>(objects.size());
+            for (T object: objects)
+            {
+                int index = indexOf(indexes, object);
+                if (index >= 0)
+                {
+                    written.add(index);
+                }
+            }
+            out.writeInt(written.size());
+            for (int index: written)
+            {
+                out.writeInt(index);
+            }
+        }
+
+        private static <T> int indexOf(Map<T, Integer> indexes, T object)
+        {
+            Integer index = object == null ? null : indexes.get(object);
+            return index == null ? -1 : index;
+        }
+
+        private void writeString(String value) throws IOException
+        {
+            if (value == null)
+            {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeStrings(List<String> values) throws IOException
+        {
+            if (values == null)
+            {
+                out.writeInt(-1);
+                return;
+            }
+            out.writeInt(values.size());
+            for (String value: values)
+            {
+                writeString(value);
+            }
+        }
+
+        private void writeEnum(Enum<?> value) throws IOException
+        {
+            out.writeByte(value == null ? 0 : value.ordinal() + 1);
+        }
+    }
+
+    /**
+     * Reads the objects of a context back in the order Writer wrote them
+     */
+    private static class Reader
+    {
+        private final DataInputStream in;
+        private final List<User> users = new ArrayList<>();
+        private final List<Event> events = new ArrayList<>();
+        private final List<Booking> bookings = new ArrayList<>();
+        private final ModelCodec.Decoder decoder = new ModelCodec.Decoder(this::userAt);
+        private byte[] record = new byte[1 << 16];
+
+        Reader(DataInputStream in)
+        {
+            this.in = in;
+        }
+
+        ContextCheckpoint readCheckpoint(int logPosition) throws IOException
+        {
+            for (int i = in.readInt(); i > 0; i--)
+            {
+                users.add(readUser());
+            }
+            int registeredUsers = in.readInt();
+            Map<String, User> usersByKey = new HashMap<>(registeredUsers * 2);
+            for (int i = 0; i < registeredUsers; i++)
+            {
+                usersByKey.put(readString(), users.get(in.readInt()));
+            }
+            User defaultUser = userAt(in.readInt());
+            int sessionCount = in.readInt();
+            List<Session> sessions = new ArrayList<>(sessionCount);
+            for (int i = 0; i < sessionCount; i++)
+            {
+                Session session = new Session(in.readLong());
+                session.setCurrentUser(userAt(in.readInt()));
+                sessions.add(session);
+            }
+
+            decoder.readHeader(readRecord());
+            long nextEventNumber = in.readLong();
+            long nextPerformanceNumber = in.readLong();
+            for (int i = in.readInt(); i > 0; i--)
+            {
+                events.add(readEvent());
+            }
+
+            long nextRequestNumber = in.readLong();
+            int requestCount = in.readInt();
+            List<SponsorshipRequest> requests = new ArrayList<>(requestCount);
+            for (int i = 0; i < requestCount; i++)
+            {
+                requests.add(readRequest());
+            }
+
+            long nextBookingNumber = in.readLong();
+            for (int i = in.readInt(); i > 0; i--)
+            {
+                bookings.add(readBooking());
+            }
+
+            for (User user: users)
+            {
+                if (user instanceof EntertainmentProvider)
+                {
+                    for (int i = in.readInt(); i > 0; i--)
+                    {
+                        ((EntertainmentProvider) user).addEvent(events.get(in.readInt()));
+                    }
+                }
+                else if (user instanceof Consumer)
+                {
+                    for (int i = in.readInt(); i > 0; i--)
+                    {
+                        ((Consumer) user).addBooking(bookings.get(in.readInt()));
+                    }
+                }
+            }
+
+            PaymentSystem paymentSystem = in.readBoolean() ? new MockPaymentSystem(in) : new MockPaymentSystem();
+            // The event state is built last, once sponsorship requests are linked with their events
+            Context context = new Context(paymentSystem, new UserState(usersByKey, defaultUser),
+                    new EventState(events, nextEventNumber, nextPerformanceNumber),
+                    new BookingState(bookings, nextBookingNumber),
+                    new SponsorshipState(requests, nextRequestNumber));
+            return new ContextCheckpoint(context, sessions, logPosition);
+        }
+
+        private User readUser() throws IOException
+        {
+            byte type = in.readByte();
+            String email = readString();
+            String passwordHash = readString();
+            String paymentAccountEmail = readString();
+            if (type == CONSUMER)
+            {
+                Consumer consumer = Consumer.withPasswordHash(readString(), email, readString(),
+                        passwordHash, paymentAccountEmail);
+                if (in.readBoolean())
+                {
+                    ConsumerPreferences preferences = new ConsumerPreferences();
+                    preferences.preferSocialDistancing = in.readBoolean();
+                    preferences.preferAirFiltration = in.readBoolean();
+                    preferences.preferOutdoorsOnly = in.readBoolean();
+                    preferences.preferredMaxCapacity = in.readInt();
+                    preferences.preferredMaxVenueSize = in.readInt();
+                    consumer.setPreferences(preferences);
+                }
+                return consumer;
+            }
+            if (type == ENTERTAINMENT_PROVIDER)
+            {
+                String orgName = readString();
+                String orgAddress = readString();
+                String mainRepName = readString();
+                String mainRepEmail = readString();
+                List<String> otherRepNames = readStrings();
+                List<String> otherRepEmails = readStrings();
+                EntertainmentProviderSystem system = in.readBoolean()
+                        ? new MockEntertainmentProviderSystem(in)
+                        : new MockEntertainmentProviderSystem(orgName, orgAddress);
+                return EntertainmentProvider.withPasswordHash(orgName, orgAddress, email, paymentAccountEmail,
+                        mainRepName, mainRepEmail, passwordHash, otherRepNames, otherRepEmails, system);
+            }
+            return GovernmentRepresentative.withPasswordHash(email, passwordHash, paymentAccountEmail);
+        }
+
+        private Event readEvent() throws IOException
+        {
+            return decoder.readEvent(readRecord());
+        }
+
+        private SponsorshipRequest readRequest() throws IOException
+        {
+            long requestNumber = in.readLong();
+            int eventIndex = in.readInt();
+            TicketedEvent event = eventIndex < 0 ? null : (TicketedEvent) events.get(eventIndex);
+            boolean linked = in.readBoolean();
+            SponsorshipStatus status = readEnum(SponsorshipStatus.values());
+            int sponsoredPricePercent = in.readInt();
+            String sponsorAccountEmail = readString();
+            SponsorshipRequest request = new SponsorshipRequest(requestNumber, event);
+            if (status == SponsorshipStatus.ACCEPTED)
+            {
+                request.accept(sponsoredPricePercent, sponsorAccountEmail);
+            }
+            else
+            {
+                if (status == SponsorshipStatus.REJECTED)
+                {
+                    request.reject();
+                }
+                request.setSponsoredPricePercent(sponsoredPricePercent);
+                request.setSponsorAccountEmail(sponsorAccountEmail);
+            }
+            if (linked)
+            {
+                event.setSponsorshipRequest(request);
+            }
+            return request;
+        }
+
+        private Booking readBooking() throws IOException
+        {
+            return decoder.readBooking(readRecord());
+        }
+
+        /**
+         * Read a record written by Writer.writeRecord, for the model codec to decode
+         */
+        private ByteBuffer readRecord() throws IOException
+        {
+            int length = in.readInt();
+            if (length > record.length)
+            {
+                record = new byte[length];
+            }
+            in.readFully(record, 0, length);
+            return ByteBuffer.wrap(record, 0, length);
+        }
+
+        private User userAt(int index)
+        {
+            return index < 0 ? null : users.get(index);
+        }
+
+        private String readString() throws IOException
+        {
+            int length = in.readInt();
+            if (length < 0)
+            {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private List<String> readStrings() throws IOException
+        {
+            int count = in.readInt();
+            if (count < 0)
+            {
+                return null;
+            }
+            List<String> values = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+            {
+                values.add(readString());
+            }
+            return values;
+        }
+
+        private <E extends Enum<E>> E readEnum(E[] values) throws IOException
+        {
+            int ordinal = in.readByte();
+            return ordinal == 0 ? null : values[ordinal - 1];
+        }
+    }
+
+    /**
+     * Writes to a file through memory-mapped regions, mapping the next region
+     * as each one fills up
+     */
+    private static class MappedOutputStream extends OutputStream
+    {
+        private final FileChannel channel;
+        private MappedByteBuffer region;
+        private long position;
+
+        MappedOutputStream(FileChannel channel)
+        {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            nextRegionIfFull();
+            region.put((byte) b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException
+        {
+            while (length > 0)
+            {
+                nextRegionIfFull();
+                int chunk = Math.min(length, region.remaining());
+                region.put(bytes, offset, chunk);
+                offset += chunk;
+                length -= chunk;
+                position += chunk;
+            }
+        }
+
+        /**
+         * Force what was written to disk, and cut the file back to the bytes written
+         */
+        void finish() throws IOException
+        {
+            if (region != null)
+            {
+                region.force();
+            }
+            channel.truncate(position);
+            channel.force(true);
+        }
+
+        private void nextRegionIfFull() throws IOException
+        {
+            if (region == null || !region.hasRemaining())
+            {
+                if (region != null)
+                {
+                    region.force();
+                }
+                region = channel.map(FileChannel.MapMode.READ_WRITE, position, REGION_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Reads a file through memory-mapped regions, mapping the next region as
+     * each one is used up
+     */
+    private static class MappedInputStream extends InputStream
+    {
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer region;
+        private long position;
+
+        MappedInputStream(FileChannel channel) throws IOException
+        {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            if (!nextRegionIfUsedUp())
+            {
+                return -1;
+            }
+            position++;
+            return region.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException
+        {
+            if (length == 0)
+            {
+                return 0;
+            }
+            if (!nextRegionIfUsedUp())
+            {
+                return -1;
+            }
+            int chunk = Math.min(length, region.remaining());
+            region.get(bytes, offset, chunk);
+            position += chunk;
+            return chunk;
+        }
+
+        /**
+         * @return false if the end of the file has been reached
+         */
+        private boolean nextRegionIfUsedUp() throws IOException
+        {
+            if (region != null && region.hasRemaining())
+            {
+                return true;
+            }
+            if (position >= size)
+            {
+                return false;
+            }
+            region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(REGION_SIZE, size - position));
+            return true;
+        }
+    }
+}
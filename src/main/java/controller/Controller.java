@@ -1,34 +1,966 @@
 package controller;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
 import command.ICommand;
+import command.LockKeys;
+import model.Booking;
+import model.Event;
+import model.StdOut;
+import model.User;
+import state.BookingJournal;
+import state.BookingState;
+import state.ColdEventStore;
+import state.EventState;
+import state.IUserState;
+import state.Session;
 
+/**
+ * Controller runs commands against the current context and keeps enough
+ * history to roll the context back to any saved snapshot.
+ * <p>
+ * A snapshot is a position in the history of commands run. Saving one takes
+ * a checkpoint, which is a copy of the context, unless the latest checkpoint
+ * is less than {@link #CHECKPOINT_INTERVAL} commands old. Each checkpoint
+ * journals the commands run after it, serialised once they had run, until
+ * that many commands have run. Restoring a snapshot copies the nearest
+ * checkpoint at or before its position and replays fresh instances of the
+ * journalled commands onto the copy, each seeing the time it first ran at as
+ * {@link Context#now()}. Checkpoints are only kept while a snapshot needs
+ * them, so with no snapshot saved nothing is copied or journalled.
+ * <p>
+ * Checkpoints are deep copies made by {@link Context#Context(Context)}, users
+ * and the records of their external systems included, so changes commands make
+ * to users are rolled back along with the rest of the context. Sessions follow
+ * their users into the restored context, matched by email.
+ * <p>
+ * Commands can also be run in a {@link Session}, in which case they see the
+ * session's user as the current user, so several users can be logged in to
+ * the same context at once.
+ * <p>
+ * Commands may be run from several threads. By default each command runs on
+ * its own. A controller created for concurrent execution instead runs
+ * commands that declare their lock keys side by side, holding striped locks
+ * over those keys and the current user, so that only commands touching the
+ * same event, booking or user wait for each other. Commands without lock keys,
+ * checkpoints and snapshots still wait for every running command to finish.
+ * Concurrent commands are journalled and logged in the order they made the
+ * changes that depend on each other, such as taking the next booking number
+ * through {@link Context#changeInOrder}, so replaying them one after the other
+ * makes the same changes.
+ * <p>
+ * Read-only commands, such as listings and reports, hold off nothing. They
+ * run optimistically and are run again if any other command changed the
+ * context in the meantime, only locking out changes if that keeps happening.
+ * As they change nothing, they are not journalled.
+ * <p>
+ * Commands can be submitted rather than run, in which case each runs on a
+ * thread of its own and the caller gets a future of the command's result.
+ * Virtual threads are used where the JDK has them, so commands blocked on
+ * the payment or entertainment provider systems hold on to no platform thread.
+ * <p>
+ * Large numbers of commands, such as a bulk load, are best run as a batch,
+ * which takes the locks, binds the session and sets up output once for the
+ * whole batch rather than once per command.
+ * <p>
+ * Interceptors can be added around the commands run, for example to record
+ * the metrics kept by {@link logging.CommandMetrics}.
+ * <p>
+ * With a {@link CommandLog} attached, the journal is also written to disk, so
+ * that the context can be rebuilt after a restart. A command that changes the
+ * context only returns once it is in the log, and restoring a snapshot cuts
+ * the rolled back commands from the log. A checkpoint of the context can be
+ * written at any time with {@link ContextCheckpoint}, after which only the
+ * commands logged since the checkpoint are replayed.
+ * <p>
+ * Events that will no longer change can be tiered out of the context into a
+ * {@link ColdEventStore}, on demand or by a background job, so that the lists
+ * and indexes commands scan only hold live events. Tiered events and their
+ * bookings are still found by number.
+ */
 public class Controller
 {
+    public static final int CHECKPOINT_INTERVAL = 32;
+    private static final int LOCK_STRIPES = 256;
+    private static final int OPTIMISTIC_READ_ATTEMPTS = 3;
+    private static final CommandInterceptor[] NO_INTERCEPTORS = new CommandInterceptor[0];
 
-    public List<Context> snapshots;
-    private Context context;
+    // positions of the saved snapshots, in the order they were saved, or null once released
+    private final List<Integer> snapshots;
+    // number of commands that changed the context on the current line of history, guarded by the checkpoints
+    private int position;
+    // the checkpoints needed by the saved snapshots, oldest first
+    private final List<Checkpoint> checkpoints;
+    // the sessions commands have run in, so that restoring a snapshot can log them in as they were
+    private final Map<Session, Boolean> sessions;
+    private final boolean concurrentExecution;
+    // held for reading by concurrent commands, and for writing by everything else
+    private final StampedLock lock;
+    private final LockStripes stripes;
+    // the places of commands among the commands run, in the order they are journalled and logged
+    private final Sequencer sequencer;
+    // number of commands that have started and finished running concurrently, checked by readers
+    private final AtomicLong concurrentWritesStarted, concurrentWritesFinished;
+    // replaced rather than changed, so that a command runs through the chain as it was when it started
+    private volatile CommandInterceptor[] interceptors;
+    // every command that changes the context is logged here, if set
+    private volatile CommandLog commandLog;
+    // number of records at the start of the command log that are covered by the checkpoint the context was read from
+    private int logOffset;
+    // the sessions logged commands have run in, by id, so that checkpoints can record their users
+    private final Map<Long, Session> loggedSessions;
+    private volatile Context context;
 
     public Controller()
+    {
+        this(false);
+    }
+
+    /**
+     * @param concurrentExecution true to run commands that declare their lock keys
+     *                            concurrently with each other
+     */
+    public Controller(boolean concurrentExecution)
+    {
+        this(concurrentExecution, new Context());
+    }
+
+    /**
+     * Overloaded constructor for a controller that keeps its bookings in a
+     * journal rather than on the heap
+     * @param bookingJournal an empty journal, which the controller does not close
+     */
+    public Controller(boolean concurrentExecution, BookingJournal bookingJournal)
+    {
+        this(concurrentExecution, new Context(bookingJournal));
+    }
+
+    private Controller(boolean concurrentExecution, Context context)
     {
         snapshots = new ArrayList<>();
-        context = new Context();
+        checkpoints = new ArrayList<>();
+        sessions = new WeakHashMap<>();
+        this.concurrentExecution = concurrentExecution;
+        lock = new StampedLock();
+        stripes = new LockStripes(LOCK_STRIPES);
+        sequencer = new Sequencer();
+        concurrentWritesStarted = new AtomicLong();
+        concurrentWritesFinished = new AtomicLong();
+        interceptors = NO_INTERCEPTORS;
+        loggedSessions = new HashMap<>();
+        this.context = context;
     }
 
     public void runCommand(ICommand command)
     {
-        command.execute(context);
+        runCommand(null, command);
+    }
+
+    /**
+     * Add an interceptor around every command run from now on, inside the
+     * interceptors added before it. Commands replayed when restoring a
+     * snapshot are not intercepted
+     * @param interceptor the interceptor to add
+     */
+    public synchronized void addInterceptor(CommandInterceptor interceptor)
+    {
+        CommandInterceptor[] chain = Arrays.copyOf(interceptors, interceptors.length + 1);
+        chain[chain.length - 1] = interceptor;
+        interceptors = chain;
+    }
+
+    /**
+     * @param interceptor the interceptor to remove
+     * @return true if the interceptor had been added
+     */
+    public synchronized boolean removeInterceptor(CommandInterceptor interceptor)
+    {
+        List<CommandInterceptor> chain = new ArrayList<>(Arrays.asList(interceptors));
+        boolean removed = chain.remove(interceptor);
+        interceptors = chain.toArray(NO_INTERCEPTORS);
+        return removed;
+    }
+
+    /**
+     * Run a command on behalf of a session, so that the command sees
+     * the session's user as the current user
+     * @param session the session to run the command in, or null to use
+     * the current user of the context itself
+     * @param command the command to run
+     */
+    public void runCommand(Session session, ICommand command)
+    {
+        JournalEntry entry = new JournalEntry(session, command);
+        if (command.isReadOnly())
+        {
+            runReader(entry);
+            return;
+        }
+        int logPosition = concurrentExecution ? runConcurrently(entry) : -1;
+        if (logPosition < 0)
+        {
+            logPosition = runExclusively(entry);
+        }
+        // Only acknowledge the command once it is in the log, without holding up other commands
+        awaitDurable(logPosition);
+    }
+
+    /**
+     * Run a command with no other command running
+     * @param entry the command to run, with its session
+     * @return the position of the command in the command log, or 0 if there is no log
+     */
+    private int runExclusively(JournalEntry entry)
+    {
+        long stamp = lock.writeLock();
+        try
+        {
+            CommandLog log = commandLog;
+            entry.execute(context, interceptors);
+            return record(entry, log);
+        }
+        finally
+        {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Run a batch of commands, one after the other
+     * @param commands the commands to run, in order
+     * @return the result of each command, in the same order
+     */
+    public List<Object> runBatch(List<? extends ICommand> commands)
+    {
+        return runBatch(null, commands);
+    }
+
+    /**
+     * Run a batch of commands one after the other on behalf of a session,
+     * with no other command running in between. Each command sees the changes
+     * made by the commands before it, so a batch can, for example, create an
+     * event, add its performances and book them
+     * @param session the session to run the commands in, or null to use
+     * the current user of the context itself
+     * @param commands the commands to run, in order
+     * @return the result of each command, in the same order
+     */
+    public List<Object> runBatch(Session session, List<? extends ICommand> commands)
+    {
+        List<Object> results = new ArrayList<>(commands.size());
+        CommandInterceptor[] chain = interceptors;
+        int logPosition = 0;
+        long stamp = lock.writeLock();
+        CommandLog log = commandLog;
+        IUserState userState = context.getUserState();
+        if (session != null)
+        {
+            userState.bindSession(session);
+        }
+        StdOut.beginBatch();
+        try
+        {
+            for (ICommand command: commands)
+            {
+                JournalEntry entry = new JournalEntry(session, command);
+                // The session is already bound for the whole batch
+                if (command.isReadOnly())
+                {
+                    entry.proceed(context, chain);
+                }
+                else
+                {
+                    entry.proceed(context, chain);
+                    logPosition = record(entry, log);
+                }
+                results.add(command.getResult());
+            }
+        }
+        finally
+        {
+            StdOut.endBatch();
+            if (session != null)
+            {
+                userState.unbindSession();
+            }
+            lock.unlockWrite(stamp);
+        }
+        awaitDurable(logPosition);
+        return results;
+    }
+
+    /**
+     * Run a command on a thread of its own
+     * @param command the command to run
+     * @return a future completed with the command's result once it has run,
+     * or exceptionally if the command throws
+     */
+    public CompletableFuture<Object> submit(ICommand command)
+    {
+        return submit(null, command);
+    }
+
+    /**
+     * Run a command on a thread of its own, on behalf of a session
+     * @param session the session to run the command in, or null to use
+     * the current user of the context itself
+     * @param command the command to run
+     * @return a future completed with the command's result once it has run,
+     * or exceptionally if the command throws
+     */
+    public CompletableFuture<Object> submit(Session session, ICommand command)
+    {
+        return CompletableFuture.supplyAsync(() ->
+        {
+            runCommand(session, command);
+            return command.getResult();
+        }, CommandExecutor.INSTANCE);
+    }
+
+    /**
+     * Run a command alongside other commands, locking only its keys
+     * @param entry the command to run, with its session
+     * @return the position of the command in the command log, or 0 if there
+     * is no log, or -1 if the command has no lock keys, so it has to run on its own
+     */
+    private int runConcurrently(JournalEntry entry)
+    {
+        long stamp = lock.readLock();
+        try
+        {
+            Context currentContext = context;
+            Collection<String> keys = entry.lockKeys(currentContext);
+            if (keys == null)
+            {
+                return -1;
+            }
+            int[] locked = stripes.lock(keys);
+            concurrentWritesStarted.incrementAndGet();
+            currentContext.bindPlaceTaker(() -> entry.takePlace(sequencer));
+            try
+            {
+                CommandLog log = commandLog;
+                entry.execute(currentContext, interceptors);
+                return record(entry, log);
+            }
+            finally
+            {
+                currentContext.unbindPlaceTaker();
+                // A command that failed after taking its place must still let the commands after it be recorded
+                if (!entry.recorded && entry.place >= 0)
+                {
+                    sequencer.awaitTurn(entry.place);
+                    sequencer.passTurn(entry.place);
+                }
+                concurrentWritesFinished.incrementAndGet();
+                stripes.unlock(locked);
+            }
+        }
+        finally
+        {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Run a read-only command without locking, running it again if another
+     * command changed the context while it ran. A command running on its own
+     * is caught by the optimistic read stamp, while commands running
+     * concurrently hold the lock for reading and are caught by counting them.
+     * The interceptors see the command once, however many times it runs
+     * @param entry the command to run, with its session
+     */
+    private void runReader(JournalEntry entry)
+    {
+        entry.proceed(context, interceptors, 0, () -> readOptimistically(entry));
+    }
+
+    private void readOptimistically(JournalEntry entry)
+    {
+        for (int attempt = 0; attempt < OPTIMISTIC_READ_ATTEMPTS; attempt++)
+        {
+            long stamp = lock.tryOptimisticRead();
+            long writesStarted = concurrentWritesStarted.get();
+            if (stamp == 0 || concurrentWritesFinished.get() != writesStarted)
+            {
+                // A command is changing the context right now
+                Thread.onSpinWait();
+                continue;
+            }
+            Throwable failure = null;
+            try
+            {
+                entry.execute(context);
+            }
+            catch (RuntimeException | Error e)
+            {
+                // Possibly caused by reading state while it was being changed
+                failure = e;
+            }
+            if (lock.validate(stamp) && concurrentWritesStarted.get() == writesStarted)
+            {
+                if (failure instanceof RuntimeException)
+                {
+                    throw (RuntimeException) failure;
+                }
+                if (failure != null)
+                {
+                    throw (Error) failure;
+                }
+                return;
+            }
+        }
+        // Other commands keep changing the context, so hold them off instead
+        long stamp = concurrentExecution ? lock.writeLock() : lock.readLock();
+        try
+        {
+            entry.execute(context);
+        }
+        finally
+        {
+            lock.unlock(stamp);
+        }
+    }
+
+    /**
+     * Count a command that has run, add it to the journal of the latest
+     * checkpoint if that is still journalling, and to the command log if
+     * there is one, so that both list the commands in the same order. A
+     * command is recorded once the commands that took their places before it are
+     * @param entry the command that has run, with its session
+     * @param log the command log, or null if there is none
+     * @return the position of the command in the command log, or 0 if there is no log
+     */
+    private int record(JournalEntry entry, CommandLog log)
+    {
+        // Serialised once it has run, so that it carries what it needs to be replayed, such as password hashes
+        byte[] serialisedCommand = log == null && !journalling() ? null : CommandLog.serialise(entry.command);
+        entry.takePlace(sequencer);
+        sequencer.awaitTurn(entry.place);
+        try
+        {
+            return append(entry, serialisedCommand, log);
+        }
+        finally
+        {
+            entry.recorded = true;
+            sequencer.passTurn(entry.place);
+        }
+    }
+
+    private int append(JournalEntry entry, byte[] serialisedCommand, CommandLog log)
+    {
+        synchronized (checkpoints)
+        {
+            if (serialisedCommand != null && journalling())
+            {
+                checkpoints.get(checkpoints.size() - 1).journal.add(new JournalRecord(entry.session,
+                        serialisedCommand, CommandLog.loggedResult(entry.command.getResult()), entry.ranAt));
+            }
+            position++;
+            if (entry.session != null)
+            {
+                sessions.put(entry.session, Boolean.TRUE);
+            }
+            if (log == null)
+            {
+                return 0;
+            }
+            if (entry.session != null)
+            {
+                loggedSessions.putIfAbsent(entry.session.getSessionId(), entry.session);
+            }
+            return log.append(entry.getSessionId(), serialisedCommand, entry.command.getResult(), entry.ranAt);
+        }
+    }
+
+    private void awaitDurable(int logPosition)
+    {
+        if (logPosition > 0)
+        {
+            commandLog.awaitDurable(logPosition);
+        }
+    }
+
+    /**
+     * @return true if the latest checkpoint journals the commands run from now
+     * on, as a snapshot saved now would be restored from it. Once it has
+     * journalled {@link #CHECKPOINT_INTERVAL} commands, a snapshot saved takes a checkpoint of its own
+     */
+    private boolean journalling()
+    {
+        synchronized (checkpoints)
+        {
+            return !checkpoints.isEmpty()
+                    && position - checkpoints.get(checkpoints.size() - 1).position < CHECKPOINT_INTERVAL;
+        }
+    }
+
+    /**
+     * Drop the checkpoints no saved snapshot is restored from. Only called
+     * with no other command running
+     */
+    private void dropUnusedCheckpoints()
+    {
+        synchronized (checkpoints)
+        {
+            List<Checkpoint> used = new ArrayList<>();
+            for (Checkpoint checkpoint: checkpoints)
+            {
+                for (Integer snapshot: snapshots)
+                {
+                    if (snapshot != null && checkpointFor(snapshot) == checkpoint)
+                    {
+                        used.add(checkpoint);
+                        break;
+                    }
+                }
+            }
+            checkpoints.retainAll(used);
+        }
+    }
+
+    /**
+     * @return the latest checkpoint at or before a snapshot's position
+     */
+    private Checkpoint checkpointFor(int snapshot)
+    {
+        for (int i = checkpoints.size() - 1; i >= 0; i--)
+        {
+            if (checkpoints.get(i).position <= snapshot)
+            {
+                return checkpoints.get(i);
+            }
+        }
+        throw new IllegalStateException("No checkpoint was kept for the snapshot at " + snapshot);
+    }
+
+    /**
+     * Rebuild the context by replaying the commands in a command log, and
+     * log every command that changes the context from then on. Each command
+     * sees the time it first ran at, if the log recorded it
+     * @param log the log to replay and attach
+     * @return the number of commands replayed
+     * @throws IllegalStateException if the controller has already run commands
+     * or has a log attached, or if a logged command gives a different result
+     * when replayed, in which case the log is not attached and the controller
+     * should be discarded
+     */
+    public int attachLog(CommandLog log)
+    {
+        return attachLog(log, null);
+    }
+
+    /**
+     * Rebuild the context from a checkpoint written by writeCheckpoint, replay
+     * the commands logged after the checkpoint was written, and log every
+     * command that changes the context from then on
+     * @param log the log to replay and attach
+     * @param checkpoint the checkpoint to start from, or null to replay the whole log
+     * @return the number of commands replayed
+     * @throws IllegalStateException if the controller has already run commands
+     * or has a log attached, if the checkpoint covers more commands than the log holds,
+     * or if a logged command gives a different result when replayed
+     */
+    public int attachLog(CommandLog log, ContextCheckpoint checkpoint)
+    {
+        long stamp = lock.writeLock();
+        try
+        {
+            if (position > 0 || commandLog != null)
+            {
+                throw new IllegalStateException("A command log can only be attached before any command has run");
+            }
+            List<CommandLog.Record> records = log.getRecoveredRecords();
+            if (checkpoint != null)
+            {
+                if (checkpoint.getLogPosition() > records.size())
+                {
+                    throw new IllegalStateException("The checkpoint covers commands missing from the command log");
+                }
+                context = checkpoint.getContext();
+                logOffset = checkpoint.getLogPosition();
+                for (Session session: checkpoint.getSessions())
+                {
+                    loggedSessions.put(session.getSessionId(), session);
+                }
+            }
+            // Recreate the sessions the commands ran in, so that each runs as the same user again
+            for (CommandLog.Record record: records.subList(logOffset, records.size()))
+            {
+                long sessionId = record.getSessionId();
+                Session session = sessionId == 0 ? null : loggedSessions.computeIfAbsent(sessionId, Session::new);
+                JournalEntry entry = new JournalEntry(session, record.getCommand(), record.getRanAt());
+                entry.execute(context);
+                position++;
+                if (session != null)
+                {
+                    sessions.put(session, Boolean.TRUE);
+                }
+                checkReplayed("Logged command " + (logOffset + position), record.getResult(),
+                        entry.command.getResult());
+            }
+            commandLog = log;
+            return position;
+        }
+        finally
+        {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Write a checkpoint of the current context, so that after a restart
+     * only the commands logged since need to be replayed. Waits for every
+     * running command to finish, and for the commands logged so far to reach the disk
+     * @param file the file to write the checkpoint to, replacing any previous checkpoint
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public void writeCheckpoint(Path file) throws IOException
+    {
+        long stamp = lock.writeLock();
+        try
+        {
+            CommandLog log = commandLog;
+            List<Session> sessions;
+            synchronized (checkpoints)
+            {
+                sessions = new ArrayList<>(loggedSessions.values());
+            }
+            int logPosition = log == null ? 0 : log.size();
+            // The checkpoint must not cover commands that could still be lost from the log
+            awaitDurable(logPosition);
+            ContextCheckpoint.write(context, sessions, logPosition, file);
+        }
+        finally
+        {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Tier the events of the current context that will no longer change,
+     * which are the cancelled events and those whose performances have all
+     * ended by {@link Context#now}, out to a cold store along with their
+     * bookings. Only an {@link EventState} has events tiered out, and only a
+     * {@link BookingState} has bookings tiered out. The events are found and encoded while other
+     * commands run, and only tiered out once every running command has
+     * finished, if none of them changed the context meanwhile
+     * @param coldStore the store to tier the events out to
+     * @return the number of events tiered out
+     */
+    public int tierColdEvents(ColdEventStore coldStore)
+    {
+        return tierColdEvents(coldStore, context.now());
+    }
+
+    /**
+     * Overloaded method for tiering out the events that will no longer change
+     * as of a given time, such as one read from a fixed clock
+     * @param coldStore the store to tier the events out to
+     * @param now the time events whose performances have all ended by are tiered out
+     * @return the number of events tiered out
+     */
+    public int tierColdEvents(ColdEventStore coldStore, LocalDateTime now)
+    {
+        for (int attempt = 0; attempt < OPTIMISTIC_READ_ATTEMPTS; attempt++)
+        {
+            long stamp = lock.tryOptimisticRead();
+            long writesStarted = concurrentWritesStarted.get();
+            if (stamp == 0 || concurrentWritesFinished.get() != writesStarted)
+            {
+                // A command is changing the context right now
+                Thread.onSpinWait();
+                continue;
+            }
+            ColdEvents coldEvents;
+            try
+            {
+                coldEvents = findColdEvents(context, coldStore, now);
+            }
+            catch (RuntimeException e)
+            {
+                // Possibly caused by reading state while it was being changed
+                continue;
+            }
+            long writeStamp = lock.tryConvertToWriteLock(stamp);
+            if (writeStamp != 0)
+            {
+                try
+                {
+                    if (concurrentWritesStarted.get() == writesStarted)
+                    {
+                        return tierOut(coldEvents, coldStore);
+                    }
+                }
+                finally
+                {
+                    lock.unlockWrite(writeStamp);
+                }
+            }
+        }
+        // Other commands keep changing the context, so hold them off instead
+        long stamp = lock.writeLock();
+        try
+        {
+            return tierOut(findColdEvents(context, coldStore, now), coldStore);
+        }
+        finally
+        {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Find the cold events of a context and their bookings, and encode them for a cold store
+     * @param context the context to find the events in
+     * @param coldStore the store to encode the events for
+     * @param now the time events whose performances have all ended by are cold
+     * @return the events found, or null if the context has no events to tier out
+     */
+    private static ColdEvents findColdEvents(Context context, ColdEventStore coldStore, LocalDateTime now)
+    {
+        if (!(context.getEventState() instanceof EventState))
+        {
+            return null;
+        }
+        EventState eventState = (EventState) context.getEventState();
+        List<Event> coldEvents = eventState.findColdEvents(now);
+        if (coldEvents.isEmpty())
+        {
+            return null;
+        }
+        BookingState bookingState = context.getBookingState() instanceof BookingState
+                ? (BookingState) context.getBookingState() : null;
+        List<Booking> coldBookings = new ArrayList<>();
+        if (bookingState != null)
+        {
+            for (Event event: coldEvents)
+            {
+                coldBookings.addAll(bookingState.findBookingsByEventNumber(event.getEventNumber()));
+            }
+        }
+        return new ColdEvents(eventState, bookingState, coldEvents, coldStore.encode(coldEvents, coldBookings));
+    }
+
+    /**
+     * Append encoded cold events to a cold store and tier them out of their states,
+     * with every other command held off
+     * @param coldEvents the events found by findColdEvents, or null if there are none
+     * @param coldStore the store the events were encoded for
+     * @return the number of events tiered out
+     */
+    private static int tierOut(ColdEvents coldEvents, ColdEventStore coldStore)
+    {
+        if (coldEvents == null)
+        {
+            return 0;
+        }
+        coldStore.append(coldEvents.encoded);
+        coldEvents.eventState.tierOut(coldEvents.events, coldStore);
+        if (coldEvents.bookingState != null)
+        {
+            coldEvents.bookingState.tierOut(coldEvents.events, coldStore, coldEvents.eventState);
+        }
+        return coldEvents.events.size();
+    }
+
+    /**
+     * Tier cold events out of the context in the background, once every period
+     * @param coldStore the store to tier the events out to
+     * @param period the time between two runs
+     * @param unit the unit of the period
+     * @return the scheduled job, to cancel once events should no longer be tiered out
+     */
+    public ScheduledFuture<?> scheduleTiering(ColdEventStore coldStore, long period, TimeUnit unit)
+    {
+        return TieringScheduler.INSTANCE.scheduleAtFixedRate(() ->
+        {
+            try
+            {
+                tierColdEvents(coldStore);
+            }
+            catch (RuntimeException e)
+            {
+                // Keep the job scheduled, the events are tiered out on the next run instead
+                StdOut.println("Tiering cold events failed: " + e.getMessage());
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Open a new session, with no user logged in yet
+     * @return the new session
+     */
+    public Session openSession()
+    {
+        return new Session();
+    }
+
+    /**
+     * Save a snapshot of the current context, taking a checkpoint unless the
+     * latest checkpoint is still journalling
+     * @return the index to pass to restoreSnapshot to return to this snapshot
+     */
+    public int saveSnapshot()
+    {
+        long stamp = lock.writeLock();
+        try
+        {
+            if (!journalling())
+            {
+                synchronized (checkpoints)
+                {
+                    checkpoints.add(new Checkpoint(position, new Context(context), sessionUsers()));
+                }
+            }
+            snapshots.add(position);
+            return snapshots.size() - 1;
+        }
+        finally
+        {
+            lock.unlockWrite(stamp);
+        }
     }
 
-    private void saveSnapshot()
+    /**
+     * Release a saved snapshot that will not be restored, dropping the
+     * checkpoint it needed if no other snapshot needs it. The indexes of
+     * other snapshots stay the same
+     * @param index the index returned by saveSnapshot
+     */
+    public void releaseSnapshot(int index)
     {
-        snapshots.add(context);
+        long stamp = lock.writeLock();
+        try
+        {
+            if (index < snapshots.size())
+            {
+                snapshots.set(index, null);
+                while (!snapshots.isEmpty() && snapshots.get(snapshots.size() - 1) == null)
+                {
+                    snapshots.remove(snapshots.size() - 1);
+                }
+                dropUnusedCheckpoints();
+            }
+        }
+        finally
+        {
+            lock.unlockWrite(stamp);
+        }
     }
 
+    /**
+     * Roll the current context back to a saved snapshot. Commands run after
+     * the snapshot are dropped from the journal and the command log, along
+     * with any snapshots saved after it. Sessions commands have run in are
+     * logged in as they were when the snapshot was saved
+     * @param index the index returned by saveSnapshot
+     * @throws IllegalArgumentException if the snapshot was released
+     * @throws IllegalStateException if a journalled command gives a different
+     * result when replayed, in which case the controller should be discarded
+     */
     public void restoreSnapshot(int index)
     {
-        context = snapshots.get(index);
+        long stamp = lock.writeLock();
+        try
+        {
+            Integer snapshot = index < snapshots.size() ? snapshots.get(index) : null;
+            if (snapshot == null)
+            {
+                throw new IllegalArgumentException("Snapshot " + index + " was released");
+            }
+            snapshots.subList(index + 1, snapshots.size()).clear();
+            if (snapshot == position)
+            {
+                // No command has run since the snapshot was saved
+                dropUnusedCheckpoints();
+                return;
+            }
+            Checkpoint checkpoint = checkpointFor(snapshot);
+            List<JournalRecord> replayed = checkpoint.journal.subList(0, snapshot - checkpoint.position);
+            // Replay on a copy, so that the checkpoint can be restored from again
+            Context restoredContext = new Context(checkpoint.context);
+            synchronized (checkpoints)
+            {
+                for (Session session: sessions.keySet())
+                {
+                    session.setCurrentUser(restoredContext.getUserState().resolveUser(
+                            checkpoint.sessionUsers.get(session)));
+                }
+            }
+            for (int i = 0; i < replayed.size(); i++)
+            {
+                checkReplayed("Journalled command " + (checkpoint.position + i + 1),
+                        replayed.get(i).result, replayed.get(i).replay(restoredContext));
+            }
+            context = restoredContext;
+            if (commandLog != null)
+            {
+                commandLog.truncate(logOffset + snapshot);
+            }
+            synchronized (checkpoints)
+            {
+                position = snapshot;
+                checkpoint.journal.subList(replayed.size(), checkpoint.journal.size()).clear();
+                checkpoints.subList(checkpoints.indexOf(checkpoint) + 1, checkpoints.size()).clear();
+            }
+            dropUnusedCheckpoints();
+        }
+        finally
+        {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @param command describes the replayed command, for the exception
+     * @param firstResult the result the command gave when it first ran, as logged, or null if that was not kept
+     * @param result the result the command gave when replayed
+     * @throws IllegalStateException if the results differ
+     */
+    private static void checkReplayed(String command, String firstResult, Object result)
+    {
+        if (firstResult != null && (result == null || !firstResult.equals(result.toString())))
+        {
+            throw new IllegalStateException(command + " gave " + result + " when replayed rather than "
+                    + firstResult);
+        }
+    }
+
+    /**
+     * @return the user each session commands have run in is logged in as
+     */
+    private Map<Session, User> sessionUsers()
+    {
+        synchronized (checkpoints)
+        {
+            Map<Session, User> sessionUsers = new WeakHashMap<>();
+            for (Session session: sessions.keySet())
+            {
+                sessionUsers.put(session, session.getCurrentUser());
+            }
+            return sessionUsers;
+        }
     }
 
     public Context getContext()
@@ -36,4 +968,313 @@ public class Controller
         return context;
     }
 
+    /**
+     * Holds the executor submitted commands run on, created the first time a
+     * command is submitted and shared by all controllers
+     */
+    private static class CommandExecutor
+    {
+        static final ExecutorService INSTANCE = create();
+
+        /**
+         * @return a virtual thread per command executor if the JDK has one,
+         * or else a pool of daemon threads that grows with the number of
+         * commands in flight
+         */
+        private static ExecutorService create()
+        {
+            try
+            {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            }
+            catch (ReflectiveOperationException e)
+            {
+                return Executors.newCachedThreadPool(runnable ->
+                {
+                    Thread thread = new Thread(runnable, "command-executor");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+    }
+
+    /**
+     * Holds the single daemon thread background tiering runs on, created the
+     * first time tiering is scheduled and shared by all controllers
+     */
+    private static class TieringScheduler
+    {
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "event-tiering");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Events that can be tiered out of a context, encoded for a cold store
+     */
+    private static class ColdEvents
+    {
+        final EventState eventState;
+        // the booking state to tier the bookings of the events out of, or null if it cannot tier them out
+        final BookingState bookingState;
+        final List<Event> events;
+        final ColdEventStore.EncodedEvents encoded;
+
+        ColdEvents(EventState eventState, BookingState bookingState, List<Event> events,
+                   ColdEventStore.EncodedEvents encoded)
+        {
+            this.eventState = eventState;
+            this.bookingState = bookingState;
+            this.events = events;
+            this.encoded = encoded;
+        }
+    }
+
+    /**
+     * A copy of the context taken when a snapshot was saved, with the commands
+     * that have run since, up to CHECKPOINT_INTERVAL of them
+     */
+    private static class Checkpoint
+    {
+        // number of commands that had changed the context when the copy was taken
+        final int position;
+        final Context context;
+        final List<JournalRecord> journal;
+        // the user each session was logged in as when the copy was taken
+        final Map<Session, User> sessionUsers;
+
+        Checkpoint(int position, Context context, Map<Session, User> sessionUsers)
+        {
+            this.position = position;
+            this.context = context;
+            this.journal = new ArrayList<>();
+            this.sessionUsers = sessionUsers;
+        }
+    }
+
+    /**
+     * A command journalled by a checkpoint, serialised once it first ran, so
+     * that replaying it runs a fresh instance rather than the caller's
+     */
+    private static class JournalRecord
+    {
+        private final Session session;
+        private final byte[] command;
+        // the result of the command when it first ran, as the command log keeps it
+        private final String result;
+        private final Instant ranAt;
+
+        JournalRecord(Session session, byte[] command, String result, Instant ranAt)
+        {
+            this.session = session;
+            this.command = command;
+            this.result = result;
+            this.ranAt = ranAt;
+        }
+
+        /**
+         * Run a fresh instance of the command on a context, at the time it first ran
+         * @param context the context to run the command on
+         * @return the result of the fresh instance
+         */
+        Object replay(Context context)
+        {
+            ICommand freshCommand = CommandLog.deserialise(command);
+            new JournalEntry(session, freshCommand, ranAt).execute(context);
+            return freshCommand.getResult();
+        }
+    }
+
+    /**
+     * Hands out the places of commands among the commands run, and lets each
+     * command be recorded once the commands placed before it have been, so
+     * that commands are journalled and logged in the order they took their places
+     */
+    private static class Sequencer
+    {
+        // the place handed out next, and the place whose turn it is to be recorded
+        private long next, turn;
+
+        synchronized long take()
+        {
+            return next++;
+        }
+
+        synchronized void awaitTurn(long place)
+        {
+            boolean interrupted = false;
+            while (turn != place)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException e)
+                {
+                    // The commands placed before this one are running and will pass their turn
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized void passTurn(long place)
+        {
+            turn = place + 1;
+            notifyAll();
+        }
+    }
+
+    /**
+     * A command about to run or that has run, together with the session it
+     * was run in and the time it first ran at
+     */
+    private static class JournalEntry
+    {
+        private final Session session;
+        private final ICommand command;
+        private final Instant ranAt;
+        // the command's place among the commands run, or -1 until it takes one
+        private long place = -1;
+        private boolean recorded;
+
+        JournalEntry(Session session, ICommand command)
+        {
+            this(session, command, Instant.now());
+        }
+
+        JournalEntry(Session session, ICommand command, Instant ranAt)
+        {
+            this.session = session;
+            this.command = command;
+            this.ranAt = ranAt;
+        }
+
+        /**
+         * Take the command's place among the commands run, unless it already has one
+         */
+        void takePlace(Sequencer sequencer)
+        {
+            if (place < 0)
+            {
+                place = sequencer.take();
+            }
+        }
+
+        long getSessionId()
+        {
+            return session == null ? 0 : session.getSessionId();
+        }
+
+        void execute(Context context)
+        {
+            execute(context, NO_INTERCEPTORS);
+        }
+
+        void execute(Context context, CommandInterceptor[] chain)
+        {
+            IUserState userState = context.getUserState();
+            bind(userState);
+            try
+            {
+                proceed(context, chain);
+            }
+            finally
+            {
+                unbind(userState);
+            }
+        }
+
+        /**
+         * Run the command through the chain of interceptors, with the context
+         * reading the time the command first ran at
+         * @param context the context to run the command on
+         * @param chain the interceptors to run the command through
+         */
+        void proceed(Context context, CommandInterceptor[] chain)
+        {
+            context.bindClock(Clock.fixed(ranAt, ZoneId.systemDefault()));
+            try
+            {
+                proceed(context, chain, 0, () -> command.execute(context));
+            }
+            finally
+            {
+                context.unbindClock();
+            }
+        }
+
+        /**
+         * Run the command through the interceptors of the chain from the given one on
+         * @param context the context to run the command on
+         * @param chain the interceptors to run the command through
+         * @param index the index in the chain of the next interceptor
+         * @param action what running the command does once past the interceptors
+         */
+        void proceed(Context context, CommandInterceptor[] chain, int index, Runnable action)
+        {
+            if (index == chain.length)
+            {
+                action.run();
+            }
+            else
+            {
+                chain[index].intercept(command, context, () -> proceed(context, chain, index + 1, action));
+            }
+        }
+
+        /**
+         * @param context the context the command is about to run on
+         * @return the keys declared by the command plus the current user,
+         * or null if the command declares none
+         */
+        Collection<String> lockKeys(Context context)
+        {
+            IUserState userState = context.getUserState();
+            bind(userState);
+            try
+            {
+                Collection<String> commandKeys = command.getLockKeys(context);
+                if (commandKeys == null)
+                {
+                    return null;
+                }
+                List<String> keys = new ArrayList<>(commandKeys);
+                User currentUser = userState.getCurrentUser();
+                if (currentUser != null)
+                {
+                    keys.add(LockKeys.user(currentUser.getEmail()));
+                }
+                return keys;
+            }
+            finally
+            {
+                unbind(userState);
+            }
+        }
+
+        private void bind(IUserState userState)
+        {
+            if (session != null)
+            {
+                userState.bindSession(session);
+            }
+        }
+
+        private void unbind(IUserState userState)
+        {
+            if (session != null)
+            {
+                userState.unbindSession();
+            }
+        }
+    }
+
 }
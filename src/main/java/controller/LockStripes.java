@@ -0,0 +1,82 @@
+package controller;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * LockStripes maps any number of string keys onto a fixed set of locks.
+ * Commands locking keys that land on different stripes run in parallel,
+ * while commands sharing a key always share a stripe and are serialised.
+ * Stripes are always locked in ascending order, so two sets of keys can
+ * never deadlock on each other.
+ */
+public class LockStripes
+{
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    /**
+     * @param stripeCount the number of stripes, rounded up to a power of two
+     */
+    public LockStripes(int stripeCount)
+    {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++)
+        {
+            stripes[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Lock the stripes of all the given keys
+     * @param keys the keys to lock
+     * @return the locked stripes, to pass to unlock
+     */
+    public int[] lock(Collection<String> keys)
+    {
+        int[] locked = new int[keys.size()];
+        int count = 0;
+        for (String key: keys)
+        {
+            locked[count++] = stripeOf(key);
+        }
+        Arrays.sort(locked);
+        // Drop keys that share a stripe, so each stripe is locked once
+        int distinct = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (distinct == 0 || locked[distinct - 1] != locked[i])
+            {
+                locked[distinct++] = locked[i];
+            }
+        }
+        locked = Arrays.copyOf(locked, distinct);
+        for (int stripe: locked)
+        {
+            stripes[stripe].lock();
+        }
+        return locked;
+    }
+
+    /**
+     * Unlock stripes locked by lock, in reverse order
+     * @param locked the stripes returned by lock
+     */
+    public void unlock(int[] locked)
+    {
+        for (int i = locked.length - 1; i >= 0; i--)
+        {
+            stripes[locked[i]].unlock();
+        }
+    }
+
+    private int stripeOf(String key)
+    {
+        int hash = key.hashCode();
+        // Mix the high bits in, as similar keys tend to differ only in their last characters
+        return (hash ^ (hash >>> 16)) * 0x9E3779B1 >>> 16 & mask;
+    }
+}
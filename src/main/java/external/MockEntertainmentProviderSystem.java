@@ -2,11 +2,15 @@ package external;
 
 import model.StdOut;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 public class MockEntertainmentProviderSystem implements EntertainmentProviderSystem
 {
@@ -17,8 +21,8 @@ public class MockEntertainmentProviderSystem implements EntertainmentProviderSys
     private Map<Long, ArrayList<Long>> eventBookings = new HashMap<>();
     // stores a pairing of the booking number and corresponding number of booked tickets
     private Map<Long, Integer> bookingTickets = new HashMap<>();
-    // stores a pairing of the event number and corresponding performance number
-    private Map<Long, List<Long>> eventPerformances = new HashMap<>();
+    // stores a pairing of the event number and the set of its performance numbers
+    private Map<Long, Set<Long>> eventPerformances = new HashMap<>();
     // stores a pairing of the event number and corresponding sponsorship percentage (0 if the event is not sponsored)
     private Map<Long, Integer> sponsorshipStatus = new HashMap<>();
     // stores a pairing of the booking number and corresponding event number
@@ -31,8 +35,142 @@ public class MockEntertainmentProviderSystem implements EntertainmentProviderSys
         this.orgAddress = orgAddress;
     }
 
+    // Overloaded constructor for deep copying
+    public MockEntertainmentProviderSystem(MockEntertainmentProviderSystem other)
+    {
+        synchronized (other)
+        {
+            orgName = other.orgName;
+            orgAddress = other.orgAddress;
+            remainingTicketsPerEvent.putAll(other.remainingTicketsPerEvent);
+            for (Map.Entry<Long, ArrayList<Long>> entry: other.eventBookings.entrySet())
+            {
+                eventBookings.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            }
+            bookingTickets.putAll(other.bookingTickets);
+            for (Map.Entry<Long, Set<Long>> entry: other.eventPerformances.entrySet())
+            {
+                eventPerformances.put(entry.getKey(), new HashSet<>(entry.getValue()));
+            }
+            sponsorshipStatus.putAll(other.sponsorshipStatus);
+            bookingEvent.putAll(other.bookingEvent);
+        }
+    }
+
+    /**
+     * Overloaded constructor for reading back the records written by writeTo
+     * @param in the input to read the records from
+     * @throws IOException if the records cannot be read
+     */
+    public MockEntertainmentProviderSystem(DataInput in) throws IOException
+    {
+        orgName = in.readBoolean() ? in.readUTF() : null;
+        orgAddress = in.readBoolean() ? in.readUTF() : null;
+        for (int i = in.readInt(); i > 0; i--)
+        {
+            remainingTicketsPerEvent.put(in.readLong(), in.readInt());
+        }
+        for (int i = in.readInt(); i > 0; i--)
+        {
+            long eventNumber = in.readLong();
+            int count = in.readInt();
+            ArrayList<Long> bookings = new ArrayList<>(count);
+            for (int j = 0; j < count; j++)
+            {
+                bookings.add(in.readLong());
+            }
+            eventBookings.put(eventNumber, bookings);
+        }
+        for (int i = in.readInt(); i > 0; i--)
+        {
+            bookingTickets.put(in.readLong(), in.readInt());
+        }
+        for (int i = in.readInt(); i > 0; i--)
+        {
+            long eventNumber = in.readLong();
+            Set<Long> performanceNumbers = new HashSet<>();
+            for (int j = in.readInt(); j > 0; j--)
+            {
+                performanceNumbers.add(in.readLong());
+            }
+            eventPerformances.put(eventNumber, performanceNumbers);
+        }
+        for (int i = in.readInt(); i > 0; i--)
+        {
+            sponsorshipStatus.put(in.readLong(), in.readInt());
+        }
+        for (int i = in.readInt(); i > 0; i--)
+        {
+            bookingEvent.put(in.readLong(), in.readLong());
+        }
+    }
+
+    /**
+     * Write all records kept by the system, for reading back with the DataInput constructor
+     * @param out the output to write the records to
+     * @throws IOException if the records cannot be written
+     */
+    public synchronized void writeTo(DataOutput out) throws IOException
+    {
+        writeNullable(out, orgName);
+        writeNullable(out, orgAddress);
+        out.writeInt(remainingTicketsPerEvent.size());
+        for (Map.Entry<Long, Integer> entry: remainingTicketsPerEvent.entrySet())
+        {
+            out.writeLong(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+        out.writeInt(eventBookings.size());
+        for (Map.Entry<Long, ArrayList<Long>> entry: eventBookings.entrySet())
+        {
+            out.writeLong(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (long bookingNumber: entry.getValue())
+            {
+                out.writeLong(bookingNumber);
+            }
+        }
+        out.writeInt(bookingTickets.size());
+        for (Map.Entry<Long, Integer> entry: bookingTickets.entrySet())
+        {
+            out.writeLong(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+        out.writeInt(eventPerformances.size());
+        for (Map.Entry<Long, Set<Long>> entry: eventPerformances.entrySet())
+        {
+            out.writeLong(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (long performanceNumber: entry.getValue())
+            {
+                out.writeLong(performanceNumber);
+            }
+        }
+        out.writeInt(sponsorshipStatus.size());
+        for (Map.Entry<Long, Integer> entry: sponsorshipStatus.entrySet())
+        {
+            out.writeLong(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+        out.writeInt(bookingEvent.size());
+        for (Map.Entry<Long, Long> entry: bookingEvent.entrySet())
+        {
+            out.writeLong(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+    }
+
+    private static void writeNullable(DataOutput out, String value) throws IOException
+    {
+        out.writeBoolean(value != null);
+        if (value != null)
+        {
+            out.writeUTF(value);
+        }
+    }
+
     @Override
-    public void cancelBooking(long bookingNumber)
+    public synchronized void cancelBooking(long bookingNumber)
     {
         // check if the booking number is valid
         boolean isBookingValid = bookingEvent.containsKey(bookingNumber);
@@ -59,7 +197,7 @@ public class MockEntertainmentProviderSystem implements EntertainmentProviderSys
     }
 
     @Override
-    public void cancelEvent(long eventNumber, String message)
+    public synchronized void cancelEvent(long eventNumber, String message)
     {
         // check if the event number is valid
         boolean isEventValid = remainingTicketsPerEvent.containsKey(eventNumber);
@@ -88,7 +226,7 @@ public class MockEntertainmentProviderSystem implements EntertainmentProviderSys
     }
 
     @Override
-    public int getNumTicketsLeft(long eventNumber, long performanceNumber)
+    public synchronized int getNumTicketsLeft(long eventNumber, long performanceNumber)
     {
         // check if the event number is valid
         boolean isEventValid = remainingTicketsPerEvent.containsKey(eventNumber);
@@ -101,7 +239,7 @@ public class MockEntertainmentProviderSystem implements EntertainmentProviderSys
         else
         {
             // if the event number is valid, check if the performance number is valid
-            List<Long> performanceNumbers = eventPerformances.get(eventNumber);
+            Set<Long> performanceNumbers = eventPerformances.get(eventNumber);
             boolean isPerformanceValid = performanceNumbers.contains(performanceNumber);
 
             if (!isPerformanceValid)
@@ -117,7 +255,7 @@ public class MockEntertainmentProviderSystem implements EntertainmentProviderSys
     }
 
     @Override
-    public void recordNewBooking(long eventNumber, long performanceNumber, long bookingNumber, String consumerName, String consumerEmail, int bookedTickets)
+    public synchronized void recordNewBooking(long eventNumber, long performanceNumber, long bookingNumber, String consumerName, String consumerEmail, int bookedTickets)
     {
         // check if the event number is valid
         boolean isEventValid = remainingTicketsPerEvent.containsKey(eventNumber);
@@ -129,7 +267,7 @@ public class MockEntertainmentProviderSystem implements EntertainmentProviderSys
         else
         {
             // if the event number is valid, check if the performance number is valid
-            List<Long> performanceNumbers = eventPerformances.get(eventNumber);
+            Set<Long> performanceNumbers = eventPerformances.get(eventNumber);
             boolean isPerformanceValid = performanceNumbers.contains(performanceNumber);
 
             if (!isPerformanceValid)
@@ -152,7 +290,7 @@ public class MockEntertainmentProviderSystem implements EntertainmentProviderSys
     }
 
     @Override
-    public void recordNewEvent(long eventNumber, String title, int numTickets)
+    public synchronized void recordNewEvent(long eventNumber, String title, int numTickets)
     {
         // check if the event number is valid
         boolean eventExists = remainingTicketsPerEvent.containsKey(eventNumber);
@@ -167,13 +305,13 @@ public class MockEntertainmentProviderSystem implements EntertainmentProviderSys
             remainingTicketsPerEvent.put(eventNumber, numTickets);
             // and initialise the list of bookings for that event
             eventBookings.put(eventNumber, new ArrayList<>());
-            eventPerformances.put(eventNumber, new ArrayList<>());
+            eventPerformances.put(eventNumber, new HashSet<>());
             StdOut.println("Event successfully created!");
         }
     }
 
     @Override
-    public void recordNewPerformance(long eventNumber, long performanceNumber, LocalDateTime startDateTime, LocalDateTime endDateTime)
+    public synchronized void recordNewPerformance(long eventNumber, long performanceNumber, LocalDateTime startDateTime, LocalDateTime endDateTime)
     {
         // check if the event number is valid
         boolean isEventValid = remainingTicketsPerEvent.containsKey(eventNumber);
@@ -185,7 +323,7 @@ public class MockEntertainmentProviderSystem implements EntertainmentProviderSys
         else
         {
             // if the event number is valid, check if the performance number is valid
-            List<Long> performanceNumbers = eventPerformances.get(eventNumber);
+            Set<Long> performanceNumbers = eventPerformances.get(eventNumber);
             boolean isPerformanceValid = performanceNumbers.contains(performanceNumber);
 
             if (isPerformanceValid)
@@ -195,14 +333,13 @@ public class MockEntertainmentProviderSystem implements EntertainmentProviderSys
             else
             {
                 performanceNumbers.add(performanceNumber);
-                eventPerformances.put(eventNumber, performanceNumbers);
                 StdOut.println("Performance successfully added!");
             }
         }
     }
 
     @Override
-    public void recordSponsorshipAcceptance(long eventNumber, int sponsoredPricePercent)
+    public synchronized void recordSponsorshipAcceptance(long eventNumber, int sponsoredPricePercent)
     {
         // check if the event number is valid
         boolean isEventValid = remainingTicketsPerEvent.containsKey(eventNumber);
@@ -230,7 +367,7 @@ public class MockEntertainmentProviderSystem implements EntertainmentProviderSys
     }
 
     @Override
-    public void recordSponsorshipRejection(long eventNumber)
+    public synchronized void recordSponsorshipRejection(long eventNumber)
     {
         // check if the event number is valid
         boolean isEventValid = remainingTicketsPerEvent.containsKey(eventNumber);
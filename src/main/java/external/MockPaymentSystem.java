@@ -1,5 +1,8 @@
 package external;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -12,8 +15,55 @@ public class MockPaymentSystem implements PaymentSystem
         transactions = new ArrayList<>();
     }
 
+    // Overloaded constructor for deep copying
+    public MockPaymentSystem(MockPaymentSystem other)
+    {
+        transactions = new ArrayList<>(other.transactions.size());
+        for (Transaction transaction: other.transactions)
+        {
+            Transaction transactionCopy = new Transaction(transaction.getBuyerEmailAccount(),
+                    transaction.getSellerEmailAccount(), transaction.getAmount());
+            transactionCopy.setRefunded(transaction.isRefunded());
+            transactions.add(transactionCopy);
+        }
+    }
+
+    /**
+     * Overloaded constructor for reading back the transactions written by writeTo
+     * @param in the input to read the transactions from
+     * @throws IOException if the transactions cannot be read
+     */
+    public MockPaymentSystem(DataInput in) throws IOException
+    {
+        int count = in.readInt();
+        transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            Transaction transaction = new Transaction(in.readUTF(), in.readUTF(), in.readDouble());
+            transaction.setRefunded(in.readBoolean());
+            transactions.add(transaction);
+        }
+    }
+
+    /**
+     * Write all transactions, for reading back with the DataInput constructor
+     * @param out the output to write the transactions to
+     * @throws IOException if the transactions cannot be written
+     */
+    public synchronized void writeTo(DataOutput out) throws IOException
+    {
+        out.writeInt(transactions.size());
+        for (Transaction transaction: transactions)
+        {
+            out.writeUTF(transaction.getBuyerEmailAccount());
+            out.writeUTF(transaction.getSellerEmailAccount());
+            out.writeDouble(transaction.getAmount());
+            out.writeBoolean(transaction.isRefunded());
+        }
+    }
+
     @Override
-    public boolean processPayment(String buyerAccountEmail, String sellerAccountEmail, double transactionAmount)
+    public synchronized boolean processPayment(String buyerAccountEmail, String sellerAccountEmail, double transactionAmount)
     {
         if (buyerAccountEmail != null && !buyerAccountEmail.equals("") &&
                 sellerAccountEmail != null && !sellerAccountEmail.equals(""))
@@ -26,7 +76,7 @@ public class MockPaymentSystem implements PaymentSystem
     }
 
     @Override
-    public boolean processRefund(String buyerAccountEmail, String sellerAccountEmail, double transactionAmount)
+    public synchronized boolean processRefund(String buyerAccountEmail, String sellerAccountEmail, double transactionAmount)
     {
         for (Transaction transaction : transactions) {
             String buyerEmail = transaction.getBuyerEmailAccount();
@@ -43,7 +93,7 @@ public class MockPaymentSystem implements PaymentSystem
         return false;
     }
 
-    public List<Transaction> findTransactionByBuyerEmail(String buyerEmailAccount)
+    public synchronized List<Transaction> findTransactionByBuyerEmail(String buyerEmailAccount)
     {
         List<Transaction> buyerTransactions = new ArrayList<>();
         for (Transaction transaction: transactions)
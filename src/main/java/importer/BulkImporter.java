@@ -0,0 +1,331 @@
+package importer;
+
+import controller.Controller;
+import importer.ImportCommand.ConsumerRecord;
+import importer.ImportCommand.EventRecord;
+import importer.ImportCommand.PerformanceRecord;
+import model.StdOut;
+import state.Session;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * BulkImporter loads events, performances and consumers from a file in
+ * one go, such as when moving an existing programme onto the system.
+ * <p>
+ * The file is split into chunks at line breaks, and the chunks are mapped
+ * and parsed in parallel on a fork-join pool, since parsing is what a large
+ * file spends its time on. Consumer passwords are then hashed on the same
+ * pool, since BCrypt is slow by design. Only then is the import committed, as
+ * a single {@link ImportCommand} run by the controller, so the commands that
+ * hold the context up only create records that are already parsed and hashed.
+ * <p>
+ * Files ending in .csv are read as CSV and files ending in .jsonl or .json as
+ * JSON lines, as described by {@link RecordParser}. Blank lines and lines
+ * starting with # are skipped. Lines that cannot be parsed, and records that
+ * the commands reject, are listed in the report rather than failing the import.
+ */
+public class BulkImporter
+{
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public BulkImporter()
+    {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param pool the pool to parse the file and hash passwords on
+     * @param chunkSize the number of bytes to parse in each task, rounded up to the next line break
+     */
+    public BulkImporter(ForkJoinPool pool, int chunkSize)
+    {
+        if (chunkSize <= 0)
+        {
+            throw new IllegalArgumentException("The chunk size has to be positive");
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Import the records in a file
+     * @param controller the controller to run the import on
+     * @param session the session of the entertainment provider organising the imported events
+     * @param file the file to import
+     * @return what was imported and rejected, and how long it took
+     * @throws IOException if the file cannot be read
+     */
+    public ImportReport importFile(Controller controller, Session session, Path file) throws IOException
+    {
+        String name = file.getFileName().toString();
+        boolean json = name.endsWith(".jsonl") || name.endsWith(".json");
+        if (!json && !name.endsWith(".csv"))
+        {
+            throw new IllegalArgumentException("Only .csv, .jsonl and .json files can be imported");
+        }
+        ImportReport report = new ImportReport();
+
+        // Parse the chunks in parallel, then number their lines in file order
+        long start = System.nanoTime();
+        List<ParsedChunk> chunks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            List<ForkJoinTask<ParsedChunk>> tasks = new ArrayList<>();
+            for (long[] bounds: split(channel))
+            {
+                tasks.add(pool.submit(() -> parseChunk(channel, bounds[0], bounds[1], json)));
+            }
+            for (ForkJoinTask<ParsedChunk> task: tasks)
+            {
+                chunks.add(await(task));
+            }
+            report.bytesRead = channel.size();
+        }
+        int firstLine = 1;
+        for (ParsedChunk chunk: chunks)
+        {
+            chunk.numberLines(firstLine, report);
+            firstLine += chunk.lineCount;
+        }
+        report.linesRead = firstLine - 1;
+        List<EventRecord> events = new ArrayList<>();
+        List<ConsumerRecord> consumers = new ArrayList<>();
+        collect(chunks, events, consumers, report);
+        report.parseNanos = System.nanoTime() - start;
+        StdOut.println(String.format("Parsed %d lines of %s in %d ms (%.1f MB/s)", report.linesRead, name,
+                report.parseNanos / 1_000_000, ImportReport.rate(report.bytesRead / 1e6, report.parseNanos)));
+
+        start = System.nanoTime();
+        await(pool.submit(() -> consumers.parallelStream().forEach(ConsumerRecord::hashPassword)));
+        report.passwordsHashed = consumers.size();
+        report.hashNanos = System.nanoTime() - start;
+        StdOut.println(String.format("Hashed %d passwords in %d ms (%.1f passwords/s)", consumers.size(),
+                report.hashNanos / 1_000_000, ImportReport.rate(consumers.size(), report.hashNanos)));
+
+        ImportCommand command = new ImportCommand(events, consumers);
+        controller.runCommand(session, command);
+        if (command.getResult() != null)
+        {
+            report.merge(command.getResult());
+        }
+        StdOut.println(report);
+        return report;
+    }
+
+    /**
+     * Split a file into chunks of about the chunk size, each ending at a line break or the end of the file
+     * @return the start and end offset of each chunk
+     */
+    private List<long[]> split(FileChannel channel) throws IOException
+    {
+        List<long[]> chunks = new ArrayList<>();
+        long size = channel.size();
+        long start = 0;
+        while (start < size)
+        {
+            long end = nextLineStart(channel, Math.min(start + chunkSize, size), size);
+            chunks.add(new long[] {start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * @return the offset of the first line starting at or after the given offset, or the size of the file
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        // Start at the byte before, in case the line starts right at the offset
+        long offset = position - 1;
+        while (offset < size)
+        {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read < 0)
+            {
+                break;
+            }
+            for (int i = 0; i < read; i++)
+            {
+                if (buffer.get(i) == '\n')
+                {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    /**
+     * Map a chunk of the file and parse each of its lines, numbering them from the start of the chunk
+     */
+    private static ParsedChunk parseChunk(FileChannel channel, long start, long end, boolean json)
+            throws IOException
+    {
+        ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        CharBuffer text = StandardCharsets.UTF_8.newDecoder().decode(bytes);
+        ParsedChunk chunk = new ParsedChunk();
+        int lineStart = 0;
+        while (lineStart < text.length())
+        {
+            int lineEnd = lineStart;
+            while (lineEnd < text.length() && text.charAt(lineEnd) != '\n')
+            {
+                lineEnd++;
+            }
+            int contentEnd = lineEnd > lineStart && text.charAt(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            String line = text.subSequence(lineStart, contentEnd).toString().trim();
+            chunk.lineCount++;
+            if (!line.isEmpty() && !line.startsWith("#"))
+            {
+                try
+                {
+                    chunk.records.add(json ? RecordParser.parseJson(chunk.lineCount, line)
+                            : RecordParser.parseCsv(chunk.lineCount, line));
+                }
+                catch (IllegalArgumentException e)
+                {
+                    chunk.errorLines.add(chunk.lineCount);
+                    chunk.errors.add(e.getMessage());
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return chunk;
+    }
+
+    /**
+     * Gather the records of all the chunks, in file order, attaching each performance to its event
+     */
+    private static void collect(List<ParsedChunk> chunks, List<EventRecord> events, List<ConsumerRecord> consumers,
+                                ImportReport report)
+    {
+        Map<String, EventRecord> eventsByKey = new LinkedHashMap<>();
+        List<PerformanceRecord> performances = new ArrayList<>();
+        for (ParsedChunk chunk: chunks)
+        {
+            for (Object record: chunk.records)
+            {
+                if (record instanceof EventRecord)
+                {
+                    EventRecord event = (EventRecord) record;
+                    if (eventsByKey.putIfAbsent(event.key, event) != null)
+                    {
+                        report.reject(event.line, "event " + event.key + " is already in the file");
+                    }
+                }
+                else if (record instanceof PerformanceRecord)
+                {
+                    performances.add((PerformanceRecord) record);
+                }
+                else
+                {
+                    consumers.add((ConsumerRecord) record);
+                }
+            }
+        }
+        // Performances may come before their event in the file
+        for (PerformanceRecord performance: performances)
+        {
+            EventRecord event = eventsByKey.get(performance.eventKey);
+            if (event == null)
+            {
+                report.reject(performance.line, "there is no event " + performance.eventKey);
+            }
+            else
+            {
+                event.performances.add(performance);
+            }
+        }
+        events.addAll(eventsByKey.values());
+    }
+
+    private static <T> T await(ForkJoinTask<T> task) throws IOException
+    {
+        try
+        {
+            return task.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("The import was interrupted", e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof UncheckedIOException)
+            {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("The import failed", e.getCause());
+        }
+    }
+
+    /**
+     * The records parsed from a chunk, and the lines that could not be parsed,
+     * numbered from the start of the chunk until the chunks are put in order
+     */
+    private static class ParsedChunk
+    {
+        int lineCount;
+        final List<Object> records = new ArrayList<>();
+        final List<Integer> errorLines = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+
+        /**
+         * Renumber the lines of the chunk from the line it starts at in the file,
+         * and report the lines that could not be parsed
+         */
+        void numberLines(int firstLine, ImportReport report)
+        {
+            int shift = firstLine - 1;
+            for (Object record: records)
+            {
+                if (record instanceof EventRecord)
+                {
+                    ((EventRecord) record).line += shift;
+                }
+                else if (record instanceof PerformanceRecord)
+                {
+                    ((PerformanceRecord) record).line += shift;
+                }
+                else
+                {
+                    ((ConsumerRecord) record).line += shift;
+                }
+            }
+            for (int i = 0; i < errors.size(); i++)
+            {
+                report.reject(errorLines.get(i) + shift, errors.get(i));
+            }
+        }
+    }
+}
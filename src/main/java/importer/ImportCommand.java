@@ -0,0 +1,255 @@
+package importer;
+
+import command.AddEventPerformanceCommand;
+import command.CreateNonTicketedEventCommand;
+import command.CreateTicketedEventCommand;
+import command.ICommand;
+import command.RegisterConsumerCommand;
+import controller.Context;
+import model.EventType;
+import model.StdOut;
+import model.User;
+import state.EventState;
+import state.UserState;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ImportCommand creates the events, performances and consumers read by a
+ * {@link BulkImporter} in a single command, so the whole import is one
+ * entry in the journal and the command log, and runs with no other command
+ * running in between.
+ * <p>
+ * Each record goes through the command that would create it on its own,
+ * so it is validated the same way. Events are created for the current user,
+ * who has to be an entertainment provider, and consumers are registered with
+ * passwords that were hashed before the command ran, so only their hashes are
+ * logged. The current user is the same once the command has run.
+ * <p>
+ * Being one entry, the whole import is written in serialised form to the
+ * command log, if one is attached. It is also held on the heap by the journal
+ * of the latest checkpoint, if it ran within
+ * {@link controller.Controller#CHECKPOINT_INTERVAL} commands of it, for as
+ * long as a saved snapshot needs that checkpoint, so that restoring the
+ * snapshot can replay it. With no snapshot saved nothing is journalled, and
+ * releasing the snapshots that are no longer needed drops the import.
+ */
+public class ImportCommand implements ICommand
+{
+    private static final long serialVersionUID = 1L;
+
+    private final List<EventRecord> events;
+    private final List<ConsumerRecord> consumers;
+    private transient ImportReport report;
+
+    /**
+     * @param events the events to create, each with its performances
+     * @param consumers the consumers to register, with their passwords already hashed
+     */
+    public ImportCommand(List<EventRecord> events, List<ConsumerRecord> consumers)
+    {
+        this.events = events;
+        this.consumers = consumers;
+    }
+
+    @Override
+    public void execute(Context context)
+    {
+        report = new ImportReport();
+        UserState userState = (UserState) context.getUserState();
+        User importingUser = userState.getCurrentUser();
+        long start = System.nanoTime();
+        StdOut.beginBatch();
+        try
+        {
+            // Make room for everything up front, rather than growing the state record by record
+            int performanceCount = 0;
+            for (EventRecord event: events)
+            {
+                performanceCount += event.performances.size();
+            }
+            if (context.getEventState() instanceof EventState)
+            {
+                ((EventState) context.getEventState()).ensureCapacity(events.size(), performanceCount);
+            }
+            userState.ensureCapacity(consumers.size());
+
+            for (EventRecord event: events)
+            {
+                createEvent(context, event);
+            }
+            for (ConsumerRecord consumer: consumers)
+            {
+                RegisterConsumerCommand register = RegisterConsumerCommand.withPasswordHash(consumer.name,
+                        consumer.email, consumer.phoneNumber, consumer.passwordHash, consumer.paymentAccountEmail);
+                register.execute(context);
+                if (register.getResult() != null)
+                {
+                    report.consumersRegistered++;
+                }
+                else
+                {
+                    report.reject(consumer.line, "consumer " + consumer.email + " was not registered");
+                }
+            }
+        }
+        finally
+        {
+            // Registering a consumer logs them in, so log the importing user back in
+            userState.setCurrentUser(importingUser);
+            StdOut.endBatch();
+            report.commitNanos = System.nanoTime() - start;
+        }
+    }
+
+    private void createEvent(Context context, EventRecord event)
+    {
+        Long eventNumber;
+        if (event.numTickets != 0)
+        {
+            CreateTicketedEventCommand create = new CreateTicketedEventCommand(event.title, event.type,
+                    event.numTickets, event.ticketPrice, event.requestSponsorship);
+            create.execute(context);
+            eventNumber = create.getResult();
+        }
+        else
+        {
+            CreateNonTicketedEventCommand create = new CreateNonTicketedEventCommand(event.title, event.type);
+            create.execute(context);
+            eventNumber = create.getResult();
+        }
+        if (eventNumber == null)
+        {
+            report.reject(event.line, "event " + event.key + " was not created");
+            return;
+        }
+        report.eventsCreated++;
+        for (PerformanceRecord performance: event.performances)
+        {
+            AddEventPerformanceCommand add = new AddEventPerformanceCommand(eventNumber, performance.venueAddress,
+                    performance.startDateTime, performance.endDateTime, performance.performerNames,
+                    performance.hasSocialDistancing, performance.hasAirFiltration, performance.isOutdoors,
+                    performance.capacityLimit, performance.venueSize);
+            add.execute(context);
+            if (add.getResult() != null)
+            {
+                report.performancesAdded++;
+            }
+            else
+            {
+                report.reject(performance.line, "performance of event " + event.key + " was not added");
+            }
+        }
+    }
+
+    /**
+     * @return the records created and rejected, and how long creating them took
+     */
+    @Override
+    public ImportReport getResult()
+    {
+        return report;
+    }
+
+    /**
+     * An event to create, identified within the import by its key
+     */
+    public static class EventRecord implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        int line;
+        final String key, title;
+        final EventType type;
+        final int numTickets;
+        final double ticketPrice;
+        final boolean requestSponsorship;
+        final List<PerformanceRecord> performances;
+
+        /**
+         * @param numTickets the number of tickets, or 0 for a non-ticketed event
+         */
+        public EventRecord(int line, String key, String title, EventType type, int numTickets,
+                           double ticketPrice, boolean requestSponsorship)
+        {
+            this.line = line;
+            this.key = key;
+            this.title = title;
+            this.type = type;
+            this.numTickets = numTickets;
+            this.ticketPrice = ticketPrice;
+            this.requestSponsorship = requestSponsorship;
+            this.performances = new ArrayList<>();
+        }
+    }
+
+    /**
+     * A performance to add to the event whose key it names
+     */
+    public static class PerformanceRecord implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        int line;
+        final String eventKey, venueAddress;
+        final LocalDateTime startDateTime, endDateTime;
+        final List<String> performerNames;
+        final boolean hasSocialDistancing, hasAirFiltration, isOutdoors;
+        final int capacityLimit, venueSize;
+
+        public PerformanceRecord(int line, String eventKey, String venueAddress, LocalDateTime startDateTime,
+                                 LocalDateTime endDateTime, List<String> performerNames,
+                                 boolean hasSocialDistancing, boolean hasAirFiltration, boolean isOutdoors,
+                                 int capacityLimit, int venueSize)
+        {
+            this.line = line;
+            this.eventKey = eventKey;
+            this.venueAddress = venueAddress;
+            this.startDateTime = startDateTime;
+            this.endDateTime = endDateTime;
+            this.performerNames = performerNames;
+            this.hasSocialDistancing = hasSocialDistancing;
+            this.hasAirFiltration = hasAirFiltration;
+            this.isOutdoors = isOutdoors;
+            this.capacityLimit = capacityLimit;
+            this.venueSize = venueSize;
+        }
+    }
+
+    /**
+     * A consumer to register. The password is hashed before the command runs,
+     * and is not serialised with the command
+     */
+    public static class ConsumerRecord implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        int line;
+        final String name, email, phoneNumber, paymentAccountEmail;
+        transient String password;
+        String passwordHash;
+
+        public ConsumerRecord(int line, String name, String email, String phoneNumber, String password,
+                              String paymentAccountEmail)
+        {
+            this.line = line;
+            this.name = name;
+            this.email = email;
+            this.phoneNumber = phoneNumber;
+            this.password = password;
+            this.paymentAccountEmail = paymentAccountEmail;
+        }
+
+        /**
+         * Hash the password, and forget it
+         */
+        void hashPassword()
+        {
+            passwordHash = User.hashPassword(password);
+            password = null;
+        }
+    }
+}
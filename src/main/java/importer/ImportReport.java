@@ -0,0 +1,94 @@
+package importer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ImportReport records what a bulk import did: how many records it read,
+ * created and rejected, and how long each phase of the import took
+ */
+public class ImportReport
+{
+    int linesRead, passwordsHashed, eventsCreated, performancesAdded, consumersRegistered;
+    long bytesRead, parseNanos, hashNanos, commitNanos;
+    private final List<String> rejected;
+
+    ImportReport()
+    {
+        rejected = new ArrayList<>();
+    }
+
+    synchronized void reject(int line, String reason)
+    {
+        rejected.add("line " + line + ": " + reason);
+    }
+
+    /**
+     * Add the counts and rejections of the command that committed the import
+     * @param committed the report of the command
+     */
+    void merge(ImportReport committed)
+    {
+        eventsCreated += committed.eventsCreated;
+        performancesAdded += committed.performancesAdded;
+        consumersRegistered += committed.consumersRegistered;
+        commitNanos += committed.commitNanos;
+        rejected.addAll(committed.rejected);
+    }
+
+    public int getLinesRead()
+    {
+        return linesRead;
+    }
+
+    public int getEventsCreated()
+    {
+        return eventsCreated;
+    }
+
+    public int getPerformancesAdded()
+    {
+        return performancesAdded;
+    }
+
+    public int getConsumersRegistered()
+    {
+        return consumersRegistered;
+    }
+
+    /**
+     * @return why each rejected line was rejected, prefixed with its line number
+     */
+    public List<String> getRejected()
+    {
+        return Collections.unmodifiableList(rejected);
+    }
+
+    /**
+     * @return the number of lines read per second, over the whole import
+     */
+    public double getLinesPerSecond()
+    {
+        long totalNanos = parseNanos + hashNanos + commitNanos;
+        return totalNanos == 0 ? 0 : linesRead * 1e9 / totalNanos;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Imported %d events, %d performances and %d consumers from %d lines"
+                        + " (%d rejected) in %d ms: parsed %.1f MB/s, hashed %.1f passwords/s,"
+                        + " committed %.1f records/s, %.1f lines/s overall",
+                eventsCreated, performancesAdded, consumersRegistered, linesRead, rejected.size(),
+                (parseNanos + hashNanos + commitNanos) / 1_000_000,
+                rate(bytesRead / 1e6, parseNanos), rate(passwordsHashed, hashNanos),
+                rate(eventsCreated + performancesAdded + consumersRegistered, commitNanos),
+                getLinesPerSecond());
+    }
+
+    static double rate(double amount, long nanos)
+    {
+        return nanos == 0 ? 0 : amount * 1e9 / nanos;
+    }
+}
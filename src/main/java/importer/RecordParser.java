@@ -0,0 +1,372 @@
+package importer;
+
+import importer.ImportCommand.ConsumerRecord;
+import importer.ImportCommand.EventRecord;
+import importer.ImportCommand.PerformanceRecord;
+import model.EventType;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RecordParser turns a line of an import file into the record it describes.
+ * <p>
+ * A CSV line starts with the kind of record, followed by its fields in the
+ * order of {@link #CONSUMER_FIELDS}, {@link #EVENT_FIELDS} or
+ * {@link #PERFORMANCE_FIELDS}. Fields holding commas or quotes are quoted,
+ * with quotes doubled inside them, and performers are separated by semicolons.
+ * A JSON line is a flat object with a "type" field naming the kind of record,
+ * the same fields by name, and performers as an array of strings.
+ * <p>
+ * Start and end times are ISO local date-times, such as 2030-06-01T18:00,
+ * and a performance names the key of the event it belongs to.
+ */
+class RecordParser
+{
+    static final List<String> CONSUMER_FIELDS = List.of("name", "email", "phoneNumber", "password",
+            "paymentAccountEmail");
+    static final List<String> EVENT_FIELDS = List.of("key", "title", "type", "numTickets", "ticketPrice",
+            "requestSponsorship");
+    static final List<String> PERFORMANCE_FIELDS = List.of("event", "venueAddress", "start", "end", "performers",
+            "socialDistancing", "airFiltration", "outdoors", "capacityLimit", "venueSize");
+
+    private RecordParser()
+    {
+    }
+
+    /**
+     * @param line the number of the line in its file
+     * @param text the line, without its line break
+     * @return the record on the line
+     * @throws IllegalArgumentException if the line does not hold a valid record
+     */
+    static Object parseCsv(int line, String text)
+    {
+        List<String> values = splitCsv(text);
+        String kind = values.get(0);
+        List<String> names = fieldsOf(kind);
+        if (values.size() - 1 != names.size())
+        {
+            throw new IllegalArgumentException("a " + kind + " has " + names.size() + " fields, not "
+                    + (values.size() - 1));
+        }
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < names.size(); i++)
+        {
+            fields.put(names.get(i), values.get(i + 1));
+        }
+        return toRecord(line, kind, fields);
+    }
+
+    /**
+     * @param line the number of the line in its file
+     * @param text the line, without its line break
+     * @return the record on the line
+     * @throws IllegalArgumentException if the line does not hold a valid record
+     */
+    static Object parseJson(int line, String text)
+    {
+        Map<String, String> fields = new JsonObjectReader(text).read();
+        String kind = fields.remove("type");
+        if (kind == null)
+        {
+            throw new IllegalArgumentException("the object has no type");
+        }
+        // A record's own "type" field, such as an event type, is given as "eventType"
+        if (fields.containsKey("eventType"))
+        {
+            fields.put("type", fields.remove("eventType"));
+        }
+        for (String name: fieldsOf(kind))
+        {
+            if (fields.get(name) == null)
+            {
+                throw new IllegalArgumentException("the " + kind + " has no " + name);
+            }
+        }
+        return toRecord(line, kind, fields);
+    }
+
+    private static List<String> fieldsOf(String kind)
+    {
+        switch (kind)
+        {
+            case "consumer":
+                return CONSUMER_FIELDS;
+            case "event":
+                return EVENT_FIELDS;
+            case "performance":
+                return PERFORMANCE_FIELDS;
+            default:
+                throw new IllegalArgumentException("unknown record type " + kind);
+        }
+    }
+
+    private static Object toRecord(int line, String kind, Map<String, String> fields)
+    {
+        try
+        {
+            switch (kind)
+            {
+                case "consumer":
+                    return new ConsumerRecord(line, fields.get("name"), fields.get("email"),
+                            fields.get("phoneNumber"), required(fields, "password"),
+                            fields.get("paymentAccountEmail"));
+                case "event":
+                    return new EventRecord(line, required(fields, "key"), fields.get("title"),
+                            EventType.valueOf(fields.get("type")), Integer.parseInt(fields.get("numTickets")),
+                            Double.parseDouble(fields.get("ticketPrice")),
+                            Boolean.parseBoolean(fields.get("requestSponsorship")));
+                default:
+                    String performers = fields.get("performers");
+                    return new PerformanceRecord(line, required(fields, "event"), fields.get("venueAddress"),
+                            LocalDateTime.parse(fields.get("start")), LocalDateTime.parse(fields.get("end")),
+                            performers.isEmpty() ? new ArrayList<>()
+                                    : new ArrayList<>(Arrays.asList(performers.split(";"))),
+                            Boolean.parseBoolean(fields.get("socialDistancing")),
+                            Boolean.parseBoolean(fields.get("airFiltration")),
+                            Boolean.parseBoolean(fields.get("outdoors")),
+                            Integer.parseInt(fields.get("capacityLimit")),
+                            Integer.parseInt(fields.get("venueSize")));
+            }
+        }
+        catch (NumberFormatException | DateTimeParseException e)
+        {
+            throw new IllegalArgumentException("the " + kind + " has an invalid field: " + e.getMessage());
+        }
+    }
+
+    private static String required(Map<String, String> fields, String name)
+    {
+        String value = fields.get(name);
+        if (value == null || value.isEmpty())
+        {
+            throw new IllegalArgumentException("the " + name + " is missing");
+        }
+        return value;
+    }
+
+    /**
+     * Split a CSV line into its fields, unquoting quoted fields
+     */
+    static List<String> splitCsv(String text)
+    {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if (quoted)
+            {
+                if (c != '"')
+                {
+                    value.append(c);
+                }
+                else if (i + 1 < text.length() && text.charAt(i + 1) == '"')
+                {
+                    value.append('"');
+                    i++;
+                }
+                else
+                {
+                    quoted = false;
+                }
+            }
+            else if (c == '"')
+            {
+                quoted = true;
+            }
+            else if (c == ',')
+            {
+                values.add(value.toString());
+                value.setLength(0);
+            }
+            else
+            {
+                value.append(c);
+            }
+        }
+        if (quoted)
+        {
+            throw new IllegalArgumentException("a quoted field is not closed");
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    /**
+     * Reads a flat JSON object whose values are strings, numbers, booleans,
+     * null, or arrays of strings, which are joined with semicolons
+     */
+    private static class JsonObjectReader
+    {
+        private final String text;
+        private int position;
+
+        JsonObjectReader(String text)
+        {
+            this.text = text;
+        }
+
+        Map<String, String> read()
+        {
+            Map<String, String> fields = new HashMap<>();
+            expect('{');
+            if (peek() == '}')
+            {
+                position++;
+            }
+            else
+            {
+                do
+                {
+                    String name = readString();
+                    expect(':');
+                    fields.put(name, readValue());
+                }
+                while (next(',', '}') == ',');
+            }
+            if (peek() != 0)
+            {
+                throw new IllegalArgumentException("unexpected text after the object");
+            }
+            return fields;
+        }
+
+        private String readValue()
+        {
+            char c = peek();
+            if (c == '"')
+            {
+                return readString();
+            }
+            if (c == '[')
+            {
+                position++;
+                List<String> items = new ArrayList<>();
+                if (peek() == ']')
+                {
+                    position++;
+                }
+                else
+                {
+                    do
+                    {
+                        items.add(readString());
+                    }
+                    while (next(',', ']') == ',');
+                }
+                return String.join(";", items);
+            }
+            int start = position;
+            while (position < text.length() && ",}] \t".indexOf(text.charAt(position)) < 0)
+            {
+                position++;
+            }
+            String literal = text.substring(start, position);
+            if (literal.isEmpty())
+            {
+                throw new IllegalArgumentException("a value is missing at column " + (start + 1));
+            }
+            return literal.equals("null") ? null : literal;
+        }
+
+        private String readString()
+        {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true)
+            {
+                if (position >= text.length())
+                {
+                    throw new IllegalArgumentException("a string is not closed");
+                }
+                char c = text.charAt(position++);
+                if (c == '"')
+                {
+                    return value.toString();
+                }
+                if (c != '\\')
+                {
+                    value.append(c);
+                    continue;
+                }
+                if (position >= text.length())
+                {
+                    throw new IllegalArgumentException("a string is not closed");
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped)
+                {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length())
+                        {
+                            throw new IllegalArgumentException("an escape is cut short");
+                        }
+                        value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                }
+            }
+        }
+
+        /**
+         * @return the next character that is not whitespace, without reading past it, or 0 at the end
+         */
+        private char peek()
+        {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+            {
+                position++;
+            }
+            return position < text.length() ? text.charAt(position) : 0;
+        }
+
+        private void expect(char expected)
+        {
+            if (peek() != expected)
+            {
+                throw new IllegalArgumentException("expected '" + expected + "' at column " + (position + 1));
+            }
+            position++;
+        }
+
+        /**
+         * Read one of two separators
+         */
+        private char next(char separator, char end)
+        {
+            char c = peek();
+            if (c != separator && c != end)
+            {
+                throw new IllegalArgumentException("expected '" + separator + "' or '" + end + "' at column "
+                        + (position + 1));
+            }
+            position++;
+            return c;
+        }
+    }
+}
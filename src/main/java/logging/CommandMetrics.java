@@ -0,0 +1,195 @@
+package logging;
+
+import command.ICommand;
+import controller.CommandInterceptor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CommandMetrics keeps statistics per command class, and provides the
+ * interceptors that record them. Add any of the interceptors to a controller
+ * to record the matching statistics for every command it runs:
+ * <pre>
+ *     CommandMetrics metrics = new CommandMetrics();
+ *     controller.addInterceptor(metrics.latencyInterceptor());
+ *     controller.addInterceptor(metrics.outcomeInterceptor());
+ * </pre>
+ * Recording never blocks, so the interceptors can stay on in production.
+ */
+public class CommandMetrics
+{
+    private final Map<Class<?>, CommandStats> stats;
+
+    public CommandMetrics()
+    {
+        stats = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return an interceptor recording the wall-clock time each command takes, in nanoseconds
+     */
+    public CommandInterceptor latencyInterceptor()
+    {
+        return (command, context, proceed) ->
+        {
+            long start = System.nanoTime();
+            try
+            {
+                proceed.run();
+            }
+            finally
+            {
+                statsOf(command).latencyNanos.record(System.nanoTime() - start);
+            }
+        };
+    }
+
+    /**
+     * @return an interceptor recording the bytes each command allocates, or one
+     * that records nothing if the JVM cannot measure allocations per thread
+     */
+    public CommandInterceptor allocationInterceptor()
+    {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)
+                || !((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported())
+        {
+            return (command, context, proceed) -> proceed.run();
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+        return (command, context, proceed) ->
+        {
+            long threadId = Thread.currentThread().getId();
+            long start = allocationBean.getThreadAllocatedBytes(threadId);
+            try
+            {
+                proceed.run();
+            }
+            finally
+            {
+                statsOf(command).allocatedBytes.record(allocationBean.getThreadAllocatedBytes(threadId) - start);
+            }
+        };
+    }
+
+    /**
+     * @return an interceptor counting the commands that succeed and fail.
+     * A command fails if it throws, or if its result is null or false.
+     * Commands that never have a result, which declare getResult to return a
+     * plain Object, such as logging out, only fail if they throw
+     */
+    public CommandInterceptor outcomeInterceptor()
+    {
+        return (command, context, proceed) ->
+        {
+            boolean succeeded = false;
+            try
+            {
+                proceed.run();
+                Object result = command.getResult();
+                succeeded = !statsOf(command).hasResult || (result != null && !Boolean.FALSE.equals(result));
+            }
+            finally
+            {
+                CommandStats commandStats = statsOf(command);
+                (succeeded ? commandStats.successes : commandStats.failures).increment();
+            }
+        };
+    }
+
+    /**
+     * @param commandClass the class of the commands to get the statistics of
+     * @return the statistics of the given command class, or null if no command
+     * of that class has been recorded
+     */
+    public CommandStats getStats(Class<? extends ICommand> commandClass)
+    {
+        return stats.get(commandClass);
+    }
+
+    /**
+     * @return the statistics of every command class recorded so far, by class name
+     */
+    public Map<String, CommandStats> getAllStats()
+    {
+        Map<String, CommandStats> allStats = new TreeMap<>();
+        for (Map.Entry<Class<?>, CommandStats> entry: stats.entrySet())
+        {
+            allStats.put(entry.getKey().getSimpleName(), entry.getValue());
+        }
+        return allStats;
+    }
+
+    public void clear()
+    {
+        stats.clear();
+    }
+
+    private CommandStats statsOf(ICommand command)
+    {
+        // Look up before computing, as computeIfAbsent may lock even when the key is present
+        CommandStats commandStats = stats.get(command.getClass());
+        return commandStats != null ? commandStats : stats.computeIfAbsent(command.getClass(), CommandStats::new);
+    }
+
+    /**
+     * The statistics recorded for one command class
+     */
+    public static class CommandStats
+    {
+        private final Histogram latencyNanos, allocatedBytes;
+        private final LongAdder successes, failures;
+        private final boolean hasResult;
+
+        private CommandStats(Class<?> commandClass)
+        {
+            boolean declaresResult;
+            try
+            {
+                declaresResult = commandClass.getMethod("getResult").getReturnType() != Object.class;
+            }
+            catch (NoSuchMethodException e)
+            {
+                declaresResult = false;
+            }
+            hasResult = declaresResult;
+            latencyNanos = new Histogram();
+            allocatedBytes = new Histogram();
+            successes = new LongAdder();
+            failures = new LongAdder();
+        }
+
+        public Histogram getLatencyNanos()
+        {
+            return latencyNanos;
+        }
+
+        public Histogram getAllocatedBytes()
+        {
+            return allocatedBytes;
+        }
+
+        public long getSuccesses()
+        {
+            return successes.sum();
+        }
+
+        public long getFailures()
+        {
+            return failures.sum();
+        }
+
+        @Override
+        public String toString()
+        {
+            return "latency ns [" + latencyNanos + "], allocated bytes [" + allocatedBytes
+                    + "], successes=" + getSuccesses() + ", failures=" + getFailures();
+        }
+    }
+}
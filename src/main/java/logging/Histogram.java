@@ -0,0 +1,97 @@
+package logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram counts non-negative values in buckets of powers of two, so
+ * that recording a value is a couple of atomic additions and never blocks.
+ * Percentiles are therefore only accurate to within a factor of two, which
+ * is enough to tell slow commands apart from fast ones.
+ */
+public class Histogram
+{
+    // bucket i counts the values in [2^(i-1), 2^i), with bucket 0 counting zeros
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets;
+    private final LongAdder count, sum;
+    private final AtomicLong max;
+
+    public Histogram()
+    {
+        buckets = new AtomicLongArray(BUCKETS);
+        count = new LongAdder();
+        sum = new LongAdder();
+        max = new AtomicLong();
+    }
+
+    /**
+     * @param value the value to record, negative values being recorded as zero
+     */
+    public void record(long value)
+    {
+        value = Math.max(0, value);
+        buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    public long getSum()
+    {
+        return sum.sum();
+    }
+
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    public double getMean()
+    {
+        long values = getCount();
+        return values == 0 ? 0 : (double) getSum() / values;
+    }
+
+    /**
+     * @param percentile the percentile to find, between 0 and 100
+     * @return an upper bound of the given percentile of the recorded values,
+     * at most twice the actual value, or 0 if no value was recorded
+     */
+    public long getPercentile(double percentile)
+    {
+        long values = 0;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            counts[i] = buckets.get(i);
+            values += counts[i];
+        }
+        long rank = (long) Math.ceil(values * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank && seen > 0)
+            {
+                long bucketBound = i == 0 ? 0 : (i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1);
+                return Math.min(bucketBound, getMax());
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "count=" + getCount() + ", mean=" + Math.round(getMean()) + ", p50=" + getPercentile(50)
+                + ", p99=" + getPercentile(99) + ", max=" + getMax();
+    }
+}
@@ -18,6 +18,51 @@ public class Consumer extends User
         this.bookings = new ArrayList<>();
     }
 
+    // Overloaded constructor for restoring a consumer whose password has already been hashed
+    private Consumer (String name, String email, String phoneNumber, String paymentAccountEmail)
+    {
+        super(email, paymentAccountEmail);
+        this.name = name;
+        this.phoneNumber = phoneNumber;
+        this.bookings = new ArrayList<>();
+    }
+
+    /**
+     * Overloaded constructor for copying a consumer, such as into a copy of
+     * the user state. The copy has no bookings until the bookings are copied
+     * @param other the consumer to copy
+     */
+    public Consumer (Consumer other)
+    {
+        super(other);
+        this.name = other.name;
+        this.phoneNumber = other.phoneNumber;
+        this.bookings = new ArrayList<>();
+        if (other.preferences != null)
+        {
+            ConsumerPreferences preferencesCopy = new ConsumerPreferences();
+            preferencesCopy.preferSocialDistancing = other.preferences.preferSocialDistancing;
+            preferencesCopy.preferAirFiltration = other.preferences.preferAirFiltration;
+            preferencesCopy.preferOutdoorsOnly = other.preferences.preferOutdoorsOnly;
+            preferencesCopy.preferredMaxCapacity = other.preferences.preferredMaxCapacity;
+            preferencesCopy.preferredMaxVenueSize = other.preferences.preferredMaxVenueSize;
+            this.preferences = preferencesCopy;
+        }
+    }
+
+    /**
+     * Restore a consumer, such as one read back from a checkpoint, without
+     * hashing their password again
+     * @return the restored consumer, with no bookings yet
+     */
+    public static Consumer withPasswordHash(String name, String email, String phoneNumber,
+                                            String passwordHash, String paymentAccountEmail)
+    {
+        Consumer consumer = new Consumer(name, email, phoneNumber, paymentAccountEmail);
+        consumer.setPasswordHash(passwordHash);
+        return consumer;
+    }
+
     public void addBooking(Booking booking)
     {
         bookings.add(booking);
@@ -1,7 +1,11 @@
 package model;
 
-public class ConsumerPreferences
+import java.io.Serializable;
+
+public class ConsumerPreferences implements Serializable
 {
+    private static final long serialVersionUID = 1L;
+
     public boolean preferSocialDistancing, preferAirFiltration, preferOutdoorsOnly;
     public int preferredMaxCapacity, preferredMaxVenueSize;
 
@@ -31,6 +31,64 @@ public class EntertainmentProvider extends User
         this.system = new MockEntertainmentProviderSystem(this.orgName, this.orgAddress);
     }
 
+    // Overloaded constructor for restoring a provider whose password has already been hashed
+    private EntertainmentProvider(String orgName, String orgAddress, String email,
+                                  String paymentAccountEmail, String mainRepName, String mainRepEmail,
+                                  List<String> otherRepNames, List<String> otherRepEmails,
+                                  EntertainmentProviderSystem system)
+    {
+        super(email, paymentAccountEmail);
+
+        this.orgName = orgName;
+        this.orgAddress = orgAddress;
+        this.mainRepName = mainRepName;
+        this.mainRepEmail = mainRepEmail;
+        this.otherRepNames = otherRepNames;
+        this.otherRepEmails = otherRepEmails;
+        this.system = system;
+    }
+
+    /**
+     * Overloaded constructor for copying a provider, such as into a copy of
+     * the user state, along with the records of its own system if it is a
+     * mock system. The copy has no events until the events are copied
+     * @param other the provider to copy
+     */
+    public EntertainmentProvider(EntertainmentProvider other)
+    {
+        super(other);
+
+        this.orgName = other.orgName;
+        this.orgAddress = other.orgAddress;
+        this.mainRepName = other.mainRepName;
+        this.mainRepEmail = other.mainRepEmail;
+        this.otherRepNames = other.otherRepNames == null ? null : new ArrayList<>(other.otherRepNames);
+        this.otherRepEmails = other.otherRepEmails == null ? null : new ArrayList<>(other.otherRepEmails);
+        this.system = other.system instanceof MockEntertainmentProviderSystem
+                ? new MockEntertainmentProviderSystem((MockEntertainmentProviderSystem) other.system)
+                : other.system;
+    }
+
+    /**
+     * Restore an entertainment provider, such as one read back from a
+     * checkpoint, without hashing their password again
+     * @param email the email the provider logs in with, which may differ
+     *              from the main representative's email
+     * @param system the provider's own system, with its records
+     * @return the restored provider, with no events yet
+     */
+    public static EntertainmentProvider withPasswordHash(String orgName, String orgAddress, String email,
+                                                         String paymentAccountEmail, String mainRepName,
+                                                         String mainRepEmail, String passwordHash,
+                                                         List<String> otherRepNames, List<String> otherRepEmails,
+                                                         EntertainmentProviderSystem system)
+    {
+        EntertainmentProvider provider = new EntertainmentProvider(orgName, orgAddress, email,
+                paymentAccountEmail, mainRepName, mainRepEmail, otherRepNames, otherRepEmails, system);
+        provider.setPasswordHash(passwordHash);
+        return provider;
+    }
+
     public void addEvent(Event event)
     {
         events.add(event);
@@ -41,6 +99,26 @@ public class EntertainmentProvider extends User
         return events;
     }
 
+    public String getMainRepName()
+    {
+        return mainRepName;
+    }
+
+    public String getMainRepEmail()
+    {
+        return mainRepEmail;
+    }
+
+    public List<String> getOtherRepNames()
+    {
+        return otherRepNames;
+    }
+
+    public List<String> getOtherRepEmails()
+    {
+        return otherRepEmails;
+    }
+
     public String getOrgAddress() 
     {
         return orgAddress;
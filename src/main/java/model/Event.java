@@ -10,6 +10,7 @@ public abstract class Event
     private EventType type;
     private EventStatus status;
     private List<EventPerformance> performances;
+    private EventTitleListener titleListener;
 
     protected Event (long eventNumber, EntertainmentProvider organiser, String title, EventType type)
     {
@@ -58,7 +59,17 @@ public abstract class Event
 
     public void setTitle(String title)
     {
+        String oldTitle = this.title;
         this.title = title;
+        if (titleListener != null && !Objects.equals(oldTitle, title))
+        {
+            titleListener.titleChanged(this, oldTitle);
+        }
+    }
+
+    public void setTitleListener(EventTitleListener titleListener)
+    {
+        this.titleListener = titleListener;
     }
 
     public EventType getType()
@@ -0,0 +1,10 @@
+package model;
+
+/**
+ * EventTitleListener is notified whenever the title of an event
+ * it is registered on changes.
+ */
+public interface EventTitleListener
+{
+    void titleChanged(Event event, String oldTitle);
+}
@@ -7,6 +7,31 @@ public class GovernmentRepresentative extends User
         super(email, password, paymentAccountEmail);
     }
 
+    // Overloaded constructor for restoring a representative whose password has already been hashed
+    private GovernmentRepresentative (String email, String paymentAccountEmail)
+    {
+        super(email, paymentAccountEmail);
+    }
+
+    // Overloaded constructor for copying a representative, such as into a copy of the user state
+    public GovernmentRepresentative (GovernmentRepresentative other)
+    {
+        super(other);
+    }
+
+    /**
+     * Restore a government representative, such as one read back from a
+     * checkpoint, without hashing their password again
+     * @return the restored government representative
+     */
+    public static GovernmentRepresentative withPasswordHash(String email, String passwordHash,
+                                                            String paymentAccountEmail)
+    {
+        GovernmentRepresentative representative = new GovernmentRepresentative(email, paymentAccountEmail);
+        representative.setPasswordHash(passwordHash);
+        return representative;
+    }
+
     public String toString()
     {
         return "The government representative's email is: " + getEmail() + "."
@@ -0,0 +1,571 @@
+package model;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * ModelCodec reads and writes events, their performances and bookings as
+ * compact binary records, for checkpoints, logs and replication.
+ * <p>
+ * A stream starts with a header holding the schema version, followed by
+ * any number of records. Numbers are written as varints, so small numbers
+ * take a single byte, and strings such as titles, venue addresses and
+ * performer names are written once and then referred to by their index in
+ * a dictionary built up as the stream is written. An event written a second
+ * time is written as a reference to the first, and a booking refers to its
+ * performance, so the decoder rebuilds the same object graph. A performance
+ * added to an event after the event was written is written on its own, ahead
+ * of the first booking for it. Users are written as ids handed out by the caller.
+ * <p>
+ * Once its dictionary and references are built up, the encoder allocates
+ * nothing. An encoder and a decoder each hold the state of one stream.
+ */
+public class ModelCodec
+{
+    public static final int SCHEMA_VERSION = 2;
+    // the oldest version still read, which has no performance records
+    private static final int OLDEST_SCHEMA_VERSION = 1;
+    private static final int MAGIC = 0x4D43;
+    private static final byte EVENT = 1, EVENT_REFERENCE = 2, BOOKING = 3, PERFORMANCE = 4;
+    // flags of a performance
+    private static final int SOCIAL_DISTANCING = 1, AIR_FILTRATION = 2, OUTDOORS = 4, HAS_START = 8, HAS_END = 16,
+            HAS_PERFORMERS = 32;
+
+    /**
+     * Writes the records of one stream
+     */
+    public static class Encoder
+    {
+        private final ToIntFunction<User> userIds;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private final List<String> dictionaryOrder = new ArrayList<>();
+        private final Map<Event, Integer> eventIds = new IdentityHashMap<>();
+        private final List<Event> eventOrder = new ArrayList<>();
+        private final Map<EventPerformance, Integer> performanceIds = new IdentityHashMap<>();
+        private final List<EventPerformance> performanceOrder = new ArrayList<>();
+        // sizes of the dictionary and references before the record being written
+        private int markedStrings, markedEvents, markedPerformances;
+
+        /**
+         * @param userIds gives the id to write for a user, which the decoder turns back into the user
+         */
+        public Encoder(ToIntFunction<User> userIds)
+        {
+            this.userIds = userIds;
+        }
+
+        /**
+         * Write the header of the stream, before any record
+         */
+        public void writeHeader(ByteBuffer out)
+        {
+            putVarLong(out, MAGIC);
+            putVarLong(out, SCHEMA_VERSION);
+        }
+
+        /**
+         * Write an event with all its performances, or a reference to it if it was written before
+         * @param out the buffer to write to. If it fills up, it is left as it was
+         *            and a BufferOverflowException is thrown
+         * @param event the event to write
+         */
+        public void writeEvent(ByteBuffer out, Event event)
+        {
+            int mark = mark(out);
+            try
+            {
+                putEvent(out, event);
+            }
+            catch (BufferOverflowException e)
+            {
+                reset(out, mark);
+                throw e;
+            }
+        }
+
+        /**
+         * Write a booking, first writing the event of its performance if it
+         * has not been written yet, or the performance if it was added to the
+         * event after the event was written
+         * @param out the buffer to write to. If it fills up, it is left as it was
+         *            and a BufferOverflowException is thrown
+         * @param booking the booking to write
+         */
+        public void writeBooking(ByteBuffer out, Booking booking)
+        {
+            int mark = mark(out);
+            try
+            {
+                EventPerformance performance = booking.getEventPerformance();
+                if (!performanceIds.containsKey(performance))
+                {
+                    Integer eventId = eventIds.get(performance.getEvent());
+                    if (eventId == null)
+                    {
+                        putEvent(out, performance.getEvent());
+                    }
+                    else
+                    {
+                        out.put(PERFORMANCE);
+                        putVarLong(out, eventId);
+                        putPerformance(out, performance);
+                    }
+                }
+                out.put(BOOKING);
+                putVarLong(out, booking.getBookingNumber());
+                putSignedVarLong(out, userId(booking.getBooker()));
+                putVarLong(out, performanceIds.get(performance));
+                putSignedVarLong(out, booking.getNumTickets());
+                out.putDouble(booking.getAmountPaid());
+                putDateTime(out, booking.getBookingDateTime());
+                putEnum(out, booking.getStatus());
+            }
+            catch (BufferOverflowException e)
+            {
+                reset(out, mark);
+                throw e;
+            }
+        }
+
+        private void putEvent(ByteBuffer out, Event event)
+        {
+            Integer eventId = eventIds.get(event);
+            if (eventId != null)
+            {
+                out.put(EVENT_REFERENCE);
+                putVarLong(out, eventId);
+                return;
+            }
+            eventIds.put(event, eventOrder.size());
+            eventOrder.add(event);
+            out.put(EVENT);
+            putVarLong(out, event.getEventNumber());
+            putSignedVarLong(out, userId(event.getOrganiser()));
+            putString(out, event.getTitle());
+            putEnum(out, event.getType());
+            putEnum(out, event.getStatus());
+            boolean ticketed = event instanceof TicketedEvent;
+            out.put((byte) (ticketed ? 1 : 0));
+            if (ticketed)
+            {
+                TicketedEvent ticketedEvent = (TicketedEvent) event;
+                out.putDouble(ticketedEvent.getOriginalTicketPrice());
+                putSignedVarLong(out, ticketedEvent.getNumTickets());
+            }
+            Collection<EventPerformance> performances = event.getPerformances();
+            putVarLong(out, performances.size());
+            for (EventPerformance performance: performances)
+            {
+                putPerformance(out, performance);
+            }
+        }
+
+        private void putPerformance(ByteBuffer out, EventPerformance performance)
+        {
+            performanceIds.put(performance, performanceOrder.size());
+            performanceOrder.add(performance);
+            List<String> performerNames = performance.getPerformerNames();
+            int flags = (performance.hasSocialDistancing() ? SOCIAL_DISTANCING : 0)
+                    | (performance.hasAirFiltration() ? AIR_FILTRATION : 0)
+                    | (performance.isOutdoors() ? OUTDOORS : 0)
+                    | (performance.getStartDateTime() != null ? HAS_START : 0)
+                    | (performance.getEndDateTime() != null ? HAS_END : 0)
+                    | (performerNames != null ? HAS_PERFORMERS : 0);
+            putVarLong(out, performance.getPerformanceNumber());
+            putString(out, performance.getVenueAddress());
+            out.put((byte) flags);
+            if (performance.getStartDateTime() != null)
+            {
+                putDateTime(out, performance.getStartDateTime());
+            }
+            if (performance.getEndDateTime() != null)
+            {
+                putDateTime(out, performance.getEndDateTime());
+            }
+            if (performerNames != null)
+            {
+                putVarLong(out, performerNames.size());
+                for (int i = 0; i < performerNames.size(); i++)
+                {
+                    putString(out, performerNames.get(i));
+                }
+            }
+            putSignedVarLong(out, performance.getCapacityLimit());
+            putSignedVarLong(out, performance.getVenueSize());
+        }
+
+        private int userId(User user)
+        {
+            return user == null ? -1 : userIds.applyAsInt(user);
+        }
+
+        /**
+         * Write a string as 0 if it is null, 1 followed by its UTF-8 bytes the
+         * first time it is written, or its dictionary index plus 2 after that
+         */
+        private void putString(ByteBuffer out, String value)
+        {
+            if (value == null)
+            {
+                out.put((byte) 0);
+                return;
+            }
+            Integer index = dictionary.get(value);
+            if (index != null)
+            {
+                putVarLong(out, index + 2L);
+                return;
+            }
+            out.put((byte) 1);
+            putUtf8(out, value);
+            dictionary.put(value, dictionaryOrder.size());
+            dictionaryOrder.add(value);
+        }
+
+        /**
+         * Note the sizes of the dictionary and references before a record
+         * @return the position of the buffer before the record
+         */
+        private int mark(ByteBuffer out)
+        {
+            markedStrings = dictionaryOrder.size();
+            markedEvents = eventOrder.size();
+            markedPerformances = performanceOrder.size();
+            return out.position();
+        }
+
+        /**
+         * Forget the strings and objects added since mark, after the buffer filled up
+         */
+        private void reset(ByteBuffer out, int position)
+        {
+            out.position(position);
+            while (dictionaryOrder.size() > markedStrings)
+            {
+                dictionary.remove(dictionaryOrder.remove(dictionaryOrder.size() - 1));
+            }
+            while (eventOrder.size() > markedEvents)
+            {
+                eventIds.remove(eventOrder.remove(eventOrder.size() - 1));
+            }
+            while (performanceOrder.size() > markedPerformances)
+            {
+                performanceIds.remove(performanceOrder.remove(performanceOrder.size() - 1));
+            }
+        }
+    }
+
+    /**
+     * Reads back the records of a stream written by an Encoder
+     */
+    public static class Decoder
+    {
+        private final IntFunction<User> users;
+        private final List<String> dictionary = new ArrayList<>();
+        private final List<Event> events = new ArrayList<>();
+        private final List<EventPerformance> performances = new ArrayList<>();
+
+        /**
+         * @param users turns the ids the encoder wrote for users back into users
+         */
+        public Decoder(IntFunction<User> users)
+        {
+            this.users = users;
+        }
+
+        /**
+         * Read the header of the stream
+         * @throws IllegalStateException if the stream was not written by an Encoder,
+         * or was written with an unsupported schema version
+         */
+        public void readHeader(ByteBuffer in)
+        {
+            if (getVarLong(in) != MAGIC)
+            {
+                throw new IllegalStateException("The stream was not written by a model codec");
+            }
+            long version = getVarLong(in);
+            if (version < OLDEST_SCHEMA_VERSION || version > SCHEMA_VERSION)
+            {
+                throw new IllegalStateException("Schema version " + version + " is not supported");
+            }
+        }
+
+        /**
+         * Read the next record of the stream
+         * @return the event, performance or booking read
+         */
+        public Object read(ByteBuffer in)
+        {
+            byte tag = in.get();
+            switch (tag)
+            {
+                case EVENT:
+                    return getEvent(in);
+                case EVENT_REFERENCE:
+                    return events.get((int) getVarLong(in));
+                case BOOKING:
+                    return getBooking(in);
+                case PERFORMANCE:
+                    Event event = events.get((int) getVarLong(in));
+                    EventPerformance performance = getPerformance(in, event);
+                    event.addPerformance(performance);
+                    performances.add(performance);
+                    return performance;
+                default:
+                    throw new IllegalStateException("Unknown record type " + tag);
+            }
+        }
+
+        /**
+         * Read the next record of the stream, which must be an event
+         */
+        public Event readEvent(ByteBuffer in)
+        {
+            return (Event) read(in);
+        }
+
+        /**
+         * Read the next booking of the stream, skipping the events and performances written along with it
+         */
+        public Booking readBooking(ByteBuffer in)
+        {
+            Object record;
+            do
+            {
+                record = read(in);
+            } while (!(record instanceof Booking));
+            return (Booking) record;
+        }
+
+        private Event getEvent(ByteBuffer in)
+        {
+            long eventNumber = getVarLong(in);
+            EntertainmentProvider organiser = (EntertainmentProvider) user(in);
+            String title = getString(in);
+            EventType type = getEnum(in, EventType.values());
+            EventStatus status = getEnum(in, EventStatus.values());
+            Event event;
+            if (in.get() != 0)
+            {
+                double ticketPrice = in.getDouble();
+                event = new TicketedEvent(eventNumber, organiser, title, type, ticketPrice,
+                        (int) getSignedVarLong(in));
+            }
+            else
+            {
+                event = new NonTicketedEvent(eventNumber, organiser, title, type);
+            }
+            event.setStatus(status);
+            events.add(event);
+            for (long i = getVarLong(in); i > 0; i--)
+            {
+                EventPerformance performance = getPerformance(in, event);
+                event.addPerformance(performance);
+                performances.add(performance);
+            }
+            return event;
+        }
+
+        private EventPerformance getPerformance(ByteBuffer in, Event event)
+        {
+            long performanceNumber = getVarLong(in);
+            String venueAddress = getString(in);
+            int flags = in.get();
+            LocalDateTime startDateTime = (flags & HAS_START) != 0 ? getDateTime(in) : null;
+            LocalDateTime endDateTime = (flags & HAS_END) != 0 ? getDateTime(in) : null;
+            List<String> performerNames = null;
+            if ((flags & HAS_PERFORMERS) != 0)
+            {
+                int count = (int) getVarLong(in);
+                performerNames = new ArrayList<>(count);
+                for (int i = 0; i < count; i++)
+                {
+                    performerNames.add(getString(in));
+                }
+            }
+            int capacityLimit = (int) getSignedVarLong(in);
+            int venueSize = (int) getSignedVarLong(in);
+            return new EventPerformance(performanceNumber, event, venueAddress, startDateTime, endDateTime,
+                    performerNames, (flags & SOCIAL_DISTANCING) != 0, (flags & AIR_FILTRATION) != 0,
+                    (flags & OUTDOORS) != 0, capacityLimit, venueSize);
+        }
+
+        private Booking getBooking(ByteBuffer in)
+        {
+            long bookingNumber = getVarLong(in);
+            Consumer booker = (Consumer) user(in);
+            EventPerformance performance = performances.get((int) getVarLong(in));
+            int numTickets = (int) getSignedVarLong(in);
+            double amountPaid = in.getDouble();
+            Booking booking = new Booking(bookingNumber, booker, performance, numTickets, amountPaid,
+                    getDateTime(in));
+            booking.setStatus(getEnum(in, BookingStatus.values()));
+            return booking;
+        }
+
+        private User user(ByteBuffer in)
+        {
+            int userId = (int) getSignedVarLong(in);
+            return userId < 0 ? null : users.apply(userId);
+        }
+
+        private String getString(ByteBuffer in)
+        {
+            long code = getVarLong(in);
+            if (code == 0)
+            {
+                return null;
+            }
+            if (code > 1)
+            {
+                return dictionary.get((int) (code - 2));
+            }
+            byte[] bytes = new byte[(int) getVarLong(in)];
+            in.get(bytes);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            dictionary.add(value);
+            return value;
+        }
+    }
+
+    /**
+     * Write an unsigned number in as few bytes as it needs, seven bits to a byte
+     */
+    public static void putVarLong(ByteBuffer out, long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    public static long getVarLong(ByteBuffer in)
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+            {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    /**
+     * Write a number that may be negative, zigzag encoded so that small negative numbers stay small
+     */
+    public static void putSignedVarLong(ByteBuffer out, long value)
+    {
+        putVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    public static long getSignedVarLong(ByteBuffer in)
+    {
+        long value = getVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void putDateTime(ByteBuffer out, LocalDateTime dateTime)
+    {
+        putSignedVarLong(out, dateTime.toEpochSecond(ZoneOffset.UTC));
+        putVarLong(out, dateTime.getNano());
+    }
+
+    private static LocalDateTime getDateTime(ByteBuffer in)
+    {
+        long epochSecond = getSignedVarLong(in);
+        return LocalDateTime.ofEpochSecond(epochSecond, (int) getVarLong(in), ZoneOffset.UTC);
+    }
+
+    private static void putEnum(ByteBuffer out, Enum<?> value)
+    {
+        out.put((byte) (value == null ? 0 : value.ordinal() + 1));
+    }
+
+    private static <E extends Enum<E>> E getEnum(ByteBuffer in, E[] values)
+    {
+        int ordinal = in.get();
+        return ordinal == 0 ? null : values[ordinal - 1];
+    }
+
+    /**
+     * Write the UTF-8 length and bytes of a string, without encoding it into a temporary array
+     */
+    private static void putUtf8(ByteBuffer out, String value)
+    {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c < 0x80)
+            {
+                length++;
+            }
+            else if (c < 0x800)
+            {
+                length += 2;
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1)))
+            {
+                length += 4;
+                i++;
+            }
+            else
+            {
+                // A lone surrogate is written as '?', as String.getBytes does
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        putVarLong(out, length);
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c < 0x80)
+            {
+                out.put((byte) c);
+            }
+            else if (c < 0x800)
+            {
+                out.put((byte) (0xC0 | c >> 6));
+                out.put((byte) (0x80 | c & 0x3F));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1)))
+            {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out.put((byte) (0xF0 | codePoint >> 18));
+                out.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                out.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                out.put((byte) (0x80 | codePoint & 0x3F));
+            }
+            else if (Character.isSurrogate(c))
+            {
+                out.put((byte) '?');
+            }
+            else
+            {
+                out.put((byte) (0xE0 | c >> 12));
+                out.put((byte) (0x80 | c >> 6 & 0x3F));
+                out.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+}
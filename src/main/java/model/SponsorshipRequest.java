@@ -7,6 +7,7 @@ public class SponsorshipRequest
     private SponsorshipStatus status;
     private int sponsoredPricePercent;
     private String sponsorAccountEmail;
+    private SponsorshipStatusListener statusListener;
 
     public SponsorshipRequest(long requestNumber, TicketedEvent event)
     {
@@ -59,9 +60,15 @@ public class SponsorshipRequest
         this.sponsorAccountEmail = sponsorAccountEmail;
     }
 
+    public void setStatusListener(SponsorshipStatusListener statusListener)
+    {
+        this.statusListener = statusListener;
+    }
+
     public void reject()
     {
         status = SponsorshipStatus.REJECTED;
+        notifyStatusListener();
     }
 
     public void accept(int percent, String sponsorAccountEmail)
@@ -69,5 +76,14 @@ public class SponsorshipRequest
         status = SponsorshipStatus.ACCEPTED;
         this.setSponsoredPricePercent(percent);
         this.setSponsorAccountEmail(sponsorAccountEmail);
+        notifyStatusListener();
+    }
+
+    private void notifyStatusListener()
+    {
+        if (statusListener != null)
+        {
+            statusListener.statusChanged(this);
+        }
     }
 }
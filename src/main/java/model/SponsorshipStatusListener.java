@@ -0,0 +1,10 @@
+package model;
+
+/**
+ * SponsorshipStatusListener is notified whenever a sponsorship
+ * request it is registered on is accepted or rejected.
+ */
+public interface SponsorshipStatusListener
+{
+    void statusChanged(SponsorshipRequest request);
+}
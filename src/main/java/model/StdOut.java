@@ -11,6 +11,7 @@ package model;
 
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.Locale;
 
@@ -49,7 +50,8 @@ import java.util.Locale;
  *       for consistency with {@link StdIn}, {@link Double#parseDouble(String)},
  *       and floating-point literals.
  *  <li> {@code StdOut} <em>flushes</em> standard output after each call to
- *       {@code print()} so that text will appear immediately in the terminal.
+ *       {@code print()} so that text will appear immediately in the terminal,
+ *       except on a thread with a batch started by {@link #beginBatch()} in progress.
  *  </ul>
  *  <p>
  *  <b>Reference.</b>
@@ -70,9 +72,15 @@ public final class StdOut
     // assume language = English, country = US for consistency with StdIn
     private static final Locale LOCALE = Locale.US;
 
-    // send output here
+    // characters a thread buffers before writing them out while a batch is in progress
+    private static final int BATCH_BUFFER_SIZE = 1 << 16;
+
+    // send output here, unless the calling thread has a batch in progress
     private static PrintWriter out;
 
+    // the batch in progress on each thread, if any
+    private static final ThreadLocal<Batch> batch = new ThreadLocal<>();
+
     // this is called before invoking any methods
     static
     {
@@ -89,12 +97,85 @@ public final class StdOut
     // don't instantiate
     private StdOut() { }
 
+    /**
+     * Output buffered by a thread while a batch is in progress on it
+     */
+    private static class Batch
+    {
+        final StringWriter text = new StringWriter(BATCH_BUFFER_SIZE);
+        final PrintWriter out = new PrintWriter(text);
+        int depth;
+
+        /**
+         * Write out the buffered output in one go, so that it is not interleaved with other threads' output
+         */
+        void writeOut()
+        {
+            StringBuffer buffer = text.getBuffer();
+            if (buffer.length() > 0)
+            {
+                StdOut.out.print(buffer);
+                StdOut.out.flush();
+                buffer.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * Starts a batch on the calling thread: until the matching call to
+     * {@link #endBatch()}, output from this thread is buffered rather than
+     * flushed after every call. Output from other threads is not affected.
+     * Batches may be nested, in which case output is written out when the
+     * outermost batch ends.
+     */
+    public static void beginBatch()
+    {
+        Batch current = batch.get();
+        if (current == null)
+        {
+            current = new Batch();
+            batch.set(current);
+        }
+        current.depth++;
+    }
+
+    /**
+     * Ends a batch started on the calling thread by {@link #beginBatch()},
+     * writing out its output.
+     */
+    public static void endBatch()
+    {
+        Batch current = batch.get();
+        if (current != null && --current.depth == 0)
+        {
+            current.writeOut();
+            batch.remove();
+        }
+    }
+
+    /**
+     * @return where the calling thread's output goes
+     */
+    private static PrintWriter out()
+    {
+        Batch current = batch.get();
+        if (current == null)
+        {
+            return out;
+        }
+        if (current.text.getBuffer().length() >= BATCH_BUFFER_SIZE)
+        {
+            current.writeOut();
+        }
+        return current.out;
+    }
+
     /**
      * Terminates the current line by printing the line-separator string.
      */
     public static void println()
     {
-        out.println();
+        out().println();
     }
 
     /**
@@ -104,7 +185,7 @@ public final class StdOut
      */
     public static void println(Object x)
     {
-        out.println(x);
+        out().println(x);
     }
 
     /**
@@ -114,7 +195,7 @@ public final class StdOut
      */
     public static void println(boolean x)
     {
-        out.println(x);
+        out().println(x);
     }
 
     /**
@@ -124,7 +205,7 @@ public final class StdOut
      */
     public static void println(char x)
     {
-        out.println(x);
+        out().println(x);
     }
 
     /**
@@ -134,7 +215,7 @@ public final class StdOut
      */
     public static void println(double x)
     {
-        out.println(x);
+        out().println(x);
     }
 
     /**
@@ -144,7 +225,7 @@ public final class StdOut
      */
     public static void println(float x)
     {
-        out.println(x);
+        out().println(x);
     }
 
     /**
@@ -154,7 +235,7 @@ public final class StdOut
      */
     public static void println(int x)
     {
-        out.println(x);
+        out().println(x);
     }
 
     /**
@@ -164,7 +245,7 @@ public final class StdOut
      */
     public static void println(long x)
     {
-        out.println(x);
+        out().println(x);
     }
 
     /**
@@ -174,7 +255,7 @@ public final class StdOut
      */
     public static void println(short x)
     {
-        out.println(x);
+        out().println(x);
     }
 
     /**
@@ -186,7 +267,7 @@ public final class StdOut
      */
     public static void println(byte x)
     {
-        out.println(x);
+        out().println(x);
     }
 
     /**
@@ -194,7 +275,7 @@ public final class StdOut
      */
     public static void print()
     {
-        out.flush();
+        out().flush();
     }
 
     /**
@@ -204,6 +285,7 @@ public final class StdOut
      */
     public static void print(Object x)
     {
+        PrintWriter out = out();
         out.print(x);
         out.flush();
     }
@@ -215,6 +297,7 @@ public final class StdOut
      */
     public static void print(boolean x)
     {
+        PrintWriter out = out();
         out.print(x);
         out.flush();
     }
@@ -226,6 +309,7 @@ public final class StdOut
      */
     public static void print(char x)
     {
+        PrintWriter out = out();
         out.print(x);
         out.flush();
     }
@@ -237,6 +321,7 @@ public final class StdOut
      */
     public static void print(double x)
     {
+        PrintWriter out = out();
         out.print(x);
         out.flush();
     }
@@ -248,6 +333,7 @@ public final class StdOut
      */
     public static void print(float x)
     {
+        PrintWriter out = out();
         out.print(x);
         out.flush();
     }
@@ -259,6 +345,7 @@ public final class StdOut
      */
     public static void print(int x)
     {
+        PrintWriter out = out();
         out.print(x);
         out.flush();
     }
@@ -270,6 +357,7 @@ public final class StdOut
      */
     public static void print(long x)
     {
+        PrintWriter out = out();
         out.print(x);
         out.flush();
     }
@@ -281,6 +369,7 @@ public final class StdOut
      */
     public static void print(short x)
     {
+        PrintWriter out = out();
         out.print(x);
         out.flush();
     }
@@ -292,6 +381,7 @@ public final class StdOut
      */
     public static void print(byte x)
     {
+        PrintWriter out = out();
         out.print(x);
         out.flush();
     }
@@ -306,6 +396,7 @@ public final class StdOut
      */
     public static void printf(String format, Object... args)
     {
+        PrintWriter out = out();
         out.printf(LOCALE, format, args);
         out.flush();
     }
@@ -320,6 +411,7 @@ public final class StdOut
      */
     public static void printf(Locale locale, String format, Object... args)
     {
+        PrintWriter out = out();
         out.printf(locale, format, args);
         out.flush();
     }
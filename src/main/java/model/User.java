@@ -9,10 +9,25 @@ public abstract class User
     protected User (String email, String password, String paymentAccountEmail)
     {
         this.email = email;
-        this.passwordHash = BCrypt.withDefaults().hashToString(12, password.toCharArray());
+        this.passwordHash = hashPassword(password);
         this.paymentAccountEmail = paymentAccountEmail;
     }
 
+    // Overloaded constructor for restoring a user whose password has already been hashed
+    protected User (String email, String paymentAccountEmail)
+    {
+        this.email = email;
+        this.paymentAccountEmail = paymentAccountEmail;
+    }
+
+    // Overloaded constructor for copying a user, keeping their password hash
+    protected User (User other)
+    {
+        this.email = other.email;
+        this.passwordHash = other.passwordHash;
+        this.paymentAccountEmail = other.paymentAccountEmail;
+    }
+
     public boolean checkPasswordMatch(String password)
     {
         if (password == null)
@@ -24,7 +39,28 @@ public abstract class User
 
     public void updatePassword(String newPassword)
     {
-        passwordHash = BCrypt.withDefaults().hashToString(12, newPassword.toCharArray());
+        passwordHash = hashPassword(newPassword);
+    }
+
+    /**
+     * Hash a password the way users store theirs, so that it can be hashed
+     * ahead of creating the user, such as on another thread
+     * @param password the password to hash
+     * @return the BCrypt hash of the password
+     */
+    public static String hashPassword(String password)
+    {
+        return BCrypt.withDefaults().hashToString(12, password.toCharArray());
+    }
+
+    public String getPasswordHash()
+    {
+        return passwordHash;
+    }
+
+    protected void setPasswordHash(String passwordHash)
+    {
+        this.passwordHash = passwordHash;
     }
 
     public String getEmail()
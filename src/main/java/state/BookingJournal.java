@@ -0,0 +1,324 @@
+package state;
+
+import model.BookingStatus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BookingJournal is an append-only file of fixed-width booking records,
+ * read and written through memory-mapped segments, so that bookings can be
+ * kept off the heap. A record is found from its index alone, at a fixed
+ * offset into the segment holding it.
+ * <p>
+ * Each record holds the booking number, the numbers of the event and the
+ * performance booked, the booker's id, the number of tickets, the amount
+ * paid, the time of the booking and its status. Booker ids are handed out
+ * by the journal, which keeps the email of each booker in a file alongside
+ * it, named after the journal with ".bookers" added.
+ * <p>
+ * The status of a record is the only part of it that can change once it is
+ * appended. The journal can also be cut back to any record.
+ */
+public class BookingJournal implements Closeable
+{
+    public static final int RECORD_BYTES = 56;
+    public static final int RECORDS_PER_SEGMENT = 1 << 20;
+    private static final long SEGMENT_BYTES = (long) RECORD_BYTES * RECORDS_PER_SEGMENT;
+    private static final int MAGIC = 0x424A524E;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int COUNT_OFFSET = 8;
+
+    // offsets of the fields within a record
+    private static final int BOOKING_NUMBER = 0, EVENT_NUMBER = 8, PERFORMANCE_NUMBER = 16, AMOUNT_PAID = 24,
+            EPOCH_SECOND = 32, NANO = 40, BOOKER_ID = 44, NUM_TICKETS = 48, STATUS = 52;
+
+    private final FileChannel channel;
+    private final FileChannel bookerChannel;
+    private final MappedByteBuffer header;
+    private MappedByteBuffer[] segments;
+    private final List<String> bookerEmails;
+    // the first id handed out for each email
+    private final Map<String, Integer> bookerIdsByEmail;
+    private int size;
+
+    private BookingJournal(FileChannel channel, FileChannel bookerChannel, MappedByteBuffer header,
+                           List<String> bookerEmails)
+    {
+        this.channel = channel;
+        this.bookerChannel = bookerChannel;
+        this.header = header;
+        this.bookerEmails = bookerEmails;
+        bookerIdsByEmail = new HashMap<>();
+        for (int bookerId = 0; bookerId < bookerEmails.size(); bookerId++)
+        {
+            bookerIdsByEmail.putIfAbsent(bookerEmails.get(bookerId), bookerId);
+        }
+        segments = new MappedByteBuffer[0];
+        size = (int) header.getLong(COUNT_OFFSET);
+    }
+
+    /**
+     * Open a journal, creating it if it does not exist yet
+     * @param file the file holding the journal
+     * @return the opened journal
+     * @throws IOException if the journal cannot be read or written, or the file is not a booking journal
+     */
+    public static BookingJournal open(Path file) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel bookerChannel = FileChannel.open(file.resolveSibling(file.getFileName() + ".bookers"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try
+        {
+            boolean created = channel.size() == 0;
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            if (created)
+            {
+                header.putInt(0, MAGIC);
+                header.putInt(4, VERSION);
+            }
+            else if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+            {
+                throw new IOException(file + " is not a booking journal");
+            }
+            return new BookingJournal(channel, bookerChannel, header, readBookerEmails(bookerChannel));
+        }
+        catch (IOException e)
+        {
+            channel.close();
+            bookerChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of records in the journal
+     */
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    /**
+     * Append a booking record
+     * @return the index of the new record
+     */
+    public synchronized int append(long bookingNumber, long eventNumber, long performanceNumber, int bookerId,
+                                   int numTickets, double amountPaid, LocalDateTime bookingDateTime,
+                                   BookingStatus status)
+    {
+        int record = size;
+        ByteBuffer segment = segmentOf(record);
+        int offset = offsetOf(record);
+        segment.putLong(offset + BOOKING_NUMBER, bookingNumber);
+        segment.putLong(offset + EVENT_NUMBER, eventNumber);
+        segment.putLong(offset + PERFORMANCE_NUMBER, performanceNumber);
+        segment.putDouble(offset + AMOUNT_PAID, amountPaid);
+        segment.putLong(offset + EPOCH_SECOND, bookingDateTime.toEpochSecond(ZoneOffset.UTC));
+        segment.putInt(offset + NANO, bookingDateTime.getNano());
+        segment.putInt(offset + BOOKER_ID, bookerId);
+        segment.putInt(offset + NUM_TICKETS, numTickets);
+        segment.putInt(offset + STATUS, status.ordinal());
+        // The count is only raised once the record is complete
+        size++;
+        header.putLong(COUNT_OFFSET, size);
+        return record;
+    }
+
+    /**
+     * Cut the journal back to its first records
+     * @param records the number of records to keep
+     */
+    public synchronized void truncate(int records)
+    {
+        if (records < size)
+        {
+            size = records;
+            header.putLong(COUNT_OFFSET, size);
+        }
+    }
+
+    public synchronized long getBookingNumber(int record)
+    {
+        return segmentOf(record).getLong(offsetOf(record) + BOOKING_NUMBER);
+    }
+
+    public synchronized long getEventNumber(int record)
+    {
+        return segmentOf(record).getLong(offsetOf(record) + EVENT_NUMBER);
+    }
+
+    public synchronized long getPerformanceNumber(int record)
+    {
+        return segmentOf(record).getLong(offsetOf(record) + PERFORMANCE_NUMBER);
+    }
+
+    public synchronized double getAmountPaid(int record)
+    {
+        return segmentOf(record).getDouble(offsetOf(record) + AMOUNT_PAID);
+    }
+
+    public synchronized LocalDateTime getBookingDateTime(int record)
+    {
+        ByteBuffer segment = segmentOf(record);
+        int offset = offsetOf(record);
+        return LocalDateTime.ofEpochSecond(segment.getLong(offset + EPOCH_SECOND),
+                segment.getInt(offset + NANO), ZoneOffset.UTC);
+    }
+
+    public synchronized int getBookerId(int record)
+    {
+        return segmentOf(record).getInt(offsetOf(record) + BOOKER_ID);
+    }
+
+    public synchronized int getNumTickets(int record)
+    {
+        return segmentOf(record).getInt(offsetOf(record) + NUM_TICKETS);
+    }
+
+    public synchronized BookingStatus getStatus(int record)
+    {
+        return BookingStatus.values()[segmentOf(record).getInt(offsetOf(record) + STATUS)];
+    }
+
+    public synchronized void setStatus(int record, BookingStatus status)
+    {
+        segmentOf(record).putInt(offsetOf(record) + STATUS, status.ordinal());
+    }
+
+    /**
+     * Hand out an id for a new booker
+     * @param email the email of the booker, so that the booker can be found again once the journal is reopened
+     * @return the booker's id
+     */
+    public synchronized int addBooker(String email)
+    {
+        byte[] bytes = email.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer entry = ByteBuffer.allocate(Integer.BYTES + bytes.length);
+        entry.putInt(bytes.length).put(bytes).flip();
+        try
+        {
+            while (entry.hasRemaining())
+            {
+                bookerChannel.write(entry, bookerChannel.size());
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("The bookers of the booking journal cannot be written", e);
+        }
+        bookerEmails.add(email);
+        bookerIdsByEmail.putIfAbsent(email, bookerEmails.size() - 1);
+        return bookerEmails.size() - 1;
+    }
+
+    /**
+     * @param email the email a booker had when their id was handed out
+     * @return the first id handed out for the email, or -1 if there is none
+     */
+    public synchronized int findBooker(String email)
+    {
+        return bookerIdsByEmail.getOrDefault(email, -1);
+    }
+
+    /**
+     * @param bookerId an id handed out by addBooker
+     * @return the email the booker had when the id was handed out
+     */
+    public synchronized String getBookerEmail(int bookerId)
+    {
+        return bookerEmails.get(bookerId);
+    }
+
+    /**
+     * Force the journal to disk
+     */
+    public synchronized void force() throws IOException
+    {
+        header.force();
+        for (MappedByteBuffer segment: segments)
+        {
+            segment.force();
+        }
+        bookerChannel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        force();
+        channel.close();
+        bookerChannel.close();
+    }
+
+    /**
+     * Find the segment holding a record, mapping it (and any before it) the first time it is used
+     */
+    private ByteBuffer segmentOf(int record)
+    {
+        int segment = record / RECORDS_PER_SEGMENT;
+        if (segment >= segments.length)
+        {
+            MappedByteBuffer[] mapped = Arrays.copyOf(segments, segment + 1);
+            try
+            {
+                for (int i = segments.length; i <= segment; i++)
+                {
+                    mapped[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + i * SEGMENT_BYTES,
+                            SEGMENT_BYTES);
+                }
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException("The booking journal cannot be mapped", e);
+            }
+            segments = mapped;
+        }
+        return segments[segment];
+    }
+
+    private static int offsetOf(int record)
+    {
+        return (record % RECORDS_PER_SEGMENT) * RECORD_BYTES;
+    }
+
+    private static List<String> readBookerEmails(FileChannel bookerChannel) throws IOException
+    {
+        List<String> emails = new ArrayList<>();
+        ByteBuffer bytes = ByteBuffer.allocate((int) bookerChannel.size());
+        while (bytes.hasRemaining())
+        {
+            bookerChannel.read(bytes, bytes.position());
+        }
+        bytes.flip();
+        while (bytes.remaining() >= Integer.BYTES && bytes.getInt(bytes.position()) <= bytes.remaining() - Integer.BYTES)
+        {
+            byte[] email = new byte[bytes.getInt()];
+            bytes.get(email);
+            emails.add(new String(email, StandardCharsets.UTF_8));
+        }
+        if (bytes.hasRemaining())
+        {
+            // Cut off an email only partly written when the process died
+            bookerChannel.truncate(bytes.position());
+        }
+        return emails;
+    }
+}
@@ -2,25 +2,83 @@ package state;
 
 import model.Booking;
 import model.Consumer;
+import model.Event;
 import model.EventPerformance;
 import model.StdOut;
+import model.User;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
+/**
+ * BookingState holds the bookings in memory, indexed by number, event,
+ * performance and performance start time. Bookings for different events may
+ * be made concurrently, so the public methods synchronise on the state.
+ */
 public class BookingState implements IBookingState, Cloneable
 {
     private long nextBookingNumber;
-    private List<Booking> bookings;
+    // bookings are stored at position (booking number - 1)
+    private SegmentedArray<Booking> bookings;
+    // secondary indexes over the same bookings, kept in step with the array above
+    private LongKeyMap<List<Booking>> bookingsByEvent, bookingsByPerformance;
+    // the same bookings ordered by the start time of their performance, for time range queries
+    private NavigableMap<LocalDateTime, List<Booking>> bookingsByPerformanceStart;
+    // the store the bookings of cold events are tiered out to along with their events, if any have been
+    private ColdEventStore coldStore;
+    // the events whose bookings this state tiered out
+    private LongHashSet coldEventNumbers;
+    // the cold bookings still in use, so that each is only read back from the store once
+    private WeakLongKeyMap<Booking> coldBookings;
+    // the event state whose performances cold bookings point at when they are read back
+    private IEventState coldEventState;
+    // the users bookers are resolved among, if this state was copied along with its users
+    private IUserState userState;
 
     public BookingState()
     {
         nextBookingNumber = 1;
-        bookings = new ArrayList<>();
+        bookings = new SegmentedArray<>();
+        bookingsByEvent = new LongKeyMap<>();
+        bookingsByPerformance = new LongKeyMap<>();
+        bookingsByPerformanceStart = new TreeMap<>();
+        coldEventNumbers = new LongHashSet();
+        coldBookings = new WeakLongKeyMap<>();
     }
 
     public BookingState(IBookingState other)
+    {
+        this(other, null);
+    }
+
+    /**
+     * Copy another booking state, pointing the copied bookings at the
+     * performances of an event state that was copied alongside it
+     * @param other the booking state to copy
+     * @param eventState the event state holding the performances of the copied bookings,
+     * or null to keep the performances of the original bookings
+     */
+    public BookingState(IBookingState other, IEventState eventState)
+    {
+        this(other, eventState, null);
+    }
+
+    /**
+     * Copy another booking state along with the event and user states that
+     * were copied alongside it, pointing the copied bookings at the copied
+     * performances and bookers
+     * @param other the booking state to copy
+     * @param eventState the event state holding the performances of the copied bookings,
+     * or null to keep the performances of the original bookings
+     * @param userState the user state holding the bookers of the copied bookings,
+     * or null to keep the bookers of the original bookings
+     */
+    public BookingState(IBookingState other, IEventState eventState, IUserState userState)
     {
         BookingState otherState = null;
 
@@ -39,14 +97,28 @@ public class BookingState implements IBookingState, Cloneable
         if(otherState != null)
         {
             this.nextBookingNumber = otherState.nextBookingNumber;
-            this.bookings = new ArrayList<>();
+            this.bookings = new SegmentedArray<>();
+            this.bookingsByEvent = new LongKeyMap<>(otherState.bookingsByEvent.size());
+            this.bookingsByPerformance = new LongKeyMap<>(otherState.bookingsByPerformance.size());
+            this.bookingsByPerformanceStart = new TreeMap<>();
+            // The cold bookings are read back from the shared store by the copy when it needs them
+            this.coldStore = otherState.coldStore;
+            this.coldEventNumbers = new LongHashSet();
+            for (long eventNumber: otherState.coldEventNumbers.toArray())
+            {
+                this.coldEventNumbers.add(eventNumber);
+            }
+            this.coldBookings = new WeakLongKeyMap<>();
+            this.coldEventState = eventState != null ? eventState : otherState.coldEventState;
+            this.userState = userState;
 
             for (Booking booking: otherState.bookings)
             {
-                Booking bookingCopy = new Booking(booking.getBookingNumber(), booking.getBooker(),
-                        booking.getEventPerformance(), booking.getNumTickets(), booking.getAmountPaid(),
+                Booking bookingCopy = new Booking(booking.getBookingNumber(), bookerFor(booking),
+                        performanceFor(booking, eventState), booking.getNumTickets(), booking.getAmountPaid(),
                         booking.getBookingDateTime());
-                this.bookings.add(bookingCopy);
+                bookingCopy.setStatus(booking.getStatus());
+                addBooking(bookingCopy);
             }
         }
         else
@@ -55,45 +127,330 @@ public class BookingState implements IBookingState, Cloneable
         }
     }
 
-    public Booking createBooking(Consumer booker, EventPerformance performance, int numTickets, double amountPaid)
+    /**
+     * Overloaded constructor for restoring the state, such as from a checkpoint
+     * @param bookings the bookings, which are not added to their bookers again
+     * @param nextBookingNumber the number the next booking created will get
+     */
+    public BookingState(List<Booking> bookings, long nextBookingNumber)
+    {
+        this();
+        this.nextBookingNumber = nextBookingNumber;
+        for (Booking booking: bookings)
+        {
+            addBooking(booking);
+        }
+    }
+
+    public synchronized long getNextBookingNumber()
+    {
+        return nextBookingNumber;
+    }
+
+    /**
+     * @return all bookings, including those tiered out to a cold store, in booking number order
+     */
+    public synchronized List<Booking> getAllBookings()
+    {
+        List<Booking> allBookings = new ArrayList<>();
+        for (Booking booking: bookings)
+        {
+            allBookings.add(booking);
+        }
+        if (coldEventNumbers.size() > 0)
+        {
+            for (long eventNumber: coldEventNumbers.toArray())
+            {
+                allBookings.addAll(coldBookingsOf(eventNumber));
+            }
+            allBookings.sort(Comparator.comparingLong(Booking::getBookingNumber));
+        }
+        return allBookings;
+    }
+
+    public synchronized Booking createBooking(Consumer booker, EventPerformance performance, int numTickets, double amountPaid)
+    {
+        return createBooking(booker, performance, numTickets, amountPaid, LocalDateTime.now());
+    }
+
+    public synchronized Booking createBooking(Consumer booker, EventPerformance performance, int numTickets,
+                                              double amountPaid, LocalDateTime bookingDateTime)
     {
         if (booker != null && performance != null && numTickets > 0)
         {
+            bringBack(performance.getEvent().getEventNumber());
             Booking newBooking = new Booking(nextBookingNumber++, booker, performance,
-                    numTickets, amountPaid, LocalDateTime.now());
-            bookings.add(newBooking);
+                    numTickets, amountPaid, bookingDateTime);
+            addBooking(newBooking);
             booker.addBooking(newBooking);
             return newBooking;
         }
         return null;
     }
 
-    public Booking findBookingByNumber(long bookingNumber)
+    public synchronized Booking findBookingByNumber(long bookingNumber)
     {
-        int i = 0;
-        while (i < bookings.size())
+        Booking booking = bookings.get(bookingNumber - 1);
+        if (booking == null && coldStore != null
+                && coldEventNumbers.contains(coldStore.findEventNumberOfBooking(bookingNumber)))
         {
-            Booking booking = bookings.get(i);
-            if (bookingNumber == booking.getBookingNumber())
+            booking = coldBooking(bookingNumber);
+        }
+        return booking;
+    }
+
+    /**
+     * Find all bookings made by the given consumer
+     * @param booker the consumer who made the bookings
+     * @return a new list of the booker's bookings in the order they were made
+     */
+    public synchronized List<Booking> findBookingsByBooker(Consumer booker)
+    {
+        return new ArrayList<>(booker.getBookings());
+    }
+
+    /**
+     * Find all bookings made for any performance of the given event
+     * @param eventNumber the number of the event
+     * @return a new list of the event's bookings in the order they were made, which
+     * the caller may keep or change without affecting this state
+     */
+    public synchronized List<Booking> findBookingsByEventNumber(long eventNumber)
+    {
+        if (coldEventNumbers.contains(eventNumber))
+        {
+            return coldBookingsOf(eventNumber);
+        }
+        return copyOf(bookingsByEvent.get(eventNumber));
+    }
+
+    /**
+     * Find all bookings made for the given performance
+     * @param performanceNumber the number of the performance
+     * @return a new list of the performance's bookings in the order they were made, which
+     * the caller may keep or change without affecting this state
+     */
+    public synchronized List<Booking> findBookingsByPerformanceNumber(long performanceNumber)
+    {
+        List<Booking> indexedBookings = bookingsByPerformance.get(performanceNumber);
+        if (indexedBookings == null && coldStore != null)
+        {
+            long eventNumber = coldStore.findEventNumberOfPerformance(performanceNumber);
+            if (coldEventNumbers.contains(eventNumber))
             {
-                return booking;
+                List<Booking> performanceBookings = new ArrayList<>();
+                for (Booking booking: coldBookingsOf(eventNumber))
+                {
+                    if (booking.getEventPerformance().getPerformanceNumber() == performanceNumber)
+                    {
+                        performanceBookings.add(booking);
+                    }
+                }
+                return performanceBookings;
             }
-            i++;
         }
-        return null;
+        return copyOf(indexedBookings);
+    }
+
+    /**
+     * Find the bookings made for performances starting within a time range,
+     * only visiting the start times inside the range. Bookings tiered out to a
+     * cold store are not included, as their events have ended or been cancelled
+     * @param startInclusive the earliest start time of the performances
+     * @param endInclusive the latest start time of the performances
+     * @return a new list of the bookings, ordered by the start time of their
+     * performance and then in the order they were made
+     */
+    public synchronized List<Booking> findBookingsByPerformanceStart(LocalDateTime startInclusive,
+                                                                     LocalDateTime endInclusive)
+    {
+        List<Booking> bookingsWithin = new ArrayList<>();
+        if (endInclusive.isBefore(startInclusive))
+        {
+            return bookingsWithin;
+        }
+        for (Map.Entry<LocalDateTime, List<Booking>> entry:
+                bookingsByPerformanceStart.subMap(startInclusive, true, endInclusive, true).entrySet())
+        {
+            bookingsWithin.addAll(entry.getValue());
+        }
+        return bookingsWithin;
+    }
+
+    /**
+     * Tier the bookings of events out to a cold store, dropping them from the
+     * booking list and indexes. They are read back from the store when they
+     * are looked up, pointing at the performances of the given event state.
+     * The bookings of an event are brought back once another booking is made
+     * for it, so that it can be tiered out again with all of them
+     * @param coldEvents the events whose bookings were appended to the store along with them
+     * @param coldStore the store the bookings were appended to
+     * @param eventState the event state the events were tiered out of
+     */
+    public synchronized void tierOut(List<Event> coldEvents, ColdEventStore coldStore, IEventState eventState)
+    {
+        this.coldStore = coldStore;
+        coldEventState = eventState;
+        for (Event event: coldEvents)
+        {
+            List<Booking> eventBookings = bookingsByEvent.remove(event.getEventNumber());
+            if (eventBookings != null)
+            {
+                for (Booking booking: eventBookings)
+                {
+                    bookings.set(booking.getBookingNumber() - 1, null);
+                    removeFromStartIndex(booking);
+                    coldBookings.put(booking.getBookingNumber(), booking);
+                }
+            }
+            for (EventPerformance performance: event.getPerformances())
+            {
+                bookingsByPerformance.remove(performance.getPerformanceNumber());
+            }
+            coldEventNumbers.add(event.getEventNumber());
+        }
+    }
+
+    /**
+     * Bring the bookings of an event this state tiered out back to the booking list and indexes
+     * @param eventNumber the number of the event
+     */
+    private void bringBack(long eventNumber)
+    {
+        if (!coldEventNumbers.contains(eventNumber))
+        {
+            return;
+        }
+        for (Booking booking: coldBookingsOf(eventNumber))
+        {
+            addBooking(booking);
+            coldBookings.remove(booking.getBookingNumber());
+        }
+        coldEventNumbers.remove(eventNumber);
     }
 
-    public List<Booking> findBookingsByEventNumber(long eventNumber)
+    /**
+     * Add a booking to the booking list and to the per-event
+     * and per-performance indexes
+     * @param booking the booking to add
+     */
+    private void addBooking(Booking booking)
     {
-        List<Booking> bookingsWithNumber = new ArrayList<>();
-        for (Booking booking : bookings)
+        bookings.set(booking.getBookingNumber() - 1, booking);
+        EventPerformance performance = booking.getEventPerformance();
+        bookingsFor(bookingsByEvent, performance.getEvent().getEventNumber()).add(booking);
+        bookingsFor(bookingsByPerformance, performance.getPerformanceNumber()).add(booking);
+        if (performance.getStartDateTime() != null)
         {
-            if (booking.getEventPerformance().getEvent().getEventNumber() == eventNumber)
+            bookingsByPerformanceStart.computeIfAbsent(performance.getStartDateTime(), start -> new ArrayList<>(1))
+                    .add(booking);
+        }
+    }
+
+    private void removeFromStartIndex(Booking booking)
+    {
+        LocalDateTime start = booking.getEventPerformance().getStartDateTime();
+        List<Booking> startBookings = start == null ? null : bookingsByPerformanceStart.get(start);
+        if (startBookings != null)
+        {
+            startBookings.remove(booking);
+            if (startBookings.isEmpty())
             {
-                bookingsWithNumber.add(booking);
+                bookingsByPerformanceStart.remove(start);
             }
         }
-        return bookingsWithNumber;
+    }
+
+    private List<Booking> coldBookingsOf(long eventNumber)
+    {
+        List<Booking> eventBookings = new ArrayList<>();
+        for (long bookingNumber: coldStore.findBookingNumbersOfEvent(eventNumber))
+        {
+            eventBookings.add(coldBooking(bookingNumber));
+        }
+        return eventBookings;
+    }
+
+    /**
+     * Find a booking this state tiered out, reading it back from the store if
+     * it is no longer in use and pointing it at the performance of the cold event state
+     */
+    private Booking coldBooking(long bookingNumber)
+    {
+        Booking booking = coldBookings.get(bookingNumber);
+        if (booking == null)
+        {
+            Booking storedBooking = coldStore.readBooking(bookingNumber);
+            EventPerformance performance = coldEventState.findPerformanceByNumber(
+                    storedBooking.getEventPerformance().getPerformanceNumber());
+            booking = new Booking(bookingNumber, bookerFor(storedBooking), performance,
+                    storedBooking.getNumTickets(), storedBooking.getAmountPaid(), storedBooking.getBookingDateTime());
+            booking.setStatus(storedBooking.getStatus());
+            coldBookings.put(bookingNumber, booking);
+        }
+        return booking;
+    }
+
+    /**
+     * @return the booker of the copy of a booking, which is the copy of its
+     * booker if the state was copied along with its users
+     */
+    private Consumer bookerFor(Booking booking)
+    {
+        Consumer booker = booking.getBooker();
+        if (userState == null || booker == null)
+        {
+            return booker;
+        }
+        User resolvedBooker = userState.resolveUser(booker);
+        return resolvedBooker instanceof Consumer ? (Consumer) resolvedBooker : booker;
+    }
+
+    /**
+     * Find the performance a copied booking should point at
+     * @param booking the original booking
+     * @param eventState the copied event state, or null
+     * @return the copy of the booking's performance in the given event state, or
+     * the original performance if there is no event state or it has no such copy
+     */
+    private static EventPerformance performanceFor(Booking booking, IEventState eventState)
+    {
+        EventPerformance performance = booking.getEventPerformance();
+        if (eventState == null)
+        {
+            return performance;
+        }
+        EventPerformance performanceCopy = eventState.findPerformanceByNumber(performance.getPerformanceNumber());
+        if (performanceCopy == null
+                || performanceCopy.getEvent().getEventNumber() != performance.getEvent().getEventNumber())
+        {
+            return performance;
+        }
+        return performanceCopy;
+    }
+
+    private static List<Booking> bookingsFor(LongKeyMap<List<Booking>> index, long key)
+    {
+        List<Booking> indexedBookings = index.get(key);
+        if (indexedBookings == null)
+        {
+            indexedBookings = new ArrayList<>();
+            index.put(key, indexedBookings);
+        }
+        return indexedBookings;
+    }
+
+    /**
+     * Copy an indexed list of bookings, so that callers never hold a list
+     * this state goes on changing, such as while commands run concurrently
+     */
+    private static List<Booking> copyOf(List<Booking> indexedBookings)
+    {
+        if (indexedBookings == null)
+        {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(indexedBookings);
     }
 
     @Override
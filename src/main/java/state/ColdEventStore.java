@@ -0,0 +1,423 @@
+package state;
+
+import model.Booking;
+import model.Event;
+import model.EventPerformance;
+import model.ModelCodec;
+import model.User;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * ColdEventStore holds events that no longer change, such as cancelled
+ * events and events whose performances have all ended, along with their
+ * bookings, so that they can be dropped from the lists and indexes that
+ * commands scan.
+ * <p>
+ * Events are appended in compressed segments of up to
+ * {@link #SEGMENT_EVENTS} events, each written by {@link ModelCodec} with
+ * the events first and their bookings after. Reading an event or booking
+ * back decompresses its whole segment. The store indexes which segment
+ * each event is in, and which event each performance and booking belongs
+ * to, so the states that tiered the events out can find them again by number.
+ * <p>
+ * The store is shared by every copy of the states that tier events out to
+ * it, and an event tiered out again replaces its older version in the
+ * indexes. Each state keeps track of which events it tiered out itself.
+ * The file holds the events of one running context; the command log and
+ * checkpoints are what survive a restart.
+ */
+public class ColdEventStore implements Closeable
+{
+    public static final int SEGMENT_EVENTS = 256;
+
+    private final FileChannel channel;
+    private final Deflater deflater;
+    private final Inflater inflater;
+    private final List<User> users;
+    private final Map<User, Integer> userIds;
+    // file offset of the segment each event is in, by event number
+    private final LongKeyMap<Long> segmentsByEvent;
+    // event number each performance and booking belongs to
+    private final LongKeyMap<Long> eventsByPerformance, eventsByBooking;
+    private final LongKeyMap<long[]> bookingsByEvent;
+    private ByteBuffer buffer;
+    private long end;
+    private int segmentCount;
+
+    /**
+     * Create a store over a new file
+     * @param path the file to keep the events in, replacing anything already in it
+     * @throws IOException if the file cannot be created
+     */
+    public ColdEventStore(Path path) throws IOException
+    {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        inflater = new Inflater();
+        users = new ArrayList<>();
+        userIds = new IdentityHashMap<>();
+        segmentsByEvent = new LongKeyMap<>();
+        eventsByPerformance = new LongKeyMap<>();
+        eventsByBooking = new LongKeyMap<>();
+        bookingsByEvent = new LongKeyMap<>();
+        buffer = ByteBuffer.allocate(1 << 16);
+    }
+
+    /**
+     * Append events and their bookings to the store
+     * @param events the events to append
+     * @param bookings the bookings of the events, which are written in the segment of their event
+     */
+    public void append(List<Event> events, List<Booking> bookings)
+    {
+        append(encode(events, bookings));
+    }
+
+    /**
+     * Append events encoded by this store, indexing them in place of any
+     * older versions
+     * @param encoded the events and bookings returned by encode
+     */
+    public synchronized void append(EncodedEvents encoded)
+    {
+        for (int i = 0; i < encoded.segments.size(); i++)
+        {
+            long offset = writeSegment(encoded.segments.get(i));
+            index(offset, encoded.segmentEvents.get(i), encoded.bookingsOfEvents);
+        }
+    }
+
+    /**
+     * Encode and compress events and their bookings into segments, without
+     * appending them, so that the work can be done while the events are only
+     * read. The store can still be read and appended to meanwhile
+     * @param events the events to encode
+     * @param bookings the bookings of the events, which are written in the segment of their event
+     * @return the encoded events, to pass to append
+     */
+    public EncodedEvents encode(List<Event> events, List<Booking> bookings)
+    {
+        LongKeyMap<List<Booking>> bookingsOfEvents = new LongKeyMap<>(events.size());
+        for (Booking booking: bookings)
+        {
+            long eventNumber = booking.getEventPerformance().getEvent().getEventNumber();
+            List<Booking> eventBookings = bookingsOfEvents.get(eventNumber);
+            if (eventBookings == null)
+            {
+                eventBookings = new ArrayList<>();
+                bookingsOfEvents.put(eventNumber, eventBookings);
+            }
+            eventBookings.add(booking);
+        }
+        EncodedEvents encoded = new EncodedEvents(bookingsOfEvents);
+        for (int first = 0; first < events.size(); first += SEGMENT_EVENTS)
+        {
+            List<Event> segmentEvents = events.subList(first, Math.min(first + SEGMENT_EVENTS, events.size()));
+            List<Booking> segmentBookings = new ArrayList<>();
+            for (Event event: segmentEvents)
+            {
+                List<Booking> eventBookings = bookingsOfEvents.get(event.getEventNumber());
+                if (eventBookings != null)
+                {
+                    segmentBookings.addAll(eventBookings);
+                }
+            }
+            encoded.segmentEvents.add(segmentEvents);
+            encoded.segments.add(encodeSegment(segmentEvents, segmentBookings));
+        }
+        return encoded;
+    }
+
+    /**
+     * Read an event back from the store
+     * @param eventNumber the number of the event
+     * @return a new copy of the latest version of the event appended, or null if it was never appended
+     */
+    public synchronized Event readEvent(long eventNumber)
+    {
+        Long offset = segmentsByEvent.get(eventNumber);
+        if (offset == null)
+        {
+            return null;
+        }
+        for (Object record: readSegment(offset))
+        {
+            if (record instanceof Event && ((Event) record).getEventNumber() == eventNumber)
+            {
+                return (Event) record;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read a booking back from the store, along with a new copy of its event
+     * @param bookingNumber the number of the booking
+     * @return a new copy of the booking, or null if it was never appended
+     */
+    public synchronized Booking readBooking(long bookingNumber)
+    {
+        Long eventNumber = eventsByBooking.get(bookingNumber);
+        if (eventNumber == null)
+        {
+            return null;
+        }
+        for (Object record: readSegment(segmentsByEvent.get(eventNumber)))
+        {
+            if (record instanceof Booking && ((Booking) record).getBookingNumber() == bookingNumber)
+            {
+                return (Booking) record;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of the event the performance belongs to, or -1 if it was never appended
+     */
+    public synchronized long findEventNumberOfPerformance(long performanceNumber)
+    {
+        Long eventNumber = eventsByPerformance.get(performanceNumber);
+        return eventNumber == null ? -1 : eventNumber;
+    }
+
+    /**
+     * @return the number of the event the booking was made for, or -1 if it was never appended
+     */
+    public synchronized long findEventNumberOfBooking(long bookingNumber)
+    {
+        Long eventNumber = eventsByBooking.get(bookingNumber);
+        return eventNumber == null ? -1 : eventNumber;
+    }
+
+    /**
+     * @return the numbers of the bookings appended along with the latest version of the event,
+     * in the order they were made
+     */
+    public synchronized long[] findBookingNumbersOfEvent(long eventNumber)
+    {
+        long[] bookingNumbers = bookingsByEvent.get(eventNumber);
+        return bookingNumbers == null ? new long[0] : bookingNumbers.clone();
+    }
+
+    /**
+     * @return the number of segments appended so far
+     */
+    public synchronized int getSegmentCount()
+    {
+        return segmentCount;
+    }
+
+    /**
+     * @return the size of the file in bytes
+     */
+    public synchronized long getSize()
+    {
+        return end;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        // Encoding holds the deflater while it looks up users, so the deflater is never taken under the store
+        synchronized (deflater)
+        {
+            deflater.end();
+        }
+        synchronized (this)
+        {
+            inflater.end();
+            channel.close();
+        }
+    }
+
+    /**
+     * Encode a segment as its compressed length, its uncompressed length and the compressed records
+     * @return the encoded segment, ready to write
+     */
+    private ByteBuffer encodeSegment(List<Event> events, List<Booking> bookings)
+    {
+        // The buffer and the deflater are only used to encode, so encoding does not hold off readers
+        synchronized (deflater)
+        {
+            while (true)
+            {
+                buffer.clear();
+                try
+                {
+                    ModelCodec.Encoder encoder = new ModelCodec.Encoder(this::userId);
+                    encoder.writeHeader(buffer);
+                    for (Event event: events)
+                    {
+                        encoder.writeEvent(buffer, event);
+                    }
+                    for (Booking booking: bookings)
+                    {
+                        encoder.writeBooking(buffer, booking);
+                    }
+                    break;
+                }
+                catch (BufferOverflowException e)
+                {
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                }
+            }
+            buffer.flip();
+            int rawLength = buffer.remaining();
+            deflater.reset();
+            deflater.setInput(buffer);
+            deflater.finish();
+            ByteBuffer compressed = ByteBuffer.allocate(2 * Integer.BYTES + rawLength + 64);
+            compressed.position(2 * Integer.BYTES);
+            while (!deflater.finished())
+            {
+                if (!compressed.hasRemaining())
+                {
+                    compressed = ByteBuffer.allocate(compressed.capacity() * 2).put(compressed.flip());
+                }
+                deflater.deflate(compressed);
+            }
+            return compressed.putInt(0, compressed.position() - 2 * Integer.BYTES)
+                    .putInt(Integer.BYTES, rawLength).flip();
+        }
+    }
+
+    /**
+     * Write an encoded segment at the end of the file
+     * @return the offset the segment was written at
+     */
+    private long writeSegment(ByteBuffer compressed)
+    {
+        long offset = end;
+        try
+        {
+            while (compressed.hasRemaining())
+            {
+                end += channel.write(compressed, end);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("The cold event store cannot be written", e);
+        }
+        segmentCount++;
+        return offset;
+    }
+
+    /**
+     * @return the events and bookings of the segment at the given offset, in the order they were written
+     */
+    private List<Object> readSegment(long offset)
+    {
+        try
+        {
+            ByteBuffer lengths = ByteBuffer.allocate(2 * Integer.BYTES);
+            readFully(lengths, offset);
+            ByteBuffer compressed = ByteBuffer.allocate(lengths.getInt(0));
+            readFully(compressed, offset + 2 * Integer.BYTES);
+            compressed.flip();
+            ByteBuffer raw = ByteBuffer.allocate(lengths.getInt(Integer.BYTES));
+            inflater.reset();
+            inflater.setInput(compressed);
+            while (raw.hasRemaining() && !inflater.finished())
+            {
+                inflater.inflate(raw);
+            }
+            raw.flip();
+            ModelCodec.Decoder decoder = new ModelCodec.Decoder(users::get);
+            decoder.readHeader(raw);
+            List<Object> records = new ArrayList<>();
+            while (raw.hasRemaining())
+            {
+                records.add(decoder.read(raw));
+            }
+            return records;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("The cold event store cannot be read", e);
+        }
+        catch (DataFormatException e)
+        {
+            throw new IllegalStateException("A segment of the cold event store is corrupt", e);
+        }
+    }
+
+    private void readFully(ByteBuffer target, long position) throws IOException
+    {
+        while (target.hasRemaining())
+        {
+            if (channel.read(target, position + target.position()) < 0)
+            {
+                throw new IOException("The cold event store ends in the middle of a segment");
+            }
+        }
+    }
+
+    private void index(long offset, List<Event> events, LongKeyMap<List<Booking>> bookingsOfEvents)
+    {
+        for (Event event: events)
+        {
+            long eventNumber = event.getEventNumber();
+            segmentsByEvent.put(eventNumber, offset);
+            for (EventPerformance performance: event.getPerformances())
+            {
+                eventsByPerformance.put(performance.getPerformanceNumber(), eventNumber);
+            }
+            List<Booking> eventBookings = bookingsOfEvents.get(eventNumber);
+            long[] bookingNumbers = new long[eventBookings == null ? 0 : eventBookings.size()];
+            for (int i = 0; i < bookingNumbers.length; i++)
+            {
+                bookingNumbers[i] = eventBookings.get(i).getBookingNumber();
+                eventsByBooking.put(bookingNumbers[i], eventNumber);
+            }
+            bookingsByEvent.put(eventNumber, bookingNumbers);
+        }
+    }
+
+    private synchronized int userId(User user)
+    {
+        Integer userId = userIds.get(user);
+        if (userId == null)
+        {
+            userId = users.size();
+            users.add(user);
+            userIds.put(user, userId);
+        }
+        return userId;
+    }
+
+    /**
+     * Events and their bookings encoded into compressed segments by a store,
+     * ready to be appended to it
+     */
+    public static final class EncodedEvents
+    {
+        private final List<List<Event>> segmentEvents;
+        private final List<ByteBuffer> segments;
+        private final LongKeyMap<List<Booking>> bookingsOfEvents;
+
+        private EncodedEvents(LongKeyMap<List<Booking>> bookingsOfEvents)
+        {
+            this.segmentEvents = new ArrayList<>();
+            this.segments = new ArrayList<>();
+            this.bookingsOfEvents = bookingsOfEvents;
+        }
+    }
+}
@@ -3,21 +3,77 @@ package state;
 import model.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
 public class EventState implements IEventState, Cloneable
 {
     List<Event> events;
+    // index of the same events keyed by event number, kept in step with the list above
+    private LongKeyMap<Event> eventsByNumber;
+    // the performances of all events, keyed by performance number
+    private LongKeyMap<EventPerformance> performancesByNumber;
+    // the performances of all events, ordered by start time
+    private PerformanceTimeIndex performancesByTime;
+    // the performances of all events, indexed by their attributes for preference matching
+    private PerformanceAttributeIndex performancesByAttributes;
+    // the (event title, start, end) timeslots taken by the performances of all events
+    private TitleTimeslotIndex performancesByTitleTimeslot;
+    // the ticketed events that are sponsored and still active, keyed by event number
+    private NavigableMap<Long, TicketedEvent> sponsoredActiveEvents;
     private long nextEventNumber, nextPerformanceNumber;
+    // the store events that will no longer change are tiered out to, if any have been
+    private ColdEventStore coldStore;
+    // the events this state tiered out, which are only found by number
+    private LongHashSet coldEventNumbers;
+    // the cold events still in use, so that each is only read back from the store once
+    private WeakLongKeyMap<Event> coldEvents;
+    // the timeslots taken by the performances of cold events
+    private TitleTimeslotIndex coldTimeslots;
+    // the sponsorship request of each cold event that has one, as requests are not written to the store
+    private LongKeyMap<SponsorshipRequest> coldRequests;
+    // the users organisers are resolved among, if this state was copied along with its users
+    private IUserState userState;
 
     public EventState()
     {
         events = new ArrayList<>();
+        eventsByNumber = new LongKeyMap<>();
+        performancesByNumber = new LongKeyMap<>();
+        performancesByTime = new PerformanceTimeIndex();
+        performancesByAttributes = new PerformanceAttributeIndex();
+        performancesByTitleTimeslot = new TitleTimeslotIndex();
+        sponsoredActiveEvents = new TreeMap<>();
         nextEventNumber = 1;
         nextPerformanceNumber = 1;
+        coldEventNumbers = new LongHashSet();
+        coldEvents = new WeakLongKeyMap<>();
+        coldTimeslots = new TitleTimeslotIndex();
+        coldRequests = new LongKeyMap<>();
     }
 
+    /**
+     * Overloaded constructor for copying the state. The copied events keep
+     * the organisers of the original events
+     * @param other the state to copy
+     */
     public EventState(IEventState other)
+    {
+        this(other, null);
+    }
+
+    /**
+     * Overloaded constructor for copying the state along with a user state
+     * that was copied alongside it. Each copied event gets its own copy of
+     * its sponsorship request, which a sponsorship state copy then adopts
+     * @param other the state to copy
+     * @param userState the user state holding the organisers of the copied events,
+     * or null to keep the organisers of the original events
+     */
+    public EventState(IEventState other, IUserState userState)
     {
         EventState otherState = null;
 
@@ -37,7 +93,29 @@ public class EventState implements IEventState, Cloneable
         {
             this.nextPerformanceNumber = otherState.nextPerformanceNumber;
             this.nextEventNumber = otherState.nextEventNumber;
-            this.events = new ArrayList<>();
+            this.events = new ArrayList<>(otherState.events.size());
+            this.eventsByNumber = new LongKeyMap<>(otherState.events.size());
+            this.performancesByNumber = new LongKeyMap<>(otherState.performancesByNumber.size());
+            this.performancesByTime = new PerformanceTimeIndex();
+            this.performancesByAttributes = new PerformanceAttributeIndex();
+            this.performancesByTitleTimeslot = new TitleTimeslotIndex();
+            this.sponsoredActiveEvents = new TreeMap<>();
+            // The cold events are read back from the shared store by the copy when it needs them
+            this.coldStore = otherState.coldStore;
+            this.coldEventNumbers = new LongHashSet();
+            for (long eventNumber: otherState.coldEventNumbers.toArray())
+            {
+                this.coldEventNumbers.add(eventNumber);
+            }
+            this.coldEvents = new WeakLongKeyMap<>();
+            this.coldTimeslots = new TitleTimeslotIndex(otherState.coldTimeslots);
+            this.coldRequests = new LongKeyMap<>(otherState.coldRequests.size());
+            for (long eventNumber: otherState.coldRequests.keys())
+            {
+                SponsorshipRequest request = otherState.coldRequests.get(eventNumber);
+                this.coldRequests.put(eventNumber, copyOf(request, request.getEvent()));
+            }
+            this.userState = userState;
 
             for (Event event: otherState.events)
             {
@@ -45,16 +123,20 @@ public class EventState implements IEventState, Cloneable
                 {
                     TicketedEvent currentEvent = (TicketedEvent) event;
                     TicketedEvent eventToAdd = new TicketedEvent(currentEvent.getEventNumber(),
-                            currentEvent.getOrganiser(), currentEvent.getTitle(), currentEvent.getType(),
+                            organiserFor(currentEvent), currentEvent.getTitle(), currentEvent.getType(),
                             currentEvent.getOriginalTicketPrice(), currentEvent.getNumTickets());
-                    this.events.add(eventToAdd);
+                    if (currentEvent.getSponsorshipRequest() != null)
+                    {
+                        eventToAdd.setSponsorshipRequest(copyOf(currentEvent.getSponsorshipRequest(), eventToAdd));
+                    }
+                    addEventCopy(currentEvent, eventToAdd);
                 }
                 else
                 {
                     NonTicketedEvent currentEvent = (NonTicketedEvent) event;
                     NonTicketedEvent eventToAdd = new NonTicketedEvent(currentEvent.getEventNumber(),
-                            currentEvent.getOrganiser(), currentEvent.getTitle(), currentEvent.getType());
-                    this.events.add(eventToAdd);
+                            organiserFor(currentEvent), currentEvent.getTitle(), currentEvent.getType());
+                    addEventCopy(currentEvent, eventToAdd);
                 }
             }
         }
@@ -64,26 +146,111 @@ public class EventState implements IEventState, Cloneable
         }
     }
 
+    /**
+     * Overloaded constructor for restoring the state, such as from a checkpoint
+     * @param events the events, with their performances and sponsorship requests
+     * @param nextEventNumber the number the next event created will get
+     * @param nextPerformanceNumber the number the next performance created will get
+     */
+    public EventState(List<Event> events, long nextEventNumber, long nextPerformanceNumber)
+    {
+        coldEventNumbers = new LongHashSet();
+        coldEvents = new WeakLongKeyMap<>();
+        coldTimeslots = new TitleTimeslotIndex();
+        coldRequests = new LongKeyMap<>();
+        setAllEvents(events);
+        this.nextEventNumber = nextEventNumber;
+        this.nextPerformanceNumber = nextPerformanceNumber;
+    }
+
+    public long getNextEventNumber()
+    {
+        return nextEventNumber;
+    }
+
+    public long getNextPerformanceNumber()
+    {
+        return nextPerformanceNumber;
+    }
+
+    /**
+     * Make room for events and performances about to be created, such as by
+     * a bulk import, so that the event list and indexes are not grown over and over
+     * @param additionalEvents the number of events about to be created
+     * @param additionalPerformances the number of performances about to be created
+     */
+    public void ensureCapacity(int additionalEvents, int additionalPerformances)
+    {
+        if (events instanceof ArrayList)
+        {
+            ((ArrayList<Event>) events).ensureCapacity(events.size() + additionalEvents);
+        }
+        eventsByNumber.ensureCapacity(eventsByNumber.size() + additionalEvents);
+        performancesByNumber.ensureCapacity(performancesByNumber.size() + additionalPerformances);
+    }
+
+    /**
+     * @return the events that have not been tiered out to a cold store, in the order they were created
+     */
     public List<Event> getAllEvents()
     {
         return events;
     }
 
+    /**
+     * @return every event, including those tiered out to a cold store, in event number order
+     */
+    public List<Event> getAllEventsIncludingCold()
+    {
+        List<Event> allEvents = new ArrayList<>(events);
+        for (long eventNumber: coldEventNumbers.toArray())
+        {
+            allEvents.add(coldEvent(eventNumber));
+        }
+        allEvents.sort(Comparator.comparingLong(Event::getEventNumber));
+        return allEvents;
+    }
+
     public void setAllEvents(List<Event> updatedEvents)
     {
         events = updatedEvents;
+        eventsByNumber = new LongKeyMap<>(updatedEvents.size());
+        performancesByNumber = new LongKeyMap<>();
+        performancesByTime = new PerformanceTimeIndex();
+        performancesByAttributes = new PerformanceAttributeIndex();
+        performancesByTitleTimeslot = new TitleTimeslotIndex();
+        sponsoredActiveEvents = new TreeMap<>();
+        for (Event event: updatedEvents)
+        {
+            // Keep the first event with a given number, as the old linear search did
+            event.setTitleListener(this::eventTitleChanged);
+            if (!eventsByNumber.containsKey(event.getEventNumber()))
+            {
+                eventsByNumber.put(event.getEventNumber(), event);
+                if (isSponsoredAndActive(event))
+                {
+                    sponsoredActiveEvents.put(event.getEventNumber(), (TicketedEvent) event);
+                }
+            }
+            for (EventPerformance performance: event.getPerformances())
+            {
+                indexPerformance(performance);
+            }
+        }
     }
 
+    /**
+     * @return the event with the given number, read back from the cold store if it was tiered out,
+     * or null if there is no such event
+     */
     public Event findEventByNumber(long eventNumber)
     {
-        for (Event event: events)
+        Event event = eventsByNumber.get(eventNumber);
+        if (event == null && coldEventNumbers.contains(eventNumber))
         {
-            if (event.getEventNumber() == eventNumber)
-            {
-                return event;
-            }
+            event = coldEvent(eventNumber);
         }
-        return null;
+        return event;
     }
 
     public NonTicketedEvent createNonTicketedEvent(EntertainmentProvider organiser,
@@ -94,7 +261,7 @@ public class EventState implements IEventState, Cloneable
         {
             NonTicketedEvent newEvent = new NonTicketedEvent(nextEventNumber++,
                     organiser, title, type);
-            events.add(newEvent);
+            addEvent(newEvent);
             return newEvent;
         }
         return null;
@@ -108,7 +275,7 @@ public class EventState implements IEventState, Cloneable
     {
         TicketedEvent newEvent = new TicketedEvent(nextEventNumber++,
                 organiser, title, type, ticketPrice, numTickets);
-        events.add(newEvent);
+        addEvent(newEvent);
         return newEvent;
     }
 
@@ -125,16 +292,324 @@ public class EventState implements IEventState, Cloneable
     {
         if (event != null)
         {
+            bringBack(event, event.getTitle());
             EventPerformance newPerformance = new EventPerformance(nextPerformanceNumber++,
                     event, venueAddress, startDateTime, endDateTime, performerNames,
                     hasSocialDistancing, hasAirFiltration, isOutdoors, capacityLimit,
                     venueSize);
             event.addPerformance(newPerformance);
+            indexPerformance(newPerformance);
             return newPerformance;
         }
         return null;
     }
 
+    public boolean isTitleTimeslotTaken(String title, LocalDateTime startDateTime, LocalDateTime endDateTime)
+    {
+        return performancesByTitleTimeslot.isTaken(title, startDateTime, endDateTime)
+                || coldTimeslots.isTaken(title, startDateTime, endDateTime);
+    }
+
+    /**
+     * Record that the sponsorship request of a ticketed event was accepted
+     * @param event the event whose sponsorship request was accepted
+     */
+    public void sponsorshipAccepted(TicketedEvent event)
+    {
+        if (isSponsoredAndActive(event) && findEventByNumber(event.getEventNumber()) == event)
+        {
+            sponsoredActiveEvents.put(event.getEventNumber(), event);
+        }
+    }
+
+    /**
+     * Cancel an event, dropping it from the sponsored active events
+     * @param event the event to cancel
+     */
+    public void cancelEvent(Event event)
+    {
+        bringBack(event, event.getTitle());
+        event.cancel();
+        sponsoredActiveEvents.remove(event.getEventNumber(), event);
+    }
+
+    /**
+     * @return the ticketed events that are sponsored and active, in event number order
+     */
+    public List<TicketedEvent> getSponsoredActiveEvents()
+    {
+        List<TicketedEvent> events = new ArrayList<>(sponsoredActiveEvents.size());
+        for (TicketedEvent event: sponsoredActiveEvents.values())
+        {
+            // Status changes made directly on an event are not recorded, so check again
+            if (isSponsoredAndActive(event))
+            {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    public EventPerformance findPerformanceByNumber(long performanceNumber)
+    {
+        EventPerformance performance = performancesByNumber.get(performanceNumber);
+        if (performance == null && coldStore != null)
+        {
+            long eventNumber = coldStore.findEventNumberOfPerformance(performanceNumber);
+            if (coldEventNumbers.contains(eventNumber))
+            {
+                performance = coldEvent(eventNumber).getPerformanceByNumber(performanceNumber);
+            }
+        }
+        return performance;
+    }
+
+    /**
+     * Find the events that will no longer change, which are the cancelled
+     * events and the events with performances that have all ended
+     * @param now the current time
+     * @return the events that can be tiered out, in the order they were created
+     */
+    public List<Event> findColdEvents(LocalDateTime now)
+    {
+        List<Event> found = new ArrayList<>();
+        for (Event event: events)
+        {
+            if (event.getStatus() == EventStatus.CANCELLED || allPerformancesEnded(event, now))
+            {
+                found.add(event);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Tier events out to a cold store, dropping them from the event list and
+     * the performance indexes. They are read back from the store when they
+     * are looked up by number, and their timeslots stay taken. An event that
+     * is changed once it was tiered out, such as by adding a performance to it,
+     * is brought back to the event list, as the store keeps the version it had
+     * @param eventsToTier events of this state, already appended to the store
+     * @param coldStore the store the events were appended to
+     */
+    public void tierOut(List<Event> eventsToTier, ColdEventStore coldStore)
+    {
+        this.coldStore = coldStore;
+        for (Event event: eventsToTier)
+        {
+            long eventNumber = event.getEventNumber();
+            eventsByNumber.remove(eventNumber);
+            sponsoredActiveEvents.remove(eventNumber);
+            coldEventNumbers.add(eventNumber);
+            coldEvents.put(eventNumber, event);
+            if (event instanceof TicketedEvent && ((TicketedEvent) event).getSponsorshipRequest() != null)
+            {
+                coldRequests.put(eventNumber, ((TicketedEvent) event).getSponsorshipRequest());
+            }
+            for (EventPerformance performance: event.getPerformances())
+            {
+                performancesByNumber.remove(performance.getPerformanceNumber());
+                performancesByTime.remove(performance);
+                performancesByAttributes.remove(performance);
+                performancesByTitleTimeslot.remove(event.getTitle(), performance);
+                coldTimeslots.add(event.getTitle(), performance);
+            }
+        }
+        events.removeIf(event -> coldEventNumbers.contains(event.getEventNumber()));
+    }
+
+    public List<EventPerformance> findPerformancesWithin(LocalDateTime windowStart,
+                                                         LocalDateTime windowEnd)
+    {
+        return performancesByTime.findPerformancesWithin(windowStart, windowEnd);
+    }
+
+    public List<EventPerformance> findPerformancesMatching(ConsumerPreferences preferences)
+    {
+        return performancesByAttributes.findMatching(preferences);
+    }
+
+    /**
+     * Append an event to the event list and index it by its number
+     * @param event the event to add
+     */
+    private void addEvent(Event event)
+    {
+        events.add(event);
+        eventsByNumber.put(event.getEventNumber(), event);
+        event.setTitleListener(this::eventTitleChanged);
+    }
+
+    /**
+     * Move the performances of an event whose title changed to the timeslots of its new title
+     * @param event the event that was renamed
+     * @param oldTitle the title the event had before
+     */
+    private void eventTitleChanged(Event event, String oldTitle)
+    {
+        if (coldEventNumbers.contains(event.getEventNumber()))
+        {
+            bringBack(event, oldTitle);
+            return;
+        }
+        for (EventPerformance performance: event.getPerformances())
+        {
+            performancesByTitleTimeslot.remove(oldTitle, performance);
+            performancesByTitleTimeslot.add(event.getTitle(), performance);
+        }
+    }
+
+    /**
+     * Bring an event this state tiered out back to the event list and the
+     * performance indexes before it changes, as the store only keeps the
+     * version it had when it was tiered out
+     * @param event the event about to change, or that was just renamed
+     * @param coldTitle the title its performances take timeslots under among the cold events
+     */
+    private void bringBack(Event event, String coldTitle)
+    {
+        long eventNumber = event.getEventNumber();
+        if (!coldEventNumbers.contains(eventNumber))
+        {
+            return;
+        }
+        coldEventNumbers.remove(eventNumber);
+        coldEvents.remove(eventNumber);
+        coldRequests.remove(eventNumber);
+        // The event list is in the order the events were created, which is their number order
+        int position = Collections.binarySearch(events, event, Comparator.comparingLong(Event::getEventNumber));
+        events.add(position < 0 ? -position - 1 : position, event);
+        eventsByNumber.put(eventNumber, event);
+        for (EventPerformance performance: event.getPerformances())
+        {
+            coldTimeslots.remove(coldTitle, performance);
+            indexPerformance(performance);
+        }
+        if (isSponsoredAndActive(event))
+        {
+            sponsoredActiveEvents.put(eventNumber, (TicketedEvent) event);
+        }
+    }
+
+    /**
+     * Add the copy of an event, giving it the status and a copy of
+     * each performance of the original event
+     * @param event the original event
+     * @param eventCopy the copy of the event to add
+     */
+    private void addEventCopy(Event event, Event eventCopy)
+    {
+        eventCopy.setStatus(event.getStatus());
+        addEvent(eventCopy);
+        for (EventPerformance performance: event.getPerformances())
+        {
+            List<String> performerNames = performance.getPerformerNames();
+            EventPerformance performanceCopy = new EventPerformance(performance.getPerformanceNumber(),
+                    eventCopy, performance.getVenueAddress(), performance.getStartDateTime(),
+                    performance.getEndDateTime(), performerNames == null ? null : new ArrayList<>(performerNames),
+                    performance.hasSocialDistancing(), performance.hasAirFiltration(), performance.isOutdoors(),
+                    performance.getCapacityLimit(), performance.getVenueSize());
+            eventCopy.addPerformance(performanceCopy);
+            indexPerformance(performanceCopy);
+        }
+        if (isSponsoredAndActive(eventCopy))
+        {
+            sponsoredActiveEvents.put(eventCopy.getEventNumber(), (TicketedEvent) eventCopy);
+        }
+    }
+
+    /**
+     * Find an event this state tiered out, reading it back from the store if it is no longer in use
+     */
+    private Event coldEvent(long eventNumber)
+    {
+        synchronized (coldEvents)
+        {
+            Event event = coldEvents.get(eventNumber);
+            if (event == null)
+            {
+                event = coldStore.readEvent(eventNumber);
+                // The store keeps the organisers the events had when they were tiered out
+                event.setOrganiser(organiserFor(event));
+                SponsorshipRequest request = coldRequests.get(eventNumber);
+                if (request != null)
+                {
+                    ((TicketedEvent) event).setSponsorshipRequest(request);
+                    request.setEvent((TicketedEvent) event);
+                }
+                event.setTitleListener(this::eventTitleChanged);
+                coldEvents.put(eventNumber, event);
+            }
+            return event;
+        }
+    }
+
+    /**
+     * @return the organiser of the copy of an event, which is the copy of its
+     * organiser if the state was copied along with its users
+     */
+    private EntertainmentProvider organiserFor(Event event)
+    {
+        EntertainmentProvider organiser = event.getOrganiser();
+        if (userState == null || organiser == null)
+        {
+            return organiser;
+        }
+        User resolvedOrganiser = userState.resolveUser(organiser);
+        return resolvedOrganiser instanceof EntertainmentProvider
+                ? (EntertainmentProvider) resolvedOrganiser : organiser;
+    }
+
+    /**
+     * Copy a sponsorship request, with its status and the decision made on it
+     * @param request the request to copy
+     * @param eventCopy the event the copy is for
+     * @return the copy of the request
+     */
+    private static SponsorshipRequest copyOf(SponsorshipRequest request, TicketedEvent eventCopy)
+    {
+        SponsorshipRequest requestCopy = new SponsorshipRequest(request.getRequestNumber(), eventCopy);
+        if (request.getStatus() == SponsorshipStatus.ACCEPTED)
+        {
+            requestCopy.accept(request.getSponsoredPricePercent(), request.getSponsorAccountEmail());
+        }
+        else if (request.getStatus() == SponsorshipStatus.REJECTED)
+        {
+            requestCopy.reject();
+        }
+        return requestCopy;
+    }
+
+    private static boolean allPerformancesEnded(Event event, LocalDateTime now)
+    {
+        if (event.getPerformances().isEmpty())
+        {
+            return false;
+        }
+        for (EventPerformance performance: event.getPerformances())
+        {
+            if (performance.getEndDateTime() == null || !performance.getEndDateTime().isBefore(now))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSponsoredAndActive(Event event)
+    {
+        return event instanceof TicketedEvent && ((TicketedEvent) event).isSponsored()
+                && event.getStatus().equals(EventStatus.ACTIVE);
+    }
+
+    private void indexPerformance(EventPerformance performance)
+    {
+        performancesByNumber.put(performance.getPerformanceNumber(), performance);
+        performancesByTime.add(performance);
+        performancesByAttributes.add(performance);
+        performancesByTitleTimeslot.add(performance);
+    }
+
     @Override
     public Object clone() throws CloneNotSupportedException
     {
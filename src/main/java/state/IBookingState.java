@@ -3,6 +3,8 @@ package state;
 import model.Booking;
 import model.Consumer;
 import model.EventPerformance;
+
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface IBookingState
@@ -10,8 +12,37 @@ public interface IBookingState
     public Booking createBooking(Consumer booker, EventPerformance performance,
                                  int numTickets, double amountPaid);
 
+    /**
+     * @param bookingDateTime the time the booking is made at, such as the time the command making it runs at
+     */
+    public Booking createBooking(Consumer booker, EventPerformance performance,
+                                 int numTickets, double amountPaid, LocalDateTime bookingDateTime);
+
     public Booking findBookingByNumber(long bookingNumber);
 
+    /**
+     * @return a new list of the event's bookings, which stays the same as further bookings are made
+     */
     public List<Booking> findBookingsByEventNumber(long eventNumber);
 
+    /**
+     * @return a new list of the performance's bookings, which stays the same as further bookings are made
+     */
+    public List<Booking> findBookingsByPerformanceNumber(long performanceNumber);
+
+    /**
+     * @return a new list of the booker's bookings in the order they were made
+     */
+    public List<Booking> findBookingsByBooker(Consumer booker);
+
+    /**
+     * @return a new list of the bookings for performances starting within the range, both ends included,
+     * ordered by the start time of their performance and then in the order they were made
+     */
+    public List<Booking> findBookingsByPerformanceStart(LocalDateTime startInclusive, LocalDateTime endInclusive);
+
+    public long getNextBookingNumber();
+
+    public List<Booking> getAllBookings();
+
 }
@@ -8,6 +8,11 @@ import java.util.List;
 /**
  * IEventState is an interface representing the portion
  * of application state that contains all the Event information.
+ * Commands reach the event state only through this interface. EventState,
+ * which holds every event on the heap, is the only implementation: users,
+ * bookings and sponsorship requests refer to events directly, so an
+ * implementation that kept events on disk would save no heap until they
+ * refer to events by number instead.
  *
  * @author Ignas
  * @version 1.0
@@ -15,6 +20,10 @@ import java.util.List;
 public interface IEventState
 {
 
+    public long getNextEventNumber();
+
+    public long getNextPerformanceNumber();
+
     public List<Event> getAllEvents();
 
     public Event findEventByNumber(long eventNumber);
@@ -39,4 +48,19 @@ public interface IEventState
                                              boolean isOutdoors,
                                              int capacityLimit,
                                              int venueSize);
+
+    public boolean isTitleTimeslotTaken(String title, LocalDateTime startDateTime, LocalDateTime endDateTime);
+
+    public void sponsorshipAccepted(TicketedEvent event);
+
+    public void cancelEvent(Event event);
+
+    public List<TicketedEvent> getSponsoredActiveEvents();
+
+    public EventPerformance findPerformanceByNumber(long performanceNumber);
+
+    public List<EventPerformance> findPerformancesWithin(LocalDateTime windowStart,
+                                                         LocalDateTime windowEnd);
+
+    public List<EventPerformance> findPerformancesMatching(ConsumerPreferences preferences);
 }
@@ -1,5 +1,6 @@
 package state;
 
+import model.EntertainmentProvider;
 import model.User;
 import java.util.Map;
 
@@ -9,7 +10,23 @@ public interface IUserState
 
     public Map<String, User> getAllUsers();
 
+    public boolean isOrganisationRegistered(String orgName, String orgAddress);
+
+    public void updateOrganisation(EntertainmentProvider provider, String newOrgName, String newOrgAddress);
+
+    /**
+     * @return the user registered in this state with the same email as the given user, such as
+     * the copy of a user held by another state, or the given user if there is none
+     */
+    public User resolveUser(User user);
+
     public User getCurrentUser();
 
     public void setCurrentUser(User user);
+
+    public void bindSession(Session session);
+
+    public void unbindSession();
+
+    public Session getBoundSession();
 }
@@ -0,0 +1,573 @@
+package state;
+
+import model.Booking;
+import model.BookingStatus;
+import model.Consumer;
+import model.EventPerformance;
+import model.User;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * JournaledBookingState keeps its bookings in a {@link BookingJournal}
+ * rather than on the heap. Booking number n is record n - 1 of the journal,
+ * and the bookings of each event, performance and booker are indexed by
+ * their record indexes, so a booking is only read back from the journal when
+ * it is asked for. The most recently used bookings are kept on the heap, and
+ * bookers do not hold their bookings.
+ * <p>
+ * A copy of the state shares the journal, and only sees the records that
+ * were in it when it was copied. Each copy keeps the statuses it sees that
+ * are not active, and writes them through to the journal. Once a copy
+ * creates a booking or changes a status after another copy has, the records
+ * appended after the copy was made are dropped and the statuses in the
+ * journal are put back to those the copy sees, as the controller only
+ * carries on from a copy when the commands since have been rolled back.
+ */
+public class JournaledBookingState implements IBookingState
+{
+    public static final int DEFAULT_HOT_BOOKINGS = 1 << 16;
+
+    private final BookingJournal journal;
+    private final IUserState userState;
+    // the bookers behind the ids in the journal, resolved among the users of this state
+    private final Map<Consumer, Integer> bookerIds;
+    private final List<Consumer> bookers;
+    private final IEventState eventState;
+    // shared by every copy of the state, and guarded by the journal
+    private final Indexes indexes;
+    private final int hotBookingCount;
+    private final Map<Long, Booking> hotBookings;
+    // the statuses of the records this state sees that are not active
+    private final Map<Integer, BookingStatus> statuses;
+    // number of journal records this state sees
+    private int visibleRecords;
+
+    /**
+     * @param journal the journal to keep the bookings in, whose existing records become the state's bookings
+     * @param userState the users to find the bookers of existing records among
+     * @param eventState the events to find the performances of bookings among
+     */
+    public JournaledBookingState(BookingJournal journal, IUserState userState, IEventState eventState)
+    {
+        this(journal, userState, eventState, DEFAULT_HOT_BOOKINGS);
+    }
+
+    /**
+     * @param hotBookingCount the number of recently used bookings kept on the heap
+     */
+    public JournaledBookingState(BookingJournal journal, IUserState userState, IEventState eventState,
+                                 int hotBookingCount)
+    {
+        this.journal = journal;
+        this.userState = userState;
+        this.eventState = eventState;
+        bookerIds = new IdentityHashMap<>();
+        bookers = new ArrayList<>();
+        indexes = new Indexes();
+        this.hotBookingCount = hotBookingCount;
+        hotBookings = newHotBookings(hotBookingCount);
+        statuses = new HashMap<>();
+        synchronized (journal)
+        {
+            visibleRecords = journal.size();
+            for (int record = 0; record < visibleRecords; record++)
+            {
+                indexes.add(record, journal.getEventNumber(record), journal.getPerformanceNumber(record),
+                        startOf(journal.getPerformanceNumber(record)), journal.getBookerId(record));
+                BookingStatus status = journal.getStatus(record);
+                if (status != BookingStatus.ACTIVE)
+                {
+                    statuses.put(record, status);
+                    indexes.notActive.add(record);
+                }
+            }
+            indexes.writer = statuses;
+        }
+    }
+
+    /**
+     * Overloaded constructor for copying the state, pointing the bookings read
+     * back by the copy at the performances of an event state that was copied alongside it
+     * @param other the state to copy
+     * @param eventState the event state holding the performances of the copied bookings
+     */
+    public JournaledBookingState(JournaledBookingState other, IEventState eventState)
+    {
+        this(other, eventState, other.userState);
+    }
+
+    /**
+     * Overloaded constructor for copying the state along with the event and
+     * user states that were copied alongside it, pointing the bookings read back
+     * by the copy at the copied performances and bookers
+     * @param other the state to copy
+     * @param eventState the event state holding the performances of the copied bookings
+     * @param userState the user state holding the bookers of the copied bookings
+     */
+    public JournaledBookingState(JournaledBookingState other, IEventState eventState, IUserState userState)
+    {
+        this.journal = other.journal;
+        this.userState = userState;
+        this.eventState = eventState;
+        bookerIds = new IdentityHashMap<>();
+        bookers = new ArrayList<>();
+        indexes = other.indexes;
+        hotBookingCount = other.hotBookingCount;
+        hotBookings = newHotBookings(hotBookingCount);
+        synchronized (journal)
+        {
+            statuses = new HashMap<>(other.statuses);
+            visibleRecords = other.visibleRecords;
+            for (int bookerId = 0; bookerId < other.bookers.size(); bookerId++)
+            {
+                Consumer booker = other.bookers.get(bookerId);
+                User resolvedBooker = booker == null ? null : userState.resolveUser(booker);
+                if (resolvedBooker instanceof Consumer)
+                {
+                    bookerIds.putIfAbsent((Consumer) resolvedBooker, bookerId);
+                    resolved(bookerId, (Consumer) resolvedBooker);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Booking createBooking(Consumer booker, EventPerformance performance, int numTickets, double amountPaid)
+    {
+        return createBooking(booker, performance, numTickets, amountPaid, LocalDateTime.now());
+    }
+
+    @Override
+    public Booking createBooking(Consumer booker, EventPerformance performance, int numTickets, double amountPaid,
+                                 LocalDateTime bookingDateTime)
+    {
+        if (booker == null || performance == null || numTickets <= 0)
+        {
+            return null;
+        }
+        synchronized (journal)
+        {
+            takeOverJournal();
+            long bookingNumber = visibleRecords + 1;
+            long eventNumber = performance.getEvent().getEventNumber();
+            int bookerId = bookerIdOf(booker);
+            int record = journal.append(bookingNumber, eventNumber, performance.getPerformanceNumber(),
+                    bookerId, numTickets, amountPaid, bookingDateTime, BookingStatus.ACTIVE);
+            indexes.add(record, eventNumber, performance.getPerformanceNumber(), performance.getStartDateTime(),
+                    bookerId);
+            visibleRecords = record + 1;
+            Booking newBooking = new JournaledBooking(this, record, bookingNumber, booker, performance,
+                    numTickets, amountPaid, bookingDateTime);
+            hotBookings.put(bookingNumber, newBooking);
+            return newBooking;
+        }
+    }
+
+    @Override
+    public Booking findBookingByNumber(long bookingNumber)
+    {
+        synchronized (journal)
+        {
+            if (bookingNumber < 1 || bookingNumber > visibleRecords)
+            {
+                return null;
+            }
+            return bookingAt((int) (bookingNumber - 1));
+        }
+    }
+
+    /**
+     * Find all bookings made for any performance of the given event
+     * @param eventNumber the number of the event
+     * @return the event's bookings in the order they were made
+     */
+    @Override
+    public List<Booking> findBookingsByEventNumber(long eventNumber)
+    {
+        synchronized (journal)
+        {
+            return bookingsAt(indexes.byEvent.get(eventNumber));
+        }
+    }
+
+    /**
+     * Find all bookings made for the given performance
+     * @param performanceNumber the number of the performance
+     * @return the performance's bookings in the order they were made
+     */
+    @Override
+    public List<Booking> findBookingsByPerformanceNumber(long performanceNumber)
+    {
+        synchronized (journal)
+        {
+            return bookingsAt(indexes.byPerformance.get(performanceNumber));
+        }
+    }
+
+    /**
+     * Find all bookings made by the given consumer
+     * @param booker the consumer who made the bookings
+     * @return the booker's bookings in the order they were made
+     */
+    @Override
+    public List<Booking> findBookingsByBooker(Consumer booker)
+    {
+        synchronized (journal)
+        {
+            int bookerId = findBookerId(booker);
+            return bookerId < 0 ? new ArrayList<>() : bookingsAt(indexes.byBooker.get(bookerId));
+        }
+    }
+
+    /**
+     * Find the bookings made for performances starting within a time range
+     * @param startInclusive the earliest start time of the performances
+     * @param endInclusive the latest start time of the performances
+     * @return the bookings, ordered by the start time of their performance and then in the order they were made
+     */
+    @Override
+    public List<Booking> findBookingsByPerformanceStart(LocalDateTime startInclusive, LocalDateTime endInclusive)
+    {
+        List<Booking> bookings = new ArrayList<>();
+        if (endInclusive.isBefore(startInclusive))
+        {
+            return bookings;
+        }
+        synchronized (journal)
+        {
+            for (RecordList records: indexes.byPerformanceStart.subMap(startInclusive, true, endInclusive, true)
+                    .values())
+            {
+                bookings.addAll(bookingsAt(records));
+            }
+        }
+        return bookings;
+    }
+
+    @Override
+    public long getNextBookingNumber()
+    {
+        synchronized (journal)
+        {
+            return visibleRecords + 1;
+        }
+    }
+
+    /**
+     * @return all bookings, in booking number order, each read back from the journal if it is not hot
+     */
+    @Override
+    public List<Booking> getAllBookings()
+    {
+        synchronized (journal)
+        {
+            List<Booking> allBookings = new ArrayList<>(visibleRecords);
+            for (int record = 0; record < visibleRecords; record++)
+            {
+                allBookings.add(bookingAt(record));
+            }
+            return allBookings;
+        }
+    }
+
+    /**
+     * @return a map of booking numbers to bookings that only keeps the most recently used bookings
+     */
+    private static Map<Long, Booking> newHotBookings(int hotBookingCount)
+    {
+        return new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Booking> eldest)
+            {
+                return size() > hotBookingCount;
+            }
+        };
+    }
+
+    private List<Booking> bookingsAt(RecordList records)
+    {
+        List<Booking> bookings = new ArrayList<>();
+        if (records == null)
+        {
+            return bookings;
+        }
+        // Records are indexed in the order they were appended, so those this state sees come first
+        for (int i = 0; i < records.size && records.records[i] < visibleRecords; i++)
+        {
+            bookings.add(bookingAt(records.records[i]));
+        }
+        return bookings;
+    }
+
+    private LocalDateTime startOf(long performanceNumber)
+    {
+        EventPerformance performance = eventState.findPerformanceByNumber(performanceNumber);
+        return performance == null ? null : performance.getStartDateTime();
+    }
+
+    /**
+     * Find the booking of a record, reading it back from the journal if it is not hot
+     */
+    private Booking bookingAt(int record)
+    {
+        long bookingNumber = record + 1L;
+        Booking booking = hotBookings.get(bookingNumber);
+        if (booking == null)
+        {
+            EventPerformance performance = eventState.findPerformanceByNumber(journal.getPerformanceNumber(record));
+            booking = new JournaledBooking(this, record, journal.getBookingNumber(record),
+                    bookerOf(journal.getBookerId(record)), performance,
+                    journal.getNumTickets(record), journal.getAmountPaid(record),
+                    journal.getBookingDateTime(record));
+            hotBookings.put(bookingNumber, booking);
+        }
+        return booking;
+    }
+
+    private int bookerIdOf(Consumer booker)
+    {
+        int bookerId = findBookerId(booker);
+        if (bookerId < 0)
+        {
+            bookerId = journal.addBooker(booker.getEmail());
+            bookerIds.put(booker, bookerId);
+            resolved(bookerId, booker);
+        }
+        return bookerId;
+    }
+
+    /**
+     * Find the id of a booker, looking it up by their email if this state has not seen them yet
+     * @return the booker's id, or -1 if they have none
+     */
+    private int findBookerId(Consumer booker)
+    {
+        Integer bookerId = bookerIds.get(booker);
+        if (bookerId != null)
+        {
+            return bookerId;
+        }
+        int foundId = journal.findBooker(booker.getEmail());
+        return foundId >= 0 && bookerOf(foundId) == booker ? foundId : -1;
+    }
+
+    /**
+     * Find the booker behind an id, looking up bookers this state has not
+     * seen yet, such as those of records that were in the journal when it was
+     * opened or that another copy of the state appended, by their email
+     */
+    private Consumer bookerOf(int bookerId)
+    {
+        Consumer booker = bookerId < bookers.size() ? bookers.get(bookerId) : null;
+        if (booker == null)
+        {
+            User user = userState.getAllUsers().get(journal.getBookerEmail(bookerId));
+            if (user instanceof Consumer)
+            {
+                booker = (Consumer) user;
+                bookerIds.putIfAbsent(booker, bookerId);
+                resolved(bookerId, booker);
+            }
+        }
+        return booker;
+    }
+
+    private void resolved(int bookerId, Consumer booker)
+    {
+        while (bookers.size() <= bookerId)
+        {
+            bookers.add(null);
+        }
+        bookers.set(bookerId, booker);
+    }
+
+    private BookingStatus statusOf(int record)
+    {
+        synchronized (journal)
+        {
+            return statuses.getOrDefault(record, BookingStatus.ACTIVE);
+        }
+    }
+
+    private void setStatus(int record, BookingStatus status)
+    {
+        synchronized (journal)
+        {
+            takeOverJournal();
+            if (status == BookingStatus.ACTIVE)
+            {
+                statuses.remove(record);
+            }
+            else
+            {
+                statuses.put(record, status);
+            }
+            writeStatus(record, status);
+        }
+    }
+
+    /**
+     * Make the journal hold what this state sees, if another copy of the
+     * state wrote to it last: drop the records appended after this state was
+     * copied, and put back the statuses this state sees
+     */
+    private void takeOverJournal()
+    {
+        if (journal.size() > visibleRecords)
+        {
+            dropRecordsFrom(visibleRecords);
+        }
+        if (indexes.writer != statuses)
+        {
+            Set<Integer> changed = new HashSet<>(indexes.notActive);
+            changed.addAll(statuses.keySet());
+            for (int record: changed)
+            {
+                writeStatus(record, statusOf(record));
+            }
+            indexes.writer = statuses;
+        }
+    }
+
+    private void writeStatus(int record, BookingStatus status)
+    {
+        journal.setStatus(record, status);
+        if (status == BookingStatus.ACTIVE)
+        {
+            indexes.notActive.remove(record);
+        }
+        else
+        {
+            indexes.notActive.add(record);
+        }
+    }
+
+    /**
+     * Drop the records that were rolled back from the journal and the indexes
+     */
+    private void dropRecordsFrom(int firstDropped)
+    {
+        for (int record = journal.size() - 1; record >= firstDropped; record--)
+        {
+            indexes.byEvent.get(journal.getEventNumber(record)).removeLast(record);
+            indexes.byPerformance.get(journal.getPerformanceNumber(record)).removeLast(record);
+            indexes.byBooker.get(journal.getBookerId(record)).removeLast(record);
+            indexes.notActive.remove(record);
+            LocalDateTime start = startOf(journal.getPerformanceNumber(record));
+            if (start != null && indexes.byPerformanceStart.containsKey(start))
+            {
+                indexes.byPerformanceStart.get(start).removeLast(record);
+            }
+        }
+        journal.truncate(firstDropped);
+        hotBookings.keySet().removeIf(bookingNumber -> bookingNumber > firstDropped);
+    }
+
+    /**
+     * The record indexes of the bookings of each event, performance and
+     * booker, and of the performances starting at each time, along with the
+     * records whose status in the journal is not active
+     */
+    private static class Indexes
+    {
+        final LongKeyMap<RecordList> byEvent = new LongKeyMap<>();
+        final LongKeyMap<RecordList> byPerformance = new LongKeyMap<>();
+        final LongKeyMap<RecordList> byBooker = new LongKeyMap<>();
+        final NavigableMap<LocalDateTime, RecordList> byPerformanceStart = new TreeMap<>();
+        final Set<Integer> notActive = new HashSet<>();
+        // the statuses of the copy of the state that wrote to the journal last
+        Map<Integer, BookingStatus> writer;
+
+        void add(int record, long eventNumber, long performanceNumber, LocalDateTime performanceStart,
+                 int bookerId)
+        {
+            recordsFor(byEvent, eventNumber).add(record);
+            recordsFor(byPerformance, performanceNumber).add(record);
+            recordsFor(byBooker, bookerId).add(record);
+            if (performanceStart != null)
+            {
+                byPerformanceStart.computeIfAbsent(performanceStart, start -> new RecordList()).add(record);
+            }
+        }
+
+        private static RecordList recordsFor(LongKeyMap<RecordList> index, long key)
+        {
+            RecordList records = index.get(key);
+            if (records == null)
+            {
+                records = new RecordList();
+                index.put(key, records);
+            }
+            return records;
+        }
+    }
+
+    /**
+     * A growable list of record indexes, in ascending order
+     */
+    private static class RecordList
+    {
+        int[] records = new int[4];
+        int size;
+
+        void add(int record)
+        {
+            if (size == records.length)
+            {
+                records = Arrays.copyOf(records, size * 2);
+            }
+            records[size++] = record;
+        }
+
+        void removeLast(int record)
+        {
+            if (size > 0 && records[size - 1] == record)
+            {
+                size--;
+            }
+        }
+    }
+
+    /**
+     * A booking whose status is kept by the state that read it back, and written through to its journal record
+     */
+    private static class JournaledBooking extends Booking
+    {
+        private final JournaledBookingState state;
+        private final int record;
+
+        JournaledBooking(JournaledBookingState state, int record, long bookingNumber, Consumer booker,
+                         EventPerformance performance, int numTickets, double amountPaid,
+                         LocalDateTime bookingDateTime)
+        {
+            super(bookingNumber, booker, performance, numTickets, amountPaid, bookingDateTime);
+            this.state = state;
+            this.record = record;
+        }
+
+        @Override
+        public BookingStatus getStatus()
+        {
+            return state.statusOf(record);
+        }
+
+        @Override
+        public void setStatus(BookingStatus status)
+        {
+            state.setStatus(record, status);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package state;
+
+/**
+ * LongHashSet is a set of primitive long values, backed by a LongKeyMap
+ * so that membership checks never box their argument.
+ */
+public class LongHashSet
+{
+    private final LongKeyMap<Boolean> members;
+
+    public LongHashSet()
+    {
+        members = new LongKeyMap<>();
+    }
+
+    /**
+     * @param value the value to add
+     * @return true if the value was not already in the set
+     */
+    public boolean add(long value)
+    {
+        return members.put(value, Boolean.TRUE) == null;
+    }
+
+    public boolean contains(long value)
+    {
+        return members.containsKey(value);
+    }
+
+    /**
+     * @param value the value to remove
+     * @return true if the value was in the set
+     */
+    public boolean remove(long value)
+    {
+        return members.remove(value) != null;
+    }
+
+    public int size()
+    {
+        return members.size();
+    }
+
+    /**
+     * @return all values in the set, in no particular order
+     */
+    public long[] toArray()
+    {
+        return members.keys();
+    }
+}
@@ -0,0 +1,218 @@
+package state;
+
+import java.util.Arrays;
+
+/**
+ * LongKeyMap is an open-addressing hash map from primitive long keys
+ * to object values. Keys are never boxed, and collisions are resolved
+ * by linear probing, so a lookup is usually a single array read.
+ * Null values are not allowed, since a null slot marks an empty entry.
+ *
+ * @param <V> the type of the mapped values
+ */
+public class LongKeyMap<V>
+{
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] keys;
+    private Object[] values;
+    private int size, mask, resizeThreshold;
+
+    public LongKeyMap()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongKeyMap(int expectedSize)
+    {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key)
+    {
+        int slot = slotOf(key);
+        while (values[slot] != null)
+        {
+            if (keys[slot] == key)
+            {
+                return (V) values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key)
+    {
+        return get(key) != null;
+    }
+
+    /**
+     * Map the given key to the given value, replacing any previous mapping
+     * @param key the key to map
+     * @param value the (non-null) value to map the key to
+     * @return the value previously mapped to the key, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value)
+    {
+        if (value == null)
+        {
+            throw new IllegalArgumentException("LongKeyMap does not accept null values");
+        }
+        int slot = slotOf(key);
+        while (values[slot] != null)
+        {
+            if (keys[slot] == key)
+            {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeThreshold)
+        {
+            rehash(values.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Remove the mapping for the given key. The probe chain after the
+     * removed slot is shifted back, so no tombstones are left behind
+     * @param key the key to remove
+     * @return the value that was mapped to the key, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key)
+    {
+        int slot = slotOf(key);
+        while (values[slot] != null)
+        {
+            if (keys[slot] == key)
+            {
+                V removed = (V) values[slot];
+                shiftBack(slot);
+                size--;
+                return removed;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return the keys of all entries, in no particular order
+     */
+    public long[] keys()
+    {
+        long[] allKeys = new long[size];
+        int count = 0;
+        for (int slot = 0; slot < values.length; slot++)
+        {
+            if (values[slot] != null)
+            {
+                allKeys[count++] = keys[slot];
+            }
+        }
+        return allKeys;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Grow the table up front so that the given number of entries
+     * can be added without any intermediate rehashing
+     * @param expectedSize the number of entries the map should hold
+     */
+    public void ensureCapacity(int expectedSize)
+    {
+        int required = tableSizeFor(expectedSize);
+        if (required > values.length)
+        {
+            rehash(required);
+        }
+    }
+
+    private void shiftBack(int freedSlot)
+    {
+        int gap = freedSlot;
+        int slot = (gap + 1) & mask;
+        while (values[slot] != null)
+        {
+            int home = slotOf(keys[slot]);
+            // Move the entry into the gap if the gap lies on its probe path
+            if (((slot - home) & mask) >= ((slot - gap) & mask))
+            {
+                keys[gap] = keys[slot];
+                values[gap] = values[slot];
+                gap = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        values[gap] = null;
+    }
+
+    private void rehash(int newCapacity)
+    {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldValues.length; i++)
+        {
+            if (oldValues[i] != null)
+            {
+                int slot = slotOf(oldKeys[i]);
+                while (values[slot] != null)
+                {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity)
+    {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (capacity >> 1) + (capacity >> 2);
+    }
+
+    private int slotOf(long key)
+    {
+        // Spread the bits of sequential numbers across the table (Fibonacci hashing)
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static int tableSizeFor(int expectedSize)
+    {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity * 3L / 4 < expectedSize)
+        {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,251 @@
+package state;
+
+import model.ConsumerPreferences;
+import model.EventPerformance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * PerformanceAttributeIndex answers consumer preference queries over event
+ * performances without visiting every performance. Each indexed performance
+ * gets an ordinal; the social distancing, air filtration and outdoors flags
+ * are kept as bitsets over those ordinals, while capacity limits and venue
+ * sizes are kept as columns sorted by value so that an upper bound becomes
+ * a prefix of the sorted column.
+ * <p>
+ * Attribute values are captured when a performance is indexed. A removed
+ * performance keeps its ordinal and is only masked out of queries, until
+ * half the ordinals are removed and the index is rebuilt over the rest.
+ * Queries do not change the index, so any number of them can run at once,
+ * but adding or removing a performance still needs to happen with no query
+ * running.
+ */
+public class PerformanceAttributeIndex
+{
+    private List<EventPerformance> performances;
+    // the ordinal of each indexed performance, by performance number
+    private LongKeyMap<Integer> ordinals;
+    private BitSet socialDistancing, airFiltration, outdoors, removed;
+    private int removedCount;
+    private SortedColumn capacityLimits, venueSizes;
+
+    public PerformanceAttributeIndex()
+    {
+        performances = new ArrayList<>();
+        ordinals = new LongKeyMap<>();
+        socialDistancing = new BitSet();
+        airFiltration = new BitSet();
+        outdoors = new BitSet();
+        removed = new BitSet();
+        capacityLimits = new SortedColumn();
+        venueSizes = new SortedColumn();
+    }
+
+    public void add(EventPerformance performance)
+    {
+        int ordinal = performances.size();
+        performances.add(performance);
+        ordinals.put(performance.getPerformanceNumber(), ordinal);
+        socialDistancing.set(ordinal, performance.hasSocialDistancing());
+        airFiltration.set(ordinal, performance.hasAirFiltration());
+        outdoors.set(ordinal, performance.isOutdoors());
+        capacityLimits.add(performance.getCapacityLimit());
+        venueSizes.add(performance.getVenueSize());
+    }
+
+    /**
+     * Stop matching a performance, rebuilding the index over the performances
+     * left once half of those indexed are removed
+     * @param performance the performance to remove, which is ignored if it is not indexed
+     */
+    public void remove(EventPerformance performance)
+    {
+        Integer ordinal = ordinals.get(performance.getPerformanceNumber());
+        if (ordinal == null || performances.get(ordinal) != performance)
+        {
+            return;
+        }
+        ordinals.remove(performance.getPerformanceNumber());
+        removed.set(ordinal);
+        removedCount++;
+        if (removedCount > performances.size() / 2)
+        {
+            List<EventPerformance> indexed = performances;
+            BitSet removedOrdinals = removed;
+            int left = indexed.size() - removedCount;
+            performances = new ArrayList<>(left);
+            ordinals = new LongKeyMap<>(left);
+            socialDistancing = new BitSet();
+            airFiltration = new BitSet();
+            outdoors = new BitSet();
+            removed = new BitSet();
+            removedCount = 0;
+            capacityLimits = new SortedColumn();
+            venueSizes = new SortedColumn();
+            for (int i = removedOrdinals.nextClearBit(0); i < indexed.size(); i = removedOrdinals.nextClearBit(i + 1))
+            {
+                add(indexed.get(i));
+            }
+        }
+    }
+
+    /**
+     * Find the performances whose flags equal the consumer's preferred flags and
+     * whose capacity limit and venue size do not exceed the preferred maximums
+     * @param preferences the consumer's preferences
+     * @return the matching performances, in the order they were indexed
+     */
+    public List<EventPerformance> findMatching(ConsumerPreferences preferences)
+    {
+        BitSet matches = new BitSet(performances.size());
+        matches.set(0, performances.size());
+        matches.andNot(removed);
+        keepMatchingFlag(matches, socialDistancing, preferences.preferSocialDistancing);
+        keepMatchingFlag(matches, airFiltration, preferences.preferAirFiltration);
+        keepMatchingFlag(matches, outdoors, preferences.preferOutdoorsOnly);
+        capacityLimits.keepAtMost(matches, preferences.preferredMaxCapacity);
+        venueSizes.keepAtMost(matches, preferences.preferredMaxVenueSize);
+
+        List<EventPerformance> matchingPerformances = new ArrayList<>(matches.cardinality());
+        for (int ordinal = matches.nextSetBit(0); ordinal >= 0; ordinal = matches.nextSetBit(ordinal + 1))
+        {
+            matchingPerformances.add(performances.get(ordinal));
+        }
+        return matchingPerformances;
+    }
+
+    private static void keepMatchingFlag(BitSet matches, BitSet flag, boolean preferred)
+    {
+        if (preferred)
+        {
+            matches.and(flag);
+        }
+        else
+        {
+            matches.andNot(flag);
+        }
+    }
+
+    /**
+     * A column of int values addressed by ordinal, plus the values of all but
+     * the latest ordinals sorted ascending. Each sorted entry packs the value
+     * into the high 32 bits and the ordinal into the low 32 bits, so a plain
+     * long sort orders by value. Adding a value merges the unsorted values in
+     * once there are enough of them, and queries scan the few left unsorted,
+     * so queries only ever read the column and can run alongside each other.
+     */
+    private static class SortedColumn
+    {
+        // the fewest values left unsorted before they are merged in
+        private static final int MIN_UNSORTED = 64;
+
+        private int[] values = new int[16];
+        // set after the value it counts is stored, so a query never reads a value that is not there yet
+        private volatile int count;
+        // replaced rather than changed, so a query reads the same sorted values throughout
+        private volatile long[] sorted = new long[0];
+
+        void add(int value)
+        {
+            int ordinal = count;
+            if (ordinal == values.length)
+            {
+                values = Arrays.copyOf(values, ordinal * 2);
+            }
+            values[ordinal] = value;
+            count = ordinal + 1;
+            long[] currentlySorted = sorted;
+            // Merge once the unsorted values are an eighth of the sorted ones, to keep adding linear
+            if (count - currentlySorted.length >= Math.max(MIN_UNSORTED, currentlySorted.length >> 3))
+            {
+                sorted = mergeUnsortedValues(currentlySorted, count);
+            }
+        }
+
+        /**
+         * Clear the bits of every ordinal whose value is above the given maximum
+         * @param matches the candidate ordinals
+         * @param maximum the inclusive upper bound on values
+         */
+        void keepAtMost(BitSet matches, int maximum)
+        {
+            // Read the sorted values before the count, as only counted values are ever sorted
+            long[] sortedValues = sorted;
+            int valueCount = count;
+            int[] allValues = values;
+            if (maximum == Integer.MAX_VALUE || valueCount == 0)
+            {
+                return;
+            }
+            long bound = ((long) maximum << 32) | 0xFFFFFFFFL;
+            int prefixLength = upperBound(sortedValues, bound);
+            BitSet withinBound = new BitSet(valueCount);
+            for (int i = 0; i < prefixLength; i++)
+            {
+                withinBound.set((int) sortedValues[i]);
+            }
+            for (int ordinal = sortedValues.length; ordinal < valueCount; ordinal++)
+            {
+                if (allValues[ordinal] <= maximum)
+                {
+                    withinBound.set(ordinal);
+                }
+            }
+            matches.and(withinBound);
+        }
+
+        /**
+         * @param sortedValues the values sorted so far
+         * @param valueCount the number of values to sort
+         * @return a new array of the first valueCount values, sorted
+         */
+        private long[] mergeUnsortedValues(long[] sortedValues, int valueCount)
+        {
+            int sortedCount = sortedValues.length;
+            long[] added = new long[valueCount - sortedCount];
+            for (int i = 0; i < added.length; i++)
+            {
+                int ordinal = sortedCount + i;
+                added[i] = ((long) values[ordinal] << 32) | ordinal;
+            }
+            Arrays.sort(added);
+
+            long[] merged = new long[valueCount];
+            int i = 0, j = 0, k = 0;
+            while (i < sortedCount && j < added.length)
+            {
+                merged[k++] = sortedValues[i] <= added[j] ? sortedValues[i++] : added[j++];
+            }
+            while (i < sortedCount)
+            {
+                merged[k++] = sortedValues[i++];
+            }
+            while (j < added.length)
+            {
+                merged[k++] = added[j++];
+            }
+            return merged;
+        }
+
+        private static int upperBound(long[] sortedValues, long bound)
+        {
+            int low = 0, high = sortedValues.length;
+            while (low < high)
+            {
+                int middle = (low + high) >>> 1;
+                if (sortedValues[middle] <= bound)
+                {
+                    low = middle + 1;
+                }
+                else
+                {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
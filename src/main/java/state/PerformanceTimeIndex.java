@@ -0,0 +1,78 @@
+package state;
+
+import model.EventPerformance;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * PerformanceTimeIndex orders event performances by their start time so
+ * that the performances taking place inside a time window can be found
+ * without looking at every performance on the system.
+ */
+public class PerformanceTimeIndex
+{
+    private final NavigableMap<LocalDateTime, List<EventPerformance>> performancesByStart;
+
+    public PerformanceTimeIndex()
+    {
+        performancesByStart = new TreeMap<>();
+    }
+
+    public void add(EventPerformance performance)
+    {
+        performancesByStart.computeIfAbsent(performance.getStartDateTime(), start -> new ArrayList<>(1))
+                .add(performance);
+    }
+
+    public void remove(EventPerformance performance)
+    {
+        List<EventPerformance> performances = performancesByStart.get(performance.getStartDateTime());
+        if (performances != null)
+        {
+            performances.removeIf(indexed -> indexed == performance);
+            if (performances.isEmpty())
+            {
+                performancesByStart.remove(performance.getStartDateTime());
+            }
+        }
+    }
+
+    public void clear()
+    {
+        performancesByStart.clear();
+    }
+
+    /**
+     * Find the performances that start strictly after windowStart and
+     * end strictly before windowEnd. Every such performance also starts
+     * before windowEnd, so only the start times inside the window are visited
+     * @param windowStart the exclusive start of the window
+     * @param windowEnd the exclusive end of the window
+     * @return the matching performances, ordered by start time
+     */
+    public List<EventPerformance> findPerformancesWithin(LocalDateTime windowStart, LocalDateTime windowEnd)
+    {
+        List<EventPerformance> performancesWithin = new ArrayList<>();
+        if (!windowStart.isBefore(windowEnd))
+        {
+            return performancesWithin;
+        }
+        for (Map.Entry<LocalDateTime, List<EventPerformance>> entry:
+                performancesByStart.subMap(windowStart, false, windowEnd, false).entrySet())
+        {
+            for (EventPerformance performance: entry.getValue())
+            {
+                if (performance.getEndDateTime().isBefore(windowEnd))
+                {
+                    performancesWithin.add(performance);
+                }
+            }
+        }
+        return performancesWithin;
+    }
+}
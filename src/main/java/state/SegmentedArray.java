@@ -0,0 +1,150 @@
+package state;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * SegmentedArray is a growable array addressed by a dense long index,
+ * such as a sequence number minus one. Elements live in fixed-size
+ * segments, so growing the array only allocates a new segment and never
+ * copies existing elements.
+ * <p>
+ * The array is meant to have a single writer. A new segment is filled in
+ * before the segment directory is republished through a volatile field,
+ * so readers never need to lock and never observe a half-built segment.
+ *
+ * @param <T> the type of the stored elements
+ */
+public class SegmentedArray<T> implements Iterable<T>
+{
+    private static final int SEGMENT_BITS = 10;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private volatile Object[][] segments;
+    private volatile long length;
+
+    public SegmentedArray()
+    {
+        segments = new Object[0][];
+        length = 0;
+    }
+
+    /**
+     * Get the element stored at the given index
+     * @param index the position of the element
+     * @return the element, or null if the index is out of range or was never set
+     */
+    @SuppressWarnings("unchecked")
+    public T get(long index)
+    {
+        if (index < 0 || index >= length)
+        {
+            return null;
+        }
+        Object[][] currentSegments = segments;
+        int segment = (int) (index >>> SEGMENT_BITS);
+        if (segment >= currentSegments.length || currentSegments[segment] == null)
+        {
+            return null;
+        }
+        return (T) currentSegments[segment][(int) (index & SEGMENT_MASK)];
+    }
+
+    /**
+     * Store an element at the given index, allocating segments as needed
+     * @param index the (non-negative) position to store the element at
+     * @param element the element to store
+     */
+    public void set(long index, T element)
+    {
+        if (index < 0)
+        {
+            throw new IndexOutOfBoundsException("Negative index: " + index);
+        }
+        int segment = (int) (index >>> SEGMENT_BITS);
+        segmentFor(segment)[(int) (index & SEGMENT_MASK)] = element;
+        if (index >= length)
+        {
+            length = index + 1;
+        }
+    }
+
+    /**
+     * Store an element right after the last used index
+     * @param element the element to store
+     */
+    public void add(T element)
+    {
+        set(length, element);
+    }
+
+    /**
+     * @return one more than the highest index that has been set
+     */
+    public long length()
+    {
+        return length;
+    }
+
+    private Object[] segmentFor(int segment)
+    {
+        Object[][] currentSegments = segments;
+        if (segment >= currentSegments.length)
+        {
+            int newLength = Math.max(segment + 1, currentSegments.length * 2);
+            Object[][] grownSegments = new Object[newLength][];
+            System.arraycopy(currentSegments, 0, grownSegments, 0, currentSegments.length);
+            grownSegments[segment] = new Object[SEGMENT_SIZE];
+            segments = grownSegments;
+            return grownSegments[segment];
+        }
+        if (currentSegments[segment] == null)
+        {
+            currentSegments[segment] = new Object[SEGMENT_SIZE];
+            // Republish the directory so readers see the new segment
+            segments = currentSegments;
+        }
+        return currentSegments[segment];
+    }
+
+    /**
+     * Iterate over the stored elements in index order, skipping unset positions
+     */
+    @Override
+    public Iterator<T> iterator()
+    {
+        return new Iterator<T>()
+        {
+            private long next = advance(0);
+
+            private long advance(long from)
+            {
+                long index = from;
+                while (index < length && get(index) == null)
+                {
+                    index++;
+                }
+                return index;
+            }
+
+            @Override
+            public boolean hasNext()
+            {
+                return next < length;
+            }
+
+            @Override
+            public T next()
+            {
+                if (!hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                T element = get(next);
+                next = advance(next + 1);
+                return element;
+            }
+        };
+    }
+}
@@ -0,0 +1,52 @@
+package state;
+
+import model.User;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Session holds the logged-in user of one client of the system, so that
+ * several clients can share the same state while each has its own
+ * current user. While a session is bound to a UserState on a thread,
+ * the current user of that UserState is the user of the session.
+ */
+public class Session
+{
+    private static final AtomicLong nextSessionId = new AtomicLong(1);
+
+    private final long sessionId;
+    private volatile User currentUser;
+
+    public Session()
+    {
+        sessionId = nextSessionId.getAndIncrement();
+        currentUser = null;
+    }
+
+    /**
+     * Recreate a session with a known id, such as one read back from a log.
+     * Sessions created afterwards get higher ids
+     * @param sessionId the id of the session
+     */
+    public Session(long sessionId)
+    {
+        this.sessionId = sessionId;
+        nextSessionId.accumulateAndGet(sessionId + 1, Math::max);
+        currentUser = null;
+    }
+
+    public long getSessionId()
+    {
+        return sessionId;
+    }
+
+    public User getCurrentUser()
+    {
+        return currentUser;
+    }
+
+    public void setCurrentUser(User user)
+    {
+        currentUser = user;
+    }
+}
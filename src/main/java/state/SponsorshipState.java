@@ -1,24 +1,45 @@
 package state;
 
+import model.Event;
 import model.SponsorshipRequest;
 import model.SponsorshipStatus;
 import model.StdOut;
 import model.TicketedEvent;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class SponsorshipState implements ISponsorshipState, Cloneable
 {
     private long nextRequestNumber;
     private List<SponsorshipRequest> sponsorshipRequests;
+    // the same requests, stored at position (request number - 1)
+    private SegmentedArray<SponsorshipRequest> requestsByNumber;
+    // the requests still awaiting a decision, in the order they were made
+    private Map<Long, SponsorshipRequest> pendingRequests;
 
     public SponsorshipState()
     {
         sponsorshipRequests = new ArrayList<>();
+        requestsByNumber = new SegmentedArray<>();
+        pendingRequests = new LinkedHashMap<>();
         nextRequestNumber = 1;
     }
 
     public SponsorshipState(ISponsorshipState other)
+    {
+        this(other, null);
+    }
+
+    /**
+     * Copy another sponsorship state, linking the copied requests with the
+     * events of an event state that was copied alongside it
+     * @param other the sponsorship state to copy
+     * @param eventState the event state holding the events of the copied requests,
+     * or null to keep the events of the original requests
+     */
+    public SponsorshipState(ISponsorshipState other, IEventState eventState)
     {
         SponsorshipState otherState = null;
 
@@ -37,12 +58,37 @@ public class SponsorshipState implements ISponsorshipState, Cloneable
         if(otherState != null)
         {
             this.nextRequestNumber = otherState.nextRequestNumber;
-            this.sponsorshipRequests = new ArrayList<>();
+            this.sponsorshipRequests = new ArrayList<>(otherState.sponsorshipRequests.size());
+            this.requestsByNumber = new SegmentedArray<>();
+            this.pendingRequests = new LinkedHashMap<>();
 
             for (SponsorshipRequest request: otherState.sponsorshipRequests)
             {
-                SponsorshipRequest requestCopy = new SponsorshipRequest(request.getRequestNumber(), request.getEvent());
-                sponsorshipRequests.add(requestCopy);
+                TicketedEvent eventCopy = eventCopyFor(request, eventState);
+                SponsorshipRequest requestCopy;
+                if (eventCopy != null && eventCopy.getSponsorshipRequest() != request)
+                {
+                    // The event state copied the request along with its event
+                    requestCopy = eventCopy.getSponsorshipRequest();
+                }
+                else
+                {
+                    requestCopy = new SponsorshipRequest(request.getRequestNumber(),
+                            eventCopy != null ? eventCopy : request.getEvent());
+                    if (request.getStatus() == SponsorshipStatus.ACCEPTED)
+                    {
+                        requestCopy.accept(request.getSponsoredPricePercent(), request.getSponsorAccountEmail());
+                    }
+                    else if (request.getStatus() == SponsorshipStatus.REJECTED)
+                    {
+                        requestCopy.reject();
+                    }
+                    if (eventCopy != null)
+                    {
+                        eventCopy.setSponsorshipRequest(requestCopy);
+                    }
+                }
+                addRequest(requestCopy);
             }
         }
         else
@@ -51,6 +97,26 @@ public class SponsorshipState implements ISponsorshipState, Cloneable
         }
     }
 
+    /**
+     * Overloaded constructor for restoring the state, such as from a checkpoint
+     * @param requests the requests, already linked with their events
+     * @param nextRequestNumber the number the next request made will get
+     */
+    public SponsorshipState(List<SponsorshipRequest> requests, long nextRequestNumber)
+    {
+        this();
+        this.nextRequestNumber = nextRequestNumber;
+        for (SponsorshipRequest request: requests)
+        {
+            addRequest(request);
+        }
+    }
+
+    public long getNextRequestNumber()
+    {
+        return nextRequestNumber;
+    }
+
     public SponsorshipRequest addSponsorshipRequest(TicketedEvent event)
     {
         if (event != null)
@@ -58,7 +124,7 @@ public class SponsorshipState implements ISponsorshipState, Cloneable
             SponsorshipRequest newRequest =
                     new SponsorshipRequest(nextRequestNumber++, event);
             event.setSponsorshipRequest(newRequest);
-            sponsorshipRequests.add(newRequest);
+            addRequest(newRequest);
             return newRequest;
         }
         return null;
@@ -71,31 +137,59 @@ public class SponsorshipState implements ISponsorshipState, Cloneable
 
     public List<SponsorshipRequest> getPendingSponsorshipRequests()
     {
-        List<SponsorshipRequest> pendingList = new ArrayList<>();
-        for (SponsorshipRequest request : sponsorshipRequests)
+        return new ArrayList<>(pendingRequests.values());
+    }
+
+    public SponsorshipRequest findRequestByNumber(long requestNumber)
+    {
+        return requestsByNumber.get(requestNumber - 1);
+    }
+
+    private void addRequest(SponsorshipRequest request)
+    {
+        sponsorshipRequests.add(request);
+        requestsByNumber.set(request.getRequestNumber() - 1, request);
+        if (request.getStatus() == SponsorshipStatus.PENDING)
         {
-            if (request.getStatus() == SponsorshipStatus.PENDING)
-            {
-                pendingList.add(request);
-            }
+            pendingRequests.put(request.getRequestNumber(), request);
         }
-        return pendingList;
+        request.setStatusListener(this::requestStatusChanged);
     }
 
-    public SponsorshipRequest findRequestByNumber(long requestNumber)
+    /**
+     * Find the copy of a request's event that links the original request or a copy of it
+     * @param request the original request
+     * @param eventState the copied event state, or null
+     * @return the event copy, or null if there is no event state or it has no such copy
+     */
+    private static TicketedEvent eventCopyFor(SponsorshipRequest request, IEventState eventState)
     {
-        int i = 0;
-        while (i < sponsorshipRequests.size())
+        if (eventState == null)
         {
-            SponsorshipRequest request = sponsorshipRequests.get(i);
-            if (request.getRequestNumber() == requestNumber) {
-                return request;
-            }
-            i++;
+            return null;
+        }
+        Event eventCopy = eventState.findEventByNumber(request.getEvent().getEventNumber());
+        if (eventCopy instanceof TicketedEvent && ((TicketedEvent) eventCopy).getSponsorshipRequest() != null
+                && ((TicketedEvent) eventCopy).getSponsorshipRequest().getRequestNumber() == request.getRequestNumber())
+        {
+            return (TicketedEvent) eventCopy;
         }
         return null;
     }
 
+    /**
+     * Called back by a request once a decision has been made on it,
+     * so that it leaves the pending requests
+     * @param request the request whose status changed
+     */
+    private void requestStatusChanged(SponsorshipRequest request)
+    {
+        if (request.getStatus() != SponsorshipStatus.PENDING)
+        {
+            pendingRequests.remove(request.getRequestNumber());
+        }
+    }
+
     @Override
     public Object clone() throws CloneNotSupportedException
     {
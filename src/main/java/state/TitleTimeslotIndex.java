@@ -0,0 +1,99 @@
+package state;
+
+import model.EventPerformance;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * TitleTimeslotIndex records which (event title, start time, end time)
+ * timeslots are taken by an event performance, so that a clash between
+ * performances of events with the same title is found with a single lookup.
+ * <p>
+ * Titles are captured when a performance is indexed, so the owner of the
+ * index has to move the performances of an event when its title changes.
+ */
+public class TitleTimeslotIndex
+{
+    // Number of indexed performances per timeslot
+    private final Map<Timeslot, Integer> timeslots;
+
+    public TitleTimeslotIndex()
+    {
+        timeslots = new HashMap<>();
+    }
+
+    /**
+     * Overloaded constructor for copying the index
+     * @param other the index to copy
+     */
+    public TitleTimeslotIndex(TitleTimeslotIndex other)
+    {
+        timeslots = new HashMap<>(other.timeslots);
+    }
+
+    public void add(EventPerformance performance)
+    {
+        add(performance.getEvent().getTitle(), performance);
+    }
+
+    public void add(String title, EventPerformance performance)
+    {
+        timeslots.merge(timeslotOf(title, performance), 1, Integer::sum);
+    }
+
+    public void remove(String title, EventPerformance performance)
+    {
+        // Drop the timeslot once no performance is left in it
+        timeslots.computeIfPresent(timeslotOf(title, performance),
+                (timeslot, count) -> count > 1 ? count - 1 : null);
+    }
+
+    public boolean isTaken(String title, LocalDateTime startDateTime, LocalDateTime endDateTime)
+    {
+        return timeslots.containsKey(new Timeslot(title, startDateTime, endDateTime));
+    }
+
+    private static Timeslot timeslotOf(String title, EventPerformance performance)
+    {
+        return new Timeslot(title, performance.getStartDateTime(), performance.getEndDateTime());
+    }
+
+    private static final class Timeslot
+    {
+        private final String title;
+        private final LocalDateTime startDateTime, endDateTime;
+
+        Timeslot(String title, LocalDateTime startDateTime, LocalDateTime endDateTime)
+        {
+            this.title = title;
+            this.startDateTime = startDateTime;
+            this.endDateTime = endDateTime;
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if (this == other)
+            {
+                return true;
+            }
+            if (!(other instanceof Timeslot))
+            {
+                return false;
+            }
+            Timeslot timeslot = (Timeslot) other;
+            return Objects.equals(title, timeslot.title)
+                    && Objects.equals(startDateTime, timeslot.startDateTime)
+                    && Objects.equals(endDateTime, timeslot.endDateTime);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(title, startDateTime, endDateTime);
+        }
+    }
+}
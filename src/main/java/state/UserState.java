@@ -8,17 +8,41 @@ import java.util.Map;
 public class UserState implements IUserState, Cloneable
 {
     private HashMap<String, User> users;
+    // Number of registered entertainment providers per (organisation name, address) key
+    private HashMap<String, Integer> organisations;
+    // the current user when no session is bound to the calling thread
     User currentUser;
+    // the session that commands on the calling thread run in, if any
+    private final ThreadLocal<Session> boundSession = new ThreadLocal<>();
 
     public UserState()
     {
         users = new HashMap<>();
+        organisations = new HashMap<>();
         currentUser = null;
         registerGovernmentRepresentatives();
     }
 
-    // Overloaded constructor for deep copying
+    /**
+     * Overloaded constructor for copying the user map and current user. The
+     * users themselves are shared with the other state, so changes made to a
+     * user show in both states
+     * @param other the state to copy
+     */
     public UserState(IUserState other)
+    {
+        this(other, false);
+    }
+
+    /**
+     * Overloaded constructor for copying the state, optionally along with
+     * its users. Copied users have no events or bookings until the states
+     * holding those are copied alongside, pointing at the copied users
+     * @param other the state to copy
+     * @param copyUsers true to copy each user, so that changes made to the
+     * users of either state do not show in the other, or false to share them
+     */
+    public UserState(IUserState other, boolean copyUsers)
     {
         UserState otherState = null;
         /*
@@ -35,14 +59,15 @@ public class UserState implements IUserState, Cloneable
 
         if(otherState != null)
         {
-            this.currentUser = otherState.getCurrentUser();
             this.users = new HashMap<>();
+            this.organisations = new HashMap<>(otherState.organisations);
 
             for (String key: otherState.users.keySet())
             {
                 User user = otherState.users.get(key);
-                this.users.put(key, user);
+                this.users.put(key, copyUsers ? copyOf(user) : user);
             }
+            this.currentUser = copyUsers ? resolveUser(otherState.currentUser) : otherState.currentUser;
         }
         else
         {
@@ -50,6 +75,82 @@ public class UserState implements IUserState, Cloneable
         }
     }
 
+    /**
+     * Overloaded constructor for restoring the state, such as from a checkpoint.
+     * The users are taken as they are, so no government representative is
+     * registered on top of them
+     * @param users the registered users, keyed by the email they were registered with
+     * @param currentUser the user logged in when no session is bound
+     */
+    public UserState(Map<String, User> users, User currentUser)
+    {
+        this.users = new HashMap<>(users);
+        this.organisations = new HashMap<>();
+        this.currentUser = currentUser;
+        for (User user: this.users.values())
+        {
+            if (user instanceof EntertainmentProvider)
+            {
+                EntertainmentProvider provider = (EntertainmentProvider) user;
+                registerOrganisation(provider.getOrgName(), provider.getOrgAddress());
+            }
+        }
+    }
+
+    private static User copyOf(User user)
+    {
+        if (user instanceof Consumer)
+        {
+            return new Consumer((Consumer) user);
+        }
+        if (user instanceof EntertainmentProvider)
+        {
+            return new EntertainmentProvider((EntertainmentProvider) user);
+        }
+        if (user instanceof GovernmentRepresentative)
+        {
+            return new GovernmentRepresentative((GovernmentRepresentative) user);
+        }
+        return user;
+    }
+
+    /**
+     * Find the user of this state that a user stands for, which is the user
+     * itself if it is registered here, or its copy if it was registered in the
+     * state this one was copied from. Users are matched by their current email
+     * @param user the user to resolve, possibly held by another state
+     * @return the user registered here with the same email, or the given user if there is none
+     */
+    public User resolveUser(User user)
+    {
+        if (user == null)
+        {
+            return null;
+        }
+        User registeredUser = users.get(user.getEmail());
+        if (registeredUser == null)
+        {
+            // A user who changed their email is still registered under the old one
+            for (User candidate: users.values())
+            {
+                if (candidate.getEmail().equals(user.getEmail()))
+                {
+                    return candidate;
+                }
+            }
+            return user;
+        }
+        return registeredUser;
+    }
+
+    /**
+     * @return the user logged in when no session is bound, whichever thread asks
+     */
+    public User getDefaultUser()
+    {
+        return currentUser;
+    }
+
     private void registerGovernmentRepresentatives()
     {
         GovernmentRepresentative govRep1 = new GovernmentRepresentative("margaret.thatcher@gov.uk", "The Good times  ", "payment@gov.uk");
@@ -60,8 +161,68 @@ public class UserState implements IUserState, Cloneable
     {
         if (user != null)
         {
-            users.put(user.getEmail(), user);
+            User replacedUser = users.put(user.getEmail(), user);
+            if (replacedUser instanceof EntertainmentProvider)
+            {
+                EntertainmentProvider replacedProvider = (EntertainmentProvider) replacedUser;
+                unregisterOrganisation(replacedProvider.getOrgName(), replacedProvider.getOrgAddress());
+            }
+            if (user instanceof EntertainmentProvider)
+            {
+                EntertainmentProvider provider = (EntertainmentProvider) user;
+                registerOrganisation(provider.getOrgName(), provider.getOrgAddress());
+            }
+        }
+    }
+
+    /**
+     * Make room for users about to be added, such as by a bulk import, so
+     * that the user map is rehashed once rather than over and over
+     * @param additionalUsers the number of users about to be added
+     */
+    public void ensureCapacity(int additionalUsers)
+    {
+        HashMap<String, User> resizedUsers = new HashMap<>((int) ((users.size() + additionalUsers) / 0.75f) + 1);
+        resizedUsers.putAll(users);
+        users = resizedUsers;
+    }
+
+    public boolean isOrganisationRegistered(String orgName, String orgAddress)
+    {
+        return organisations.containsKey(organisationKey(orgName, orgAddress));
+    }
+
+    public void updateOrganisation(EntertainmentProvider provider, String newOrgName, String newOrgAddress)
+    {
+        boolean registered = users.get(provider.getEmail()) == provider;
+        if (registered)
+        {
+            unregisterOrganisation(provider.getOrgName(), provider.getOrgAddress());
         }
+        provider.setOrgName(newOrgName);
+        provider.setOrgAddress(newOrgAddress);
+        if (registered)
+        {
+            registerOrganisation(newOrgName, newOrgAddress);
+        }
+    }
+
+    private void registerOrganisation(String orgName, String orgAddress)
+    {
+        organisations.merge(organisationKey(orgName, orgAddress), 1, Integer::sum);
+    }
+
+    private void unregisterOrganisation(String orgName, String orgAddress)
+    {
+        // Drop the key once no provider is left with it
+        organisations.computeIfPresent(organisationKey(orgName, orgAddress),
+                (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private static String organisationKey(String orgName, String orgAddress)
+    {
+        // Prefix the name with its length so that no two (name, address) pairs share a key
+        return String.valueOf(orgName).length() + ":" + orgName + orgAddress;
     }
 
     public Map<String, User> getAllUsers()
@@ -71,12 +232,49 @@ public class UserState implements IUserState, Cloneable
 
     public User getCurrentUser()
     {
+        Session session = boundSession.get();
+        if (session != null)
+        {
+            // The controller moves sessions onto the users of a restored snapshot while no command runs
+            return session.getCurrentUser();
+        }
         return currentUser;
     }
 
     public void setCurrentUser(User user)
     {
-        currentUser = user;
+        Session session = boundSession.get();
+        if (session != null)
+        {
+            session.setCurrentUser(user);
+        }
+        else
+        {
+            currentUser = user;
+        }
+    }
+
+    /**
+     * Resolve the current user through the given session on the calling thread,
+     * until unbindSession is called on the same thread
+     * @param session the session to bind
+     */
+    public void bindSession(Session session)
+    {
+        boundSession.set(session);
+    }
+
+    public void unbindSession()
+    {
+        boundSession.remove();
+    }
+
+    /**
+     * @return the session bound to the calling thread, or null if there is none
+     */
+    public Session getBoundSession()
+    {
+        return boundSession.get();
     }
 
     @Override
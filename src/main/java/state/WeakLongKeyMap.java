@@ -0,0 +1,77 @@
+package state;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * WeakLongKeyMap maps primitive long keys to values it only holds weakly.
+ * A value stays in the map for as long as something else still uses it,
+ * which lets a state hand out the same object every time it is asked for
+ * while that object is in use, without keeping it on the heap for good.
+ *
+ * @param <V> the type of the mapped values
+ */
+public class WeakLongKeyMap<V>
+{
+    private final LongKeyMap<Entry<V>> entries;
+    private final ReferenceQueue<V> collected;
+
+    public WeakLongKeyMap()
+    {
+        entries = new LongKeyMap<>();
+        collected = new ReferenceQueue<>();
+    }
+
+    /**
+     * @return the value mapped to the key, or null if there is none or it was collected
+     */
+    public V get(long key)
+    {
+        dropCollected();
+        Entry<V> entry = entries.get(key);
+        return entry == null ? null : entry.get();
+    }
+
+    public void put(long key, V value)
+    {
+        dropCollected();
+        entries.put(key, new Entry<>(key, value, collected));
+    }
+
+    public void remove(long key)
+    {
+        dropCollected();
+        entries.remove(key);
+    }
+
+    /**
+     * Forget the values that were collected once nothing used them any more
+     */
+    private void dropCollected()
+    {
+        Object reference;
+        while ((reference = collected.poll()) != null)
+        {
+            Entry<?> entry = (Entry<?>) reference;
+            // The key may have been mapped to another value since
+            if (entries.get(entry.key) == entry)
+            {
+                entries.remove(entry.key);
+            }
+        }
+    }
+
+    /**
+     * A weak reference to a value, which remembers its key once the value is collected
+     */
+    private static class Entry<V> extends WeakReference<V>
+    {
+        final long key;
+
+        Entry(long key, V value, ReferenceQueue<V> queue)
+        {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+}
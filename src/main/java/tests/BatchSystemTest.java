@@ -0,0 +1,96 @@
+package tests;
+
+import command.AddEventPerformanceCommand;
+import command.BookEventCommand;
+import command.CreateTicketedEventCommand;
+import command.ICommand;
+import command.LoginCommand;
+import command.LogoutCommand;
+import command.RegisterConsumerCommand;
+import command.RegisterEntertainmentProviderCommand;
+import controller.Controller;
+import model.EventType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchSystemTest
+{
+    Controller controller = new Controller();
+
+    @BeforeEach
+    void displayTestName(TestInfo testInfo)
+    {
+        System.out.println(testInfo.getDisplayName());
+    }
+
+    private void registerUsers()
+    {
+        controller.runCommand(new RegisterConsumerCommand("John Smith", "jsmith@gmail.com",
+                "+447777777777", "password", "jsmith@money.com"));
+        controller.runCommand(new LogoutCommand());
+        controller.runCommand(new RegisterEntertainmentProviderCommand(
+                "Awesome Volleyball Rec",
+                "Meadows",
+                "rgb@rbs.co.uk",
+                "Matty",
+                "matty@gmail.com",
+                "pWord",
+                List.of("One Dude"),
+                List.of("oneDude@hotmail.com")
+        ));
+    }
+
+    @Test
+    @DisplayName("Test a batch returns the result of each command in order")
+    void runBatchTest1()
+    {
+        registerUsers();
+        List<Object> results = controller.runBatch(List.of(
+                new CreateTicketedEventCommand("Volleyball", EventType.Sports, 100, 10, false),
+                new CreateTicketedEventCommand("Beach volleyball", EventType.Sports, 100, 10, false),
+                new BookEventCommand(1, 1, 1)
+        ));
+
+        assertEquals(3, results.size());
+        assertEquals(1L, results.get(0));
+        assertEquals(2L, results.get(1));
+        assertNull(results.get(2), "A provider should not be able to book an event");
+        assertEquals(2, controller.getContext().getEventState().getAllEvents().size());
+    }
+
+    @Test
+    @DisplayName("Test later commands in a batch see the changes of earlier ones")
+    void runBatchTest2()
+    {
+        registerUsers();
+        long eventNumber = (Long) controller.runBatch(List.of(
+                new CreateTicketedEventCommand("Volleyball", EventType.Sports, 100, 10, false))).get(0);
+        LocalDateTime start = LocalDateTime.now().plusWeeks(1);
+
+        List<ICommand> commands = new ArrayList<>();
+        for (int i = 0; i < Controller.CHECKPOINT_INTERVAL; i++)
+        {
+            commands.add(new AddEventPerformanceCommand(eventNumber, "Meadows", start.plusDays(i),
+                    start.plusDays(i).plusHours(2), List.of("Players"), false, false, true, 1000, 1000));
+        }
+        commands.add(new LogoutCommand());
+        commands.add(new LoginCommand("jsmith@gmail.com", "password"));
+        commands.add(new BookEventCommand(eventNumber, Controller.CHECKPOINT_INTERVAL, 2));
+        List<Object> results = controller.runBatch(commands);
+
+        for (int i = 0; i < Controller.CHECKPOINT_INTERVAL; i++)
+        {
+            assertNotNull(results.get(i), "Performance " + (i + 1) + " was not added");
+        }
+        assertEquals(1L, results.get(results.size() - 1),
+                "The booking should be made for a performance added earlier in the batch");
+    }
+}
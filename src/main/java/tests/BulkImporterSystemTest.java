@@ -0,0 +1,141 @@
+package tests;
+
+import command.*;
+import controller.Controller;
+import importer.BulkImporter;
+import importer.ImportReport;
+import model.Event;
+import model.EventPerformance;
+import model.TicketedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+import org.junit.jupiter.api.io.TempDir;
+import state.Session;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BulkImporterSystemTest
+{
+    @TempDir
+    Path directory;
+
+    Controller controller;
+    Session providerSession;
+
+    @BeforeEach
+    void setUp(TestInfo testInfo)
+    {
+        System.out.println(testInfo.getDisplayName());
+        controller = new Controller();
+        providerSession = controller.openSession();
+        controller.runCommand(providerSession, new RegisterEntertainmentProviderCommand(
+                "Awesome Volleyball Rec", "Meadows", "rgb@rbs.co.uk", "Matty",
+                "matty@gmail.com", "pWord", List.of("One Dude"), List.of("oneDude@hotmail.com")));
+    }
+
+    @Test
+    @DisplayName("Test a CSV file split into small chunks is imported in file order")
+    void csvImportTest() throws IOException
+    {
+        Path file = directory.resolve("programme.csv");
+        Files.write(file, List.of(
+                "# kind,fields...",
+                "performance,final,Meadows,2030-06-02T18:00,2030-06-02T20:00,Team A;Team B,false,false,true,500,500",
+                "event,final,\"Volleyball, the final\",Sports,100,12.5,false",
+                "event,open,Open Day,Sports,0,0,false",
+                "",
+                "performance,open,Portobello,2030-06-01T10:00,2030-06-01T16:00,,false,false,true,1000,1000",
+                "performance,final,Meadows,2030-06-03T18:00,2030-06-03T20:00,Team C,false,false,true,500,500",
+                "consumer,John Smith,jsmith@gmail.com,+447777777777,password,jsmith@money.com"));
+
+        ImportReport report = new BulkImporter(new ForkJoinPool(4), 64).importFile(controller, providerSession,
+                file);
+        assertEquals(8, report.getLinesRead());
+        assertEquals(2, report.getEventsCreated());
+        assertEquals(3, report.getPerformancesAdded());
+        assertEquals(1, report.getConsumersRegistered());
+        assertTrue(report.getRejected().isEmpty());
+
+        ListEventsCommand listEvents = new ListEventsCommand(false, false);
+        controller.runCommand(providerSession, listEvents);
+        List<Event> events = listEvents.getResult();
+        assertEquals(2, events.size());
+        TicketedEvent event = (TicketedEvent) events.get(0);
+        assertEquals("Volleyball, the final", event.getTitle());
+        assertEquals(100, event.getNumTickets());
+        assertEquals(2, event.getPerformances().size());
+        EventPerformance performance = event.getPerformanceByNumber(1);
+        assertEquals(List.of("Team A", "Team B"), performance.getPerformerNames());
+        assertEquals("Open Day", events.get(1).getTitle());
+
+        // The provider is still logged in, and the consumer can log in with their password
+        assertEquals("matty@gmail.com", providerSession.getCurrentUser().getEmail());
+        LoginCommand login = new LoginCommand("jsmith@gmail.com", "password");
+        controller.runCommand(controller.openSession(), login);
+        assertNotNull(login.getResult());
+        System.out.println("Test passed successfully!");
+    }
+
+    @Test
+    @DisplayName("Test a JSON lines file is imported")
+    void jsonImportTest() throws IOException
+    {
+        Path file = directory.resolve("programme.jsonl");
+        Files.write(file, List.of(
+                "{\"type\": \"event\", \"key\": \"e1\", \"title\": \"Beach \\\"Volleyball\\\"\","
+                        + " \"eventType\": \"Sports\", \"numTickets\": 50, \"ticketPrice\": 5,"
+                        + " \"requestSponsorship\": false}",
+                "{\"type\": \"performance\", \"event\": \"e1\", \"venueAddress\": \"Portobello\","
+                        + " \"start\": \"2030-07-01T12:00\", \"end\": \"2030-07-01T14:00\","
+                        + " \"performers\": [\"Team A\", \"Team B\"], \"socialDistancing\": false,"
+                        + " \"airFiltration\": false, \"outdoors\": true, \"capacityLimit\": 200,"
+                        + " \"venueSize\": 300}"));
+
+        ImportReport report = new BulkImporter().importFile(controller, providerSession, file);
+        assertEquals(1, report.getEventsCreated());
+        assertEquals(1, report.getPerformancesAdded());
+        assertTrue(report.getRejected().isEmpty());
+
+        Event event = controller.getContext().getEventState().findEventByNumber(1);
+        assertEquals("Beach \"Volleyball\"", event.getTitle());
+        assertEquals(List.of("Team A", "Team B"), event.getPerformanceByNumber(1).getPerformerNames());
+        System.out.println("Test passed successfully!");
+    }
+
+    @Test
+    @DisplayName("Test lines that cannot be parsed or are rejected are reported by line number")
+    void rejectedLinesTest() throws IOException
+    {
+        Path file = directory.resolve("programme.csv");
+        Files.write(file, List.of(
+                "event,e1,Volleyball,Sports,100,10,false",
+                "event,e2,Dance,Ballet,100,10,false",
+                "performance,e3,Meadows,2030-06-02T18:00,2030-06-02T20:00,Team,false,false,true,500,500",
+                "performance,e1,Meadows,2030-06-02T18:00,2030-06-02T16:00,Team,false,false,true,500,500",
+                "event,e1,Volleyball again,Sports,100,10,false",
+                "sponsor,e1",
+                "performance,e1,Meadows,2030-06-05T18:00,2030-06-05T20:00,Team,false,false,true,0,500"));
+
+        ImportReport report = new BulkImporter(ForkJoinPool.commonPool(), 16).importFile(controller,
+                providerSession, file);
+        assertEquals(1, report.getEventsCreated());
+        assertEquals(0, report.getPerformancesAdded());
+        List<String> rejected = report.getRejected();
+        assertEquals(6, rejected.size());
+        for (int line = 2; line <= 7; line++)
+        {
+            String prefix = "line " + line + ":";
+            assertTrue(rejected.stream().anyMatch(message -> message.startsWith(prefix)), prefix);
+        }
+        assertEquals(1, controller.getContext().getEventState().getAllEvents().size());
+        System.out.println("Test passed successfully!");
+    }
+}
@@ -0,0 +1,230 @@
+package tests;
+
+import command.*;
+import controller.Context;
+import controller.ContextCheckpoint;
+import controller.Controller;
+import model.Booking;
+import model.BookingStatus;
+import model.Event;
+import model.EventPerformance;
+import model.EventStatus;
+import model.EventType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+import org.junit.jupiter.api.io.TempDir;
+import state.ColdEventStore;
+import state.Session;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColdEventTieringSystemTest
+{
+    @TempDir
+    Path directory;
+
+    Controller controller;
+    ColdEventStore coldStore;
+    Session providerSession, consumerSession;
+
+    @BeforeEach
+    void setUp(TestInfo testInfo) throws IOException
+    {
+        System.out.println(testInfo.getDisplayName());
+        controller = new Controller();
+        coldStore = new ColdEventStore(directory.resolve("cold.events"));
+        setUpEvents();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException
+    {
+        coldStore.close();
+    }
+
+    /**
+     * Create an event still to come, an event that has ended, and an event that
+     * was cancelled after a consumer booked it
+     */
+    private void setUpEvents()
+    {
+        providerSession = controller.openSession();
+        controller.runCommand(providerSession, new RegisterEntertainmentProviderCommand(
+                "Awesome Volleyball Rec", "Meadows", "rgb@rbs.co.uk", "Matty",
+                "matty@gmail.com", "pWord", List.of("One Dude"), List.of("oneDude@hotmail.com")));
+        LocalDateTime nextWeek = LocalDateTime.now().plusWeeks(1);
+        LocalDateTime lastWeek = LocalDateTime.now().minusWeeks(1);
+        controller.runCommand(providerSession,
+                new CreateTicketedEventCommand("Volleyball", EventType.Sports, 100, 10, false));
+        controller.runCommand(providerSession, new AddEventPerformanceCommand(1, "Meadows",
+                nextWeek, nextWeek.plusHours(2), List.of("Players"), false, false, true, 1000, 1000));
+        controller.runCommand(providerSession,
+                new CreateTicketedEventCommand("Beach Volleyball", EventType.Sports, 100, 10, false));
+        controller.runCommand(providerSession, new AddEventPerformanceCommand(2, "Portobello",
+                lastWeek, lastWeek.plusHours(2), List.of("Players"), false, false, true, 1000, 1000));
+        controller.runCommand(providerSession,
+                new CreateTicketedEventCommand("Volleyball Final", EventType.Sports, 100, 10, false));
+        controller.runCommand(providerSession, new AddEventPerformanceCommand(3, "Meadows",
+                nextWeek.plusDays(1), nextWeek.plusDays(1).plusHours(2), List.of("Players"),
+                false, false, true, 1000, 1000));
+
+        consumerSession = controller.openSession();
+        controller.runCommand(consumerSession, new RegisterConsumerCommand("John Smith", "jsmith@gmail.com",
+                "+447777777777", "password", "jsmith@money.com"));
+        controller.runCommand(consumerSession, new BookEventCommand(1, 1, 2));
+        controller.runCommand(consumerSession, new BookEventCommand(3, 3, 3));
+        controller.runCommand(providerSession, new CancelEventCommand(3, "Rained off"));
+    }
+
+    @Test
+    @DisplayName("Test cancelled and ended events leave the event list but are still found by number")
+    void tierOutTest()
+    {
+        Context context = controller.getContext();
+        Event cancelled = context.getEventState().findEventByNumber(3);
+        Booking cancelledBooking = context.getBookingState().findBookingByNumber(2);
+        assertEquals(2, controller.tierColdEvents(coldStore));
+        assertEquals(0, controller.tierColdEvents(coldStore));
+        assertEquals(1, coldStore.getSegmentCount());
+
+        ListEventsCommand listEvents = new ListEventsCommand(false, false);
+        controller.runCommand(listEvents);
+        assertEquals(1, listEvents.getResult().size());
+        assertEquals(1, listEvents.getResult().get(0).getEventNumber());
+
+        // Events and bookings still in use are found as they are
+        assertSame(cancelled, context.getEventState().findEventByNumber(3));
+        assertSame(cancelledBooking, context.getBookingState().findBookingByNumber(2));
+        assertEquals(List.of(cancelledBooking), context.getBookingState().findBookingsByEventNumber(3));
+        assertEquals(List.of(cancelledBooking), context.getBookingState().findBookingsByPerformanceNumber(3));
+        assertNotNull(context.getEventState().findPerformanceByNumber(2));
+        assertEquals(1, context.getBookingState().findBookingsByEventNumber(1).size());
+        assertTrue(context.getEventState().isTitleTimeslotTaken("Volleyball Final",
+                cancelled.getPerformanceByNumber(3).getStartDateTime(),
+                cancelled.getPerformanceByNumber(3).getEndDateTime()));
+        System.out.println("Test passed successfully!");
+    }
+
+    @Test
+    @DisplayName("Test events are tiered out once the time of the context's clock is past their performances")
+    void fixedClockTest()
+    {
+        Context context = controller.getContext();
+        context.bindClock(Clock.fixed(LocalDateTime.now().plusWeeks(2).toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+        try
+        {
+            assertEquals(3, controller.tierColdEvents(coldStore));
+        }
+        finally
+        {
+            context.unbindClock();
+        }
+        assertTrue(context.getEventState().getAllEvents().isEmpty());
+        System.out.println("Test passed successfully!");
+    }
+
+    @Test
+    @DisplayName("Test adding a performance to a tiered event brings it back to the event list")
+    void addPerformanceTest()
+    {
+        controller.tierColdEvents(coldStore);
+        LocalDateTime nextMonth = LocalDateTime.now().plusMonths(1);
+        AddEventPerformanceCommand addPerformance = new AddEventPerformanceCommand(2, "Portobello",
+                nextMonth, nextMonth.plusHours(2), List.of("Players"), false, false, true, 1000, 1000);
+        controller.runCommand(providerSession, addPerformance);
+        assertNotNull(addPerformance.getResult());
+
+        Context context = controller.getContext();
+        ListEventsCommand listEvents = new ListEventsCommand(false, false);
+        controller.runCommand(listEvents);
+        assertEquals(List.of(1L, 2L), listEvents.getResult().stream().map(Event::getEventNumber)
+                .collect(Collectors.toList()));
+        Event event = context.getEventState().findEventByNumber(2);
+        assertEquals(2, event.getPerformances().size());
+        assertSame(addPerformance.getResult(), context.getEventState().findPerformanceByNumber(4));
+
+        BookEventCommand book = new BookEventCommand(2, 4, 1);
+        controller.runCommand(consumerSession, book);
+        assertEquals(3L, book.getResult());
+        assertEquals(0, controller.tierColdEvents(coldStore), "The event has a performance still to come");
+        System.out.println("Test passed successfully!");
+    }
+
+    @Test
+    @DisplayName("Test renaming a tiered event or booking it brings it and its bookings back")
+    void changeTieredEventTest()
+    {
+        Context context = controller.getContext();
+        controller.tierColdEvents(coldStore);
+        Event cancelled = context.getEventState().findEventByNumber(3);
+        EventPerformance performance = cancelled.getPerformanceByNumber(3);
+        cancelled.setTitle("Volleyball Semi-Final");
+        assertTrue(context.getEventState().getAllEvents().contains(cancelled));
+        assertTrue(context.getEventState().isTitleTimeslotTaken("Volleyball Semi-Final",
+                performance.getStartDateTime(), performance.getEndDateTime()));
+        assertFalse(context.getEventState().isTitleTimeslotTaken("Volleyball Final",
+                performance.getStartDateTime(), performance.getEndDateTime()));
+
+        Booking newBooking = context.getBookingState().createBooking(
+                context.getBookingState().findBookingByNumber(2).getBooker(), performance, 1, 10);
+        assertEquals(List.of(2L, 3L), context.getBookingState().findBookingsByEventNumber(3).stream()
+                .map(Booking::getBookingNumber).collect(Collectors.toList()));
+
+        // Tiered out again, the event and both its bookings replace the version in the store
+        assertEquals(1, controller.tierColdEvents(coldStore));
+        assertArrayEquals(new long[] {2, 3}, coldStore.findBookingNumbersOfEvent(3));
+        assertEquals("Volleyball Semi-Final", coldStore.readEvent(3).getTitle());
+        assertSame(newBooking, context.getBookingState().findBookingByNumber(3));
+        System.out.println("Test passed successfully!");
+    }
+
+    @Test
+    @DisplayName("Test a copy of the context reads tiered events and bookings back from the store")
+    void readBackTest()
+    {
+        controller.tierColdEvents(coldStore);
+        Context copy = new Context(controller.getContext());
+
+        Event event = copy.getEventState().findEventByNumber(3);
+        assertNotSame(controller.getContext().getEventState().findEventByNumber(3), event);
+        assertEquals("Volleyball Final", event.getTitle());
+        assertEquals(EventStatus.CANCELLED, event.getStatus());
+        // The users are copied along with the context, and tiered events are read back pointing at the copies
+        assertSame(copy.getUserState().getAllUsers().get("matty@gmail.com"), event.getOrganiser());
+
+        Booking booking = copy.getBookingState().findBookingByNumber(2);
+        assertEquals(BookingStatus.CANCELLEDBYPROVIDER, booking.getStatus());
+        assertEquals(3, booking.getNumTickets());
+        assertSame(copy.getUserState().getAllUsers().get("jsmith@gmail.com"), booking.getBooker());
+        assertSame(event.getPerformanceByNumber(3), booking.getEventPerformance());
+        assertSame(booking, copy.getBookingState().findBookingsByEventNumber(3).get(0));
+        System.out.println("Test passed successfully!");
+    }
+
+    @Test
+    @DisplayName("Test a checkpoint keeps the tiered events and bookings")
+    void checkpointTest() throws IOException
+    {
+        controller.tierColdEvents(coldStore);
+        Path file = directory.resolve("context.checkpoint");
+        controller.writeCheckpoint(file);
+
+        Context context = ContextCheckpoint.read(file).getContext();
+        assertEquals(3, context.getEventState().getAllEvents().size());
+        assertEquals(EventStatus.CANCELLED, context.getEventState().findEventByNumber(3).getStatus());
+        assertEquals(3, context.getBookingState().findBookingByNumber(2).getNumTickets());
+        assertEquals(2, context.getBookingState().getAllBookings().size());
+        System.out.println("Test passed successfully!");
+    }
+}
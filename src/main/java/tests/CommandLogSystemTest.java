@@ -0,0 +1,265 @@
+package tests;
+
+import command.AddEventPerformanceCommand;
+import command.BookEventCommand;
+import command.CancelBookingCommand;
+import command.CreateTicketedEventCommand;
+import command.ListConsumerBookingsCommand;
+import command.LoginCommand;
+import command.LogoutCommand;
+import command.RegisterConsumerCommand;
+import command.RegisterEntertainmentProviderCommand;
+import controller.CommandLog;
+import controller.Controller;
+import model.Booking;
+import model.EventType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+import org.junit.jupiter.api.io.TempDir;
+import state.Session;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CommandLogSystemTest
+{
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void displayTestName(TestInfo testInfo)
+    {
+        System.out.println(testInfo.getDisplayName());
+    }
+
+    private Controller openController(Path file, CommandLog.Durability durability, boolean concurrent)
+            throws IOException
+    {
+        Controller controller = new Controller(concurrent);
+        controller.attachLog(CommandLog.open(file, durability));
+        return controller;
+    }
+
+    /**
+     * Register a provider and a consumer in sessions of their own, and create
+     * an event with one performance
+     * @param controller the controller to run the commands on
+     * @return the session of the consumer
+     */
+    private Session setUpEvent(Controller controller)
+    {
+        Session providerSession = controller.openSession();
+        controller.runCommand(providerSession, new RegisterEntertainmentProviderCommand(
+                "Awesome Volleyball Rec", "Meadows", "rgb@rbs.co.uk", "Matty",
+                "matty@gmail.com", "pWord", List.of("One Dude"), List.of("oneDude@hotmail.com")));
+        controller.runCommand(providerSession,
+                new CreateTicketedEventCommand("Volleyball", EventType.Sports, 100, 10, false));
+        controller.runCommand(providerSession, new AddEventPerformanceCommand(1, "Meadows",
+                LocalDateTime.now().plusWeeks(1), LocalDateTime.now().plusWeeks(1).plusHours(2),
+                List.of("Players"), false, false, true, 1000, 1000));
+        Session consumerSession = controller.openSession();
+        controller.runCommand(consumerSession, new RegisterConsumerCommand("John Smith", "jsmith@gmail.com",
+                "+447777777777", "password", "jsmith@money.com"));
+        return consumerSession;
+    }
+
+    @Test
+    @DisplayName("Test the context is rebuilt from the log after a restart")
+    void recoverTest() throws IOException
+    {
+        Path file = directory.resolve("commands.log");
+        Controller controller = openController(file, CommandLog.Durability.SYNC, false);
+        Session consumerSession = setUpEvent(controller);
+        controller.runCommand(consumerSession, new BookEventCommand(1, 1, 3));
+        // Listings change nothing, so they are not logged
+        controller.runCommand(consumerSession, new ListConsumerBookingsCommand());
+
+        CommandLog log = CommandLog.open(file, CommandLog.Durability.SYNC);
+        assertEquals(5, log.getRecoveredRecords().size());
+        assertEquals("1", log.getRecoveredRecords().get(4).getResult(),
+                "The booking number should be logged as the result of the booking");
+        Controller recovered = new Controller();
+        assertEquals(5, recovered.attachLog(log));
+
+        assertEquals(1, recovered.getContext().getEventState().getAllEvents().size());
+        assertEquals(3, recovered.getContext().getBookingState().findBookingByNumber(1).getNumTickets());
+        assertEquals("jsmith@gmail.com",
+                recovered.getContext().getBookingState().findBookingByNumber(1).getBooker().getEmail(),
+                "The booking should be replayed in the session of the consumer who made it");
+        if (Files.getFileAttributeView(file, PosixFileAttributeView.class) != null)
+        {
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+        }
+    }
+
+    @Test
+    @DisplayName("Test a partly written record is cut off when the log is opened")
+    void tornRecordTest() throws IOException
+    {
+        Path file = directory.resolve("commands.log");
+        Controller controller = openController(file, CommandLog.Durability.SYNC, false);
+        setUpEvent(controller);
+        long length = Files.size(file);
+        Files.write(file, new byte[] {0, 0, 1, 0, 42, 42, 42}, StandardOpenOption.APPEND);
+
+        Controller recovered = openController(file, CommandLog.Durability.SYNC, false);
+        assertEquals(length, Files.size(file), "The partly written record should have been cut off");
+        recovered.runCommand(new LogoutCommand());
+        assertEquals(5, CommandLog.open(file, CommandLog.Durability.SYNC).getRecoveredRecords().size(),
+                "Records appended after the cut should be read back");
+    }
+
+    @Test
+    @DisplayName("Test restoring a snapshot cuts the rolled back commands from the log")
+    void restoreSnapshotTest() throws IOException
+    {
+        Path file = directory.resolve("commands.log");
+        Controller controller = openController(file, CommandLog.Durability.SYNC, false);
+        Session consumerSession = setUpEvent(controller);
+        int snapshot = controller.saveSnapshot();
+        controller.runCommand(consumerSession, new BookEventCommand(1, 1, 3));
+        controller.restoreSnapshot(snapshot);
+        controller.runCommand(consumerSession, new BookEventCommand(1, 1, 2));
+
+        Controller recovered = new Controller();
+        assertEquals(5, recovered.attachLog(CommandLog.open(file, CommandLog.Durability.SYNC)));
+        assertEquals(2, recovered.getContext().getBookingState().findBookingByNumber(1).getNumTickets(),
+                "Only the booking made after restoring the snapshot should be replayed");
+    }
+
+    @Test
+    @DisplayName("Test concurrent commands share group commits and are all logged")
+    void groupCommitTest() throws IOException
+    {
+        Path file = directory.resolve("commands.log");
+        Controller controller = openController(file, CommandLog.Durability.GROUP_COMMIT, true);
+        Session consumerSession = setUpEvent(controller);
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+        {
+            futures.add(controller.submit(consumerSession, new BookEventCommand(1, 1, 1)));
+        }
+        for (CompletableFuture<Object> future: futures)
+        {
+            assertNotNull(future.join());
+        }
+
+        Controller recovered = new Controller();
+        assertEquals(24, recovered.attachLog(CommandLog.open(file, CommandLog.Durability.GROUP_COMMIT)));
+        assertEquals(20, recovered.getContext().getBookingState().findBookingsByEventNumber(1).size());
+    }
+
+    @Test
+    @DisplayName("Test bookings made concurrently in several sessions for several events replay as they first ran")
+    void concurrentRecoveryTest() throws IOException
+    {
+        Path file = directory.resolve("commands.log");
+        Controller controller = openController(file, CommandLog.Durability.GROUP_COMMIT, true);
+        Session providerSession = controller.openSession();
+        controller.runCommand(providerSession, new RegisterEntertainmentProviderCommand(
+                "Awesome Volleyball Rec", "Meadows", "rgb@rbs.co.uk", "Matty",
+                "matty@gmail.com", "pWord", List.of("One Dude"), List.of("oneDude@hotmail.com")));
+        List<Session> consumerSessions = new ArrayList<>();
+        for (int i = 1; i <= 8; i++)
+        {
+            controller.runCommand(providerSession,
+                    new CreateTicketedEventCommand("Volleyball " + i, EventType.Sports, 100, 10, false));
+            controller.runCommand(providerSession, new AddEventPerformanceCommand(i, "Meadows",
+                    LocalDateTime.now().plusWeeks(1), LocalDateTime.now().plusWeeks(1).plusHours(2),
+                    List.of("Players"), false, false, true, 1000, 1000));
+            Session consumerSession = controller.openSession();
+            controller.runCommand(consumerSession, new RegisterConsumerCommand("Consumer " + i,
+                    "consumer" + i + "@gmail.com", "+447777777777", "password", "consumer" + i + "@money.com"));
+            consumerSessions.add(consumerSession);
+        }
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+        for (int round = 0; round < 50; round++)
+        {
+            for (int i = 1; i <= 8; i++)
+            {
+                futures.add(controller.submit(consumerSessions.get(i - 1), new BookEventCommand(i, i, 1)));
+            }
+        }
+        for (CompletableFuture<Object> future: futures)
+        {
+            assertNotNull(future.join());
+        }
+
+        Controller recovered = new Controller();
+        assertEquals(25 + 400, recovered.attachLog(CommandLog.open(file, CommandLog.Durability.GROUP_COMMIT)));
+        for (long bookingNumber = 1; bookingNumber <= 400; bookingNumber++)
+        {
+            Booking booking = controller.getContext().getBookingState().findBookingByNumber(bookingNumber);
+            Booking replayed = recovered.getContext().getBookingState().findBookingByNumber(bookingNumber);
+            assertEquals(booking.getEventPerformance().getPerformanceNumber(),
+                    replayed.getEventPerformance().getPerformanceNumber());
+            assertEquals(booking.getBooker().getEmail(), replayed.getBooker().getEmail());
+        }
+    }
+
+    @Test
+    @DisplayName("Test passwords are not logged, and logins and bookings replay as they first ran")
+    void passwordHashReplayTest() throws IOException
+    {
+        Path file = directory.resolve("commands.log");
+        Controller controller = openController(file, CommandLog.Durability.SYNC, false);
+        Session consumerSession = setUpEvent(controller);
+        controller.runCommand(consumerSession, new LogoutCommand());
+        controller.runCommand(consumerSession, new LoginCommand("jsmith@gmail.com", "wrong password"));
+        Session otherSession = controller.openSession();
+        controller.runCommand(otherSession, new LoginCommand("jsmith@gmail.com", "password"));
+        controller.runCommand(otherSession, new BookEventCommand(1, 1, 2));
+        LocalDateTime bookedAt = controller.getContext().getBookingState().findBookingByNumber(1)
+                .getBookingDateTime();
+
+        String logged = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+        assertFalse(logged.contains("pWord"), "The provider's password should not be logged");
+        assertFalse(logged.contains("wrong password"), "A password tried at login should not be logged");
+
+        Controller recovered = new Controller();
+        assertEquals(8, recovered.attachLog(CommandLog.open(file, CommandLog.Durability.SYNC)));
+        assertEquals("jsmith@gmail.com",
+                recovered.getContext().getBookingState().findBookingByNumber(1).getBooker().getEmail(),
+                "The login with the right password should be replayed");
+        assertEquals(bookedAt, recovered.getContext().getBookingState().findBookingByNumber(1).getBookingDateTime(),
+                "The booking should be replayed at the time it was first made");
+        LoginCommand login = new LoginCommand("matty@gmail.com", "pWord");
+        recovered.runCommand(recovered.openSession(), login);
+        assertNotNull(login.getResult(), "The provider should still log in with their password");
+    }
+
+    @Test
+    @DisplayName("Test a logged command giving a different result when replayed fails recovery")
+    void resultMismatchTest() throws IOException
+    {
+        Path file = directory.resolve("commands.log");
+        CommandLog log = CommandLog.open(file, CommandLog.Durability.SYNC);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(new CancelBookingCommand(1));
+        }
+        // Cancelling a booking that does not exist cannot succeed when replayed
+        log.append(0, bytes.toByteArray(), true, Instant.now());
+        log.close();
+
+        assertThrows(IllegalStateException.class,
+                () -> new Controller().attachLog(CommandLog.open(file, CommandLog.Durability.SYNC)));
+    }
+}
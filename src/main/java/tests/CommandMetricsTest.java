@@ -0,0 +1,146 @@
+package tests;
+
+import command.ICommand;
+import command.LoginCommand;
+import command.LogoutCommand;
+import command.RegisterConsumerCommand;
+import controller.CommandInterceptor;
+import controller.Context;
+import controller.Controller;
+import logging.CommandMetrics;
+import logging.Histogram;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CommandMetricsTest
+{
+    Controller controller = new Controller();
+    CommandMetrics metrics = new CommandMetrics();
+
+    @BeforeEach
+    void displayTestName(TestInfo testInfo)
+    {
+        System.out.println(testInfo.getDisplayName());
+    }
+
+    @Test
+    @DisplayName("Test the metrics of each command class are recorded separately")
+    void recordMetricsTest()
+    {
+        controller.addInterceptor(metrics.latencyInterceptor());
+        controller.addInterceptor(metrics.allocationInterceptor());
+        controller.addInterceptor(metrics.outcomeInterceptor());
+
+        controller.runCommand(new RegisterConsumerCommand("John Smith", "jsmith@gmail.com",
+                "+447777777777", "password", "jsmith@money.com"));
+        controller.runCommand(new LogoutCommand());
+        controller.runCommand(new LoginCommand("jsmith@gmail.com", "password"));
+        controller.runCommand(new LogoutCommand());
+        controller.runCommand(new LoginCommand("jsmith@gmail.com", "wrong password"));
+
+        CommandMetrics.CommandStats loginStats = metrics.getStats(LoginCommand.class);
+        assertEquals(1, loginStats.getSuccesses());
+        assertEquals(1, loginStats.getFailures(), "A login with the wrong password should count as failed");
+        assertEquals(2, loginStats.getLatencyNanos().getCount());
+        assertEquals(2, metrics.getStats(LogoutCommand.class).getSuccesses());
+        assertEquals(List.of("LoginCommand", "LogoutCommand", "RegisterConsumerCommand"),
+                new ArrayList<>(metrics.getAllStats().keySet()));
+    }
+
+    @Test
+    @DisplayName("Test interceptors run in the order they were added, and can be removed")
+    void interceptorOrderTest()
+    {
+        List<String> calls = new ArrayList<>();
+        controller.addInterceptor((command, context, proceed) ->
+        {
+            calls.add("outer before");
+            proceed.run();
+            calls.add("outer after");
+        });
+        controller.addInterceptor((command, context, proceed) ->
+        {
+            calls.add("inner before");
+            proceed.run();
+            calls.add("inner after");
+        });
+        controller.runCommand(new LogoutCommand());
+        assertEquals(List.of("outer before", "inner before", "inner after", "outer after"), calls);
+
+        CommandInterceptor outcomeInterceptor = metrics.outcomeInterceptor();
+        controller.addInterceptor(outcomeInterceptor);
+        controller.runCommand(new LogoutCommand());
+        assertTrue(controller.removeInterceptor(outcomeInterceptor));
+        controller.runCommand(new LogoutCommand());
+        assertEquals(1, metrics.getStats(LogoutCommand.class).getSuccesses(),
+                "Only the command run while the interceptor was added should be counted");
+        assertFalse(controller.removeInterceptor(outcomeInterceptor));
+    }
+
+    @Test
+    @DisplayName("Test histogram percentiles are within a factor of two")
+    void histogramTest()
+    {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (int value = 1; value <= 1000; value++)
+        {
+            histogram.record(value);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500, histogram.getSum());
+        assertEquals(1000, histogram.getMax());
+        long median = histogram.getPercentile(50);
+        assertTrue(median >= 500 && median < 1000, "The median was " + median);
+        assertEquals(1000, histogram.getPercentile(100));
+    }
+
+    @Test
+    @DisplayName("Test a read-only command run again after a change is intercepted once")
+    void readOnlyRetryTest()
+    {
+        List<String> calls = new ArrayList<>();
+        controller.addInterceptor((command, context, proceed) ->
+        {
+            calls.add("before");
+            proceed.run();
+            calls.add("after");
+        });
+        int[] runs = {0};
+        ICommand reader = new ICommand()
+        {
+            @Override
+            public void execute(Context context)
+            {
+                if (runs[0]++ == 0)
+                {
+                    // Change the context while the command runs, so that it has to run again
+                    controller.runCommand(new LogoutCommand());
+                }
+            }
+
+            @Override
+            public Object getResult()
+            {
+                return null;
+            }
+
+            @Override
+            public boolean isReadOnly()
+            {
+                return true;
+            }
+        };
+        controller.runCommand(reader);
+        assertEquals(2, runs[0], "The command should have run again after the context changed");
+        // The logout is intercepted inside the read-only command's first run
+        assertEquals(List.of("before", "before", "after", "after"), calls);
+    }
+}
@@ -0,0 +1,213 @@
+package tests;
+
+import command.AddEventPerformanceCommand;
+import command.BookEventCommand;
+import command.CreateTicketedEventCommand;
+import command.ListConsumerBookingsCommand;
+import command.ListEventsCommand;
+import command.RegisterConsumerCommand;
+import command.RegisterEntertainmentProviderCommand;
+import controller.Controller;
+import external.MockEntertainmentProviderSystem;
+import model.Booking;
+import model.BookingStatus;
+import model.EntertainmentProvider;
+import model.EventPerformance;
+import model.EventType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+import state.Session;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrentBookingSystemTest
+{
+    private static final int CONSUMERS = 8, EVENTS = 20, TICKETS_PER_EVENT = 3;
+
+    Controller controller = new Controller(true);
+
+    @BeforeEach
+    void displayTestName(TestInfo testInfo)
+    {
+        System.out.println(testInfo.getDisplayName());
+    }
+
+    private EventPerformance createEventWithPerformance(Session providerSession, String title, int numTickets)
+    {
+        CreateTicketedEventCommand createCmd =
+                new CreateTicketedEventCommand(title, EventType.Sports, numTickets, 10, false);
+        controller.runCommand(providerSession, createCmd);
+        AddEventPerformanceCommand performanceCmd = new AddEventPerformanceCommand(createCmd.getResult(),
+                "Meadows", LocalDateTime.now().plusWeeks(1), LocalDateTime.now().plusWeeks(1).plusHours(2),
+                List.of("Players"), false, false, true, 1000, 1000);
+        controller.runCommand(providerSession, performanceCmd);
+        return performanceCmd.getResult();
+    }
+
+    private int bookedTickets(long eventNumber)
+    {
+        int tickets = 0;
+        for (Booking booking: controller.getContext().getBookingState().findBookingsByEventNumber(eventNumber))
+        {
+            if (booking.getStatus() == BookingStatus.ACTIVE)
+            {
+                tickets += booking.getNumTickets();
+            }
+        }
+        return tickets;
+    }
+
+    @Test
+    @DisplayName("Test concurrent bookings never oversell an event")
+    void noOversellTest() throws InterruptedException
+    {
+        Session providerSession = controller.openSession();
+        RegisterEntertainmentProviderCommand registerProviderCmd = new RegisterEntertainmentProviderCommand(
+                "Awesome Volleyball Rec", "Meadows", "rgb@rbs.co.uk", "Matty",
+                "matty@gmail.com", "pWord", List.of("One Dude"), List.of("oneDude@hotmail.com"));
+        controller.runCommand(providerSession, registerProviderCmd);
+        EntertainmentProvider provider = registerProviderCmd.getResult();
+        List<EventPerformance> performances = new ArrayList<>();
+        for (int i = 0; i < EVENTS; i++)
+        {
+            performances.add(createEventWithPerformance(providerSession, "Match " + i, TICKETS_PER_EVENT));
+        }
+
+        List<Session> consumerSessions = new ArrayList<>();
+        for (int i = 0; i < CONSUMERS; i++)
+        {
+            Session session = controller.openSession();
+            controller.runCommand(session, new RegisterConsumerCommand("Consumer " + i,
+                    "consumer" + i + "@gmail.com", "+44" + i, "password", "consumer" + i + "@money.com"));
+            consumerSessions.add(session);
+        }
+
+        // Every consumer tries to book more tickets for every event than the event has
+        ExecutorService executor = Executors.newFixedThreadPool(CONSUMERS);
+        CountDownLatch start = new CountDownLatch(1);
+        for (Session session: consumerSessions)
+        {
+            executor.execute(() ->
+            {
+                try
+                {
+                    start.await();
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+                for (EventPerformance performance: performances)
+                {
+                    for (int attempt = 0; attempt < TICKETS_PER_EVENT; attempt++)
+                    {
+                        controller.runCommand(session, new BookEventCommand(
+                                performance.getEvent().getEventNumber(), performance.getPerformanceNumber(), 1));
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES), "The bookings did not finish in time");
+
+        MockEntertainmentProviderSystem providerSystem =
+                (MockEntertainmentProviderSystem) provider.getProviderSystem();
+        for (EventPerformance performance: performances)
+        {
+            long eventNumber = performance.getEvent().getEventNumber();
+            assertEquals(TICKETS_PER_EVENT, bookedTickets(eventNumber),
+                    "Event " + eventNumber + " was not booked out exactly");
+            assertEquals(0, providerSystem.getNumTicketsLeft(eventNumber, performance.getPerformanceNumber()),
+                    "The provider's system does not agree with the bookings made for event " + eventNumber);
+        }
+    }
+
+    @Test
+    @DisplayName("Test submitted bookings complete with their results")
+    void submitTest()
+    {
+        Session providerSession = controller.openSession();
+        controller.runCommand(providerSession, new RegisterEntertainmentProviderCommand(
+                "Awesome Volleyball Rec", "Meadows", "rgb@rbs.co.uk", "Matty",
+                "matty@gmail.com", "pWord", List.of("One Dude"), List.of("oneDude@hotmail.com")));
+        EventPerformance performance = createEventWithPerformance(providerSession, "Volleyball", 1000);
+        long eventNumber = performance.getEvent().getEventNumber();
+
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < CONSUMERS; i++)
+        {
+            Session session = controller.openSession();
+            controller.runCommand(session, new RegisterConsumerCommand("Consumer " + i,
+                    "consumer" + i + "@gmail.com", "+44" + i, "password", "consumer" + i + "@money.com"));
+            for (int attempt = 0; attempt < TICKETS_PER_EVENT; attempt++)
+            {
+                futures.add(controller.submit(session,
+                        new BookEventCommand(eventNumber, performance.getPerformanceNumber(), 2)));
+            }
+        }
+
+        for (CompletableFuture<Object> future: futures)
+        {
+            assertNotNull(future.join(), "A submitted booking should complete with its booking number");
+        }
+        assertEquals(2 * CONSUMERS * TICKETS_PER_EVENT, bookedTickets(eventNumber));
+    }
+
+    @Test
+    @DisplayName("Test listings run alongside bookings and see consistent results")
+    void readersTest() throws InterruptedException
+    {
+        Session providerSession = controller.openSession();
+        controller.runCommand(providerSession, new RegisterEntertainmentProviderCommand(
+                "Awesome Volleyball Rec", "Meadows", "rgb@rbs.co.uk", "Matty",
+                "matty@gmail.com", "pWord", List.of("One Dude"), List.of("oneDude@hotmail.com")));
+        EventPerformance performance = createEventWithPerformance(providerSession, "Volleyball", 1000);
+        Session consumerSession = controller.openSession();
+        controller.runCommand(consumerSession, new RegisterConsumerCommand("Consumer", "consumer@gmail.com",
+                "+44", "password", "consumer@money.com"));
+
+        AtomicInteger failedReads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(CONSUMERS);
+        for (int i = 0; i < CONSUMERS; i++)
+        {
+            executor.execute(() ->
+            {
+                for (int attempt = 0; attempt < EVENTS; attempt++)
+                {
+                    ListEventsCommand listCmd = new ListEventsCommand(false, true);
+                    controller.runCommand(listCmd);
+                    ListConsumerBookingsCommand bookingsCmd = new ListConsumerBookingsCommand();
+                    controller.runCommand(consumerSession, bookingsCmd);
+                    if (listCmd.getResult() == null || listCmd.getResult().size() != 1
+                            || bookingsCmd.getResult() == null)
+                    {
+                        failedReads.incrementAndGet();
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < EVENTS; i++)
+        {
+            controller.runCommand(consumerSession, new BookEventCommand(
+                    performance.getEvent().getEventNumber(), performance.getPerformanceNumber(), 1));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES), "The listings did not finish in time");
+
+        assertEquals(0, failedReads.get(), "Some listings did not see the event or the consumer's bookings");
+        assertEquals(EVENTS, bookedTickets(performance.getEvent().getEventNumber()));
+    }
+}
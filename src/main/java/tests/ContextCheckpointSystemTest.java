@@ -0,0 +1,138 @@
+package tests;
+
+import command.*;
+import controller.CommandLog;
+import controller.Context;
+import controller.ContextCheckpoint;
+import controller.Controller;
+import model.Booking;
+import model.Consumer;
+import model.EventType;
+import model.SponsorshipStatus;
+import model.TicketedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+import org.junit.jupiter.api.io.TempDir;
+import state.Session;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContextCheckpointSystemTest
+{
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void displayTestName(TestInfo testInfo)
+    {
+        System.out.println(testInfo.getDisplayName());
+    }
+
+    /**
+     * Register a provider with a sponsored event of one performance, accept the
+     * sponsorship, and book tickets for a consumer, each in a session of its own
+     * @param controller the controller to run the commands on
+     * @return the session of the consumer, still logged in
+     */
+    private Session setUpBookedEvent(Controller controller)
+    {
+        Session providerSession = controller.openSession();
+        controller.runCommand(providerSession, new RegisterEntertainmentProviderCommand(
+                "Awesome Volleyball Rec", "Meadows", "rgb@rbs.co.uk", "Matty",
+                "matty@gmail.com", "pWord", List.of("One Dude"), List.of("oneDude@hotmail.com")));
+        controller.runCommand(providerSession,
+                new CreateTicketedEventCommand("Volleyball", EventType.Sports, 100, 10, true));
+        controller.runCommand(providerSession, new AddEventPerformanceCommand(1, "Meadows",
+                LocalDateTime.now().plusWeeks(1), LocalDateTime.now().plusWeeks(1).plusHours(2),
+                List.of("Players"), false, false, true, 1000, 1000));
+
+        Session govSession = controller.openSession();
+        controller.runCommand(govSession, new LoginCommand("margaret.thatcher@gov.uk", "The Good times  "));
+        controller.runCommand(govSession, new RespondSponsorshipCommand(1, 25));
+
+        Session consumerSession = controller.openSession();
+        controller.runCommand(consumerSession, new RegisterConsumerCommand("John Smith", "jsmith@gmail.com",
+                "+447777777777", "password", "jsmith@money.com"));
+        controller.runCommand(consumerSession, new BookEventCommand(1, 1, 3));
+        return consumerSession;
+    }
+
+    @Test
+    @DisplayName("Test a checkpoint reads back users, events, sponsorships and bookings")
+    void roundTripTest() throws IOException
+    {
+        Controller controller = new Controller();
+        setUpBookedEvent(controller);
+        Path file = directory.resolve("context.checkpoint");
+        controller.writeCheckpoint(file);
+
+        Context context = ContextCheckpoint.read(file).getContext();
+        Consumer consumer = (Consumer) context.getUserState().getAllUsers().get("jsmith@gmail.com");
+        assertTrue(consumer.checkPasswordMatch("password"));
+        assertEquals("+447777777777", consumer.getPhoneNumber());
+        assertEquals(1, consumer.getBookings().size());
+
+        TicketedEvent event = (TicketedEvent) context.getEventState().findEventByNumber(1);
+        assertEquals("Volleyball", event.getTitle());
+        assertEquals(1, event.getPerformances().size());
+        assertSame(context.getUserState().getAllUsers().get("matty@gmail.com"), event.getOrganiser());
+        assertTrue(event.getOrganiser().getEvents().contains(event));
+        assertEquals(SponsorshipStatus.ACCEPTED, event.getSponsorshipRequest().getStatus());
+        assertEquals(7.5, event.getDiscountedTicketPrice(), 0.001);
+
+        Booking booking = context.getBookingState().findBookingByNumber(1);
+        assertSame(consumer, booking.getBooker());
+        assertSame(event.getPerformances().iterator().next(), booking.getEventPerformance());
+        assertEquals(3, booking.getNumTickets());
+        assertEquals(97, event.getOrganiser().getProviderSystem().getNumTicketsLeft(1, 1));
+
+        // Numbers carry on from where the checkpointed context left off
+        Controller restored = new Controller();
+        restored.attachLog(CommandLog.open(directory.resolve("empty.log"), CommandLog.Durability.SYNC),
+                ContextCheckpoint.read(file));
+        Session session = restored.openSession();
+        restored.runCommand(session, new LoginCommand("jsmith@gmail.com", "password"));
+        BookEventCommand book = new BookEventCommand(1, 1, 2);
+        restored.runCommand(session, book);
+        assertEquals(2L, book.getResult());
+    }
+
+    @Test
+    @DisplayName("Test a controller restarts from a checkpoint and the commands logged since")
+    void checkpointAndLogTest() throws IOException
+    {
+        Path logFile = directory.resolve("commands.log");
+        Path checkpointFile = directory.resolve("context.checkpoint");
+        Controller controller = new Controller();
+        controller.attachLog(CommandLog.open(logFile, CommandLog.Durability.SYNC));
+        Session consumerSession = setUpBookedEvent(controller);
+        controller.writeCheckpoint(checkpointFile);
+        // The consumer logged in before the checkpoint books again after it
+        controller.runCommand(consumerSession, new BookEventCommand(1, 1, 4));
+
+        Controller restored = new Controller();
+        int replayed = restored.attachLog(CommandLog.open(logFile, CommandLog.Durability.SYNC),
+                ContextCheckpoint.read(checkpointFile));
+        assertEquals(1, replayed);
+        Consumer consumer = (Consumer) restored.getContext().getUserState().getAllUsers().get("jsmith@gmail.com");
+        assertEquals(2, consumer.getBookings().size());
+        assertEquals(7, consumer.getBookings().get(1).getNumTickets() + consumer.getBookings().get(0).getNumTickets());
+    }
+
+    @Test
+    @DisplayName("Test a file that is not a checkpoint is refused")
+    void notACheckpointTest() throws IOException
+    {
+        Path file = directory.resolve("context.checkpoint");
+        Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12});
+        assertThrows(IOException.class, () -> ContextCheckpoint.read(file));
+    }
+}
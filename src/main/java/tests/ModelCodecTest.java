@@ -0,0 +1,155 @@
+package tests;
+
+import model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ModelCodecTest
+{
+    List<User> users;
+    EntertainmentProvider provider;
+    Consumer consumer;
+    TicketedEvent event;
+    EventPerformance performance;
+
+    @BeforeEach
+    void setUp(TestInfo testInfo)
+    {
+        System.out.println(testInfo.getDisplayName());
+        provider = new EntertainmentProvider("Olympics Committee", "Mt. Everest", "noreply@gmail.com",
+                "Secret Identity", "anonymous@gmail.com", "anonymous", new ArrayList<>(), new ArrayList<>());
+        consumer = new Consumer("John Smith", "jsmith@gmail.com", "+447777777777", "password", "jsmith@money.com");
+        users = List.of(provider, consumer);
+        event = new TicketedEvent(1, provider, "London Summer Olympics", EventType.Sports, 12.5, 1000);
+        performance = new EventPerformance(1, event, "Stratford", LocalDateTime.of(2030, 7, 27, 19, 0),
+                LocalDateTime.of(2030, 7, 27, 23, 30, 15, 123456789), List.of("Everyone", "Usain Bolt"),
+                true, false, true, 80000, 80000);
+        event.addPerformance(performance);
+        event.addPerformance(new EventPerformance(2, event, "Stratford", null, null, null,
+                false, false, false, 100, 200));
+    }
+
+    @Test
+    @DisplayName("Test events and bookings round trip, sharing the same objects")
+    void roundTripTest()
+    {
+        ModelCodec.Encoder encoder = new ModelCodec.Encoder(users::indexOf);
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        encoder.writeHeader(buffer);
+        encoder.writeEvent(buffer, event);
+        Booking booking = new Booking(7, consumer, performance, 3, 37.5, LocalDateTime.of(2030, 1, 1, 9, 0));
+        booking.cancelByConsumer();
+        encoder.writeBooking(buffer, booking);
+        encoder.writeEvent(buffer, event);
+        buffer.flip();
+
+        ModelCodec.Decoder decoder = new ModelCodec.Decoder(users::get);
+        decoder.readHeader(buffer);
+        TicketedEvent readEvent = (TicketedEvent) decoder.readEvent(buffer);
+        Booking readBooking = decoder.readBooking(buffer);
+        assertSame(readEvent, decoder.readEvent(buffer));
+        assertFalse(buffer.hasRemaining());
+
+        assertEquals("London Summer Olympics", readEvent.getTitle());
+        assertSame(provider, readEvent.getOrganiser());
+        assertEquals(12.5, readEvent.getOriginalTicketPrice());
+        assertEquals(1000, readEvent.getNumTickets());
+        List<EventPerformance> performances = new ArrayList<>(readEvent.getPerformances());
+        assertEquals(2, performances.size());
+        EventPerformance readPerformance = performances.get(0);
+        assertEquals(performance.getEndDateTime(), readPerformance.getEndDateTime());
+        assertEquals(List.of("Everyone", "Usain Bolt"), readPerformance.getPerformerNames());
+        assertTrue(readPerformance.hasSocialDistancing() && readPerformance.isOutdoors());
+        assertNull(performances.get(1).getStartDateTime());
+        assertNull(performances.get(1).getPerformerNames());
+
+        assertSame(readPerformance, readBooking.getEventPerformance());
+        assertSame(consumer, readBooking.getBooker());
+        assertEquals(7, readBooking.getBookingNumber());
+        assertEquals(37.5, readBooking.getAmountPaid());
+        assertEquals(BookingStatus.CANCELLEDBYCONSUMER, readBooking.getStatus());
+    }
+
+    @Test
+    @DisplayName("Test repeated strings and references keep records small")
+    void compactTest()
+    {
+        ModelCodec.Encoder encoder = new ModelCodec.Encoder(users::indexOf);
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        encoder.writeEvent(buffer, event);
+        int eventBytes = buffer.position();
+        Event sameVenue = new NonTicketedEvent(2, provider, "London Summer Olympics", EventType.Sports);
+        sameVenue.addPerformance(new EventPerformance(3, sameVenue, "Stratford", null, null,
+                List.of("Everyone", "Usain Bolt"), false, false, false, 100, 200));
+        encoder.writeEvent(buffer, sameVenue);
+        assertTrue(buffer.position() - eventBytes < 20, "Strings written before should be referred to");
+
+        int bookingStart = buffer.position();
+        encoder.writeBooking(buffer, new Booking(1, consumer, performance, 2, 25, LocalDateTime.now()));
+        assertTrue(buffer.position() - bookingStart <= 32, "A booking should take a few dozen bytes at most");
+    }
+
+    @Test
+    @DisplayName("Test a record that does not fit leaves the buffer and the encoder as they were")
+    void overflowTest()
+    {
+        ModelCodec.Encoder encoder = new ModelCodec.Encoder(users::indexOf);
+        ByteBuffer small = ByteBuffer.allocate(16);
+        assertThrows(BufferOverflowException.class, () -> encoder.writeEvent(small, event));
+        assertEquals(0, small.position());
+
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        encoder.writeHeader(buffer);
+        encoder.writeEvent(buffer, event);
+        buffer.flip();
+        ModelCodec.Decoder decoder = new ModelCodec.Decoder(users::get);
+        decoder.readHeader(buffer);
+        assertEquals("London Summer Olympics", decoder.readEvent(buffer).getTitle());
+    }
+
+    @Test
+    @DisplayName("Test a booking for a performance added after its event was written carries the performance")
+    void laterPerformanceTest()
+    {
+        ModelCodec.Encoder encoder = new ModelCodec.Encoder(users::indexOf);
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        encoder.writeHeader(buffer);
+        encoder.writeEvent(buffer, event);
+        EventPerformance laterPerformance = new EventPerformance(9, event, "Wembley", null, null,
+                List.of("Everyone"), false, false, true, 100, 200);
+        event.addPerformance(laterPerformance);
+        encoder.writeBooking(buffer, new Booking(8, consumer, laterPerformance, 2, 25, LocalDateTime.now()));
+        buffer.flip();
+
+        ModelCodec.Decoder decoder = new ModelCodec.Decoder(users::get);
+        decoder.readHeader(buffer);
+        Event readEvent = decoder.readEvent(buffer);
+        Booking readBooking = decoder.readBooking(buffer);
+        assertFalse(buffer.hasRemaining());
+        assertEquals(9, readBooking.getEventPerformance().getPerformanceNumber());
+        assertEquals("Wembley", readBooking.getEventPerformance().getVenueAddress());
+        assertSame(readEvent, readBooking.getEventPerformance().getEvent());
+        assertSame(readBooking.getEventPerformance(), readEvent.getPerformanceByNumber(9));
+    }
+
+    @Test
+    @DisplayName("Test a stream with another schema version is refused")
+    void schemaVersionTest()
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        ModelCodec.putVarLong(buffer, 0x4D43);
+        ModelCodec.putVarLong(buffer, ModelCodec.SCHEMA_VERSION + 1);
+        buffer.flip();
+        assertThrows(IllegalStateException.class, () -> new ModelCodec.Decoder(users::get).readHeader(buffer));
+    }
+}
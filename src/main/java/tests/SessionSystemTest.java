@@ -0,0 +1,99 @@
+package tests;
+
+import command.CreateNonTicketedEventCommand;
+import command.LoginCommand;
+import command.LogoutCommand;
+import command.RegisterConsumerCommand;
+import command.RegisterEntertainmentProviderCommand;
+import controller.Controller;
+import model.EntertainmentProvider;
+import model.EventType;
+import model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+import state.Session;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionSystemTest
+{
+    Controller controller = new Controller();
+
+    @BeforeEach
+    void displayTestName(TestInfo testInfo)
+    {
+        System.out.println(testInfo.getDisplayName());
+    }
+
+    private EntertainmentProvider registerEntertainmentProvider(Session session, String orgName, String email)
+    {
+        RegisterEntertainmentProviderCommand cmd = new RegisterEntertainmentProviderCommand(
+                orgName,
+                "Meadows",
+                "rgb@rbs.co.uk",
+                "Matty",
+                email,
+                "pWord",
+                List.of("One Dude"),
+                List.of("oneDude@hotmail.com")
+        );
+        controller.runCommand(session, cmd);
+        return cmd.getResult();
+    }
+
+    @Test
+    @DisplayName("Test two sessions keep their own current users")
+    void twoSessionsTest()
+    {
+        Session session1 = controller.openSession();
+        Session session2 = controller.openSession();
+        EntertainmentProvider provider1 = registerEntertainmentProvider(session1, "Volleyball", "matty@gmail.com");
+        EntertainmentProvider provider2 = registerEntertainmentProvider(session2, "Circus", "cde@gmail.com");
+        assertSame(provider1, session1.getCurrentUser(), "The first session has the wrong current user");
+        assertSame(provider2, session2.getCurrentUser(), "The second session has the wrong current user");
+        assertNull(controller.getContext().getUserState().getCurrentUser(),
+                "Commands run in sessions should not log anyone in outside of them");
+
+        CreateNonTicketedEventCommand createCmd = new CreateNonTicketedEventCommand("Match", EventType.Sports);
+        controller.runCommand(session1, createCmd);
+        assertSame(provider1,
+                controller.getContext().getEventState().findEventByNumber(createCmd.getResult()).getOrganiser(),
+                "The event should be organised by the user of the session it was created in");
+
+        controller.runCommand(session2, new LogoutCommand());
+        assertNull(session2.getCurrentUser(), "Logging out should clear the session's user");
+        assertSame(provider1, session1.getCurrentUser(), "Logging out should not affect other sessions");
+    }
+
+    @Test
+    @DisplayName("Test logging in logs in either the session or the context's current user")
+    void loginSessionTest()
+    {
+        controller.runCommand(new RegisterConsumerCommand("John Smith", "johnsmith@gmail.com",
+                "+123456789", "SecretPassword", "johnsmith@money.com"));
+        controller.runCommand(new LogoutCommand());
+
+        Session session = controller.openSession();
+        LoginCommand loginCmd = new LoginCommand("johnsmith@gmail.com", "SecretPassword");
+        controller.runCommand(session, loginCmd);
+        assertSame(session, loginCmd.getSession(), "The login should report the session it logged in");
+        User user = loginCmd.getResult();
+        assertSame(user, session.getCurrentUser(), "The session should belong to the logged-in user");
+        assertNull(controller.getContext().getUserState().getCurrentUser(),
+                "Logging in a session should not log in the context's current user");
+
+        LoginCommand contextLoginCmd = new LoginCommand("johnsmith@gmail.com", "SecretPassword");
+        controller.runCommand(contextLoginCmd);
+        assertNull(contextLoginCmd.getSession(), "A login outside a session should not hand out a session");
+        assertSame(user, controller.getContext().getUserState().getCurrentUser(),
+                "A login outside a session should log in the context's current user");
+
+        LoginCommand failedLoginCmd = new LoginCommand("johnsmith@gmail.com", "WrongPassword");
+        controller.runCommand(controller.openSession(), failedLoginCmd);
+        assertNull(failedLoginCmd.getSession(), "A failed login should not hand out a session");
+    }
+}
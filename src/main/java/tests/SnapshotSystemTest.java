@@ -0,0 +1,279 @@
+package tests;
+
+import command.AddEventPerformanceCommand;
+import command.BookEventCommand;
+import command.CancelBookingCommand;
+import command.CancelEventCommand;
+import command.CreateNonTicketedEventCommand;
+import command.CreateTicketedEventCommand;
+import command.ListConsumerBookingsCommand;
+import command.LoginCommand;
+import command.LogoutCommand;
+import command.RegisterConsumerCommand;
+import command.RegisterEntertainmentProviderCommand;
+import controller.Controller;
+import model.BookingStatus;
+import model.EntertainmentProvider;
+import model.EventStatus;
+import model.EventType;
+import model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+import org.junit.jupiter.api.io.TempDir;
+import state.BookingJournal;
+import state.IBookingState;
+import state.Session;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotSystemTest
+{
+    Controller controller = new Controller();
+
+    @BeforeEach
+    void displayTestName(TestInfo testInfo)
+    {
+        System.out.println(testInfo.getDisplayName());
+    }
+
+    private void registerEntertainmentProvider()
+    {
+        controller.runCommand(new RegisterEntertainmentProviderCommand(
+                "Awesome Volleyball Rec",
+                "Meadows",
+                "rgb@rbs.co.uk",
+                "Matty",
+                "matty@gmail.com",
+                "pWord",
+                List.of("One Dude"),
+                List.of("oneDude@hotmail.com")
+        ));
+    }
+
+    private long createEvent(String title)
+    {
+        CreateNonTicketedEventCommand cmd = new CreateNonTicketedEventCommand(title, EventType.Sports);
+        controller.runCommand(cmd);
+        return cmd.getResult();
+    }
+
+    @Test
+    @DisplayName("Test restoring a snapshot rolls back events created and cancelled after it")
+    void restoreSnapshotTest1()
+    {
+        registerEntertainmentProvider();
+        long eventNumber = createEvent("Volleyball");
+        int snapshot = controller.saveSnapshot();
+
+        createEvent("Beach volleyball");
+        controller.runCommand(new CancelEventCommand(eventNumber, "Rained off"));
+        assertEquals(EventStatus.CANCELLED,
+                controller.getContext().getEventState().findEventByNumber(eventNumber).getStatus());
+
+        controller.restoreSnapshot(snapshot);
+        assertEquals(1, controller.getContext().getEventState().getAllEvents().size(),
+                "Events created after the snapshot should not be restored");
+        assertEquals(EventStatus.ACTIVE,
+                controller.getContext().getEventState().findEventByNumber(eventNumber).getStatus(),
+                "An event cancelled after the snapshot should be active again");
+    }
+
+    @Test
+    @DisplayName("Test restoring a snapshot rolls back the events listed for the provider")
+    void restoreSnapshotUsersTest()
+    {
+        registerEntertainmentProvider();
+        createEvent("Volleyball");
+        int snapshot = controller.saveSnapshot();
+        EntertainmentProvider provider =
+                (EntertainmentProvider) controller.getContext().getUserState().getCurrentUser();
+        for (int i = 0; i < Controller.CHECKPOINT_INTERVAL; i++)
+        {
+            createEvent("Event " + i);
+        }
+        assertEquals(Controller.CHECKPOINT_INTERVAL + 1, provider.getEvents().size());
+
+        controller.restoreSnapshot(snapshot);
+        EntertainmentProvider restoredProvider =
+                (EntertainmentProvider) controller.getContext().getUserState().getCurrentUser();
+        assertEquals(1, restoredProvider.getEvents().size(),
+                "Events created after the snapshot should not be listed for the provider");
+        assertSame(controller.getContext().getEventState().findEventByNumber(1), restoredProvider.getEvents().get(0),
+                "The provider should list the restored event");
+        assertSame(restoredProvider, restoredProvider.getEvents().get(0).getOrganiser(),
+                "The restored event should be organised by the restored provider");
+        assertEquals(Controller.CHECKPOINT_INTERVAL + 1, provider.getEvents().size(),
+                "Restoring a snapshot should not change the users of the context it replaced");
+    }
+
+    @Test
+    @DisplayName("Test restoring snapshots taken on both sides of a checkpoint")
+    void restoreSnapshotTest2()
+    {
+        registerEntertainmentProvider();
+        int firstSnapshot = controller.saveSnapshot();
+        for (int i = 0; i < Controller.CHECKPOINT_INTERVAL + 5; i++)
+        {
+            createEvent("Event " + i);
+        }
+        int secondSnapshot = controller.saveSnapshot();
+        createEvent("Last event");
+
+        controller.restoreSnapshot(secondSnapshot);
+        assertEquals(Controller.CHECKPOINT_INTERVAL + 5,
+                controller.getContext().getEventState().getAllEvents().size(),
+                "The snapshot after the checkpoint was not restored correctly");
+
+        controller.restoreSnapshot(firstSnapshot);
+        assertEquals(0, controller.getContext().getEventState().getAllEvents().size(),
+                "The snapshot before the checkpoint was not restored correctly");
+        assertNotNull(controller.getContext().getUserState().getCurrentUser(),
+                "The logged-in user should be restored with the snapshot");
+    }
+
+    @Test
+    @DisplayName("Test restoring a snapshot replays fresh commands, leaving the caller's results alone")
+    void restoreSnapshotFreshCommandsTest()
+    {
+        registerEntertainmentProvider();
+        controller.saveSnapshot();
+        controller.runCommand(new LogoutCommand());
+        LoginCommand login = new LoginCommand("matty@gmail.com", "pWord");
+        controller.runCommand(login);
+        User loggedIn = login.getResult();
+        int snapshot = controller.saveSnapshot();
+        createEvent("Volleyball");
+
+        controller.restoreSnapshot(snapshot);
+        assertSame(loggedIn, login.getResult(),
+                "Replaying the login should not change the result of the command that was run");
+        User restoredUser = controller.getContext().getUserState().getCurrentUser();
+        assertEquals("matty@gmail.com", restoredUser.getEmail());
+        assertNotSame(loggedIn, restoredUser, "The restored context should log in its own copy of the user");
+        assertEquals(0, controller.getContext().getEventState().getAllEvents().size());
+    }
+
+    @Test
+    @DisplayName("Test a released snapshot cannot be restored, and earlier snapshots still can")
+    void releaseSnapshotTest()
+    {
+        registerEntertainmentProvider();
+        int firstSnapshot = controller.saveSnapshot();
+        for (int i = 0; i < Controller.CHECKPOINT_INTERVAL + 5; i++)
+        {
+            createEvent("Event " + i);
+        }
+        int secondSnapshot = controller.saveSnapshot();
+        createEvent("Last event");
+
+        controller.releaseSnapshot(secondSnapshot);
+        assertThrows(IllegalArgumentException.class, () -> controller.restoreSnapshot(secondSnapshot));
+        controller.restoreSnapshot(firstSnapshot);
+        assertEquals(0, controller.getContext().getEventState().getAllEvents().size());
+
+        controller.releaseSnapshot(firstSnapshot);
+        assertThrows(IllegalArgumentException.class, () -> controller.restoreSnapshot(firstSnapshot));
+    }
+
+    @Test
+    @DisplayName("Test restoring a snapshot rolls back bookings made and cancelled after it when they are kept in a journal")
+    void restoreSnapshotJournaledBookingsTest(@TempDir Path directory) throws IOException
+    {
+        try (BookingJournal journal = BookingJournal.open(directory.resolve("bookings.journal")))
+        {
+            controller = new Controller(false, journal);
+            registerEntertainmentProvider();
+            LocalDateTime nextWeek = LocalDateTime.now().plusWeeks(1);
+            controller.runCommand(new CreateTicketedEventCommand("Volleyball", EventType.Sports, 100, 10, false));
+            controller.runCommand(new AddEventPerformanceCommand(1, "Meadows", nextWeek, nextWeek.plusHours(2),
+                    List.of("Players"), false, false, true, 1000, 1000));
+            controller.runCommand(new LogoutCommand());
+            controller.runCommand(new RegisterConsumerCommand("John Smith", "jsmith@gmail.com",
+                    "+447777777777", "password", "jsmith@money.com"));
+            controller.runCommand(new BookEventCommand(1, 1, 2));
+            int snapshot = controller.saveSnapshot();
+
+            controller.runCommand(new CancelBookingCommand(1));
+            controller.runCommand(new BookEventCommand(1, 1, 3));
+            assertEquals(2, journal.size());
+
+            controller.restoreSnapshot(snapshot);
+            IBookingState bookingState = controller.getContext().getBookingState();
+            assertEquals(BookingStatus.ACTIVE, bookingState.findBookingByNumber(1).getStatus(),
+                    "A booking cancelled after the snapshot should be active again");
+            assertNull(bookingState.findBookingByNumber(2));
+            ListConsumerBookingsCommand listBookings = new ListConsumerBookingsCommand();
+            controller.runCommand(listBookings);
+            assertEquals(1, listBookings.getResult().size());
+
+            BookEventCommand book = new BookEventCommand(1, 1, 4);
+            controller.runCommand(book);
+            assertEquals(2L, book.getResult());
+            assertEquals(2, journal.size());
+            assertEquals(BookingStatus.ACTIVE, journal.getStatus(0));
+        }
+    }
+
+    @Test
+    @DisplayName("Test restoring a snapshot taken after concurrent bookings gives back the booking numbers clients got")
+    void restoreSnapshotConcurrentBookingsTest()
+    {
+        controller = new Controller(true);
+        Session providerSession = controller.openSession();
+        controller.runCommand(providerSession, new RegisterEntertainmentProviderCommand(
+                "Awesome Volleyball Rec", "Meadows", "rgb@rbs.co.uk", "Matty",
+                "matty@gmail.com", "pWord", List.of("One Dude"), List.of("oneDude@hotmail.com")));
+        LocalDateTime nextWeek = LocalDateTime.now().plusWeeks(1);
+        List<Session> consumerSessions = new ArrayList<>();
+        for (int i = 1; i <= 4; i++)
+        {
+            controller.runCommand(providerSession,
+                    new CreateTicketedEventCommand("Volleyball " + i, EventType.Sports, 100, 10, false));
+            controller.runCommand(providerSession, new AddEventPerformanceCommand(i, "Meadows",
+                    nextWeek, nextWeek.plusHours(2), List.of("Players"), false, false, true, 1000, 1000));
+            Session consumerSession = controller.openSession();
+            controller.runCommand(consumerSession, new RegisterConsumerCommand("Consumer " + i,
+                    "consumer" + i + "@gmail.com", "+447777777777", "password", "consumer" + i + "@money.com"));
+            consumerSessions.add(consumerSession);
+        }
+        // Each booking number a client was given, with the performance it was for
+        Map<Long, Long> bookedPerformances = new HashMap<>();
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+        List<Long> performanceNumbers = new ArrayList<>();
+        for (int round = 0; round < 4; round++)
+        {
+            for (int i = 1; i <= 4; i++)
+            {
+                futures.add(controller.submit(consumerSessions.get(i - 1), new BookEventCommand(i, i, 1)));
+                performanceNumbers.add((long) i);
+            }
+        }
+        for (int i = 0; i < futures.size(); i++)
+        {
+            bookedPerformances.put((Long) futures.get(i).join(), performanceNumbers.get(i));
+        }
+        int snapshot = controller.saveSnapshot();
+
+        controller.runCommand(consumerSessions.get(0), new BookEventCommand(1, 1, 2));
+        controller.restoreSnapshot(snapshot);
+        IBookingState bookingState = controller.getContext().getBookingState();
+        for (Map.Entry<Long, Long> booked: bookedPerformances.entrySet())
+        {
+            assertEquals(booked.getValue(), bookingState.findBookingByNumber(booked.getKey())
+                    .getEventPerformance().getPerformanceNumber(),
+                    "Booking " + booked.getKey() + " should be for the performance it was first made for");
+        }
+        assertNull(bookingState.findBookingByNumber(bookedPerformances.size() + 1));
+    }
+}
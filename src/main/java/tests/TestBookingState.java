@@ -6,6 +6,7 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
 import state.BookingState;
+import state.EventState;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -363,6 +364,64 @@ public class TestBookingState
         System.out.println();
     }
 
+    @Test
+    @DisplayName("Test findBookingsByPerformanceNumber only finds bookings for that performance.")
+    void findBookingsByPerformanceNumberTest()
+    {
+        BookingState bookingState = new BookingState();
+        EventPerformance performance3 = new EventPerformance(5, event1, "d",
+                LocalDateTime.now().plusMonths(1), LocalDateTime.now().plusMonths(1).plusHours(2),
+                List.of("Performer"), false, false, false, 100, 100);
+        bookingState.createBooking(consumer1, performance1, 2, 0);
+        Booking booking = bookingState.createBooking(consumer2, performance3, 1, 0);
+        assertEquals(List.of(booking),
+                bookingState.findBookingsByPerformanceNumber(5),
+                "Only the booking for the given performance should be found.");
+        assertEquals(2,
+                bookingState.findBookingsByEventNumber(event1.getEventNumber()).size(),
+                "Bookings for both performances of the event should be found.");
+        System.out.println("Test passed successfully!");
+    }
+
+    @Test
+    @DisplayName("Test findBookingByEventNumber returns a copy of the event's bookings.")
+    void findBookingByEventCopyTest()
+    {
+        BookingState bookingState = new BookingState();
+        bookingState.createBooking(consumer1, performance1, 2, 0);
+        List<Booking> eventBookings =
+                bookingState.findBookingsByEventNumber(performance1.getEvent().getEventNumber());
+        eventBookings.remove(0);
+        bookingState.createBooking(consumer2, performance1, 1, 0);
+        assertTrue(eventBookings.isEmpty(),
+                "The list of an event's bookings should not change as bookings are made.");
+        assertEquals(2, bookingState.findBookingsByEventNumber(performance1.getEvent().getEventNumber()).size(),
+                "Changing the list of an event's bookings should not change the state.");
+        System.out.println("Test passed successfully!");
+    }
+
+    @Test
+    @DisplayName("Test findBookingsByPerformanceStart only finds bookings for performances starting in the range.")
+    void findBookingsByPerformanceStartTest()
+    {
+        BookingState bookingState = new BookingState();
+        Booking booking1 = bookingState.createBooking(consumer1, performance2, 2, 0);
+        Booking booking2 = bookingState.createBooking(consumer2, performance1, 1, 0);
+        Booking booking3 = bookingState.createBooking(consumer1, performance1, 1, 0);
+        assertEquals(List.of(booking2, booking3, booking1),
+                bookingState.findBookingsByPerformanceStart(performance1.getStartDateTime(),
+                        performance2.getStartDateTime()),
+                "The bookings should be ordered by performance start time, then by booking number.");
+        assertEquals(List.of(booking1),
+                bookingState.findBookingsByPerformanceStart(performance1.getStartDateTime().plusSeconds(1),
+                        performance2.getStartDateTime().plusDays(1)),
+                "Bookings for performances starting before the range should not be found.");
+        assertTrue(bookingState.findBookingsByPerformanceStart(performance2.getStartDateTime(),
+                        performance1.getStartDateTime()).isEmpty(),
+                "A range ending before it starts should not find any bookings.");
+        System.out.println("Test passed successfully!");
+    }
+
     @Test
     @DisplayName("Test copy constructor with no bookings added")
     void copyConstructorInitialTest()
@@ -447,4 +506,28 @@ public class TestBookingState
                 "The copy constructor did not copy properties correctly");
         System.out.println("Deep copying test 6 passed!");
     }
+
+    @Test
+    @DisplayName("Test the copy constructor links bookings with a copied event state")
+    void copyConstructorWithEventStateTest()
+    {
+        EventState eventState = new EventState();
+        TicketedEvent event = eventState.createTicketedEvent(provider1, "a", EventType.Movie, 10, 100);
+        EventPerformance performance = eventState.createEventPerformance(event, "address",
+                LocalDateTime.now().plusMonths(1), LocalDateTime.now().plusMonths(1).plusHours(2),
+                List.of("Performer"), false, false, false, 10, 10);
+        BookingState bookingState = new BookingState();
+        Booking booking = bookingState.createBooking(consumer1, performance, 1, 10);
+        booking.cancelByConsumer();
+
+        EventState newEventState = new EventState(eventState);
+        BookingState newBookingState = new BookingState(bookingState, newEventState);
+        Booking bookingCopy = newBookingState.findBookingByNumber(booking.getBookingNumber());
+        assertSame(newEventState.findPerformanceByNumber(performance.getPerformanceNumber()),
+                bookingCopy.getEventPerformance(),
+                "The copied booking does not point at the copied performance");
+        assertEquals(BookingStatus.CANCELLEDBYCONSUMER, bookingCopy.getStatus(),
+                "The copy constructor did not copy the booking status");
+        System.out.println("Deep copying test 7 passed!");
+    }
 }
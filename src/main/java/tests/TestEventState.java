@@ -5,8 +5,12 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
+import org.junit.jupiter.api.io.TempDir;
+import state.ColdEventStore;
 import state.EventState;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -227,6 +231,40 @@ public class TestEventState
                 "findEventByNumber should find existing events");
     }
 
+    @Test
+    @DisplayName("Testing findEventByNumber finds events assigned through setAllEvents")
+    void findEventByNumberAfterSetAllEventsTest()
+    {
+        EventState eventState = new EventState();
+        eventState.createNonTicketedEvent(provider1, "a", EventType.Movie);
+        List<Event> events = new ArrayList<>();
+        Event replacement = new NonTicketedEvent(7, provider2, "b", EventType.Dance);
+        events.add(replacement);
+        eventState.setAllEvents(events);
+        assertEquals(replacement, eventState.findEventByNumber(7),
+                "findEventByNumber should find events assigned through setAllEvents");
+        assertNull(eventState.findEventByNumber(1),
+                "findEventByNumber should not find events that were replaced");
+    }
+
+    @Test
+    @DisplayName("Testing findEventByNumber finds every event among many events")
+    void findEventByNumberManyEventsTest()
+    {
+        EventState eventState = new EventState();
+        for (int i = 0; i < 1000; i++)
+        {
+            eventState.createTicketedEvent(provider1, "title" + i, EventType.Music, 10, 100);
+        }
+        for (int i = 1; i <= 1000; i++)
+        {
+            assertEquals(i, eventState.findEventByNumber(i).getEventNumber(),
+                    "findEventByNumber should find existing events");
+        }
+        assertEquals("title0", eventState.getAllEvents().get(0).getTitle(),
+                "getAllEvents should keep the order in which events were created");
+    }
+
     @Test
     @DisplayName("Testing createNonTicketedEvent creates non-ticketed" +
             " event provider correctly")
@@ -569,4 +607,197 @@ public class TestEventState
         assertEquals(420, performance.getVenueSize(),
                 "createEventPerformance should create performances correctly");
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Testing findPerformancesWithin only finds performances inside the window")
+    void findPerformancesWithinTest()
+    {
+        EventState eventState = new EventState();
+        Event ticketedEvent = eventState.createTicketedEvent(provider1, "a", EventType.Music, 10, 100);
+        EventPerformance inside = eventState.createEventPerformance(ticketedEvent, "address",
+                LocalDateTime.of(2069, 4, 20, 10, 0), LocalDateTime.of(2069, 4, 20, 12, 0),
+                List.of("Performer"), false, false, false, 10, 10);
+        eventState.createEventPerformance(ticketedEvent, "address",
+                LocalDateTime.of(2069, 4, 21, 10, 0), LocalDateTime.of(2069, 4, 23, 12, 0),
+                List.of("Performer"), false, false, false, 10, 10);
+        eventState.createEventPerformance(ticketedEvent, "address",
+                LocalDateTime.of(2069, 4, 18, 10, 0), LocalDateTime.of(2069, 4, 18, 12, 0),
+                List.of("Performer"), false, false, false, 10, 10);
+        assertEquals(List.of(inside), eventState.findPerformancesWithin(
+                LocalDateTime.of(2069, 4, 19, 10, 0), LocalDateTime.of(2069, 4, 21, 11, 0)),
+                "findPerformancesWithin should only find performances inside the window");
+    }
+
+    @Test
+    @DisplayName("Testing findPerformancesMatching only finds performances matching every preference")
+    void findPerformancesMatchingTest()
+    {
+        EventState eventState = new EventState();
+        Event ticketedEvent = eventState.createTicketedEvent(provider1, "a", EventType.Music, 10, 100);
+        EventPerformance small = eventState.createEventPerformance(ticketedEvent, "address",
+                LocalDateTime.of(2069, 4, 20, 10, 0), LocalDateTime.of(2069, 4, 20, 12, 0),
+                List.of("Performer"), true, false, true, 50, 60);
+        eventState.createEventPerformance(ticketedEvent, "address",
+                LocalDateTime.of(2069, 4, 21, 10, 0), LocalDateTime.of(2069, 4, 21, 12, 0),
+                List.of("Performer"), true, false, true, 500, 600);
+        eventState.createEventPerformance(ticketedEvent, "address",
+                LocalDateTime.of(2069, 4, 22, 10, 0), LocalDateTime.of(2069, 4, 22, 12, 0),
+                List.of("Performer"), false, false, true, 50, 60);
+        EventPerformance exactLimits = eventState.createEventPerformance(ticketedEvent, "address",
+                LocalDateTime.of(2069, 4, 23, 10, 0), LocalDateTime.of(2069, 4, 23, 12, 0),
+                List.of("Performer"), true, false, true, 100, 100);
+
+        ConsumerPreferences preferences = new ConsumerPreferences();
+        preferences.preferSocialDistancing = true;
+        preferences.preferOutdoorsOnly = true;
+        preferences.preferredMaxCapacity = 100;
+        preferences.preferredMaxVenueSize = 100;
+        assertEquals(List.of(small, exactLimits), eventState.findPerformancesMatching(preferences),
+                "findPerformancesMatching should only find performances matching every preference");
+    }
+
+    @Test
+    @DisplayName("Testing findPerformancesMatching finds performances both sorted into the index and just added")
+    void findPerformancesMatchingManyTest()
+    {
+        EventState eventState = new EventState();
+        Event ticketedEvent = eventState.createTicketedEvent(provider1, "a", EventType.Music, 10, 100);
+        List<EventPerformance> expected = new ArrayList<>();
+        for (int i = 0; i < 300; i++)
+        {
+            LocalDateTime start = LocalDateTime.of(2069, 4, 20, 10, 0).plusDays(i);
+            int capacity = (i * 37) % 200;
+            EventPerformance performance = eventState.createEventPerformance(ticketedEvent, "address",
+                    start, start.plusHours(2), List.of("Performer"), false, false, false, capacity, 200 - capacity);
+            if (capacity <= 120 && 200 - capacity <= 150)
+            {
+                expected.add(performance);
+            }
+        }
+
+        ConsumerPreferences preferences = new ConsumerPreferences();
+        preferences.preferredMaxCapacity = 120;
+        preferences.preferredMaxVenueSize = 150;
+        assertEquals(expected, eventState.findPerformancesMatching(preferences),
+                "findPerformancesMatching should find every matching performance, in the order they were added");
+    }
+
+    @Test
+    @DisplayName("Testing isTitleTimeslotTaken follows performances to the new title of a renamed event")
+    void isTitleTimeslotTakenTest()
+    {
+        EventState eventState = new EventState();
+        Event ticketedEvent = eventState.createTicketedEvent(provider1, "a", EventType.Music, 10, 100);
+        LocalDateTime start = LocalDateTime.of(2069, 4, 20, 10, 0);
+        LocalDateTime end = LocalDateTime.of(2069, 4, 20, 12, 0);
+        eventState.createEventPerformance(ticketedEvent, "address", start, end,
+                List.of("Performer"), false, false, false, 10, 10);
+        assertTrue(eventState.isTitleTimeslotTaken("a", start, end),
+                "The timeslot of an added performance should be taken");
+        assertFalse(eventState.isTitleTimeslotTaken("a", start, end.plusHours(1)),
+                "A timeslot with a different end time should not be taken");
+
+        ticketedEvent.setTitle("b");
+        assertFalse(eventState.isTitleTimeslotTaken("a", start, end),
+                "The timeslot of the old title should be free after renaming the event");
+        assertTrue(eventState.isTitleTimeslotTaken("b", start, end),
+                "The timeslot of the new title should be taken after renaming the event");
+    }
+
+    @Test
+    @DisplayName("Testing getSponsoredActiveEvents only lists active events with an accepted sponsorship")
+    void getSponsoredActiveEventsTest()
+    {
+        EventState eventState = new EventState();
+        TicketedEvent sponsoredEvent = eventState.createTicketedEvent(provider1, "a", EventType.Music, 10, 100);
+        TicketedEvent otherEvent = eventState.createTicketedEvent(provider1, "b", EventType.Music, 10, 100);
+        SponsorshipRequest request = new SponsorshipRequest(1, sponsoredEvent);
+        sponsoredEvent.setSponsorshipRequest(request);
+        eventState.sponsorshipAccepted(sponsoredEvent);
+        assertTrue(eventState.getSponsoredActiveEvents().isEmpty(),
+                "An event should not be listed before its sponsorship request is accepted");
+
+        request.accept(10, "payment@gov");
+        eventState.sponsorshipAccepted(sponsoredEvent);
+        eventState.sponsorshipAccepted(otherEvent);
+        assertEquals(List.of(sponsoredEvent), eventState.getSponsoredActiveEvents(),
+                "Only the event with an accepted sponsorship request should be listed");
+
+        eventState.cancelEvent(sponsoredEvent);
+        assertEquals(EventStatus.CANCELLED, sponsoredEvent.getStatus(), "cancelEvent should cancel the event");
+        assertTrue(eventState.getSponsoredActiveEvents().isEmpty(),
+                "A cancelled event should no longer be listed");
+    }
+
+    @Test
+    @DisplayName("Testing eventState copy constructor copies sponsorship requests")
+    void copyConstructorSponsorshipRequestTest()
+    {
+        EventState eventState = new EventState();
+        TicketedEvent event = eventState.createTicketedEvent(provider1, "a", EventType.Movie, 69, 420);
+        SponsorshipRequest request = new SponsorshipRequest(1, event);
+        event.setSponsorshipRequest(request);
+        request.accept(10, "payment@gov");
+        EventState newEventState = new EventState(eventState);
+        TicketedEvent eventCopy = (TicketedEvent) newEventState.findEventByNumber(event.getEventNumber());
+        SponsorshipRequest requestCopy = eventCopy.getSponsorshipRequest();
+        assertNotSame(request, requestCopy, "The copy constructor does not copy sponsorship requests");
+        assertSame(eventCopy, requestCopy.getEvent(), "The copied request does not point at the copied event");
+        assertEquals(SponsorshipStatus.ACCEPTED, requestCopy.getStatus(), "The request status was not copied");
+        assertEquals(10, requestCopy.getSponsoredPricePercent(), "The sponsored percentage was not copied");
+    }
+
+    @Test
+    @DisplayName("Testing eventState copy constructor copies performances and status")
+    void copyConstructorPerformancesTest()
+    {
+        EventState eventState = new EventState();
+        TicketedEvent event = eventState.createTicketedEvent(provider1, "a", EventType.Movie, 69, 420);
+        EventPerformance performance = eventState.createEventPerformance(event, "address",
+                LocalDateTime.of(2069, 4, 20, 10, 0), LocalDateTime.of(2069, 4, 20, 12, 0),
+                List.of("Performer"), false, false, false, 10, 10);
+        event.cancel();
+        EventState newEventState = new EventState(eventState);
+        Event eventCopy = newEventState.findEventByNumber(event.getEventNumber());
+        EventPerformance performanceCopy = newEventState.findPerformanceByNumber(performance.getPerformanceNumber());
+        assertEquals(EventStatus.CANCELLED, eventCopy.getStatus(),
+                "The copy constructor does not copy the event status");
+        assertNotSame(performance, performanceCopy, "The copy constructor does not copy performances");
+        assertSame(eventCopy, performanceCopy.getEvent(),
+                "The copied performance does not belong to the copied event");
+        assertEquals(List.of(performanceCopy), new ArrayList<>(eventCopy.getPerformances()),
+                "The copied event does not have the copied performance");
+    }
+
+    @Test
+    @DisplayName("Testing eventState tierOut drops only the tiered performances from the time and preference indexes")
+    void tierOutPerformanceIndexesTest(@TempDir Path directory) throws IOException
+    {
+        EventState eventState = new EventState();
+        List<Event> events = new ArrayList<>();
+        List<EventPerformance> performances = new ArrayList<>();
+        LocalDateTime start = LocalDateTime.of(2069, 4, 20, 10, 0);
+        for (int i = 0; i < 6; i++)
+        {
+            TicketedEvent event = eventState.createTicketedEvent(provider1, "Event " + i, EventType.Movie, 10, 100);
+            events.add(event);
+            performances.add(eventState.createEventPerformance(event, "address", start.plusDays(i),
+                    start.plusDays(i).plusHours(2), List.of("Performer"), false, false, false, 10, 10));
+        }
+        try (ColdEventStore coldStore = new ColdEventStore(directory.resolve("cold.events")))
+        {
+            // The first event is masked out of the indexes, and the next three leave too few to keep
+            for (List<Event> tiered: List.of(events.subList(0, 1), events.subList(1, 4)))
+            {
+                coldStore.append(tiered, List.of());
+                eventState.tierOut(tiered, coldStore);
+                List<EventPerformance> left = performances.subList(events.indexOf(tiered.get(tiered.size() - 1)) + 1,
+                        performances.size());
+                assertEquals(left, eventState.findPerformancesMatching(new ConsumerPreferences()),
+                        "Only the performances of events left should match preferences");
+                assertEquals(left, eventState.findPerformancesWithin(start.minusDays(1), start.plusDays(7)),
+                        "Only the performances of events left should be found by time");
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package tests;
+
+import model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+import org.junit.jupiter.api.io.TempDir;
+import state.BookingJournal;
+import state.EventState;
+import state.JournaledBookingState;
+import state.UserState;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestJournaledBookingState
+{
+    @TempDir
+    Path directory;
+
+    UserState userState;
+    EventState eventState;
+    Consumer consumer;
+    EventPerformance performance1, performance2;
+
+    @BeforeEach
+    void setUp(TestInfo testInfo)
+    {
+        System.out.println(testInfo.getDisplayName());
+        userState = new UserState();
+        eventState = new EventState();
+        consumer = new Consumer("Consumer1", "consumer1@email.com", "69420666", "b", "z");
+        userState.addUser(consumer);
+        EntertainmentProvider provider = new EntertainmentProvider("a", "b", "c", "d",
+                "f", "g", new ArrayList<>(), new ArrayList<>());
+        Event event1 = eventState.createTicketedEvent(provider, "g", EventType.Movie, 10, 100);
+        Event event2 = eventState.createTicketedEvent(provider, "t", EventType.Dance, 10, 100);
+        performance1 = eventState.createEventPerformance(event1, "d", LocalDateTime.now().plusMonths(1),
+                LocalDateTime.now().plusMonths(1).plusHours(8), List.of("Everyone"), false, true, true, 3000, 3000);
+        performance2 = eventState.createEventPerformance(event2, "h", LocalDateTime.now().plusMonths(2),
+                LocalDateTime.now().plusMonths(2).plusHours(8), List.of("Everyone"), false, false, false, 3000, 3000);
+    }
+
+    @Test
+    @DisplayName("Testing bookings are found by number, event, performance and booker")
+    void findBookingsTest() throws IOException
+    {
+        try (BookingJournal journal = BookingJournal.open(directory.resolve("bookings.journal")))
+        {
+            JournaledBookingState bookingState = new JournaledBookingState(journal, userState, eventState);
+            assertNull(bookingState.findBookingByNumber(1));
+            Booking booking1 = bookingState.createBooking(consumer, performance1, 2, 20);
+            Booking booking2 = bookingState.createBooking(consumer, performance2, 3, 30);
+            Booking booking3 = bookingState.createBooking(consumer, performance1, 4, 40);
+
+            assertEquals(List.of(booking1, booking2, booking3), bookingState.findBookingsByBooker(consumer));
+            assertTrue(consumer.getBookings().isEmpty());
+            assertSame(booking2, bookingState.findBookingByNumber(2));
+            assertNull(bookingState.findBookingByNumber(4));
+            assertEquals(List.of(booking1, booking3), bookingState.findBookingsByEventNumber(1));
+            assertEquals(List.of(booking2), bookingState.findBookingsByPerformanceNumber(2));
+            assertEquals(4, bookingState.getNextBookingNumber());
+        }
+        System.out.println("Test passed successfully!");
+    }
+
+    @Test
+    @DisplayName("Testing bookings that are no longer hot are read back from the journal")
+    void coldBookingsTest() throws IOException
+    {
+        try (BookingJournal journal = BookingJournal.open(directory.resolve("bookings.journal")))
+        {
+            JournaledBookingState bookingState = new JournaledBookingState(journal, userState, eventState, 2);
+            Booking booking1 = bookingState.createBooking(consumer, performance1, 2, 20);
+            bookingState.createBooking(consumer, performance1, 3, 30);
+            bookingState.createBooking(consumer, performance2, 4, 40);
+
+            Booking readBack = bookingState.findBookingByNumber(1);
+            assertNotSame(booking1, readBack);
+            assertSame(consumer, readBack.getBooker());
+            assertSame(performance1, readBack.getEventPerformance());
+            assertEquals(2, readBack.getNumTickets());
+            assertEquals(20, readBack.getAmountPaid());
+            assertEquals(booking1.getBookingDateTime(), readBack.getBookingDateTime());
+
+            // The status is kept by the state, so every copy of the booking it reads back sees it change
+            readBack.cancelByConsumer();
+            assertEquals(BookingStatus.CANCELLEDBYCONSUMER, booking1.getStatus());
+        }
+        System.out.println("Test passed successfully!");
+    }
+
+    @Test
+    @DisplayName("Testing bookings are kept in the journal once it is reopened")
+    void reopenTest() throws IOException
+    {
+        Path file = directory.resolve("bookings.journal");
+        try (BookingJournal journal = BookingJournal.open(file))
+        {
+            JournaledBookingState bookingState = new JournaledBookingState(journal, userState, eventState);
+            bookingState.createBooking(consumer, performance1, 2, 20);
+            bookingState.createBooking(consumer, performance2, 3, 30).cancelByProvider();
+        }
+        try (BookingJournal journal = BookingJournal.open(file))
+        {
+            JournaledBookingState bookingState = new JournaledBookingState(journal, userState, eventState);
+            assertEquals(2, journal.size());
+            Booking booking = bookingState.findBookingsByEventNumber(2).get(0);
+            assertEquals(2, booking.getBookingNumber());
+            assertSame(consumer, booking.getBooker());
+            assertEquals(BookingStatus.CANCELLEDBYPROVIDER, booking.getStatus());
+            assertEquals(3, bookingState.createBooking(consumer, performance1, 1, 10).getBookingNumber());
+        }
+        System.out.println("Test passed successfully!");
+    }
+
+    @Test
+    @DisplayName("Testing a copy of the state drops bookings made after it once it creates one")
+    void copyTest() throws IOException
+    {
+        try (BookingJournal journal = BookingJournal.open(directory.resolve("bookings.journal")))
+        {
+            JournaledBookingState bookingState = new JournaledBookingState(journal, userState, eventState);
+            bookingState.createBooking(consumer, performance1, 2, 20);
+            JournaledBookingState copy = new JournaledBookingState(bookingState, eventState);
+            bookingState.createBooking(consumer, performance1, 3, 30);
+            assertNull(copy.findBookingByNumber(2));
+            assertEquals(1, copy.findBookingsByEventNumber(1).size());
+
+            Booking booking = copy.createBooking(consumer, performance2, 4, 40);
+            assertEquals(2, booking.getBookingNumber());
+            assertEquals(2, journal.size());
+            assertEquals(1, copy.findBookingsByEventNumber(1).size());
+            assertEquals(List.of(booking), copy.findBookingsByEventNumber(2));
+        }
+        System.out.println("Test passed successfully!");
+    }
+
+    @Test
+    @DisplayName("Testing a copy of the state keeps the statuses it saw when it was copied")
+    void copyStatusTest() throws IOException
+    {
+        try (BookingJournal journal = BookingJournal.open(directory.resolve("bookings.journal")))
+        {
+            JournaledBookingState bookingState = new JournaledBookingState(journal, userState, eventState);
+            bookingState.createBooking(consumer, performance1, 2, 20);
+            bookingState.createBooking(consumer, performance2, 3, 30).cancelByConsumer();
+            JournaledBookingState copy = new JournaledBookingState(bookingState, eventState);
+            bookingState.findBookingByNumber(1).cancelByConsumer();
+            bookingState.findBookingByNumber(2).setStatus(BookingStatus.ACTIVE);
+            assertEquals(BookingStatus.ACTIVE, copy.findBookingByNumber(1).getStatus());
+            assertEquals(BookingStatus.CANCELLEDBYCONSUMER, copy.findBookingByNumber(2).getStatus());
+
+            // Once the copy writes to the journal, the journal holds the statuses the copy sees
+            copy.createBooking(consumer, performance1, 1, 10);
+            assertEquals(BookingStatus.ACTIVE, journal.getStatus(0));
+            assertEquals(BookingStatus.CANCELLEDBYCONSUMER, journal.getStatus(1));
+            assertEquals(List.of(1L, 2L, 3L), copy.findBookingsByBooker(consumer).stream()
+                    .map(Booking::getBookingNumber).collect(Collectors.toList()));
+        }
+        System.out.println("Test passed successfully!");
+    }
+}
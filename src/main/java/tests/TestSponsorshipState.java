@@ -3,6 +3,7 @@ package tests;
 import model.EntertainmentProvider;
 import model.EventType;
 import model.SponsorshipRequest;
+import model.SponsorshipStatus;
 import model.TicketedEvent;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -361,4 +362,38 @@ public class TestSponsorshipState
                 "Number of pending sponsorship requests is incorrect");
         System.out.println("Get pending sponsorship requests test 11 passed!");
     }
+
+    @Test
+    @DisplayName("Test getPendingSponsorshipRequests() keeps the order in which requests were made")
+    void getPendingSponsorshipRequestsTest12()
+    {
+        TicketedEvent event3 = eventState.createTicketedEvent(organiser1, "Event 3",
+                EventType.Movie, 8.95, 300);
+        SponsorshipRequest request1 = sponsorshipState.addSponsorshipRequest(event1);
+        SponsorshipRequest request2 = sponsorshipState.addSponsorshipRequest(event2);
+        SponsorshipRequest request3 = sponsorshipState.addSponsorshipRequest(event3);
+        request2.reject();
+        assertEquals(List.of(request1, request3), sponsorshipState.getPendingSponsorshipRequests(),
+                "Pending sponsorship requests are not listed in the order they were made");
+        System.out.println("Get pending sponsorship requests test 12 passed!");
+    }
+
+    @Test
+    @DisplayName("Test copy constructor links copied requests with a copied event state")
+    void deepCopyWithEventStateTest()
+    {
+        SponsorshipRequest request = sponsorshipState.addSponsorshipRequest(event1);
+        request.accept(10, "payment@gov");
+        EventState newEventState = new EventState(eventState);
+        SponsorshipState newSponsorshipState = new SponsorshipState(sponsorshipState, newEventState);
+        SponsorshipRequest requestCopy = newSponsorshipState.findRequestByNumber(request.getRequestNumber());
+        TicketedEvent eventCopy = (TicketedEvent) newEventState.findEventByNumber(event1.getEventNumber());
+        assertNotSame(request, requestCopy, "The sponsorship request was not copied");
+        assertSame(eventCopy, requestCopy.getEvent(), "The copied request does not point at the copied event");
+        assertSame(requestCopy, eventCopy.getSponsorshipRequest(), "The copied event does not link the copied request");
+        assertEquals(SponsorshipStatus.ACCEPTED, requestCopy.getStatus(), "The request status was not copied");
+        assertEquals(10, requestCopy.getSponsoredPricePercent(), "The sponsored percentage was not copied");
+        assertSame(request, event1.getSponsorshipRequest(), "The original event lost its request");
+        System.out.println("Deep copying test 7 passed!");
+    }
 }
@@ -316,4 +316,51 @@ public class TestUserState
         assertNotNull(newUserState, "The deep copied user state is not independent of the old user state!");
         System.out.println("Test 7 for deep copying passed!");
     }
+
+    @Test
+    @DisplayName("Test copying the users along with the state")
+    void deepCopyingUsersTest()
+    {
+        userState.addUser(newOrganiser);
+        userState.setCurrentUser(newOrganiser);
+        UserState newUserState = new UserState(userState, true);
+        User organiserCopy = newUserState.getAllUsers().get("johnnyp@email");
+        assertNotSame(newOrganiser, organiserCopy, "The user was not copied");
+        assertSame(organiserCopy, newUserState.getCurrentUser(), "The current user is not the copied user");
+        assertSame(organiserCopy, newUserState.resolveUser(newOrganiser),
+                "The original user does not resolve to its copy");
+        assertTrue(organiserCopy.checkPasswordMatch("pass"), "The copied user lost their password");
+        newOrganiser.setPaymentAccountEmail("changed@payment.com");
+        assertEquals("provider@payment.com", organiserCopy.getPaymentAccountEmail(),
+                "A change to the original user shows in its copy");
+        System.out.println("Test 8 for deep copying passed!");
+    }
+
+    @Test
+    @DisplayName("Test adding an entertainment provider registers its organisation")
+    void organisationRegisteredTest1()
+    {
+        assertFalse(userState.isOrganisationRegistered("org", "25 East Avenue"),
+                "The organisation is registered before any entertainment provider was added!");
+        userState.addUser(newOrganiser);
+        assertTrue(userState.isOrganisationRegistered("org", "25 East Avenue"),
+                "The organisation of the added entertainment provider is not registered!");
+        assertFalse(userState.isOrganisationRegistered("org", "26 East Avenue"),
+                "An organisation with a different address is registered!");
+        System.out.println("Test 1 for registered organisations passed!");
+    }
+
+    @Test
+    @DisplayName("Test updating an organisation moves its registration")
+    void organisationRegisteredTest2()
+    {
+        userState.addUser(newOrganiser);
+        userState.updateOrganisation(newOrganiser, "new org", "26 East Avenue");
+        assertFalse(userState.isOrganisationRegistered("org", "25 East Avenue"),
+                "The old organisation details are still registered after the update!");
+        assertTrue(userState.isOrganisationRegistered("new org", "26 East Avenue"),
+                "The new organisation details are not registered after the update!");
+        assertEquals("new org", newOrganiser.getOrgName(), "The organisation name was not updated!");
+        System.out.println("Test 2 for registered organisations passed!");
+    }
 }